@@ -0,0 +1,332 @@
+package com.example.amospringboot.loadtest;
+
+import com.example.amospringboot.AmospringbootApplication;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * End-to-end load test, fully offline: starts {@link StubMatrixApi}, boots the application
+ * against it with a stubbed OIDC provider ({@link LoadTestAuth} supplies the principal), then
+ * drives each endpoint in turn with closed-loop virtual users and prints throughput and
+ * p50/p99/p999 per endpoint. Results also go to --out as JSON.
+ *
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar com.example.amospringboot.loadtest.LoadTest \
+ *      --users=64 --duration=30s --stub.latency-median=20ms --stub.latency-p99=250ms \
+ *      --spring.threads.virtual.enabled=false      # any other --key=value goes to the app
+ * </pre>
+ *
+ * Harness options: users, duration, warmup, endpoints (payment,cycle-ui,analyze-ui,cycle-json),
+ * out, stub.latency-median, stub.latency-p99, stub.error-rate, stub.blobs, stub.edges,
+ * stub.analyze-post.
+ */
+public final class LoadTest {
+
+    private static final Pattern CSRF = Pattern.compile("name=\"_csrf\"\\s+value=\"([^\"]+)\"");
+    private static final Pattern SESSION = Pattern.compile("JSESSIONID=([^;]+)");
+
+    private LoadTest() {}
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = new LinkedHashMap<>();
+        List<String> appArgs = new ArrayList<>();
+        for (String a : args) {
+            String kv = a.startsWith("--") ? a.substring(2) : a;
+            int eq = kv.indexOf('=');
+            String key = eq > 0 ? kv.substring(0, eq) : kv;
+            if (isHarnessOption(key)) {
+                opts.put(key, eq > 0 ? kv.substring(eq + 1) : "true");
+            } else {
+                appArgs.add(a);
+            }
+        }
+
+        int users = Integer.parseInt(opts.getOrDefault("users", "32"));
+        Duration duration = parseDuration(opts.getOrDefault("duration", "20s"));
+        Duration warmup = parseDuration(opts.getOrDefault("warmup", "5s"));
+        List<String> endpoints = List.of(opts.getOrDefault("endpoints", "payment,cycle-ui,analyze-ui,cycle-json").split(","));
+        Path out = Path.of(opts.getOrDefault("out", "target/loadtest.json"));
+        int edges = Integer.parseInt(opts.getOrDefault("stub.edges", "1000"));
+
+        StubMatrixApi.Config stubConfig = new StubMatrixApi.Config(
+                parseDuration(opts.getOrDefault("stub.latency-median", "20ms")),
+                parseDuration(opts.getOrDefault("stub.latency-p99", "200ms")),
+                Double.parseDouble(opts.getOrDefault("stub.error-rate", "0")),
+                Integer.parseInt(opts.getOrDefault("stub.blobs", "1000")),
+                edges,
+                Boolean.parseBoolean(opts.getOrDefault("stub.analyze-post", "false")));
+
+        Path auditDir = Files.createTempDirectory("loadtest-audit");
+        try (StubMatrixApi stub = new StubMatrixApi(stubConfig).start(0)) {
+            Map<String, Object> props = new LinkedHashMap<>();
+            props.put("server.port", "0");
+            props.put("management.server.port", "-1");
+            props.put("matrix.api.base-url", "http://127.0.0.1:" + stub.port());
+            // optional in the app (the real backend has none); the stub serves them
+            props.put("matrix.api.payment-batch-path", "/matrix/payment/batch");
+            props.put("matrix.api.settlement-batch-path", "/matrix/settlement/batch");
+            props.put("AZURE_CLIENT_ID", "load-test");
+            props.put("AZURE_CLIENT_SECRET", "load-test");
+            props.put("AZURE_TENANT_ID", "load-test");
+            props.put("spring.security.oauth2.client.registration.azure.provider", "stub");
+            props.put("spring.security.oauth2.client.registration.azure.authorization-grant-type", "authorization_code");
+            props.put("spring.security.oauth2.client.provider.stub.authorization-uri", "http://127.0.0.1:9/authorize");
+            props.put("spring.security.oauth2.client.provider.stub.token-uri", "http://127.0.0.1:9/token");
+            props.put("spring.security.oauth2.client.provider.stub.jwk-set-uri", "http://127.0.0.1:9/keys");
+            props.put("audit.dir", auditDir.toString());
+            props.put("audit.console", "false");
+            props.put("logging.level.com.example.amospringboot", "WARN");
+
+            // As command-line args so they beat application.yml; explicit app args win over these.
+            List<String> bootArgs = new ArrayList<>();
+            props.forEach((k, v) -> {
+                if (appArgs.stream().noneMatch(a -> a.startsWith("--" + k + "="))) bootArgs.add("--" + k + "=" + v);
+            });
+            bootArgs.addAll(appArgs);
+
+            try (ConfigurableApplicationContext app = new SpringApplicationBuilder(AmospringbootApplication.class, LoadTestAuth.class)
+                    .run(bootArgs.toArray(String[]::new))) {
+
+                String base = "http://127.0.0.1:" + app.getEnvironment().getProperty("local.server.port");
+                HttpClient http = HttpClient.newBuilder()
+                        .version(HttpClient.Version.HTTP_1_1)
+                        .connectTimeout(Duration.ofSeconds(5))
+                        .executor(Executors.newVirtualThreadPerTaskExecutor())
+                        .build();
+                byte[] cycleJson = cycleRequest(edges);
+
+                System.out.printf("%nstub=:%d app=%s users=%d duration=%s warmup=%s app-args=%s%n",
+                        stub.port(), base, users, duration, warmup, appArgs);
+
+                Map<String, Result> results = new LinkedHashMap<>();
+                for (String endpoint : endpoints) {
+                    List<VirtualUser> vus = new ArrayList<>();
+                    for (int i = 0; i < users; i++) {
+                        vus.add(new VirtualUser(http, base, "load" + i + "-" + endpoint).login());
+                    }
+                    run(endpoint, vus, cycleJson, warmup, null);
+                    Result r = new Result();
+                    run(endpoint, vus, cycleJson, duration, r);
+                    r.seconds = duration.toNanos() / 1e9;
+                    results.put(endpoint, r);
+                    System.out.println(r.line(endpoint));
+                }
+
+                Files.createDirectories(out.toAbsolutePath().getParent());
+                Files.writeString(out, toJson(results, users, duration, appArgs, stubConfig));
+                System.out.println("results -> " + out.toAbsolutePath());
+            }
+        }
+    }
+
+    private static void run(String endpoint, List<VirtualUser> vus, byte[] cycleJson,
+                            Duration length, Result result) throws InterruptedException {
+        long end = System.nanoTime() + length.toNanos();
+        try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (VirtualUser vu : vus) {
+                pool.submit(() -> {
+                    while (System.nanoTime() < end) {
+                        long t0 = System.nanoTime();
+                        int status;
+                        try {
+                            status = vu.call(endpoint, cycleJson);
+                        } catch (IOException e) {
+                            status = -1;
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+                        if (result != null) result.record(System.nanoTime() - t0, status);
+                    }
+                });
+            }
+            pool.shutdown();
+            pool.awaitTermination(length.toSeconds() + 120, TimeUnit.SECONDS);
+        }
+    }
+
+    /** One browser-like client: its own session cookie and CSRF token. */
+    private static final class VirtualUser {
+        private final HttpClient http;
+        private final String base;
+        private final String user;
+        private final Random rnd = new Random();
+        private String session;
+        private String csrf;
+
+        VirtualUser(HttpClient http, String base, String user) {
+            this.http = http;
+            this.base = base;
+            this.user = user;
+        }
+
+        VirtualUser login() throws IOException, InterruptedException {
+            HttpResponse<String> page = http.send(request("/payment").GET().build(), HttpResponse.BodyHandlers.ofString());
+            page.headers().allValues("Set-Cookie").forEach(c -> {
+                Matcher m = SESSION.matcher(c);
+                if (m.find()) session = m.group(1);
+            });
+            Matcher m = CSRF.matcher(page.body());
+            if (page.statusCode() != 200 || session == null || !m.find()) {
+                throw new IllegalStateException("Login for " + user + " failed: HTTP " + page.statusCode());
+            }
+            csrf = m.group(1);
+            return this;
+        }
+
+        int call(String endpoint, byte[] cycleJson) throws IOException, InterruptedException {
+            return switch (endpoint) {
+                // payment.html only renders the result JSON when the backend answered
+                case "payment" -> page(form("/payment", "node_b=peer" + rnd.nextInt(50) + "&amount=" + (1 + rnd.nextInt(100))),
+                        body -> !body.contains("\"status\":\"ok\""));
+                case "cycle-ui" -> page(form("/matrix/cycle/find/ui", "node_b=peer" + rnd.nextInt(50)),
+                        body -> body.contains("Search failed"));
+                case "analyze-ui" -> page(form("/matrix/analyze", ""), body -> body.contains("Analyze failed"));
+                case "cycle-json" -> http.send(request("/matrix/cycle/find")
+                        .header("Content-Type", "application/json")
+                        .header("X-CSRF-TOKEN", csrf)
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(cycleJson))
+                        .build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+                default -> throw new IllegalArgumentException("Unknown endpoint " + endpoint);
+            };
+        }
+
+        /** The pages answer 200 even when the backend failed; a page showing the failure counts as one. */
+        private int page(HttpRequest req, Predicate<String> failed) throws IOException, InterruptedException {
+            HttpResponse<String> res = http.send(req, HttpResponse.BodyHandlers.ofString());
+            return res.statusCode() == 200 && failed.test(res.body()) ? 599 : res.statusCode();
+        }
+
+        private HttpRequest form(String path, String fields) {
+            String body = (fields.isEmpty() ? "" : fields + "&") + "_csrf=" + URLEncoder.encode(csrf, StandardCharsets.UTF_8);
+            return request(path)
+                    .header("Content-Type", "application/x-www-form-urlencoded")
+                    .POST(HttpRequest.BodyPublishers.ofString(body))
+                    .build();
+        }
+
+        private HttpRequest.Builder request(String path) {
+            HttpRequest.Builder b = HttpRequest.newBuilder(URI.create(base + path))
+                    .timeout(Duration.ofSeconds(60))
+                    .header("X-Forwarded-Proto", "https")   // the app requires a secure channel
+                    .header(LoadTestAuth.USER_HEADER, user);
+            if (session != null) b.header("Cookie", "JSESSIONID=" + session);
+            return b;
+        }
+    }
+
+    private static final class Result {
+        final Recorder latencies = new Recorder(TimeUnit.MINUTES.toNanos(2), 3);
+        final AtomicLong ok = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        double seconds;
+        private Histogram snapshot;
+
+        void record(long nanos, int status) {
+            latencies.recordValue(Math.min(nanos, TimeUnit.MINUTES.toNanos(2)));
+            if (status >= 200 && status < 400) ok.incrementAndGet(); else failed.incrementAndGet();
+        }
+
+        Histogram histogram() {
+            if (snapshot == null) snapshot = latencies.getIntervalHistogram();
+            return snapshot;
+        }
+
+        String line(String endpoint) {
+            Histogram h = histogram();
+            return String.format("%-11s req=%-8d err=%-6d rps=%-9.1f p50=%8.2fms p99=%8.2fms p999=%8.2fms max=%8.2fms",
+                    endpoint, h.getTotalCount(), failed.get(), h.getTotalCount() / seconds,
+                    ms(h.getValueAtPercentile(50)), ms(h.getValueAtPercentile(99)),
+                    ms(h.getValueAtPercentile(99.9)), ms(h.getMaxValue()));
+        }
+    }
+
+    private static String toJson(Map<String, Result> results, int users, Duration duration,
+                                 List<String> appArgs, StubMatrixApi.Config stub) {
+        StringBuilder sb = new StringBuilder("{\n");
+        sb.append("  \"users\": ").append(users)
+          .append(",\n  \"durationSeconds\": ").append(duration.toSeconds())
+          .append(",\n  \"appArgs\": \"").append(String.join(" ", appArgs).replace("\"", "\\\"")).append('"')
+          .append(",\n  \"stub\": \"").append(stub.toString().replace("\"", "\\\"")).append('"')
+          .append(",\n  \"endpoints\": {");
+        boolean first = true;
+        for (Map.Entry<String, Result> e : results.entrySet()) {
+            Histogram h = e.getValue().histogram();
+            sb.append(first ? "\n" : ",\n").append("    \"").append(e.getKey()).append("\": {")
+              .append("\"requests\": ").append(h.getTotalCount())
+              .append(", \"errors\": ").append(e.getValue().failed.get())
+              .append(", \"rps\": ").append(String.format("%.1f", h.getTotalCount() / e.getValue().seconds))
+              .append(", \"p50Ms\": ").append(String.format("%.3f", ms(h.getValueAtPercentile(50))))
+              .append(", \"p99Ms\": ").append(String.format("%.3f", ms(h.getValueAtPercentile(99))))
+              .append(", \"p999Ms\": ").append(String.format("%.3f", ms(h.getValueAtPercentile(99.9))))
+              .append(", \"maxMs\": ").append(String.format("%.3f", ms(h.getMaxValue())))
+              .append('}');
+            first = false;
+        }
+        return sb.append("\n  }\n}\n").toString();
+    }
+
+    private static byte[] cycleRequest(int edges) {
+        Random rnd = new Random(42L);
+        int nodes = Math.max(2, (int) Math.sqrt(edges) * 2);
+        StringBuilder sb = new StringBuilder(edges * 56 + 256);
+        sb.append("{\"container\":\"matrices\",\"nodes\":[");
+        for (int i = 0; i < nodes; i++) {
+            if (i > 0) sb.append(',');
+            sb.append("\"n").append(i).append('"');
+        }
+        sb.append("],\"edges\":[");
+        for (int i = 0; i < edges; i++) {
+            if (i > 0) sb.append(',');
+            sb.append("{\"from\":\"n").append(rnd.nextInt(nodes))
+              .append("\",\"to\":\"n").append(rnd.nextInt(nodes))
+              .append("\",\"weight\":").append(1 + rnd.nextInt(10_000)).append('}');
+        }
+        sb.append("]}");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static boolean isHarnessOption(String key) {
+        return switch (key) {
+            case "users", "duration", "warmup", "endpoints", "out" -> true;
+            default -> key.startsWith("stub.");
+        };
+    }
+
+    private static Duration parseDuration(String s) {
+        String v = s.trim().toLowerCase();
+        if (v.endsWith("ms")) return Duration.ofMillis(Long.parseLong(v.substring(0, v.length() - 2)));
+        if (v.endsWith("s"))  return Duration.ofSeconds(Long.parseLong(v.substring(0, v.length() - 1)));
+        if (v.endsWith("m"))  return Duration.ofMinutes(Long.parseLong(v.substring(0, v.length() - 1)));
+        return Duration.ofSeconds(Long.parseLong(v));
+    }
+
+    private static double ms(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.amospringboot.loadtest;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.core.oidc.OidcIdToken;
+import org.springframework.security.oauth2.core.oidc.user.DefaultOidcUser;
+import org.springframework.security.web.context.HttpSessionSecurityContextRepository;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Load-test only: a request carrying X-Load-User gets a session holding an Entra-like
+ * OidcUser for that name, as if it had completed the OIDC login. Runs just before the
+ * Spring Security chain, which then finds the context in the session as usual.
+ */
+@Configuration(proxyBeanMethods = false)
+public class LoadTestAuth {
+
+    public static final String USER_HEADER = "X-Load-User";
+
+    @Bean
+    public FilterRegistrationBean<OncePerRequestFilter> loadTestPrincipalFilter() {
+        FilterRegistrationBean<OncePerRequestFilter> reg = new FilterRegistrationBean<>(new OncePerRequestFilter() {
+            @Override
+            protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                            FilterChain chain) throws ServletException, IOException {
+                String user = request.getHeader(USER_HEADER);
+                if (user != null && !user.isBlank()) {
+                    HttpSession session = request.getSession(true);
+                    if (session.getAttribute(HttpSessionSecurityContextRepository.SPRING_SECURITY_CONTEXT_KEY) == null) {
+                        session.setAttribute(HttpSessionSecurityContextRepository.SPRING_SECURITY_CONTEXT_KEY, contextFor(user));
+                    }
+                }
+                chain.doFilter(request, response);
+            }
+        });
+        reg.setOrder(SecurityProperties.DEFAULT_FILTER_ORDER - 1);
+        return reg;
+    }
+
+    private static SecurityContext contextFor(String user) {
+        Instant now = Instant.now();
+        OidcIdToken token = new OidcIdToken("load-test", now, now.plusSeconds(3600), Map.of(
+                "sub", user,
+                "upn", user + "@load.test",
+                "preferred_username", user + "@load.test",
+                "name", user));
+        DefaultOidcUser principal = new DefaultOidcUser(AuthorityUtils.createAuthorityList("OIDC_USER"), token);
+        return new SecurityContextImpl(new OAuth2AuthenticationToken(principal, principal.getAuthorities(), "azure"));
+    }
+}
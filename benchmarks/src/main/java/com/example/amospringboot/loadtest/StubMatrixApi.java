@@ -0,0 +1,197 @@
+package com.example.amospringboot.loadtest;
+
+import io.netty.handler.codec.http.HttpResponseStatus;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * In-process stand-in for the Matrix API (Reactor Netty, non-blocking).
+ *
+ * Serves /matrix/blobs, /matrix/analyze (GET; POST answers 405 unless analyzePost), /matrix/download
+ * (a base64 nodes/matrix blob), /matrix/payment and /matrix/cycle/find, plus /matrix/payment/batch
+ * and /matrix/settlement/batch, which the documented backend does not have (the load test turns
+ * them on with matrix.api.payment-batch-path / settlement-batch-path). Every response waits a log-normal latency fitted to the configured
+ * median and p99, and fails with 500 at errorRate. Payload sizes follow blobs/edges.
+ */
+public final class StubMatrixApi implements AutoCloseable {
+
+    private static final DateTimeFormatter TS = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    private static final double Z99 = 2.326;
+
+    /**
+     * @param latencyMedian median response delay
+     * @param latencyP99    99th percentile response delay (>= median)
+     * @param errorRate     fraction of calls answered with 500
+     * @param blobs         names in the /matrix/blobs listing
+     * @param edges         edges in /matrix/analyze, /matrix/download and /matrix/cycle/find responses
+     * @param analyzePost   accept POST /matrix/analyze (the real backend only takes GET)
+     */
+    public record Config(Duration latencyMedian, Duration latencyP99, double errorRate,
+                         int blobs, int edges, boolean analyzePost) {
+
+        public static Config defaults() {
+            return new Config(Duration.ofMillis(20), Duration.ofMillis(200), 0.0, 1000, 1000, false);
+        }
+    }
+
+    private final Config config;
+    private final double sigma;
+    private final byte[] blobsJson;
+    private final byte[] analyzeJson;
+    private final byte[] matrixB64;
+    private final byte[] cycleJson;
+    private final byte[] error = "{\"detail\":\"stub error\"}".getBytes(StandardCharsets.UTF_8);
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+
+    private DisposableServer server;
+
+    public StubMatrixApi(Config config) {
+        this.config = config;
+        double median = Math.max(1, config.latencyMedian().toNanos());
+        double p99 = Math.max(median, config.latencyP99().toNanos());
+        this.sigma = Math.log(p99 / median) / Z99;
+        Random rnd = new Random(42L);
+        this.blobsJson = blobs(config.blobs(), rnd);
+        this.analyzeJson = analyze(config.edges(), rnd);
+        this.matrixB64 = matrix(config.edges(), rnd);
+        this.cycleJson = cycle(config.edges());
+    }
+
+    public StubMatrixApi start(int port) {
+        server = HttpServer.create()
+                .host("127.0.0.1")
+                .port(port)
+                .route(r -> r
+                        .get("/matrix/blobs", (req, res) -> respond(res, () -> blobsJson))
+                        .get("/matrix/analyze", (req, res) -> respond(res, () -> analyzeJson))
+                        .post("/matrix/analyze", (req, res) -> config.analyzePost()
+                                ? drain(req).then(respond(res, () -> analyzeJson))
+                                : drain(req).then(res.status(HttpResponseStatus.METHOD_NOT_ALLOWED)
+                                        .header("Allow", "GET").send()))
+                        .get("/matrix/download", (req, res) -> respond(res, () -> matrixB64))
+                        .options("/matrix/analyze", (req, res) -> res
+                                .header("Allow", config.analyzePost() ? "GET, POST, OPTIONS" : "GET, OPTIONS").send())
+                        .post("/matrix/payment", (req, res) -> drain(req).then(respond(res, this::written)))
+                        .post("/matrix/payment/batch", (req, res) -> drain(req).then(respond(res, this::written)))
+                        .post("/matrix/settlement/batch", (req, res) -> drain(req).then(respond(res, this::written)))
+                        // The cycle page sends node_a/node_b and reads status/written_blob;
+                        // the JSON API sends nodes/edges and expects found/cycle/details only.
+                        .post("/matrix/cycle/find", (req, res) -> req.receive().aggregate().asString()
+                                .defaultIfEmpty("")
+                                .flatMap(body -> respond(res, body.contains("\"node_a\"") ? this::written : () -> cycleJson)
+                                        .then())))
+                .bindNow();
+        return this;
+    }
+
+    public int port() {
+        return server.port();
+    }
+
+    public long requests() {
+        return requests.get();
+    }
+
+    @Override
+    public void close() {
+        if (server != null) server.disposeNow();
+    }
+
+    private Mono<Void> respond(HttpServerResponse res, Supplier<byte[]> body) {
+        requests.incrementAndGet();
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        long delay = (long) (config.latencyMedian().toNanos() * Math.exp(sigma * rnd.nextGaussian()));
+        boolean fail = rnd.nextDouble() < config.errorRate();
+        return Mono.delay(Duration.ofNanos(Math.max(0, delay)))
+                .then(Mono.defer(() -> res
+                        .status(fail ? HttpResponseStatus.INTERNAL_SERVER_ERROR : HttpResponseStatus.OK)
+                        .header("Content-Type", "application/json")
+                        .sendByteArray(Mono.just(fail ? error : body.get()))
+                        .then()));
+    }
+
+    private static Mono<Void> drain(HttpServerRequest req) {
+        return req.receive().then();
+    }
+
+    private byte[] written() {
+        String blob = "initial-matrix-" + LocalDateTime.now().plusSeconds(writes.incrementAndGet()).format(TS) + ".b64";
+        return ("{\"status\":\"ok\",\"written_blob\":\"" + blob + "\",\"settlement_applied\":false}")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] blobs(int n, Random rnd) {
+        LocalDateTime start = LocalDateTime.of(2025, 1, 1, 0, 0);
+        StringBuilder sb = new StringBuilder(n * 40 + 64);
+        sb.append("[\"initial-matrix.b64\",\"initial-matrix-latest.b64\"");
+        for (int i = 2; i < n; i++) {
+            sb.append(",\"initial-matrix-").append(start.plusSeconds(rnd.nextInt(300 * 24 * 3600)).format(TS)).append(".b64\"");
+        }
+        return sb.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] analyze(int edges, Random rnd) {
+        int nodes = Math.max(2, (int) Math.sqrt(edges) * 2);
+        StringBuilder sb = new StringBuilder(edges * 64 + 256);
+        sb.append("{\"status\":\"ok\",\"edges\":[");
+        for (int i = 0; i < edges; i++) {
+            if (i > 0) sb.append(',');
+            sb.append("{\"from\":\"user").append(rnd.nextInt(nodes))
+              .append("\",\"to\":\"user").append(rnd.nextInt(nodes))
+              .append("\",\"weight\":").append(1 + rnd.nextInt(10_000)).append('}');
+        }
+        sb.append("],\"summary\":{\"nodes\":").append(nodes).append(",\"edges\":").append(edges).append("}}");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Base64 of {"nodes": [...], "matrix": [[...], ...]}, one MIME-style line per 76 chars. */
+    private static byte[] matrix(int edges, Random rnd) {
+        int nodes = Math.max(2, (int) Math.sqrt(edges) * 2);
+        long[] cells = new long[nodes * nodes];
+        for (int i = 0; i < edges; i++) {
+            cells[rnd.nextInt(nodes) * nodes + rnd.nextInt(nodes)] += 1 + rnd.nextInt(10_000);
+        }
+        StringBuilder sb = new StringBuilder(nodes * nodes * 2 + nodes * 12 + 64);
+        sb.append("{\"nodes\":[");
+        for (int i = 0; i < nodes; i++) {
+            if (i > 0) sb.append(',');
+            sb.append("\"user").append(i).append('"');
+        }
+        sb.append("],\"matrix\":[");
+        for (int r = 0; r < nodes; r++) {
+            sb.append(r > 0 ? ",[" : "[");
+            for (int c = 0; c < nodes; c++) {
+                if (c > 0) sb.append(',');
+                sb.append(cells[r * nodes + c]);
+            }
+            sb.append(']');
+        }
+        sb.append("]}");
+        return Base64.getMimeEncoder().encode(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] cycle(int edges) {
+        int len = Math.max(2, Math.min(edges, 16));
+        StringBuilder sb = new StringBuilder("{\"found\":true,\"cycle\":[");
+        for (int i = 0; i < len; i++) {
+            if (i > 0) sb.append(',');
+            sb.append("\"n").append(i).append('"');
+        }
+        sb.append("],\"details\":{\"length\":").append(len).append(",\"bottleneck\":1}}");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
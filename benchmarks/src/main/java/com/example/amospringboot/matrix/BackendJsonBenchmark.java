@@ -0,0 +1,75 @@
+package com.example.amospringboot.matrix;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Backend JSON -> Map&lt;String,Object&gt; as MatrixApiClient's codec does it, for analyze-style
+ * responses carrying 10 .. 100k edges (about 60 bytes each).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BackendJsonBenchmark {
+
+    private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<>() {};
+
+    @Param({"10", "1000", "10000", "100000"})
+    public int edges;
+
+    private ObjectMapper mapper;
+    private byte[] body;
+
+    @Setup
+    public void setup() {
+        mapper = JsonMapper.builder().findAndAddModules().build();
+        body = analyzeResponse(edges, 42L);
+    }
+
+    @Benchmark
+    public Map<String, Object> readMap() throws Exception {
+        return mapper.readValue(body, MAP_TYPE);
+    }
+
+    static byte[] analyzeResponse(int edges, long seed) {
+        Random rnd = new Random(seed);
+        int nodes = Math.max(2, (int) Math.sqrt(edges) * 2);
+        StringBuilder sb = new StringBuilder(edges * 64 + 256);
+        sb.append("{\"status\":\"ok\",\"blob_name\":\"initial-matrix-20251018-091137.b64\",\"nodes\":[");
+        for (int i = 0; i < nodes; i++) {
+            if (i > 0) sb.append(',');
+            sb.append("\"user").append(i).append('"');
+        }
+        sb.append("],\"edges\":[");
+        for (int i = 0; i < edges; i++) {
+            if (i > 0) sb.append(',');
+            sb.append("{\"from\":\"user").append(rnd.nextInt(nodes))
+              .append("\",\"to\":\"user").append(rnd.nextInt(nodes))
+              .append("\",\"weight\":").append(1 + rnd.nextInt(10_000)).append('}');
+        }
+        sb.append("],\"summary\":{\"nodes\":").append(nodes)
+          .append(",\"edges\":").append(edges)
+          .append(",\"total_weight\":").append(edges * 5000L).append("}}");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
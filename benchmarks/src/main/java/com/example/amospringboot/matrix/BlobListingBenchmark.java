@@ -0,0 +1,68 @@
+package com.example.amospringboot.matrix;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latest-blob selection over a container listing of 10 .. 100k names: the old
+ * MatrixApiClient.latestBlob scan, the per-name timestamp parse that replaced the controllers'
+ * extractSortableTs, the BlobIndex rebuild, and the streaming top-K listing parser.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlobListingBenchmark {
+
+    @Param({"10", "1000", "10000", "100000"})
+    public int blobs;
+
+    private List<String> names;
+    private byte[] json;
+
+    @Setup
+    public void setup() {
+        names = BlobNames.listing(blobs, 42L);
+        json = BlobNames.listingJson(names);
+    }
+
+    @Benchmark
+    public String latestBlob() {
+        return MatrixApiClient.newestOf(names, "initial-matrix.b64");
+    }
+
+    @Benchmark
+    public void timestampOf(Blackhole bh) {
+        for (String n : names) bh.consume(BlobIndex.timestampOf(n));
+    }
+
+    @Benchmark
+    public String indexSyncAndLatest() {
+        BlobIndex index = new BlobIndex();
+        index.sync("matrices", names);
+        return index.latest("matrices");
+    }
+
+    @Benchmark
+    public BlobListing streamTopK() {
+        BlobListingCollector collector = new BlobListingCollector(null, 8);
+        collector.feed(DefaultDataBufferFactory.sharedInstance.wrap(json));
+        return collector.finish();
+    }
+}
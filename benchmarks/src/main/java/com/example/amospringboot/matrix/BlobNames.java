@@ -0,0 +1,45 @@
+package com.example.amospringboot.matrix;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/** Deterministic container listings shaped like the real one. */
+final class BlobNames {
+
+    private static final DateTimeFormatter TS = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    private static final String[] BASES = {
+            "initial-matrix", "payment-User", "cycle-settlement", "initial-matrix-20251018-091137"
+    };
+
+    private BlobNames() {}
+
+    /** {@code n} names: mostly timestamped versions over a few bases, plus an alias and un-stamped files. */
+    static List<String> listing(int n, long seed) {
+        Random rnd = new Random(seed);
+        LocalDateTime start = LocalDateTime.of(2025, 1, 1, 0, 0);
+        List<String> names = new ArrayList<>(n);
+        names.add("initial-matrix.b64");
+        names.add("initial-matrix-latest.b64");
+        while (names.size() < n) {
+            String base = BASES[rnd.nextInt(BASES.length)];
+            LocalDateTime ts = start.plusSeconds(rnd.nextInt(300 * 24 * 3600));
+            names.add(base + "-" + ts.format(TS) + ".b64");
+        }
+        return names.subList(0, n);
+    }
+
+    /** The listing as the JSON array /matrix/blobs returns. */
+    static byte[] listingJson(List<String> names) {
+        StringBuilder sb = new StringBuilder(names.size() * 40);
+        sb.append('[');
+        for (int i = 0; i < names.size(); i++) {
+            if (i > 0) sb.append(',');
+            sb.append('"').append(names.get(i)).append('"');
+        }
+        sb.append(']');
+        return sb.toString().getBytes(java.nio.charset.StandardCharsets.UTF_8);
+    }
+}
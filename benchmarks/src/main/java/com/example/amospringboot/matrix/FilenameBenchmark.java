@@ -0,0 +1,59 @@
+package com.example.amospringboot.matrix;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/** Per-call cost of the filename helpers used on every payment/cycle request. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilenameBenchmark {
+
+    @Param({
+            "initial-matrix.b64",
+            "initial-matrix-20251018-091137.b64",
+            "initial-matrix-20251018-091137-20251021-195554.b64"
+    })
+    public String name;
+
+    private MatrixApiClient client;
+    private LocalDateTime now;
+
+    @Setup
+    public void setup() {
+        // Only the pure helpers are exercised; no WebClient needed.
+        client = new MatrixApiClient(null, null, null, null, null, "GET", 1024, "/matrix/payment/batch",
+                "/matrix/settlement/batch");
+        now = LocalDateTime.of(2025, 10, 21, 20, 1, 5);
+    }
+
+    @Benchmark
+    public String normalizeBase() {
+        return client.normalizeBase(name);
+    }
+
+    @Benchmark
+    public String nextTimestampedName() {
+        return client.nextTimestampedName(name, now);
+    }
+
+    @Benchmark
+    public long timestampOf() {
+        return BlobIndex.timestampOf(name);
+    }
+}
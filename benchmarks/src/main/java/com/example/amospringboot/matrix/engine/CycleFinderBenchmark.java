@@ -0,0 +1,79 @@
+package com.example.amospringboot.matrix.engine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local cycle engine on sparse random matrices (avg. out-degree 4), 100 .. 100k nodes:
+ * CSR build from request-shaped lists, node_a -> node_b search and any-cycle search.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CycleFinderBenchmark {
+
+    @Param({"100", "1000", "10000", "100000"})
+    public int nodes;
+
+    private List<String> names;
+    private String[] from;
+    private String[] to;
+    private BigDecimal[] weight;
+    private CsrGraph graph;
+
+    @Setup
+    public void setup() {
+        Random rnd = new Random(42L);
+        int edges = nodes * 4;
+        names = new ArrayList<>(nodes);
+        for (int i = 0; i < nodes; i++) names.add("n" + i);
+        from = new String[edges];
+        to = new String[edges];
+        weight = new BigDecimal[edges];
+        from[0] = "n0";
+        to[0] = "n1";
+        weight[0] = BigDecimal.valueOf(500);
+        for (int i = 1; i < edges; i++) {
+            from[i] = names.get(rnd.nextInt(nodes));
+            to[i] = names.get(rnd.nextInt(nodes));
+            weight[i] = BigDecimal.valueOf(1 + rnd.nextInt(100_000), 2);
+        }
+        graph = build();
+    }
+
+    @Benchmark
+    public CsrGraph build() {
+        CsrGraph.Builder b = CsrGraph.builder(names, from.length);
+        for (int i = 0; i < from.length; i++) b.edge(from[i], to[i], weight[i]);
+        return b.build();
+    }
+
+    @Benchmark
+    public Optional<CycleFinder.Cycle> through() {
+        return CycleFinder.through(graph, 0, 1);
+    }
+
+    @Benchmark
+    public Optional<CycleFinder.Cycle> any() {
+        return CycleFinder.any(graph);
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.amospringboot.matrix.engine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Incremental cycle index (avg. out-degree 4, 10k .. 100k nodes): one payment applied to the
+ * index vs. what it replaces, a rebuild of the index (SCCs) from the whole graph. "dag" is a
+ * matrix with no cycle where payments mostly keep it that way (1 in 100 goes against the
+ * order); "random" is one giant component, where every payment closes a cycle and the answer
+ * includes the shortest one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CycleIndexBenchmark {
+
+    @Param({"10000", "100000"})
+    public int nodes;
+
+    @Param({"dag", "random"})
+    public String shape;
+
+    private CsrGraph graph;
+    private CycleIndex index;
+    private String[] names;
+    private Random rnd;
+
+    @Setup
+    public void setup() {
+        Random r = new Random(42L);
+        names = new String[nodes];
+        EdgeList edges = new EdgeList(nodes, nodes * 4);
+        for (int i = 0; i < nodes; i++) names[i] = "n" + i;
+        for (String name : names) edges.node(name);
+        for (int i = 0; i < nodes * 4; i++) {
+            int u = r.nextInt(nodes);
+            int v = r.nextInt(nodes);
+            if ("dag".equals(shape) && u > v) {
+                int t = u;
+                u = v;
+                v = t;
+            }
+            edges.add(u, v, 1 + r.nextInt(100), 0);
+        }
+        graph = edges.toGraph();
+    }
+
+    /** Payments accumulate; a fresh index per iteration keeps the graph close to its initial shape. */
+    @Setup(Level.Iteration)
+    public void freshIndex() {
+        index = CycleIndex.of(graph);
+        rnd = new Random(7L);
+    }
+
+    @Benchmark
+    public CycleFinder.Cycle payment() {
+        int u = rnd.nextInt(nodes);
+        int v = rnd.nextInt(nodes);
+        if ("dag".equals(shape) && u > v && rnd.nextInt(100) != 0) {
+            int t = u;
+            u = v;
+            v = t;
+        }
+        return index.add(names[u], names[v], 5);
+    }
+
+    @Benchmark
+    public CycleIndex rebuild() {
+        return CycleIndex.of(graph);
+    }
+}
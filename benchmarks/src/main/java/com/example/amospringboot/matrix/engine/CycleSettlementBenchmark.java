@@ -0,0 +1,83 @@
+package com.example.amospringboot.matrix.engine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Settle-all on 10k-node matrices (100 edges per node, i.e. 1M edges), single-threaded vs. one
+ * worker per CPU. "random" is one giant strongly connected component; "clustered" is 100
+ * communities of 100 nodes whose cross edges only point "forward", i.e. 100 independent
+ * cyclic components, the case the fork-join split is for.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CycleSettlementBenchmark {
+
+    @Param({"10000"})
+    public int nodes;
+
+    @Param({"100"})
+    public int degree;
+
+    @Param({"random", "clustered"})
+    public String shape;
+
+    /** 0 = one worker per CPU. */
+    @Param({"1", "0"})
+    public int parallelism;
+
+    private CsrGraph graph;
+    private ForkJoinPool pool;
+
+    @Setup
+    public void setup() {
+        Random rnd = new Random(42L);
+        int community = 100;
+        EdgeList edges = new EdgeList(nodes, nodes * degree);
+        for (int i = 0; i < nodes; i++) edges.node("n" + i);
+        for (int u = 0; u < nodes; u++) {
+            for (int k = 0; k < degree; k++) {
+                int v;
+                if ("random".equals(shape)) {
+                    v = rnd.nextInt(nodes);
+                } else if (k % 10 != 0) {
+                    v = u / community * community + rnd.nextInt(community);
+                } else {
+                    int next = (u / community + 1) * community;
+                    v = next < nodes ? next + rnd.nextInt(nodes - next) : u / community * community + rnd.nextInt(community);
+                }
+                edges.add(u, v, 1 + rnd.nextInt(100_000), 2);
+            }
+        }
+        graph = edges.toGraph();
+        pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Benchmark
+    public CycleSettlement settle() {
+        return CycleSettlement.settle(graph, pool);
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.amospringboot.matrix.engine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The local /matrix/analyze metrics on dense blobs of 256 .. 4096 nodes with the given share
+ * of non-zero cells: the dense kernel (parallel row bands) against the sparse one (sequential
+ * pass over the non-zero cells), plus the sparse kernel on a 100k-node CSR blob with ~4 cells
+ * per row, the size that is never stored dense.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatrixAnalysisBenchmark {
+
+    @Param({"256", "1024", "4096"})
+    public int nodes;
+
+    /** Percent of non-zero cells in the dense blobs. */
+    @Param({"1", "25"})
+    public int density;
+
+    private MatrixBlob dense;
+    private MatrixBlob large;
+
+    @Setup
+    public void setup() {
+        Random rnd = new Random(42L);
+        long[] cells = new long[nodes * nodes];
+        for (int i = 0; i < cells.length; i++) {
+            if (rnd.nextInt(100) < density) cells[i] = 1 + rnd.nextInt(10_000_000);
+        }
+        dense = MatrixBlob.dense(names(nodes), 2, cells);
+
+        int n = 100_000;
+        int perRow = 4;
+        int[] offsets = new int[n + 1];
+        int[] columns = new int[n * perRow];
+        long[] values = new long[n * perRow];
+        for (int r = 0; r < n; r++) {
+            int base = r * perRow;
+            for (int k = 0; k < perRow; k++) {
+                columns[base + k] = (int) ((long) n * k / perRow) + rnd.nextInt(n / perRow);
+                values[base + k] = 1 + rnd.nextInt(10_000_000);
+            }
+            offsets[r + 1] = base + perRow;
+        }
+        large = MatrixBlob.sparse(names(n), 2, offsets, columns, values);
+    }
+
+    @Benchmark
+    public MatrixAnalysis denseKernel() {
+        return MatrixAnalysis.of(dense, MatrixAnalysis.Kernel.DENSE);
+    }
+
+    @Benchmark
+    public MatrixAnalysis sparseKernel() {
+        return MatrixAnalysis.of(dense, MatrixAnalysis.Kernel.SPARSE);
+    }
+
+    @Benchmark
+    public MatrixAnalysis sparseKernel100k() {
+        return MatrixAnalysis.of(large, MatrixAnalysis.Kernel.SPARSE);
+    }
+
+    private static String[] names(int n) {
+        String[] names = new String[n];
+        for (int i = 0; i < n; i++) names[i] = "n" + i;
+        return names;
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.amospringboot.matrix.engine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * .b64 blob decoding as it arrives from /matrix/download (8 KB chunks), 100 .. 3000 nodes with
+ * ~4 non-zero cells per row: dense below matrix.blobs.dense-max-nodes, CSR above.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatrixBlobDecoderBenchmark {
+
+    private static final int CHUNK = 8192;
+
+    @Param({"100", "1000", "3000"})
+    public int nodes;
+
+    @Param({"1024"})
+    public int denseMaxNodes;
+
+    private byte[] text;
+
+    @Setup
+    public void setup() {
+        Random rnd = new Random(42L);
+        StringBuilder sb = new StringBuilder(nodes * nodes * 2 + 64);
+        sb.append("{\"nodes\":[");
+        for (int i = 0; i < nodes; i++) {
+            if (i > 0) sb.append(',');
+            sb.append("\"n").append(i).append('"');
+        }
+        sb.append("],\"matrix\":[");
+        for (int r = 0; r < nodes; r++) {
+            sb.append(r > 0 ? ",[" : "[");
+            for (int c = 0; c < nodes; c++) {
+                if (c > 0) sb.append(',');
+                sb.append(rnd.nextInt(nodes) < 4 ? (1 + rnd.nextInt(100_000)) + ".25" : "0");
+            }
+            sb.append(']');
+        }
+        sb.append("]}");
+        text = Base64.getMimeEncoder().encode(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public MatrixBlob decode() {
+        MatrixBlobDecoder decoder = new MatrixBlobDecoder(denseMaxNodes);
+        for (int i = 0; i < text.length; i += CHUNK) {
+            decoder.feed(text, i, Math.min(CHUNK, text.length - i));
+        }
+        return decoder.finish();
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.amospringboot.matrix.engine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Multilateral netting on sparse random matrices (4 edges per node, 1k .. 100k nodes):
+ * the conservative min-cost flow vs. the global debtor/creditor matching, and the net
+ * position pass both start with.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NettingBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int nodes;
+
+    @Param({"4"})
+    public int degree;
+
+    private CsrGraph graph;
+
+    @Setup
+    public void setup() {
+        Random rnd = new Random(42L);
+        EdgeList edges = new EdgeList(nodes, nodes * degree);
+        for (int i = 0; i < nodes; i++) edges.node("n" + i);
+        for (int u = 0; u < nodes; u++) {
+            for (int k = 0; k < degree; k++) edges.add(u, rnd.nextInt(nodes), 1 + rnd.nextInt(10_000), 2);
+        }
+        graph = edges.toGraph();
+    }
+
+    @Benchmark
+    public Netting conservative() {
+        return Netting.conservative(graph);
+    }
+
+    @Benchmark
+    public Netting global() {
+        return Netting.global(graph);
+    }
+
+    @Benchmark
+    public long[] netPositions() {
+        return Netting.netPositions(graph);
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.amospringboot.web;
+
+import com.example.amospringboot.matrix.engine.MatrixBlob;
+import com.example.amospringboot.matrix.engine.MatrixBlobDecoder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Compares the local /matrix/analyze engine with the backend.
+ *
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar com.example.amospringboot.web.AnalyzeParityCheck \
+ *      --base-url=https://api.amo.onl --container=matrices --blobs=initial-matrix.b64,matrix-2024-01-01.b64
+ * </pre>
+ *
+ * Every blob is downloaded and analysed locally; node_names, owed_by, owed_to, net_balance and
+ * whether there is a cycle must match GET /matrix/analyze. Exits 1 on any mismatch. Dense,
+ * sparse and CSR agreeing with each other is MatrixAnalysisServiceTest.
+ */
+public final class AnalyzeParityCheck {
+
+    private static final ObjectMapper MAPPER = JsonMapper.builder().findAndAddModules().build();
+
+    private AnalyzeParityCheck() {}
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = Objects.requireNonNull(arg(args, "base-url", null), "--base-url is required");
+        int mismatches = backend(baseUrl, arg(args, "container", "matrices"),
+                List.of(Objects.requireNonNull(arg(args, "blobs", null), "--blobs is required").split(",")));
+        System.exit(mismatches == 0 ? 0 : 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int backend(String baseUrl, String container, List<String> blobs) throws Exception {
+        HttpClient http = HttpClient.newHttpClient();
+        int mismatches = 0;
+        for (String blob : blobs) {
+            String query = "?blob_name=" + URLEncoder.encode(blob, StandardCharsets.UTF_8)
+                    + "&container=" + URLEncoder.encode(container, StandardCharsets.UTF_8);
+            HttpResponse<byte[]> download = http.send(HttpRequest.newBuilder(URI.create(baseUrl + "/matrix/download" + query)).build(),
+                    HttpResponse.BodyHandlers.ofByteArray());
+            HttpResponse<byte[]> analyze = http.send(HttpRequest.newBuilder(URI.create(baseUrl + "/matrix/analyze" + query)).build(),
+                    HttpResponse.BodyHandlers.ofByteArray());
+            if (download.statusCode() != 200 || analyze.statusCode() != 200) {
+                mismatches++;
+                System.out.printf("%s backend HTTP %d / %d%n", blob, download.statusCode(), analyze.statusCode());
+                continue;
+            }
+            Map<String, Object> mine = MatrixAnalysisService.report(decode(download.body(), MatrixBlobDecoder.DENSE_LIMIT), null);
+            Map<String, Object> theirs = MAPPER.readValue(analyze.body(), Map.class);
+
+            String diff = !Objects.equals(mine.get("node_names"), theirs.get("node_names")) ? "node_names" : null;
+            Map<String, Object> myTotals = (Map<String, Object>) mine.get("totals");
+            Map<String, Object> theirTotals = (Map<String, Object>) theirs.get("totals");
+            for (String key : List.of("owed_by", "owed_to", "net_balance")) {
+                if (diff == null && theirTotals != null
+                        && !sameAmounts((Map<String, Object>) myTotals.get(key), (Map<String, Object>) theirTotals.get(key))) {
+                    diff = "totals." + key;
+                }
+            }
+            boolean theirCycle = theirs.get("cycles") instanceof List<?> l && !l.isEmpty();
+            if (diff == null && !((List<?>) mine.get("cycles")).isEmpty() != theirCycle) {
+                diff = "cycle local=" + mine.get("has_cycle") + " backend=" + theirCycle;
+            }
+            if (diff != null) {
+                mismatches++;
+                System.out.printf("%s %s%n", blob, diff);
+            }
+        }
+        System.out.printf("%d blobs, %d mismatches%n", blobs.size(), mismatches);
+        return mismatches;
+    }
+
+    /** Same keys and numerically equal amounts (the backend may send floats). */
+    private static boolean sameAmounts(Map<String, Object> mine, Map<String, Object> theirs) {
+        if (theirs == null || !mine.keySet().equals(theirs.keySet())) return false;
+        for (Map.Entry<String, Object> e : mine.entrySet()) {
+            BigDecimal a = (BigDecimal) e.getValue();
+            BigDecimal b = new BigDecimal(String.valueOf(theirs.get(e.getKey())));
+            if (a.subtract(b).abs().compareTo(new BigDecimal("0.005")) > 0) return false;
+        }
+        return true;
+    }
+
+    private static MatrixBlob decode(byte[] text, int denseMaxNodes) {
+        MatrixBlobDecoder decoder = new MatrixBlobDecoder(denseMaxNodes);
+        decoder.feed(text, 0, text.length);
+        return decoder.finish();
+    }
+
+    private static String arg(String[] args, String key, String def) {
+        for (String a : args) {
+            if (a.startsWith("--" + key + "=")) return a.substring(key.length() + 3);
+        }
+        return def;
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.amospringboot.web;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * Compares the local cycle engine with the backend on a shared corpus of
+ * /matrix/cycle/find request bodies (one JSON file each).
+ *
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar com.example.amospringboot.web.CycleParityCheck \
+ *      --corpus=corpus/cycle --generate=200           # write a seeded corpus (100 .. 100k nodes)
+ * java -cp ... CycleParityCheck --corpus=corpus/cycle --base-url=https://api.amo.onl
+ * </pre>
+ *
+ * found and cycle must be equal; the bottleneck is compared when the backend reports one.
+ * Exits 1 on any mismatch. The offline checks of the local engine (streamed vs. JSON, bad
+ * edges) are JUnit tests: MatrixCycleServiceTest.
+ */
+public final class CycleParityCheck {
+
+    private static final ObjectMapper MAPPER = JsonMapper.builder().findAndAddModules().build();
+
+    private CycleParityCheck() {}
+
+    public static void main(String[] args) throws Exception {
+        Path corpus = Path.of(arg(args, "corpus", "target/cycle-corpus"));
+        String generate = arg(args, "generate", null);
+        if (generate != null) {
+            generate(corpus, Integer.parseInt(generate));
+            return;
+        }
+
+        String baseUrl = Objects.requireNonNull(arg(args, "base-url", null), "--base-url is required");
+        MatrixCycleService local = new MatrixCycleService(null, MAPPER, "local", Integer.MAX_VALUE);
+        HttpClient http = HttpClient.newHttpClient();
+
+        int total = 0;
+        int mismatches = 0;
+        List<Path> files;
+        try (Stream<Path> s = Files.list(corpus)) {
+            files = s.filter(p -> p.toString().endsWith(".json")).sorted().toList();
+        }
+        for (Path file : files) {
+            byte[] body = Files.readAllBytes(file);
+            MatrixCycleController.CycleFindRequest req = MAPPER.readValue(body, MatrixCycleController.CycleFindRequest.class);
+            MatrixCycleController.CycleFindResponse mine = local.findLocal(req);
+
+            HttpResponse<byte[]> res = http.send(HttpRequest.newBuilder(URI.create(baseUrl + "/matrix/cycle/find"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                    .build(), HttpResponse.BodyHandlers.ofByteArray());
+            total++;
+            if (res.statusCode() != 200) {
+                mismatches++;
+                System.out.printf("%s backend HTTP %d%n", file.getFileName(), res.statusCode());
+                continue;
+            }
+            MatrixCycleController.CycleFindResponse theirs =
+                    MAPPER.readValue(res.body(), MatrixCycleController.CycleFindResponse.class);
+            String diff = diff(mine, theirs);
+            if (diff != null) {
+                mismatches++;
+                System.out.printf("%s %s%n", file.getFileName(), diff);
+            }
+        }
+        System.out.printf("%d cases, %d mismatches%n", total, mismatches);
+        System.exit(mismatches == 0 ? 0 : 1);
+    }
+
+    private static String diff(MatrixCycleController.CycleFindResponse mine, MatrixCycleController.CycleFindResponse theirs) {
+        if (mine.found() != theirs.found()) return "found local=" + mine.found() + " backend=" + theirs.found();
+        if (!mine.found()) return null;
+        if (!Objects.equals(mine.cycle(), theirs.cycle())) return "cycle local=" + mine.cycle() + " backend=" + theirs.cycle();
+        Object theirBottleneck = theirs.details() != null ? theirs.details().get("bottleneck") : null;
+        if (theirBottleneck != null) {
+            BigDecimal a = (BigDecimal) mine.details().get("bottleneck");
+            BigDecimal b = new BigDecimal(String.valueOf(theirBottleneck));
+            if (a.compareTo(b) != 0) return "bottleneck local=" + a + " backend=" + b;
+        }
+        return null;
+    }
+
+    /** The request as application/x-ndjson: header line, then one [from, to, weight] line per edge. */
+    static byte[] ndjson(MatrixCycleController.CycleFindRequest req) throws Exception {
+        Map<String, Object> header = new LinkedHashMap<>();
+        header.put("container", req.container());
+        header.put("blob", req.blob());
+        header.put("nodes", req.nodes());
+        header.put("options", req.options());
+        StringBuilder sb = new StringBuilder(MAPPER.writeValueAsString(header)).append('\n');
+        for (MatrixCycleController.Edge e : req.edges()) {
+            sb.append(MAPPER.writeValueAsString(List.of(e.from(), e.to(), e.weight()))).append('\n');
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Seeded cases: sparse random matrices, half with a planted node_a -> node_b cycle. */
+    private static void generate(Path corpus, int cases) throws Exception {
+        Files.createDirectories(corpus);
+        int[] sizes = {100, 1_000, 10_000, 100_000};
+        java.util.Random rnd = new java.util.Random(7L);
+        for (int c = 0; c < cases; c++) {
+            int n = sizes[c % sizes.length];
+            List<String> nodes = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) nodes.add("n" + i);
+            List<MatrixCycleController.Edge> edges = new ArrayList<>();
+            int degree = 1 + rnd.nextInt(3);
+            for (int i = 0; i < n * degree; i++) {
+                edges.add(new MatrixCycleController.Edge(nodes.get(rnd.nextInt(n)), nodes.get(rnd.nextInt(n)),
+                        BigDecimal.valueOf(1 + rnd.nextInt(10_000))));
+            }
+            if (c % 2 == 0) {
+                edges.add(new MatrixCycleController.Edge("n0", "n1", BigDecimal.valueOf(1 + rnd.nextInt(10_000))));
+            }
+            var req = new MatrixCycleController.CycleFindRequest("matrices", null, nodes, edges,
+                    Map.of("node_a", "n0", "node_b", "n1"));
+            MAPPER.writeValue(corpus.resolve(String.format("case-%04d-%d.json", c, n)).toFile(), req);
+        }
+        System.out.printf("%d cases -> %s%n", cases, corpus);
+    }
+
+    private static String arg(String[] args, String key, String def) {
+        for (String a : args) {
+            if (a.startsWith("--" + key + "=")) return a.substring(key.length() + 3);
+        }
+        return def;
+    }
+}
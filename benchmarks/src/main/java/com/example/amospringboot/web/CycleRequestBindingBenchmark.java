@@ -0,0 +1,136 @@
+package com.example.amospringboot.web;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import jakarta.validation.ValidatorFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @RequestBody binding (+ @Valid) of POST /matrix/cycle/find for 10 .. 100k edges, against
+ * reading the same edges streamed (NDJSON and the binary edge format) into an EdgeList.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CycleRequestBindingBenchmark {
+
+    @Param({"10", "1000", "10000", "100000"})
+    public int edges;
+
+    private ObjectMapper mapper;
+    private ValidatorFactory validatorFactory;
+    private Validator validator;
+    private byte[] body;
+    private byte[] ndjsonBody;
+    private byte[] binaryBody;
+    private EdgeStreamReader streamReader;
+    private MatrixCycleController.CycleFindRequest bound;
+
+    @Setup
+    public void setup() throws Exception {
+        mapper = JsonMapper.builder().findAndAddModules().build();
+        validatorFactory = Validation.buildDefaultValidatorFactory();
+        validator = validatorFactory.getValidator();
+        body = request(edges, 42L);
+        ndjsonBody = CycleParityCheck.ndjson(mapper.readValue(body, MatrixCycleController.CycleFindRequest.class));
+        binaryBody = binary(mapper.readValue(body, MatrixCycleController.CycleFindRequest.class));
+        streamReader = new EdgeStreamReader(mapper, Integer.MAX_VALUE);
+        bound = bind();
+    }
+
+    @TearDown
+    public void tearDown() {
+        validatorFactory.close();
+    }
+
+    @Benchmark
+    public MatrixCycleController.CycleFindRequest bind() throws Exception {
+        return mapper.readValue(body, MatrixCycleController.CycleFindRequest.class);
+    }
+
+    @Benchmark
+    public Set<?> validate() {
+        return validator.validate(bound);
+    }
+
+    @Benchmark
+    public CycleFindStream readNdjson() throws Exception {
+        return streamReader.ndjson(new ByteArrayInputStream(ndjsonBody));
+    }
+
+    @Benchmark
+    public CycleFindStream readBinary() throws Exception {
+        return streamReader.binary(new ByteArrayInputStream(binaryBody));
+    }
+
+    /** application/vnd.amo.edges of the request (amounts at scale 2, as generated). */
+    static byte[] binary(MatrixCycleController.CycleFindRequest req) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(req.edges().size() * 16 + 1024);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(new byte[] {'A', 'M', 'O', 'E', 1, 2});
+        byte[] header = ("{\"container\":\"" + req.container() + "\",\"blob\":\"" + req.blob() + "\"}")
+                .getBytes(StandardCharsets.UTF_8);
+        out.writeInt(header.length);
+        out.write(header);
+        Map<String, Integer> index = new HashMap<>();
+        out.writeInt(req.nodes().size());
+        for (String n : req.nodes()) {
+            byte[] name = n.getBytes(StandardCharsets.UTF_8);
+            out.writeShort(name.length);
+            out.write(name);
+            index.put(n, index.size());
+        }
+        for (MatrixCycleController.Edge e : req.edges()) {
+            out.writeInt(index.get(e.from()));
+            out.writeInt(index.get(e.to()));
+            out.writeLong(e.weight().movePointRight(2).longValueExact());
+        }
+        return bytes.toByteArray();
+    }
+
+    static byte[] request(int edges, long seed) {
+        Random rnd = new Random(seed);
+        int nodes = Math.max(2, (int) Math.sqrt(edges) * 2);
+        StringBuilder sb = new StringBuilder(edges * 56 + 256);
+        sb.append("{\"container\":\"matrices\",\"blob\":\"initial-matrix.b64\",\"nodes\":[");
+        for (int i = 0; i < nodes; i++) {
+            if (i > 0) sb.append(',');
+            sb.append("\"n").append(i).append('"');
+        }
+        sb.append("],\"edges\":[");
+        for (int i = 0; i < edges; i++) {
+            if (i > 0) sb.append(',');
+            sb.append("{\"from\":\"n").append(rnd.nextInt(nodes))
+              .append("\",\"to\":\"n").append(rnd.nextInt(nodes))
+              .append("\",\"weight\":").append(rnd.nextInt(100_000)).append('.').append(rnd.nextInt(100)).append('}');
+        }
+        sb.append("],\"options\":{\"node_a\":\"n0\",\"node_b\":\"n1\"}}");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
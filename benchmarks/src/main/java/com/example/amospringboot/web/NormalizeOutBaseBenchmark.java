@@ -0,0 +1,41 @@
+package com.example.amospringboot.web;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/** normalizeOutBase of the payment and cycle pages (they differ: one vs. repeated stamps). */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NormalizeOutBaseBenchmark {
+
+    @Param({
+            "initial-matrix.b64",
+            "initial-matrix-20251018-091137.b64",
+            "initial-matrix-20251018-091137-20251021-195554.b64"
+    })
+    public String blob;
+
+    @Benchmark
+    public String payment() {
+        return PaymentUiController.normalizeOutBase(blob);
+    }
+
+    @Benchmark
+    public String cycle() {
+        return MatrixUiController.normalizeOutBase(blob);
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.amospringboot.audit;
+
+/** Audit streams; each has its own file under audit.dir and its own console logger. */
+public enum AuditChannel {
+
+    PAYMENT("payment-audit", "payment.audit"),
+    CYCLE("cycle-audit", "cycle.audit");
+
+    private final String fileBase;
+    private final String loggerName;
+
+    AuditChannel(String fileBase, String loggerName) {
+        this.fileBase = fileBase;
+        this.loggerName = loggerName;
+    }
+
+    /** "payment-audit" -> logs/payment-audit.log, rolled to payment-audit.yyyy-MM-dd.log.gz */
+    public String fileBase() { return fileBase; }
+
+    /** SLF4J logger used for the optional console mirror. */
+    public String loggerName() { return loggerName; }
+}
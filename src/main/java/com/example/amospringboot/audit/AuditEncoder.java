@@ -0,0 +1,129 @@
+package com.example.amospringboot.audit;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Renders events as "yyyy-MM-dd HH:mm:ss,SSS | INFO  | TYPE traceId=.. key=value ..", the
+ * layout the logback audit appender used, so existing greps keep working.
+ *
+ * Map/Collection values are written as JSON and the writer stops as soon as a field reaches
+ * the character bound: a large backend result is never serialised in full just to be cut.
+ * Used from the writer thread only.
+ */
+final class AuditEncoder {
+
+    private static final DateTimeFormatter SECONDS = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final String TRUNCATED = "...(truncated)";
+
+    private final ZoneId zone;
+    private final int fieldMaxChars;
+
+    private long cachedSecond = Long.MIN_VALUE;
+    private String cachedPrefix;
+
+    AuditEncoder(ZoneId zone, int fieldMaxChars) {
+        this.zone = zone;
+        this.fieldMaxChars = Math.max(16, fieldMaxChars);
+    }
+
+    /** Append "timestamp | INFO  | " to {@code out}. */
+    void appendHeader(AuditEvent e, StringBuilder out) {
+        long second = Math.floorDiv(e.epochMillis, 1000L);
+        if (second != cachedSecond) {
+            cachedSecond = second;
+            cachedPrefix = SECONDS.format(Instant.ofEpochSecond(second).atZone(zone));
+        }
+        int millis = (int) Math.floorMod(e.epochMillis, 1000L);
+        out.append(cachedPrefix).append(',');
+        if (millis < 100) out.append('0');
+        if (millis < 10) out.append('0');
+        out.append(millis).append(" | INFO  | ");
+    }
+
+    /** Append "TYPE traceId=.. key=value .." (no header, no newline). */
+    void appendMessage(AuditEvent e, StringBuilder out) {
+        out.append(e.type).append(" traceId=").append(e.traceId);
+        for (int i = 0; i < e.size; i++) {
+            out.append(' ').append(e.keys[i]).append('=');
+            int limit = out.length() + fieldMaxChars;
+            Object v = e.values[i];
+            if (v instanceof Map<?, ?> || v instanceof Collection<?>) {
+                appendJson(v, out, limit);
+            } else {
+                appendBounded(String.valueOf(v), out, limit);
+            }
+            if (out.length() > limit) {
+                out.setLength(limit);
+                out.append(TRUNCATED);
+            }
+        }
+    }
+
+    /** Plain value; line breaks are flattened so one event stays one line. */
+    private static void appendBounded(String s, StringBuilder out, int limit) {
+        for (int i = 0; i < s.length() && out.length() <= limit; i++) {
+            char c = s.charAt(i);
+            out.append(c == '\n' || c == '\r' ? ' ' : c);
+        }
+    }
+
+    /** Minimal JSON writer over Map/Collection/String/Number/Boolean that stops past {@code limit}. */
+    static void appendJson(Object v, StringBuilder out, int limit) {
+        if (out.length() > limit) return;
+        if (v == null) {
+            out.append("null");
+        } else if (v instanceof Map<?, ?> m) {
+            out.append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> en : m.entrySet()) {
+                if (out.length() > limit) return;
+                if (!first) out.append(',');
+                first = false;
+                appendString(String.valueOf(en.getKey()), out, limit);
+                out.append(':');
+                appendJson(en.getValue(), out, limit);
+            }
+            out.append('}');
+        } else if (v instanceof Collection<?> c) {
+            out.append('[');
+            boolean first = true;
+            for (Object item : c) {
+                if (out.length() > limit) return;
+                if (!first) out.append(',');
+                first = false;
+                appendJson(item, out, limit);
+            }
+            out.append(']');
+        } else if (v instanceof Number || v instanceof Boolean) {
+            out.append(v);
+        } else {
+            appendString(String.valueOf(v), out, limit);
+        }
+    }
+
+    private static void appendString(String s, StringBuilder out, int limit) {
+        out.append('"');
+        for (int i = 0; i < s.length() && out.length() <= limit; i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"'  -> out.append("\\\"");
+                case '\\' -> out.append("\\\\");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                case '\t' -> out.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+                }
+            }
+        }
+        out.append('"');
+    }
+}
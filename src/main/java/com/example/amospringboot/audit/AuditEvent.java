@@ -0,0 +1,48 @@
+package com.example.amospringboot.audit;
+
+/**
+ * One audit record: type, traceId and up to {@link #MAX_FIELDS} key/value pairs.
+ *
+ * Values are kept as references and only rendered on the writer thread, so publishing an
+ * event costs one small object on the request thread instead of two formatted messages.
+ * Map/List values (backend results) are rendered as JSON and cut at audit.field-max-chars.
+ * Values must not change after publishing: pass a copy of any map the caller keeps using.
+ * Not thread-safe; hand it to {@link AuditLog#publish} once and do not touch it afterwards.
+ */
+public final class AuditEvent {
+
+    public static final int MAX_FIELDS = 16;
+
+    final AuditChannel channel;
+    final String type;
+    final String traceId;
+    final long epochMillis;
+    final String[] keys = new String[MAX_FIELDS];
+    final Object[] values = new Object[MAX_FIELDS];
+    int size;
+
+    private AuditEvent(AuditChannel channel, String type, String traceId) {
+        this.channel = channel;
+        this.type = type;
+        this.traceId = traceId;
+        this.epochMillis = System.currentTimeMillis();
+    }
+
+    public static AuditEvent of(AuditChannel channel, String type, String traceId) {
+        return new AuditEvent(channel, type, traceId);
+    }
+
+    /** Append a field; extra fields beyond {@link #MAX_FIELDS} are ignored. */
+    public AuditEvent with(String key, Object value) {
+        if (size < MAX_FIELDS) {
+            keys[size] = key;
+            values[size] = value;
+            size++;
+        }
+        return this;
+    }
+
+    public AuditChannel channel() { return channel; }
+    public String type() { return type; }
+    public String traceId() { return traceId; }
+}
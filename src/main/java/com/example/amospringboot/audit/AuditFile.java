@@ -0,0 +1,116 @@
+package com.example.amospringboot.audit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Append-only audit file with daily rollover (writer thread only).
+ *
+ * Mirrors the old TimeBasedRollingPolicy: the active file is {base}.log; on the first write
+ * of a new day it is renamed to {base}.{yyyy-MM-dd}.log, gzipped, and files beyond
+ * maxHistory are deleted.
+ */
+final class AuditFile implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AuditFile.class);
+
+    private final Path dir;
+    private final String base;
+    private final ZoneId zone;
+    private final int maxHistory;
+    private final boolean fsync;
+
+    private FileChannel channel;
+    private LocalDate day;
+
+    AuditFile(Path dir, String base, ZoneId zone, int maxHistory, boolean fsync) {
+        this.dir = dir;
+        this.base = base;
+        this.zone = zone;
+        this.maxHistory = maxHistory;
+        this.fsync = fsync;
+    }
+
+    /** Write one batch with as few syscalls as the channel allows. */
+    void write(ByteBuffer batch, long epochMillis) throws IOException {
+        rollIfNeeded(LocalDate.ofInstant(Instant.ofEpochMilli(epochMillis), zone));
+        while (batch.hasRemaining()) {
+            channel.write(batch);
+        }
+        if (fsync) {
+            channel.force(false);
+        }
+    }
+
+    private void rollIfNeeded(LocalDate today) throws IOException {
+        if (channel != null && today.equals(day)) return;
+        Path active = dir.resolve(base + ".log");
+        if (channel == null) {
+            Files.createDirectories(dir);
+            // Restart: a file left from an earlier day still belongs to that day
+            if (Files.exists(active)) {
+                LocalDate modified = LocalDate.ofInstant(Files.getLastModifiedTime(active).toInstant(), zone);
+                if (!modified.equals(today)) archive(active, modified);
+            }
+        } else {
+            channel.close();
+            archive(active, day);
+        }
+        channel = FileChannel.open(active, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        day = today;
+    }
+
+    private void archive(Path active, LocalDate of) {
+        Path rolled = dir.resolve(base + "." + of + ".log");
+        Path gz = dir.resolve(base + "." + of + ".log.gz");
+        try {
+            Files.move(active, rolled, StandardCopyOption.REPLACE_EXISTING);
+            try (InputStream in = Files.newInputStream(rolled);
+                 OutputStream out = new GZIPOutputStream(Files.newOutputStream(gz))) {
+                in.transferTo(out);
+            }
+            Files.delete(rolled);
+            prune();
+        } catch (IOException e) {
+            LOG.warn("AUDIT_ROLLOVER_FAILED file={} error={}", active, e.toString());
+        }
+    }
+
+    private void prune() throws IOException {
+        List<Path> archives = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, base + ".*.log.gz")) {
+            ds.forEach(archives::add);
+        }
+        if (archives.size() <= maxHistory) return;
+        archives.sort(null); // yyyy-MM-dd sorts chronologically
+        for (int i = 0; i < archives.size() - maxHistory; i++) {
+            Files.deleteIfExists(archives.get(i));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.force(false);
+            channel.close();
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.example.amospringboot.audit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.ZoneId;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous audit trail for payment and cycle attempts.
+ *
+ * Request threads only {@link #publish} an {@link AuditEvent} into a lock-free ring buffer;
+ * a single writer thread renders up to audit.batch-size events, appends them to the channel's
+ * file with one write per batch (group commit) and optionally mirrors each line to the
+ * console logger. When the buffer is full audit.overflow decides: drop (default), block,
+ * or log on the caller without touching the file. Drops are counted (audit.events{result=dropped})
+ * and logged as AUDIT_DROPPED, rate-limited. An event that cannot be rendered or a batch that
+ * cannot be written is counted (result=failed) and logged as AUDIT_WRITE_FAILED; the writer
+ * keeps going. Remaining events are drained on shutdown.
+ */
+public class AuditLog implements SmartLifecycle {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AuditLog.class);
+
+    /** Drops are logged at most this often; the counter has them all. */
+    private static final long DROP_LOG_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final AuditProperties props;
+    private final MpscRingBuffer<AuditEvent> buffer;
+    private final AuditEncoder encoder;
+    private final Map<AuditChannel, AuditFile> files = new EnumMap<>(AuditChannel.class);
+    private final Map<AuditChannel, Batch> batches = new EnumMap<>(AuditChannel.class);
+    private final Map<AuditChannel, Logger> console = new EnumMap<>(AuditChannel.class);
+    private final ZoneId zone = ZoneId.systemDefault();
+
+    private final Counter written;
+    private final Counter dropped;
+    private final Counter callerLogged;
+    private final Counter failed;
+
+    private final AtomicLong lastDropLog = new AtomicLong(System.nanoTime() - DROP_LOG_NANOS);
+
+    private volatile boolean running;
+    private Thread writer;
+
+    public AuditLog(AuditProperties props, MeterRegistry registry) {
+        this.props = props;
+        this.buffer = new MpscRingBuffer<>(props.bufferSize());
+        this.encoder = new AuditEncoder(zone, props.fieldMaxChars());
+        for (AuditChannel ch : AuditChannel.values()) {
+            files.put(ch, new AuditFile(Path.of(props.dir()), ch.fileBase(), zone, props.maxHistory(), props.fsync()));
+            batches.put(ch, new Batch());
+            console.put(ch, LoggerFactory.getLogger(ch.loggerName()));
+        }
+        this.written      = eventCounter(registry, "written");
+        this.dropped      = eventCounter(registry, "dropped");
+        this.callerLogged = eventCounter(registry, "caller");
+        this.failed       = eventCounter(registry, "failed");
+        Gauge.builder("audit.queue.depth", buffer, MpscRingBuffer::size)
+                .description("Audit events waiting for the writer")
+                .register(registry);
+    }
+
+    private static Counter eventCounter(MeterRegistry registry, String result) {
+        return Counter.builder("audit.events")
+                .description("Audit events by outcome")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    /** Never blocks on disk; with audit.overflow=block it may wait for a free slot. */
+    public void publish(AuditEvent event) {
+        if (buffer.offer(event)) return;
+        switch (props.overflow()) {
+            case DROP -> drop(event);
+            case BLOCK -> {
+                int spins = 0;
+                while (!buffer.offer(event)) {
+                    if (!running) {
+                        drop(event);
+                        return;
+                    }
+                    if (++spins < 100) Thread.onSpinWait(); else LockSupport.parkNanos(50_000L);
+                }
+            }
+            case CALLER -> {
+                StringBuilder sb = new StringBuilder(256);
+                new AuditEncoder(zone, props.fieldMaxChars()).appendMessage(event, sb);
+                console.get(event.channel).info("{}", sb);
+                callerLogged.increment();
+            }
+        }
+    }
+
+    /** Count it (audit.events{result=dropped}) and say so in the application log, at most every DROP_LOG_NANOS. */
+    private void drop(AuditEvent event) {
+        dropped.increment();
+        long now = System.nanoTime();
+        long last = lastDropLog.get();
+        if (now - last >= DROP_LOG_NANOS && lastDropLog.compareAndSet(last, now)) {
+            LOG.warn("AUDIT_DROPPED channel={} type={} traceId={} droppedTotal={} (buffer full, audit.overflow={})",
+                    event.channel, event.type, event.traceId, (long) dropped.count(), props.overflow());
+        }
+    }
+
+    // ===== writer thread =====
+
+    private void runWriter() {
+        long idleNanos = Math.max(1_000_000L, props.flushInterval().toNanos());
+        int batchSize = Math.max(1, props.batchSize());
+        while (running || buffer.size() > 0) {
+            int n = buffer.drain(this::append, batchSize);
+            if (n > 0) {
+                commit();
+            } else if (running) {
+                LockSupport.parkNanos(idleNanos);
+            }
+        }
+    }
+
+    /** One event into its channel's batch; an event that cannot be rendered is counted and skipped, the writer goes on. */
+    private void append(AuditEvent e) {
+        Batch b = batches.get(e.channel);
+        StringBuilder sb = b.text;
+        int start = sb.length();
+        try {
+            encoder.appendHeader(e, sb);
+            int messageStart = sb.length();
+            encoder.appendMessage(e, sb);
+            if (props.console()) {
+                console.get(e.channel).info(sb.substring(messageStart));
+            }
+        } catch (RuntimeException ex) {
+            sb.setLength(start);
+            failed.increment();
+            LOG.warn("AUDIT_WRITE_FAILED channel={} type={} traceId={} events=1 error={}",
+                    e.channel, e.type, e.traceId, ex.toString());
+            return;
+        }
+        sb.append('\n');
+        b.count++;
+        b.lastMillis = e.epochMillis;
+    }
+
+    private void commit() {
+        for (Map.Entry<AuditChannel, Batch> en : batches.entrySet()) {
+            Batch b = en.getValue();
+            if (b.count == 0) continue;
+            try {
+                ByteBuffer bytes = ByteBuffer.wrap(b.text.toString().getBytes(StandardCharsets.UTF_8));
+                files.get(en.getKey()).write(bytes, b.lastMillis);
+                written.increment(b.count);
+            } catch (IOException | RuntimeException ex) {
+                failed.increment(b.count);
+                LOG.warn("AUDIT_WRITE_FAILED channel={} events={} error={}", en.getKey(), b.count, ex.toString());
+            }
+            b.reset();
+        }
+    }
+
+    // ===== lifecycle =====
+
+    @Override
+    public void start() {
+        running = true;
+        writer = new Thread(this::runWriter, "audit-writer");
+        writer.setDaemon(true);
+        writer.start();
+        LOG.info("AUDIT_START dir={} bufferSize={} batchSize={} overflow={} fsync={}",
+                props.dir(), buffer.capacity(), props.batchSize(), props.overflow(), props.fsync());
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        Thread t = writer;
+        if (t == null) return;
+        LockSupport.unpark(t);
+        try {
+            t.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (AuditFile f : files.values()) {
+            try {
+                f.close();
+            } catch (IOException e) {
+                LOG.warn("AUDIT_CLOSE_FAILED error={}", e.toString());
+            }
+        }
+        writer = null;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /** Start before and stop after the web server (DEFAULT_PHASE - 2048) so no request outlives the writer. */
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+
+    private static final class Batch {
+        StringBuilder text = new StringBuilder(16 * 1024);
+        int count;
+        long lastMillis;
+
+        void reset() {
+            count = 0;
+            // keep the buffer of a normal batch, let an oversized one go
+            if (text.capacity() > 1 << 20) text = new StringBuilder(16 * 1024);
+            else text.setLength(0);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.amospringboot.audit;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Audit pipeline settings (audit.*).
+ *
+ * @param dir           directory for payment-audit.log / cycle-audit.log
+ * @param bufferSize    ring buffer slots (rounded up to a power of two)
+ * @param batchSize     events written per group commit
+ * @param flushInterval how long the writer sleeps when the buffer is empty
+ * @param overflow      what a request thread does when the buffer is full
+ * @param fsync         force each batch to disk (durable, slower)
+ * @param fieldMaxChars cap for a rendered field (backend results are cut here)
+ * @param maxHistory    daily files kept (older *.log.gz are deleted)
+ * @param console       also emit each line through the payment.audit / cycle.audit loggers (writer thread)
+ */
+@ConfigurationProperties(prefix = "audit")
+public record AuditProperties(
+        @DefaultValue("logs") String dir,
+        @DefaultValue("8192") int bufferSize,
+        @DefaultValue("256") int batchSize,
+        @DefaultValue("20ms") Duration flushInterval,
+        @DefaultValue("drop") Overflow overflow,
+        @DefaultValue("false") boolean fsync,
+        @DefaultValue("4000") int fieldMaxChars,
+        @DefaultValue("30") int maxHistory,
+        @DefaultValue("true") boolean console) {
+
+    public enum Overflow {
+        /** Discard the event and count it (audit.events{result=dropped}). */
+        DROP,
+        /** Spin/park until a slot frees up; bounded by the writer's throughput. */
+        BLOCK,
+        /** Render and log the event synchronously on the caller (console logger only). */
+        CALLER
+    }
+}
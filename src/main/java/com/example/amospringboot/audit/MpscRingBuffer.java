@@ -0,0 +1,64 @@
+package com.example.amospringboot.audit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Bounded lock-free multi-producer / single-consumer queue.
+ *
+ * Producers claim a sequence with one CAS and publish the element with an ordered store;
+ * an empty slot tells the consumer the claimed element is not visible yet. Capacity is
+ * rounded up to a power of two.
+ */
+final class MpscRingBuffer<E> {
+
+    private final AtomicReferenceArray<E> slots;
+    private final int mask;
+    private final AtomicLong producerIndex = new AtomicLong();
+    private final AtomicLong consumerIndex = new AtomicLong();
+
+    MpscRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /** @return false when the buffer is full */
+    boolean offer(E e) {
+        long seq;
+        do {
+            seq = producerIndex.get();
+            if (seq - consumerIndex.get() >= slots.length()) {
+                return false;
+            }
+        } while (!producerIndex.compareAndSet(seq, seq + 1));
+        slots.lazySet((int) seq & mask, e);
+        return true;
+    }
+
+    /** Consumer only: hand up to {@code limit} published elements to {@code sink}. */
+    int drain(Consumer<E> sink, int limit) {
+        long seq = consumerIndex.get();
+        int n = 0;
+        while (n < limit) {
+            int idx = (int) seq & mask;
+            E e = slots.get(idx);
+            if (e == null) break; // empty, or claimed but not yet published
+            slots.lazySet(idx, null);
+            seq++;
+            consumerIndex.lazySet(seq);
+            sink.accept(e);
+            n++;
+        }
+        return n;
+    }
+
+    int size() {
+        return (int) Math.max(0, producerIndex.get() - consumerIndex.get());
+    }
+
+    int capacity() {
+        return slots.length();
+    }
+}
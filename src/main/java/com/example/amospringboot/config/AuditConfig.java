@@ -0,0 +1,19 @@
+package com.example.amospringboot.config;
+
+import com.example.amospringboot.audit.AuditLog;
+import com.example.amospringboot.audit.AuditProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/** Payment/cycle audit trail (see AuditLog); settings under audit.*. */
+@Configuration
+@EnableConfigurationProperties(AuditProperties.class)
+public class AuditConfig {
+
+    @Bean
+    public AuditLog auditLog(AuditProperties props, MeterRegistry registry) {
+        return new AuditLog(props, registry);
+    }
+}
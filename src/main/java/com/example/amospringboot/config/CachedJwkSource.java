@@ -0,0 +1,83 @@
+package com.example.amospringboot.config;
+
+import com.nimbusds.jose.KeySourceException;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.source.JWKSource;
+import com.nimbusds.jose.proc.SecurityContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * ID-token signing keys served from the local JWKS copy.
+ *
+ * An unknown kid (key rotation) triggers one fetch, at most every {@link #MISS_BACKOFF};
+ * otherwise keys are only refreshed by the background check once they are older than
+ * app.oidc.max-age. If the IdP is unreachable the cached keys keep verifying tokens.
+ */
+final class CachedJwkSource implements JWKSource<SecurityContext> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CachedJwkSource.class);
+
+    private static final Duration MISS_BACKOFF = Duration.ofSeconds(30);
+
+    private final OidcMetadataStore store;
+    private final String jwksUri;
+
+    private volatile JWKSet keys = new JWKSet();
+    private volatile Instant fetchedAt = Instant.EPOCH;
+    private Instant lastMissFetch = Instant.EPOCH;   // guarded by this
+
+    CachedJwkSource(OidcMetadataStore store, String jwksUri) {
+        this.store = store;
+        this.jwksUri = jwksUri;
+        OidcMetadataStore.Cached<JWKSet> cached = store.jwks(jwksUri);
+        if (cached != null) {
+            this.keys = cached.value();
+            this.fetchedAt = cached.fetchedAt();
+        }
+    }
+
+    @Override
+    public List<JWK> get(JWKSelector selector, SecurityContext context) throws KeySourceException {
+        List<JWK> found = selector.select(keys);
+        if (found.isEmpty() && claimMissFetch()) {
+            try {
+                fetch();
+            } catch (RuntimeException e) {
+                throw new KeySourceException("Couldn't retrieve JWKS from " + jwksUri, e);
+            }
+            found = selector.select(keys);
+        }
+        return found;
+    }
+
+    /** Background refresh; failures keep the current keys. */
+    void refreshIfOlderThan(Duration maxAge) {
+        if (!fetchedAt.plus(maxAge).isBefore(Instant.now())) return;
+        try {
+            fetch();
+        } catch (RuntimeException e) {
+            LOG.warn("OIDC_JWKS_REFRESH_FAILED uri={} error={}", jwksUri, e.toString());
+        }
+    }
+
+    private synchronized boolean claimMissFetch() {
+        Instant now = Instant.now();
+        if (lastMissFetch.plus(MISS_BACKOFF).isAfter(now)) return false;
+        lastMissFetch = now;
+        return true;
+    }
+
+    private void fetch() {
+        JWKSet fresh = store.fetchJwks(jwksUri);
+        keys = fresh;
+        fetchedAt = Instant.now();
+        LOG.info("OIDC_JWKS_FETCHED uri={} keys={}", jwksUri, fresh.getKeys().size());
+    }
+}
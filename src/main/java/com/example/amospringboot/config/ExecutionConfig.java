@@ -0,0 +1,46 @@
+package com.example.amospringboot.config;
+
+import org.slf4j.MDC;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.Map;
+
+/**
+ * Execution model.
+ *
+ * With spring.threads.virtual.enabled=true (default, env VIRTUAL_THREADS) Spring Boot runs
+ * Tomcat request handling and the auto-configured applicationTaskExecutor (used for async
+ * MVC return values) on virtual threads, so a request blocked in WebClient...block() no
+ * longer pins a platform thread. Set VIRTUAL_THREADS=false to fall back to the bounded
+ * platform pool (server.tomcat.threads.max).
+ *
+ * Either way, work handed to the task executor keeps the caller's MDC (traceId) and
+ * SecurityContext via the decorator below, which Boot applies to the executor it builds.
+ */
+@Configuration
+public class ExecutionConfig {
+
+    @Bean
+    public TaskDecorator contextPropagatingTaskDecorator() {
+        return runnable -> {
+            Map<String, String> mdc = MDC.getCopyOfContextMap();
+            SecurityContext security = SecurityContextHolder.getContext();
+            return () -> {
+                Map<String, String> previous = MDC.getCopyOfContextMap();
+                SecurityContext previousSecurity = SecurityContextHolder.getContext();
+                if (mdc != null) MDC.setContextMap(mdc); else MDC.clear();
+                SecurityContextHolder.setContext(security);
+                try {
+                    runnable.run();
+                } finally {
+                    if (previous != null) MDC.setContextMap(previous); else MDC.clear();
+                    SecurityContextHolder.setContext(previousSecurity);
+                }
+            };
+        };
+    }
+}
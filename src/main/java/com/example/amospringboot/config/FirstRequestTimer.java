@@ -0,0 +1,58 @@
+package com.example.amospringboot.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Time to first request: JVM start until the first application request has been answered.
+ *
+ * Boot's application.ready.time stops at "context started"; this also counts the lazy work
+ * the first request pays (class loading, DispatcherServlet and Thymeleaf init), which is what
+ * the CDS archive and AOT mode are meant to cut. Logged once as FIRST_REQUEST and exported as
+ * app.startup.first.request (seconds). Management-port requests (health probes) don't count.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class FirstRequestTimer extends OncePerRequestFilter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FirstRequestTimer.class);
+
+    private final AtomicBoolean seen = new AtomicBoolean();
+    private volatile double seconds = Double.NaN;
+
+    public FirstRequestTimer(MeterRegistry registry) {
+        Gauge.builder("app.startup.first.request", this, t -> t.seconds)
+                .description("Time from JVM start until the first request was answered")
+                .baseUnit("seconds")
+                .register(registry);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            if (!seen.get() && seen.compareAndSet(false, true)) {
+                long millis = ManagementFactory.getRuntimeMXBean().getUptime();
+                seconds = millis / 1000.0;
+                LOG.info("FIRST_REQUEST uri={} status={} after {} ms since JVM start",
+                        request.getRequestURI(), response.getStatus(), millis);
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.amospringboot.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Transport settings for the matrix WebClient (matrix.api.pool.* / matrix.api.http.*).
+ * Defaults are sized for one pod talking to a single backend host.
+ */
+@ConfigurationProperties(prefix = "matrix.api")
+public record MatrixHttpProperties(@DefaultValue Pool pool, @DefaultValue Http http) {
+
+    /**
+     * @param maxConnections         upper bound of open connections (HTTP/2: of multiplexed connections)
+     * @param pendingAcquireMaxCount requests allowed to wait for a connection before failing fast
+     * @param pendingAcquireTimeout  how long such a request may wait
+     * @param maxIdleTime            close connections idle longer than this (keep below the backend's keep-alive)
+     * @param maxLifeTime            recycle connections older than this
+     * @param evictInBackground      interval of the background idle/lifetime sweep (0 = only on acquire)
+     * @param metrics                publish reactor.netty.connection.provider.* gauges/timers
+     */
+    public record Pool(
+            @DefaultValue("100") int maxConnections,
+            @DefaultValue("500") int pendingAcquireMaxCount,
+            @DefaultValue("5s") Duration pendingAcquireTimeout,
+            @DefaultValue("20s") Duration maxIdleTime,
+            @DefaultValue("5m") Duration maxLifeTime,
+            @DefaultValue("30s") Duration evictInBackground,
+            @DefaultValue("true") boolean metrics) {}
+
+    /**
+     * @param connectTimeout      TCP connect timeout
+     * @param responseTimeout     max time between request sent and response received
+     * @param http2               negotiate HTTP/2 (ALPN over TLS, h2c otherwise), falling back to HTTP/1.1
+     * @param maxConcurrentStreams streams per HTTP/2 connection
+     * @param compressResponses   send Accept-Encoding: gzip and inflate responses
+     * @param compressRequests    gzip request bodies (backend must accept Content-Encoding: gzip)
+     * @param tlsSessionCacheSize TLS sessions kept for resumption (one shared SslContext)
+     * @param tlsSessionTimeout   lifetime of a cached TLS session
+     * @param dnsCacheMaxTtl      upper bound for cached DNS answers (async Netty resolver)
+     */
+    public record Http(
+            @DefaultValue("5s") Duration connectTimeout,
+            @DefaultValue("60s") Duration responseTimeout,
+            @DefaultValue("false") boolean http2,
+            @DefaultValue("100") int maxConcurrentStreams,
+            @DefaultValue("true") boolean compressResponses,
+            @DefaultValue("false") boolean compressRequests,
+            @DefaultValue("1024") int tlsSessionCacheSize,
+            @DefaultValue("5m") Duration tlsSessionTimeout,
+            @DefaultValue("5m") Duration dnsCacheMaxTtl) {}
+}
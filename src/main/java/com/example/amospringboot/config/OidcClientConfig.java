@@ -0,0 +1,76 @@
+package com.example.amospringboot.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.jwk.source.JWKSource;
+import com.nimbusds.jose.proc.JWSVerificationKeySelector;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.proc.DefaultJWTProcessor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.security.oauth2.client.OAuth2ClientProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.oauth2.client.oidc.authentication.OidcIdTokenDecoderFactory;
+import org.springframework.security.oauth2.client.oidc.authentication.OidcIdTokenValidator;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.core.DelegatingOAuth2TokenValidator;
+import org.springframework.security.oauth2.core.converter.ClaimTypeConverter;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtDecoderFactory;
+import org.springframework.security.oauth2.jwt.JwtTimestampValidator;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * OIDC client wiring that does not need the IdP to start (see {@link OidcClientRegistrations}).
+ *
+ * Replaces Boot's discovery-at-startup ClientRegistrationRepository, and verifies ID tokens
+ * against the locally cached JWKS instead of downloading the key set on the first login.
+ */
+@Configuration
+@EnableConfigurationProperties(OAuth2ClientProperties.class)
+public class OidcClientConfig {
+
+    @Bean
+    public OidcClientRegistrations clientRegistrationRepository(
+            OAuth2ClientProperties properties,
+            ObjectMapper objectMapper,
+            @Value("${app.oidc.cache-dir:${java.io.tmpdir}/amo-oidc}") Path cacheDir,
+            @Value("${app.oidc.max-age:24h}") Duration maxAge,
+            @Value("${app.oidc.fetch-timeout:5s}") Duration fetchTimeout,
+            @Value("${app.oidc.fetch-on-start:true}") boolean fetchOnStart) {
+        OidcMetadataStore store = new OidcMetadataStore(cacheDir, fetchTimeout, objectMapper);
+        return new OidcClientRegistrations(properties, store, maxAge, fetchOnStart);
+    }
+
+    /** Picked up by oauth2Login() for ID-token validation; same validators and claim conversion as the default. */
+    @Bean
+    public JwtDecoderFactory<ClientRegistration> idTokenDecoderFactory(OidcClientRegistrations registrations) {
+        OidcIdTokenDecoderFactory fallback = new OidcIdTokenDecoderFactory();
+        ConcurrentMap<String, JwtDecoder> decoders = new ConcurrentHashMap<>();
+        return registration -> {
+            JWKSource<SecurityContext> keys = registrations.jwkSource(registration);
+            if (keys == null) {
+                return fallback.createDecoder(registration);
+            }
+            String key = registration.getRegistrationId() + '|' + registration.getProviderDetails().getJwkSetUri();
+            return decoders.computeIfAbsent(key, k -> idTokenDecoder(registration, keys));
+        };
+    }
+
+    private static JwtDecoder idTokenDecoder(ClientRegistration registration, JWKSource<SecurityContext> keys) {
+        DefaultJWTProcessor<SecurityContext> processor = new DefaultJWTProcessor<>();
+        processor.setJWSKeySelector(new JWSVerificationKeySelector<>(JWSAlgorithm.RS256, keys));
+        processor.setJWTClaimsSetVerifier((claims, context) -> { });   // claims are checked by the validators below
+        NimbusJwtDecoder decoder = new NimbusJwtDecoder(processor);
+        decoder.setJwtValidator(new DelegatingOAuth2TokenValidator<>(
+                new JwtTimestampValidator(), new OidcIdTokenValidator(registration)));
+        decoder.setClaimSetConverter(new ClaimTypeConverter(OidcIdTokenDecoderFactory.createDefaultClaimTypeConverters()));
+        return decoder;
+    }
+}
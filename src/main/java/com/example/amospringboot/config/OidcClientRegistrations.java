@@ -0,0 +1,230 @@
+package com.example.amospringboot.config;
+
+import com.nimbusds.jose.jwk.source.JWKSource;
+import com.nimbusds.jose.proc.SecurityContext;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.security.oauth2.client.OAuth2ClientProperties;
+import org.springframework.boot.autoconfigure.security.oauth2.client.OAuth2ClientPropertiesMapper;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+import org.springframework.security.oauth2.core.AuthenticationMethod;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.ClientAuthenticationMethod;
+import org.springframework.security.oauth2.core.oidc.IdTokenClaimNames;
+import org.springframework.security.oauth2.core.oidc.OidcScopes;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Client registrations without discovery on the startup path.
+ *
+ * Spring Boot resolves every provider with an issuer-uri by calling the IdP while the context
+ * starts, so the app cannot boot without Entra and every cold start pays that round trip.
+ * Here a provider with an issuer-uri is built from the discovery document cached under
+ * app.oidc.cache-dir. Only when there is no copy yet (first boot on a fresh volume) is it
+ * fetched during startup, unless app.oidc.fetch-on-start=false; if that fails the app still
+ * starts and the registration appears once the background check has fetched it.
+ *
+ * After ApplicationReadyEvent a background check refreshes documents and JWKS older than
+ * app.oidc.max-age. Registrations without an issuer-uri go through Boot's own mapping
+ * unchanged.
+ */
+public class OidcClientRegistrations implements ClientRegistrationRepository, Iterable<ClientRegistration> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OidcClientRegistrations.class);
+
+    private static final Duration CHECK_EVERY = Duration.ofMinutes(5);
+    private static final String DEFAULT_REDIRECT_URI = "{baseUrl}/{action}/oauth2/code/{registrationId}";
+
+    private final OAuth2ClientProperties properties;
+    private final OidcMetadataStore store;
+    private final Duration maxAge;
+
+    /** Provider id -> issuer-uri, for the providers resolved from cached metadata. */
+    private final Map<String, String> issuers = new LinkedHashMap<>();
+    /** Issuer -> discovery document. */
+    private final ConcurrentMap<String, Map<String, Object>> metadata = new ConcurrentHashMap<>();
+    /** jwks_uri -> key source. */
+    private final ConcurrentMap<String, CachedJwkSource> keys = new ConcurrentHashMap<>();
+
+    private volatile Map<String, ClientRegistration> registrations = Map.of();
+    private volatile Disposable refresher;
+
+    OidcClientRegistrations(OAuth2ClientProperties properties, OidcMetadataStore store,
+                            Duration maxAge, boolean fetchOnStart) {
+        this.properties = properties;
+        this.store = store;
+        this.maxAge = maxAge;
+        properties.getProvider().forEach((id, provider) -> {
+            if (provider.getIssuerUri() != null && !provider.getIssuerUri().isBlank()) {
+                issuers.put(id, provider.getIssuerUri());
+            }
+        });
+        for (String issuer : Set.copyOf(issuers.values())) {
+            OidcMetadataStore.Cached<Map<String, Object>> cached = store.metadata(issuer);
+            if (cached != null) {
+                metadata.put(issuer, cached.value());
+                LOG.info("OIDC_METADATA_CACHED issuer={} fetched_at={}", issuer, cached.fetchedAt());
+            } else if (fetchOnStart) {
+                fetch(issuer);
+            }
+        }
+        rebuild();
+    }
+
+    @Override
+    public ClientRegistration findByRegistrationId(String registrationId) {
+        return registrations.get(registrationId);
+    }
+
+    @Override
+    public Iterator<ClientRegistration> iterator() {
+        return registrations.values().iterator();
+    }
+
+    /** Key source for a registration built from cached metadata, else null (use the default decoder). */
+    JWKSource<SecurityContext> jwkSource(ClientRegistration registration) {
+        String issuer = registration.getProviderDetails().getIssuerUri();
+        String jwksUri = registration.getProviderDetails().getJwkSetUri();
+        if (issuer == null || jwksUri == null || !metadata.containsKey(issuer)) return null;
+        return keys.computeIfAbsent(jwksUri, uri -> new CachedJwkSource(store, uri));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startRefresh() {
+        if (issuers.isEmpty()) return;
+        refresher = Flux.interval(Duration.ZERO, CHECK_EVERY)
+                .onBackpressureDrop()
+                .concatMap(tick -> Mono.fromRunnable(this::refreshStale)
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .onErrorResume(ex -> {
+                            LOG.warn("OIDC_REFRESH_FAILED error={}", ex.toString());
+                            return Mono.empty();
+                        }))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        Disposable r = refresher;
+        if (r != null) r.dispose();
+    }
+
+    private void refreshStale() {
+        boolean changed = false;
+        for (String issuer : Set.copyOf(issuers.values())) {
+            OidcMetadataStore.Cached<Map<String, Object>> cached = store.metadata(issuer);
+            if (cached == null || cached.olderThan(maxAge) || !metadata.containsKey(issuer)) {
+                changed |= fetch(issuer);
+            }
+        }
+        if (changed) rebuild();
+        for (ClientRegistration registration : registrations.values()) {
+            JWKSource<SecurityContext> source = jwkSource(registration);
+            if (source instanceof CachedJwkSource cached) cached.refreshIfOlderThan(maxAge);
+        }
+    }
+
+    /** @return true if the document changed */
+    private boolean fetch(String issuer) {
+        try {
+            Map<String, Object> fresh = store.fetchMetadata(issuer);
+            LOG.info("OIDC_METADATA_FETCHED issuer={}", issuer);
+            return !fresh.equals(metadata.put(issuer, fresh));
+        } catch (RuntimeException e) {
+            LOG.warn("OIDC_METADATA_FETCH_FAILED issuer={} error={}", issuer, e.toString());
+            return false;
+        }
+    }
+
+    private synchronized void rebuild() {
+        OAuth2ClientProperties plain = new OAuth2ClientProperties();
+        properties.getProvider().forEach((id, provider) -> {
+            if (!issuers.containsKey(id)) plain.getProvider().put(id, provider);
+        });
+
+        Map<String, ClientRegistration> built = new LinkedHashMap<>();
+        properties.getRegistration().forEach((id, registration) -> {
+            String providerId = registration.getProvider() != null ? registration.getProvider() : id;
+            String issuer = issuers.get(providerId);
+            if (issuer == null) {
+                plain.getRegistration().put(id, registration);
+                return;
+            }
+            Map<String, Object> doc = metadata.get(issuer);
+            if (doc == null) {
+                LOG.warn("OIDC_REGISTRATION_UNAVAILABLE registration={} issuer={} (no metadata yet)", id, issuer);
+                return;
+            }
+            built.put(id, fromMetadata(id, registration, properties.getProvider().get(providerId), issuer, doc));
+        });
+        built.putAll(new OAuth2ClientPropertiesMapper(plain).asClientRegistrations());
+        registrations = Collections.unmodifiableMap(built);
+    }
+
+    /** What ClientRegistrations.fromIssuerLocation builds, from a document we already have. Explicit URIs win. */
+    private static ClientRegistration fromMetadata(String id, OAuth2ClientProperties.Registration registration,
+                                                   OAuth2ClientProperties.Provider provider, String issuer,
+                                                   Map<String, Object> doc) {
+        return ClientRegistration.withRegistrationId(id)
+                .clientId(registration.getClientId())
+                .clientSecret(registration.getClientSecret())
+                .clientAuthenticationMethod(registration.getClientAuthenticationMethod() != null
+                        ? new ClientAuthenticationMethod(registration.getClientAuthenticationMethod())
+                        : clientAuthenticationMethod(doc))
+                .authorizationGrantType(registration.getAuthorizationGrantType() != null
+                        ? new AuthorizationGrantType(registration.getAuthorizationGrantType())
+                        : AuthorizationGrantType.AUTHORIZATION_CODE)
+                .redirectUri(registration.getRedirectUri() != null ? registration.getRedirectUri() : DEFAULT_REDIRECT_URI)
+                .scope(registration.getScope() != null ? registration.getScope() : Set.of(OidcScopes.OPENID))
+                .clientName(registration.getClientName() != null ? registration.getClientName() : id)
+                .authorizationUri(first(provider.getAuthorizationUri(), doc.get("authorization_endpoint")))
+                .tokenUri(first(provider.getTokenUri(), doc.get("token_endpoint")))
+                .jwkSetUri(first(provider.getJwkSetUri(), doc.get("jwks_uri")))
+                .userInfoUri(first(provider.getUserInfoUri(), doc.get("userinfo_endpoint")))
+                .userInfoAuthenticationMethod(provider.getUserInfoAuthenticationMethod() != null
+                        ? new AuthenticationMethod(provider.getUserInfoAuthenticationMethod())
+                        : AuthenticationMethod.HEADER)
+                .userNameAttributeName(provider.getUserNameAttribute() != null
+                        ? provider.getUserNameAttribute()
+                        : IdTokenClaimNames.SUB)
+                .issuerUri(issuer)
+                .providerConfigurationMetadata(doc)
+                .build();
+    }
+
+    private static ClientAuthenticationMethod clientAuthenticationMethod(Map<String, Object> doc) {
+        if (!(doc.get("token_endpoint_auth_methods_supported") instanceof Collection<?> methods)
+                || methods.contains(ClientAuthenticationMethod.CLIENT_SECRET_BASIC.getValue())) {
+            return ClientAuthenticationMethod.CLIENT_SECRET_BASIC;
+        }
+        if (methods.contains(ClientAuthenticationMethod.CLIENT_SECRET_POST.getValue())) {
+            return ClientAuthenticationMethod.CLIENT_SECRET_POST;
+        }
+        if (methods.contains(ClientAuthenticationMethod.NONE.getValue())) {
+            return ClientAuthenticationMethod.NONE;
+        }
+        return ClientAuthenticationMethod.CLIENT_SECRET_BASIC;
+    }
+
+    private static String first(String explicit, Object discovered) {
+        if (explicit != null) return explicit;
+        return discovered != null ? discovered.toString() : null;
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.amospringboot.config;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nimbusds.jose.jwk.JWKSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestClient;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Map;
+
+/**
+ * Local copy of OIDC discovery documents and JWKS, one file each per issuer / jwks_uri.
+ *
+ * Fetched documents are validated before they are written (issuer must match, JWKS must
+ * parse) and are renamed into place, so a cached file is always a complete, usable one.
+ * The file's mtime is its fetch time. Writing is best-effort: a read-only directory only
+ * costs the offline start, never a login.
+ */
+final class OidcMetadataStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OidcMetadataStore.class);
+
+    private static final TypeReference<Map<String, Object>> MAP = new TypeReference<>() {};
+
+    private final Path dir;
+    private final ObjectMapper json;
+    private final RestClient http;
+
+    OidcMetadataStore(Path dir, Duration timeout, ObjectMapper json) {
+        this.dir = dir;
+        this.json = json;
+        SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
+        factory.setConnectTimeout((int) timeout.toMillis());
+        factory.setReadTimeout((int) timeout.toMillis());
+        this.http = RestClient.builder().requestFactory(factory).build();
+    }
+
+    /** Cached discovery document of {@code issuer}, or null. */
+    Cached<Map<String, Object>> metadata(String issuer) {
+        Path file = file(issuer, "-metadata.json");
+        try {
+            if (!Files.isRegularFile(file)) return null;
+            return new Cached<>(json.readValue(file.toFile(), MAP), Files.getLastModifiedTime(file).toInstant());
+        } catch (IOException e) {
+            LOG.warn("OIDC_CACHE_UNREADABLE file={} error={}", file, e.toString());
+            return null;
+        }
+    }
+
+    /** GET {issuer}/.well-known/openid-configuration, check it and store it. */
+    Map<String, Object> fetchMetadata(String issuer) {
+        String body = get(issuer.replaceAll("/+$", "") + "/.well-known/openid-configuration");
+        Map<String, Object> metadata;
+        try {
+            metadata = json.readValue(body, MAP);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Invalid OIDC metadata from " + issuer, e);
+        }
+        if (!issuer.equals(metadata.get("issuer"))) {
+            throw new IllegalStateException("Issuer " + metadata.get("issuer") + " in metadata does not match " + issuer);
+        }
+        write(file(issuer, "-metadata.json"), body);
+        return metadata;
+    }
+
+    /** Cached key set behind {@code jwksUri}, or null. */
+    Cached<JWKSet> jwks(String jwksUri) {
+        Path file = file(jwksUri, "-jwks.json");
+        try {
+            if (!Files.isRegularFile(file)) return null;
+            return new Cached<>(JWKSet.parse(Files.readString(file)), Files.getLastModifiedTime(file).toInstant());
+        } catch (IOException | ParseException e) {
+            LOG.warn("OIDC_CACHE_UNREADABLE file={} error={}", file, e.toString());
+            return null;
+        }
+    }
+
+    JWKSet fetchJwks(String jwksUri) {
+        String body = get(jwksUri);
+        JWKSet keys;
+        try {
+            keys = JWKSet.parse(body);
+        } catch (ParseException e) {
+            throw new IllegalStateException("Invalid JWKS from " + jwksUri, e);
+        }
+        write(file(jwksUri, "-jwks.json"), body);
+        return keys;
+    }
+
+    private String get(String uri) {
+        String body = http.get()
+                .uri(URI.create(uri))
+                .accept(MediaType.APPLICATION_JSON)
+                .retrieve()
+                .body(String.class);
+        if (body == null || body.isBlank()) {
+            throw new IllegalStateException("Empty response from " + uri);
+        }
+        return body;
+    }
+
+    private void write(Path file, String body) {
+        try {
+            Files.createDirectories(dir);
+            Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+            Files.writeString(tmp, body, StandardCharsets.UTF_8);
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            LOG.warn("OIDC_CACHE_WRITE_FAILED file={} error={}", file, e.toString());
+        }
+    }
+
+    /** File per URL: a tenant or key-location change never picks up the old copy. */
+    private Path file(String url, String suffix) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8));
+            return dir.resolve(HexFormat.of().formatHex(digest, 0, 12) + suffix);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    record Cached<T>(T value, Instant fetchedAt) {
+        boolean olderThan(Duration maxAge) {
+            return fetchedAt.plus(maxAge).isBefore(Instant.now());
+        }
+    }
+}
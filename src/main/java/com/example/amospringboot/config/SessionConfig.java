@@ -0,0 +1,45 @@
+package com.example.amospringboot.config;
+
+import com.example.amospringboot.session.SessionStore;
+import com.example.amospringboot.session.StoredSession;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.session.config.annotation.web.http.EnableSpringHttpSession;
+import org.springframework.session.security.SpringSessionBackedSessionRegistry;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+/**
+ * HTTP sessions and the session registry live in the configured datasource (JDBC_URL), so any
+ * replica can serve any request and maximumSessions(1) holds across replicas. H2 is only on
+ * the class path of tests and of a -Pembedded-db build; there an unset JDBC_URL gives an
+ * embedded in-memory database: one node, same code path.
+ *
+ * Spring Session's filter replaces the servlet container's sessions; the cookie keeps the
+ * server.servlet.session.cookie settings (Boot builds the cookie serializer from them).
+ */
+@Configuration
+@EnableSpringHttpSession
+public class SessionConfig {
+
+    @Bean
+    public SessionStore sessionRepository(
+            DataSource dataSource,
+            MeterRegistry registry,
+            @Value("${server.servlet.session.timeout:30m}") Duration timeout,
+            @Value("${app.session.initialize-schema:true}") boolean initializeSchema,
+            @Value("${app.session.revalidate-after:1s}") Duration revalidateAfter,
+            @Value("${app.session.cache-size:10000}") int cacheSize,
+            @Value("${app.session.flush-interval:10s}") Duration flushInterval) {
+        return SessionStore.jdbc(dataSource, registry, initializeSchema, timeout, revalidateAfter, cacheSize, flushInterval);
+    }
+
+    /** Sessions per principal straight from the store: nothing to clean up, no per-node state. */
+    @Bean
+    public SpringSessionBackedSessionRegistry<StoredSession> sessionRegistry(SessionStore sessionRepository) {
+        return new SpringSessionBackedSessionRegistry<>(sessionRepository);
+    }
+}
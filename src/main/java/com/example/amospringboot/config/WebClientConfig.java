@@ -1,27 +1,157 @@
 package com.example.amospringboot.config;
 
+import io.netty.channel.ChannelOption;
+import org.reactivestreams.Publisher;
+import com.example.amospringboot.matrix.MatrixMetrics;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.client.reactive.ClientHttpRequestDecorator;
 import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
 import org.springframework.web.reactive.function.client.ExchangeStrategies;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.Http11SslContextSpec;
+import reactor.netty.http.Http2SslContextSpec;
+import reactor.netty.http.HttpProtocol;
 import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.tcp.SslProvider;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Function;
+import java.util.zip.GZIPOutputStream;
 
 @Configuration
+@EnableConfigurationProperties(MatrixHttpProperties.class)
 public class WebClientConfig {
 
+    /** Dedicated, bounded pool for the matrix backend (instead of the shared global default). */
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider matrixConnectionProvider(MatrixHttpProperties props) {
+        MatrixHttpProperties.Pool pool = props.pool();
+        return ConnectionProvider.builder("matrix")
+                .maxConnections(pool.maxConnections())
+                .pendingAcquireMaxCount(pool.pendingAcquireMaxCount())
+                .pendingAcquireTimeout(pool.pendingAcquireTimeout())
+                .maxIdleTime(pool.maxIdleTime())
+                .maxLifeTime(pool.maxLifeTime())
+                .evictInBackground(pool.evictInBackground())
+                .metrics(pool.metrics())
+                .build();
+    }
+
     @Bean
-    public WebClient matrixWebClient(@Value("${matrix.api.base-url}") String baseUrl) {
+    public WebClient matrixWebClient(@Value("${matrix.api.base-url}") String baseUrl,
+                                     ConnectionProvider matrixConnectionProvider,
+                                     MatrixHttpProperties props,
+                                     MatrixMetrics matrixMetrics) {
         ExchangeStrategies strategies = ExchangeStrategies.builder()
                 .codecs(c -> c.defaultCodecs().maxInMemorySize(16 * 1024 * 1024))
                 .build();
 
-        return WebClient.builder()
+        WebClient.Builder builder = WebClient.builder()
                 .baseUrl(baseUrl)
                 .exchangeStrategies(strategies)
-                .clientConnector(new ReactorClientHttpConnector(HttpClient.create()))
-                .build();
+                .clientConnector(new ReactorClientHttpConnector(
+                        httpClient(baseUrl, matrixConnectionProvider, props)))
+                .filter(matrixMetrics.filter());
+        if (props.http().compressRequests()) {
+            builder.filter(gzipRequestBodies());
+        }
+        return builder.build();
     }
-}
 
+    private static HttpClient httpClient(String baseUrl, ConnectionProvider provider, MatrixHttpProperties props) {
+        MatrixHttpProperties.Http http = props.http();
+        boolean tls = baseUrl.regionMatches(true, 0, "https:", 0, 6);
+
+        HttpClient client = HttpClient.create(provider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) http.connectTimeout().toMillis())
+                .responseTimeout(http.responseTimeout())
+                .compress(http.compressResponses())
+                // Async resolver with a bounded answer cache instead of a blocking InetAddress lookup
+                .resolver(spec -> spec.cacheMaxTimeToLive(http.dnsCacheMaxTtl()))
+                // Path-only URI tag keeps client metrics cardinality bounded (query strings carry blob names)
+                .metrics(props.pool().metrics(), uri -> {
+                    int q = uri.indexOf('?');
+                    return q >= 0 ? uri.substring(0, q) : uri;
+                });
+
+        if (http.http2()) {
+            client = client
+                    .protocol(tls ? HttpProtocol.H2 : HttpProtocol.H2C, HttpProtocol.HTTP11)
+                    .http2Settings(s -> s.maxConcurrentStreams(http.maxConcurrentStreams()));
+        }
+        if (tls) {
+            // One SslContext for the whole client, so its session cache enables TLS resumption
+            // across pooled connections instead of a full handshake after every eviction.
+            SslProvider.ProtocolSslContextSpec spec = http.http2()
+                    ? Http2SslContextSpec.forClient().configure(b -> b
+                            .sessionCacheSize(http.tlsSessionCacheSize())
+                            .sessionTimeout(http.tlsSessionTimeout().toSeconds()))
+                    : Http11SslContextSpec.forClient().configure(b -> b
+                            .sessionCacheSize(http.tlsSessionCacheSize())
+                            .sessionTimeout(http.tlsSessionTimeout().toSeconds()));
+            SslProvider ssl = SslProvider.builder().sslContext(spec).build();
+            client = client.secure(ssl);
+        }
+        return client;
+    }
+
+    /** Gzip request bodies chunk by chunk (sync-flushed), so streamed uploads stay streamed. */
+    private static ExchangeFilterFunction gzipRequestBodies() {
+        return (request, next) -> next.exchange(ClientRequest.from(request)
+                .headers(h -> h.set(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .body((outputMessage, context) -> request.body().insert(
+                        new ClientHttpRequestDecorator(outputMessage) {
+                            @Override
+                            public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+                                getHeaders().remove(HttpHeaders.CONTENT_LENGTH);
+                                return super.writeWith(gzip(Flux.from(body), bufferFactory()::wrap));
+                            }
+                        }, context))
+                .build());
+    }
+
+    private static Flux<DataBuffer> gzip(Flux<? extends DataBuffer> body, Function<byte[], DataBuffer> wrap) {
+        return Flux.defer(() -> {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            GZIPOutputStream gz;
+            try {
+                gz = new GZIPOutputStream(bytes, true);
+            } catch (IOException e) {
+                return Flux.error(new UncheckedIOException(e));
+            }
+            Flux<DataBuffer> chunks = body.map(buf -> {
+                try {
+                    byte[] in = new byte[buf.readableByteCount()];
+                    buf.read(in);
+                    gz.write(in);
+                    gz.flush();
+                    byte[] out = bytes.toByteArray();
+                    bytes.reset();
+                    return wrap.apply(out);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } finally {
+                    DataBufferUtils.release(buf);
+                }
+            });
+            Mono<DataBuffer> trailer = Mono.fromCallable(() -> {
+                gz.finish();
+                return wrap.apply(bytes.toByteArray());
+            });
+            return chunks.concatWith(trailer);
+        });
+    }
+}
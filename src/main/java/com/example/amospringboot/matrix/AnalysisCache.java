@@ -0,0 +1,192 @@
+package com.example.amospringboot.matrix;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Bounded cache of /matrix/analyze results keyed by (container, blob_name).
+ *
+ * Timestamped blobs ("initial-matrix-20251018-091137.b64") are immutable, so their results
+ * never expire and are only dropped by LRU eviction. Everything else ("*-latest.b64",
+ * the un-stamped fallback) is mutable: after matrix.analysis-cache.alias-ttl the stale result
+ * is still served while one background refresh runs (stale-while-revalidate).
+ *
+ * Eviction is size-aware: each result is weighed by a rough walk of its JSON tree and the
+ * total is kept under matrix.analysis-cache.max-size. Concurrent misses for the same key
+ * share one backend call. Failures are never cached, and neither is any result whose
+ * "status" is not "ok".
+ */
+@Component
+public class AnalysisCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AnalysisCache.class);
+
+    private final long maxBytes;
+    private final long aliasTtlNanos;
+
+    /** Access-ordered, guarded by its own monitor. */
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long weight;
+
+    private final ConcurrentMap<Key, CompletableFuture<Map<String, Object>>> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter stale;
+    private final Counter coalesced;
+
+    public AnalysisCache(MeterRegistry registry,
+                         @Value("${matrix.analysis-cache.max-size:64MB}") DataSize maxSize,
+                         @Value("${matrix.analysis-cache.alias-ttl:30s}") Duration aliasTtl) {
+        this.maxBytes = maxSize.toBytes();
+        this.aliasTtlNanos = aliasTtl.toNanos();
+        this.hits      = resultCounter(registry, "hit");
+        this.misses    = resultCounter(registry, "miss");
+        this.stale     = resultCounter(registry, "stale");
+        this.coalesced = resultCounter(registry, "coalesced");
+        Gauge.builder("matrix.analysis.cache.bytes", this, AnalysisCache::weight)
+                .description("Estimated size of cached analysis results")
+                .register(registry);
+    }
+
+    private static Counter resultCounter(MeterRegistry registry, String result) {
+        return Counter.builder("matrix.analysis.cache")
+                .description("Analysis cache lookups by outcome")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    /**
+     * Cached result for (container, blob), loading it with {@code loader} on a miss.
+     * The loader is subscribed at most once per key at a time.
+     */
+    public Mono<Map<String, Object>> get(String container, String blob,
+                                         Supplier<Mono<Map<String, Object>>> loader) {
+        Key key = new Key(container, blob);
+        Entry e;
+        synchronized (entries) {
+            e = entries.get(key);
+        }
+        if (e != null) {
+            if (e.immutable || System.nanoTime() - e.loadedAt < aliasTtlNanos) {
+                hits.increment();
+                return Mono.just(e.result);
+            }
+            stale.increment();
+            load(key, loader).exceptionally(ex -> {
+                LOG.warn("ANALYZE_CACHE_REFRESH_FAILED container={} blob={} error={}", container, blob, ex.toString());
+                return null;
+            });
+            return Mono.just(e.result);
+        }
+        return Mono.fromFuture(load(key, loader));
+    }
+
+    /** Forget one entry (e.g. the blob was rewritten under the same name). */
+    public void invalidate(String container, String blob) {
+        synchronized (entries) {
+            Entry e = entries.remove(new Key(container, blob));
+            if (e != null) weight -= e.weight;
+        }
+    }
+
+    public long weight() {
+        synchronized (entries) {
+            return weight;
+        }
+    }
+
+    private CompletableFuture<Map<String, Object>> load(Key key, Supplier<Mono<Map<String, Object>>> loader) {
+        CompletableFuture<Map<String, Object>> mine = new CompletableFuture<>();
+        CompletableFuture<Map<String, Object>> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            coalesced.increment();
+            return existing;
+        }
+        misses.increment();
+        Mono<Map<String, Object>> source;
+        try {
+            source = loader.get();
+        } catch (RuntimeException ex) {
+            source = Mono.error(ex);
+        }
+        source.subscribe(
+                result -> {
+                    put(key, result);
+                    inFlight.remove(key, mine);
+                    mine.complete(result);
+                },
+                ex -> {
+                    inFlight.remove(key, mine);
+                    mine.completeExceptionally(ex);
+                },
+                () -> {
+                    // empty response: nothing to cache
+                    inFlight.remove(key, mine);
+                    mine.complete(null);
+                });
+        return mine;
+    }
+
+    private void put(Key key, Map<String, Object> result) {
+        // a 200 can still carry status "error" (e.g. a blob not yet visible); never pin that
+        if (result == null || !"ok".equalsIgnoreCase(String.valueOf(result.get("status")))) return;
+        long w = estimate(result);
+        if (w > maxBytes / 4) {
+            LOG.info("ANALYZE_CACHE_SKIP container={} blob={} estimatedBytes={} (too large)", key.container, key.blob, w);
+            return;
+        }
+        boolean immutable = BlobIndex.timestampOf(key.blob) != 0L;
+        synchronized (entries) {
+            Entry old = entries.put(key, new Entry(result, w, immutable, System.nanoTime()));
+            if (old != null) weight -= old.weight;
+            weight += w;
+            Iterator<Entry> it = entries.values().iterator();
+            while (weight > maxBytes && it.hasNext()) {
+                Entry eldest = it.next();
+                it.remove();
+                weight -= eldest.weight;
+            }
+        }
+    }
+
+    /** Rough heap footprint of a Jackson-style JSON tree (Map/List/String/Number/Boolean). */
+    static long estimate(Object o) {
+        if (o == null) return 8;
+        if (o instanceof String s) return 40 + 2L * s.length();
+        if (o instanceof Map<?, ?> m) {
+            long sum = 64;
+            for (Map.Entry<?, ?> en : m.entrySet()) {
+                sum += 48 + estimate(en.getKey()) + estimate(en.getValue());
+            }
+            return sum;
+        }
+        if (o instanceof Collection<?> c) {
+            long sum = 40;
+            for (Object v : c) sum += 8 + estimate(v);
+            return sum;
+        }
+        return 24; // boxed number / boolean
+    }
+
+    private record Key(String container, String blob) {}
+
+    private record Entry(Map<String, Object> result, long weight, boolean immutable, long loadedAt) {}
+}
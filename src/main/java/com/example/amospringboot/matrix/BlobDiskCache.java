@@ -0,0 +1,280 @@
+package com.example.amospringboot.matrix;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Local disk cache of raw blob bodies keyed by (container, blob_name).
+ *
+ * Only timestamped blobs are cached: they are never rewritten, so a cached file is valid
+ * forever and is only dropped by LRU eviction under matrix.blob-cache.max-size. Aliases and
+ * the un-stamped fallback always go to the backend.
+ *
+ * Downloads stream straight from the response buffers into a temp file in the cache
+ * directory (no heap copy), are forced to disk and then renamed into place, so a crash never
+ * leaves a partial file under a real name. Reads memory-map the file. The directory survives
+ * restarts: existing files are re-indexed in last-access order, leftover temp files deleted.
+ * Concurrent misses for the same key share one download. A file that turns out unreadable
+ * is {@link #evict evicted} by the reader, so it is fetched again rather than served again.
+ */
+@Component
+public class BlobDiskCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BlobDiskCache.class);
+
+    private static final String SUFFIX = ".blob";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final long MAP_WINDOW = 256L * 1024 * 1024;
+
+    private final Path dir;
+    private final long maxBytes;
+    private final boolean enabled;
+
+    /** File name -> size, access-ordered, guarded by its own monitor. */
+    private final LinkedHashMap<String, Long> files = new LinkedHashMap<>(64, 0.75f, true);
+    private long bytes;
+
+    private final ConcurrentMap<String, CompletableFuture<Path>> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter coalesced;
+
+    public BlobDiskCache(MeterRegistry registry,
+                         @Value("${matrix.blob-cache.dir:${java.io.tmpdir}/amo-blob-cache}") Path dir,
+                         @Value("${matrix.blob-cache.max-size:512MB}") DataSize maxSize,
+                         @Value("${matrix.blob-cache.enabled:true}") boolean enabled) {
+        this.dir = dir;
+        this.maxBytes = maxSize.toBytes();
+        this.enabled = enabled && open();
+        this.hits      = resultCounter(registry, "hit");
+        this.misses    = resultCounter(registry, "miss");
+        this.coalesced = resultCounter(registry, "coalesced");
+        Gauge.builder("matrix.blob.cache.bytes", this, BlobDiskCache::bytes)
+                .description("Bytes of blobs held in the local disk cache")
+                .register(registry);
+    }
+
+    private static Counter resultCounter(MeterRegistry registry, String result) {
+        return Counter.builder("matrix.blob.cache")
+                .description("Blob disk cache lookups by outcome")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    /** Only immutable (timestamped) blobs are worth keeping. */
+    public boolean cacheable(String blob) {
+        return enabled && blob != null && BlobIndex.timestampOf(blob) != 0L;
+    }
+
+    /**
+     * Path of the cached body of (container, blob), downloading it with {@code download} on a
+     * miss. The download is subscribed at most once per key at a time.
+     */
+    public Mono<Path> get(String container, String blob, Supplier<Flux<DataBuffer>> download) {
+        String name = fileName(container, blob);
+        Path target = dir.resolve(name);
+        boolean hit;
+        synchronized (files) {
+            hit = files.get(name) != null;
+        }
+        if (hit && Files.exists(target)) {
+            hits.increment();
+            touch(target);
+            return Mono.just(target);
+        }
+        return Mono.defer(() -> Mono.fromFuture(load(name, target, download)));
+    }
+
+    /**
+     * Forget (container, blob) and delete its file: it did not decode, or it was already gone.
+     * The next {@link #get} downloads it again.
+     */
+    public void evict(String container, String blob) {
+        String name = fileName(container, blob);
+        synchronized (files) {
+            Long size = files.remove(name);
+            if (size != null) bytes -= size;
+        }
+        LOG.warn("BLOB_CACHE_EVICT container={} blob={}", container, blob);
+        deleteQuietly(dir.resolve(name));
+    }
+
+    /** Hand the file to {@code sink} as read-only mapped windows, in order. */
+    public static void readMapped(Path file, Consumer<ByteBuffer> sink) {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            for (long pos = 0; pos < size; pos += MAP_WINDOW) {
+                sink.accept(ch.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(MAP_WINDOW, size - pos)));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public long bytes() {
+        synchronized (files) {
+            return bytes;
+        }
+    }
+
+    private CompletableFuture<Path> load(String name, Path target, Supplier<Flux<DataBuffer>> download) {
+        CompletableFuture<Path> mine = new CompletableFuture<>();
+        CompletableFuture<Path> existing = inFlight.putIfAbsent(name, mine);
+        if (existing != null) {
+            coalesced.increment();
+            return existing;
+        }
+        misses.increment();
+        Mono.fromCallable(() -> Files.createTempFile(dir, name, TEMP_SUFFIX))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(tmp -> DataBufferUtils.write(download.get(), tmp, StandardOpenOption.WRITE)
+                        .then(Mono.fromCallable(() -> publish(tmp, target)).subscribeOn(Schedulers.boundedElastic()))
+                        .doOnError(ex -> deleteQuietly(tmp))
+                        .doOnCancel(() -> deleteQuietly(tmp)))
+                .subscribe(
+                        path -> {
+                            inFlight.remove(name, mine);
+                            mine.complete(path);
+                        },
+                        ex -> {
+                            inFlight.remove(name, mine);
+                            mine.completeExceptionally(ex);
+                        });
+        return mine;
+    }
+
+    /** fsync, then rename into place; the real name only ever points at a complete file. */
+    private Path publish(Path tmp, Path target) throws IOException {
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            ch.force(true);
+        }
+        try {
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        admit(target.getFileName().toString(), Files.size(target));
+        return target;
+    }
+
+    private void admit(String name, long size) {
+        synchronized (files) {
+            Long old = files.put(name, size);
+            if (old != null) bytes -= old;
+            bytes += size;
+            Iterator<Map.Entry<String, Long>> it = files.entrySet().iterator();
+            while (bytes > maxBytes && it.hasNext()) {
+                Map.Entry<String, Long> eldest = it.next();
+                if (eldest.getKey().equals(name)) continue;
+                it.remove();
+                bytes -= eldest.getValue();
+                // Readers that already mapped the file keep a valid mapping after the unlink
+                deleteQuietly(dir.resolve(eldest.getKey()));
+            }
+        }
+    }
+
+    /** Create the directory and re-index what a previous run left behind; false disables the cache. */
+    private boolean open() {
+        try {
+            Files.createDirectories(dir);
+            List<Path> existing;
+            try (Stream<Path> s = Files.list(dir)) {
+                existing = s.toList();
+            }
+            existing.stream()
+                    .filter(p -> p.getFileName().toString().endsWith(TEMP_SUFFIX))
+                    .forEach(BlobDiskCache::deleteQuietly);
+            existing.stream()
+                    .filter(p -> p.getFileName().toString().endsWith(SUFFIX))
+                    .sorted(Comparator.comparing(BlobDiskCache::lastModified))
+                    .forEach(p -> {
+                        try {
+                            admit(p.getFileName().toString(), Files.size(p));
+                        } catch (IOException e) {
+                            deleteQuietly(p);
+                        }
+                    });
+            LOG.info("BLOB_CACHE_OPEN dir={} files={} bytes={}", dir, files.size(), bytes);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("BLOB_CACHE_DISABLED dir={} error={}", dir, e.toString());
+            return false;
+        }
+    }
+
+    /** mtime doubles as last access, so LRU order survives a restart. */
+    private static void touch(Path p) {
+        try {
+            Files.setLastModifiedTime(p, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException ignored) {
+            // only affects eviction order after a restart
+        }
+    }
+
+    private static FileTime lastModified(Path p) {
+        try {
+            return Files.getLastModifiedTime(p);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static void deleteQuietly(Path p) {
+        try {
+            Files.deleteIfExists(p);
+        } catch (IOException e) {
+            LOG.debug("BLOB_CACHE_DELETE_FAILED file={} error={}", p, e.toString());
+        }
+    }
+
+    /** Content-addressed name: hex SHA-256 of container + '/' + blob (safe for any blob name). */
+    static String fileName(String container, String blob) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            byte[] digest = sha.digest(((container == null ? "" : container) + "/" + blob)
+                    .getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest) + SUFFIX;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package com.example.amospringboot.matrix;
+
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * In-memory, per-container index of timestamped blob versions.
+ *
+ * Each filename is parsed exactly once into a primitive sortable timestamp
+ * (yyyyMMddHHmmss as a long) plus its base name:
+ *   "payment-User-20251015-082727.b64"                   -> base "payment-User",   ts 20251015082727
+ *   "initial-matrix-20251018-091137-20251021-195554.b64" -> base "initial-matrix", ts 20251021195554
+ *
+ * Versions are kept in sorted primitive arrays (container-wide and per base), so
+ * latest / previous / N-most-recent / as-of queries are O(log n). New blobs arrive in
+ * timestamp order almost always, so incremental inserts are amortised appends.
+ */
+@Component
+public class BlobIndex {
+
+    private final ConcurrentMap<String, ContainerIndex> containers = new ConcurrentHashMap<>();
+
+    /* ===================== UPDATES ===================== */
+
+    /**
+     * Bring the container index in line with a fresh listing. Only names not seen before
+     * are parsed; if any known name is missing from the listing (blob deleted, even when others
+     * were added in the same listing), the index is rebuilt.
+     */
+    public void sync(String container, Collection<String> names) {
+        index(container).sync(names);
+    }
+
+    /**
+     * Replace the container index with a bounded top-K listing. Names it no longer has
+     * (deleted blobs, versions older than the newest K) are dropped, so the index never
+     * serves a deleted blob and stays O(bases * K).
+     */
+    public void replace(String container, Collection<String> names) {
+        index(container).replace(names);
+    }
+
+    /** Incremental update for a blob we just learned about (e.g. "written_blob"). */
+    public void add(String container, String name) {
+        if (name == null || name.isBlank()) return;
+        index(container).add(name);
+    }
+
+    /* ===================== QUERIES ===================== */
+
+    /** Newest timestamped blob in the container, or null. */
+    public String latest(String container) {
+        ContainerIndex ci = containers.get(container);
+        return ci == null ? null : ci.latest(null);
+    }
+
+    /** Newest timestamped blob for a base name (e.g. "initial-matrix"), or null. */
+    public String latest(String container, String base) {
+        ContainerIndex ci = containers.get(container);
+        return ci == null ? null : ci.latest(base);
+    }
+
+    /** Version of the same base immediately before {@code blobName}, or null. */
+    public String previous(String container, String blobName) {
+        ContainerIndex ci = containers.get(container);
+        return ci == null ? null : ci.previous(blobName);
+    }
+
+    /** Up to n newest versions (newest first); base may be null for the whole container. */
+    public List<String> recent(String container, String base, int n) {
+        ContainerIndex ci = containers.get(container);
+        return ci == null ? List.of() : ci.recent(base, n);
+    }
+
+    /** Newest version written at or before {@code at}; base may be null for the whole container. */
+    public String asOf(String container, String base, LocalDateTime at) {
+        ContainerIndex ci = containers.get(container);
+        return ci == null ? null : ci.asOf(base, toSortable(at));
+    }
+
+    /** Most recently seen "*-latest.b64" alias, or null. */
+    public String latestAlias(String container) {
+        ContainerIndex ci = containers.get(container);
+        return ci == null ? null : ci.alias();
+    }
+
+    /** Base names with at least one timestamped version. */
+    public Set<String> bases(String container) {
+        ContainerIndex ci = containers.get(container);
+        return ci == null ? Set.of() : ci.bases();
+    }
+
+    private ContainerIndex index(String container) {
+        return containers.computeIfAbsent(container, c -> new ContainerIndex());
+    }
+
+    /* ===================== NAME PARSING ===================== */
+
+    /**
+     * Parse the last YYYYMMDD-HHMMSS right before the extension into yyyyMMddHHmmss.
+     * Returns 0 if absent/bad. Allocation-free (no regex, no substrings).
+     */
+    public static long timestampOf(String name) {
+        if (name == null) return 0L;
+        int dot = name.lastIndexOf('.');
+        return timestampEndingAt(name, dot > 0 ? dot : name.length());
+    }
+
+    /** "-YYYYMMDD-HHMMSS" is 16 chars ending (exclusive) at {@code end}. */
+    private static long timestampEndingAt(String name, int end) {
+        int start = end - 16;
+        if (start < 0 || name.charAt(start) != '-' || name.charAt(end - 7) != '-') return 0L;
+
+        long v = 0L;
+        for (int i = start + 1; i < end; i++) {
+            if (i == end - 7) continue;
+            char ch = name.charAt(i);
+            if (ch < '0' || ch > '9') return 0L;
+            v = v * 10 + (ch - '0');
+        }
+        return v;
+    }
+
+    /**
+     * Base name: extension and every trailing "-YYYYMMDD-HHMMSS" group stripped.
+     * "initial-matrix-20251018-091137-20251021-195554.b64" -> "initial-matrix"
+     */
+    public static String baseOf(String name) {
+        if (name == null) return null;
+        int dot = name.lastIndexOf('.');
+        String stem = dot > 0 ? name.substring(0, dot) : name;
+        while (timestampEndingAt(stem, stem.length()) != 0L) {
+            stem = stem.substring(0, stem.length() - 16);
+        }
+        return stem;
+    }
+
+    static long toSortable(LocalDateTime t) {
+        return t.getYear() * 10_000_000_000L
+                + t.getMonthValue() * 100_000_000L
+                + t.getDayOfMonth() * 1_000_000L
+                + t.getHour() * 10_000L
+                + t.getMinute() * 100L
+                + t.getSecond();
+    }
+
+    /* ===================== STORAGE ===================== */
+
+    /** One container: all versions plus one list per base, guarded by the instance monitor. */
+    private static final class ContainerIndex {
+        private final Set<String> known = new HashSet<>();
+        private final Versions all = new Versions();
+        private final Map<String, Versions> byBase = new HashMap<>();
+        private String alias;
+
+        synchronized void sync(Collection<String> names) {
+            if (names == null) return;
+            Set<String> listed = names instanceof Set<String> s ? s : new HashSet<>(names);
+            if (!listed.containsAll(known)) clear();
+            for (String n : listed) {
+                if (n != null && !n.isBlank()) add(n);
+            }
+        }
+
+        synchronized void replace(Collection<String> names) {
+            if (names == null) return;
+            clear();
+            for (String n : names) {
+                if (n != null && !n.isBlank()) add(n);
+            }
+        }
+
+        private void clear() {
+            known.clear();
+            all.clear();
+            byBase.clear();
+            alias = null;
+        }
+
+        synchronized void add(String name) {
+            if (!known.add(name)) return;
+            if (name.endsWith("-latest.b64")) alias = name;
+            long ts = timestampOf(name);
+            if (ts == 0L) return;
+            all.insert(ts, name);
+            byBase.computeIfAbsent(baseOf(name), b -> new Versions()).insert(ts, name);
+        }
+
+        synchronized String latest(String base) {
+            Versions v = versions(base);
+            return v == null ? null : v.last();
+        }
+
+        synchronized String previous(String blobName) {
+            Versions v = byBase.get(baseOf(blobName));
+            if (v == null) return null;
+            int i = v.indexOf(timestampOf(blobName), blobName);
+            return i > 0 ? v.names[i - 1] : null;
+        }
+
+        synchronized List<String> recent(String base, int n) {
+            Versions v = versions(base);
+            if (v == null || n <= 0) return List.of();
+            int count = Math.min(n, v.size);
+            List<String> out = new ArrayList<>(count);
+            for (int i = v.size - 1; i >= v.size - count; i--) out.add(v.names[i]);
+            return out;
+        }
+
+        synchronized String asOf(String base, long ts) {
+            Versions v = versions(base);
+            if (v == null) return null;
+            int i = v.upperBound(ts) - 1;
+            return i >= 0 ? v.names[i] : null;
+        }
+
+        synchronized String alias() {
+            return alias;
+        }
+
+        synchronized Set<String> bases() {
+            return Set.copyOf(byBase.keySet());
+        }
+
+        private Versions versions(String base) {
+            return base == null ? all : byBase.get(base);
+        }
+    }
+
+    /** Parallel arrays sorted by (timestamp, name). */
+    private static final class Versions {
+        private long[] ts = new long[16];
+        private String[] names = new String[16];
+        private int size;
+
+        void insert(long t, String name) {
+            if (size == ts.length) {
+                ts = Arrays.copyOf(ts, size * 2);
+                names = Arrays.copyOf(names, size * 2);
+            }
+            int pos = size;
+            // Fast path: newest version appended at the end.
+            if (size > 0 && (ts[size - 1] > t || (ts[size - 1] == t && names[size - 1].compareTo(name) > 0))) {
+                pos = upperBound(t);
+                while (pos > 0 && ts[pos - 1] == t && names[pos - 1].compareTo(name) > 0) pos--;
+                System.arraycopy(ts, pos, ts, pos + 1, size - pos);
+                System.arraycopy(names, pos, names, pos + 1, size - pos);
+            }
+            ts[pos] = t;
+            names[pos] = name;
+            size++;
+        }
+
+        String last() {
+            return size == 0 ? null : names[size - 1];
+        }
+
+        /** First index whose timestamp is strictly greater than t. */
+        int upperBound(long t) {
+            int lo = 0, hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (ts[mid] <= t) lo = mid + 1; else hi = mid;
+            }
+            return lo;
+        }
+
+        int indexOf(long t, String name) {
+            for (int i = upperBound(t) - 1; i >= 0 && ts[i] == t; i--) {
+                if (names[i].equals(name)) return i;
+            }
+            return -1;
+        }
+
+        void clear() {
+            Arrays.fill(names, 0, size, null);
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.amospringboot.matrix;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded summary of a container listing produced by
+ * {@link MatrixApiClient#streamBlobs(String, String, int)}.
+ *
+ * @param newestByBase up to K newest timestamped names per base (e.g. "initial-matrix"), newest first
+ * @param alias        last "*-latest.b64" alias seen, or null
+ * @param scanned      number of names seen in the listing (after prefix filtering)
+ */
+public record BlobListing(Map<String, List<String>> newestByBase, String alias, long scanned) {
+
+    public static final BlobListing EMPTY = new BlobListing(Map.of(), null, 0L);
+
+    /** Newest timestamped name across all bases, or null. */
+    public String newest() {
+        String best = null;
+        long bestTs = 0L;
+        for (List<String> names : newestByBase.values()) {
+            if (names.isEmpty()) continue;
+            String n = names.get(0);
+            long ts = BlobIndex.timestampOf(n);
+            if (ts > bestTs || (ts == bestTs && best != null && n.compareTo(best) > 0)) {
+                bestTs = ts;
+                best = n;
+            }
+        }
+        return best;
+    }
+
+    /** All retained names (every base), unordered. */
+    public List<String> names() {
+        return newestByBase.values().stream().flatMap(List::stream).toList();
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.amospringboot.matrix;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import org.springframework.core.io.buffer.DataBuffer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Incremental tokenizer for the /matrix/blobs JSON array.
+ *
+ * Bytes are pushed chunk by chunk into Jackson's non-blocking parser; every string found
+ * inside an array is offered to a bounded min-heap per base name, so memory is O(bases * K)
+ * regardless of how many versions the container holds. Not thread-safe: one instance per listing;
+ * close it (the parser) when done.
+ */
+final class BlobListingCollector implements AutoCloseable {
+
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final Comparator<Entry> OLDEST_FIRST =
+            Comparator.comparingLong(Entry::ts).thenComparing(Entry::name);
+
+    private final String prefix;
+    private final int keep;
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+    private final byte[] scratch = new byte[8192];
+
+    private final Map<String, PriorityQueue<Entry>> heaps = new HashMap<>();
+    private String alias;
+    private long scanned;
+
+    BlobListingCollector(String prefix, int keep) {
+        this.prefix = (prefix == null || prefix.isBlank()) ? null : prefix;
+        this.keep = Math.max(1, keep);
+        try {
+            this.parser = JSON.createNonBlockingByteArrayParser();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+    }
+
+    /** Consume one chunk completely; the caller may release the buffer afterwards. */
+    void feed(DataBuffer buffer) {
+        while (buffer.readableByteCount() > 0) {
+            int len = Math.min(scratch.length, buffer.readableByteCount());
+            buffer.read(scratch, 0, len);
+            try {
+                feeder.feedInput(scratch, 0, len);
+                drain();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Malformed blob listing", e);
+            }
+        }
+    }
+
+    BlobListing finish() {
+        feeder.endOfInput();
+        try {
+            drain();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Malformed blob listing", e);
+        }
+        Map<String, List<String>> out = new HashMap<>();
+        heaps.forEach((base, heap) -> {
+            List<Entry> entries = new ArrayList<>(heap);
+            entries.sort(OLDEST_FIRST.reversed());
+            out.put(base, entries.stream().map(Entry::name).toList());
+        });
+        return new BlobListing(out, alias, scanned);
+    }
+
+    @Override
+    public void close() {
+        try {
+            parser.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void drain() throws IOException {
+        JsonToken t;
+        while ((t = parser.nextToken()) != null && t != JsonToken.NOT_AVAILABLE) {
+            if (t == JsonToken.VALUE_STRING && parser.getParsingContext().inArray()) {
+                offer(parser.getText());
+            }
+        }
+    }
+
+    private void offer(String name) {
+        if (name.isBlank()) return;
+        if (prefix != null && !name.startsWith(prefix)) return;
+        scanned++;
+        if (name.endsWith("-latest.b64")) alias = name;
+
+        long ts = BlobIndex.timestampOf(name);
+        if (ts == 0L) return;
+
+        PriorityQueue<Entry> heap = heaps.computeIfAbsent(BlobIndex.baseOf(name),
+                b -> new PriorityQueue<>(keep + 1, OLDEST_FIRST));
+        Entry e = new Entry(ts, name);
+        if (heap.size() < keep) {
+            heap.add(e);
+        } else if (OLDEST_FIRST.compare(e, heap.peek()) > 0) {
+            heap.poll();
+            heap.add(e);
+        }
+    }
+
+    private record Entry(long ts, String name) {}
+}
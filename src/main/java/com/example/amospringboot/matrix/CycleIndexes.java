@@ -0,0 +1,209 @@
+package com.example.amospringboot.matrix;
+
+import com.example.amospringboot.matrix.dto.PaymentRequest;
+import com.example.amospringboot.matrix.engine.CsrGraph;
+import com.example.amospringboot.matrix.engine.CycleFinder;
+import com.example.amospringboot.matrix.engine.CycleIndex;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * One {@link CycleIndex} per container, kept in step with payments as they are applied, so a
+ * payment's result can say at once whether it closed a cycle (and which).
+ *
+ * An index describes one blob version. A payment applied on exactly that version advances it
+ * in place (the new edge only); anything else (a settlement, a write by another instance,
+ * a restart) leaves it behind, and the next payment starts a rebuild from the blob it wrote,
+ * in the background. Payments applied meanwhile are kept in a short log and replayed onto the
+ * rebuilt index, so it catches up without another download. Until then results carry no
+ * cycle information. Matrices above matrix.cycle.index.max-edges are not indexed.
+ *
+ * Index work (an add can reorder and search a large component) runs on the bounded elastic
+ * scheduler, never on the caller's event-loop thread. A rebuild replays the log onto its new
+ * index before publishing it, without holding the container's lock.
+ */
+@Component
+public class CycleIndexes {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CycleIndexes.class);
+
+    /** Payments remembered per container for replay onto a rebuilt index. */
+    private static final int LOG_SIZE = 4096;
+
+    /** After a failed rebuild (e.g. too many edges), payments don't trigger another one for this long. */
+    private static final long RETRY_NANOS = 60_000_000_000L;
+
+    private final MatrixApiClient client;
+    private final boolean enabled;
+    private final long maxEdges;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter rebuilds;
+
+    public CycleIndexes(MatrixApiClient client,
+                        MeterRegistry registry,
+                        @Value("${matrix.cycle.index.enabled:true}") boolean enabled,
+                        @Value("${matrix.cycle.index.max-edges:5000000}") long maxEdges) {
+        this.client = client;
+        this.enabled = enabled;
+        this.maxEdges = maxEdges;
+        this.hits = resultCounter(registry, "hit");
+        this.misses = resultCounter(registry, "miss");
+        this.rebuilds = resultCounter(registry, "rebuild");
+    }
+
+    private static Counter resultCounter(MeterRegistry registry, String result) {
+        return Counter.builder("matrix.cycle.index")
+                .description("Payments checked against the incremental cycle index, by outcome")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    /**
+     * {@code payments} were applied, in order, on {@code base} and produced {@code written}.
+     * Emits one entry per payment: {"closes_cycle", and if true "cycle" (node names, the
+     * payment's edge first), "bottleneck", "component_size"}; completes empty if the index is
+     * not current. The update runs on the bounded elastic scheduler.
+     */
+    public Mono<List<Map<String, Object>>> applied(String container, String base, String written, List<PaymentRequest> payments) {
+        if (!enabled || container == null || written == null) return Mono.empty();
+        return Mono.fromCallable(() -> apply(container, base, written, payments))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /** Null (an empty Mono) when the index is not current. */
+    private List<Map<String, Object>> apply(String container, String base, String written, List<PaymentRequest> payments) {
+        Entry entry = entries.computeIfAbsent(container, c -> new Entry());
+        synchronized (entry) {
+            for (PaymentRequest p : payments) entry.log(new Delta(base, written, p));
+            if (entry.index == null || !Objects.equals(entry.blob, base)) {
+                misses.increment();
+                if (!entry.building && System.nanoTime() - entry.failedAt > RETRY_NANOS) rebuild(container, entry, written);
+                return null;
+            }
+            List<Map<String, Object>> out = new ArrayList<>(payments.size());
+            try {
+                for (PaymentRequest p : payments) out.add(describe(entry.index, add(entry.index, p)));
+                entry.blob = written;
+                hits.increment();
+                return out;
+            } catch (IllegalArgumentException | ArithmeticException ex) {
+                LOG.warn("CYCLE_INDEX_DROPPED container={} reason={}", container, ex.getMessage());
+                entry.index = null;
+                entry.blob = null;
+                return null;
+            }
+        }
+    }
+
+    /** Called with the entry's monitor held; the download, build and catch-up run without it. */
+    private void rebuild(String container, Entry entry, String blob) {
+        entry.building = true;
+        rebuilds.increment();
+        client.downloadMatrixAsync(blob, container)
+                .publishOn(Schedulers.boundedElastic())
+                .map(matrix -> {
+                    CsrGraph g = matrix.toGraph();
+                    if (g.edgeCount() > maxEdges) {
+                        throw new IllegalArgumentException(g.edgeCount() + " edges (matrix.cycle.index.max-edges)");
+                    }
+                    return catchUp(entry, CycleIndex.of(g), blob);
+                })
+                .subscribe(ready -> LOG.info("CYCLE_INDEX_READY container={} blob={} nodes={}",
+                        container, ready.blob, ready.index.nodeCount()), ex -> {
+                    synchronized (entry) {
+                        entry.building = false;
+                        entry.failedAt = System.nanoTime();
+                    }
+                    LOG.warn("CYCLE_INDEX_REBUILD_FAILED container={} blob={} reason={}", container, blob, ex.getMessage());
+                });
+    }
+
+    /**
+     * Replay logged payments that continue the chain from {@code blob} onto the new, still
+     * private index, then publish it. The monitor is only held to copy the next step out of the
+     * log, and for the final check that nothing is left to replay.
+     */
+    private static Ready catchUp(Entry entry, CycleIndex index, String blob) {
+        String at = blob;
+        while (true) {
+            List<Delta> step;
+            synchronized (entry) {
+                step = nextStep(entry, at);
+                if (step.isEmpty() || Objects.equals(step.get(0).written, at)) {
+                    entry.building = false;
+                    entry.index = index;
+                    entry.blob = at;
+                    return new Ready(index, at);
+                }
+            }
+            // IllegalArgumentException / ArithmeticException fail the rebuild (see the error handler)
+            for (Delta d : step) add(index, d.payment);
+            at = step.get(0).written;
+        }
+    }
+
+    /** The logged payments of one drain (one base -> written step) from {@code from}; several if it was a batch. */
+    private static List<Delta> nextStep(Entry entry, String from) {
+        List<Delta> step = new ArrayList<>();
+        for (Delta d : entry.log) {
+            if (Objects.equals(d.base, from) && (step.isEmpty() || d.written.equals(step.get(0).written))) step.add(d);
+        }
+        return step;
+    }
+
+    private static CycleFinder.Cycle add(CycleIndex index, PaymentRequest p) {
+        long unscaled = p.getAmount().movePointRight(index.scale()).longValueExact();
+        return index.add(p.getNode_a(), p.getNode_b(), unscaled);
+    }
+
+    private static Map<String, Object> describe(CycleIndex index, CycleFinder.Cycle cycle) {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("closes_cycle", cycle != null);
+        if (cycle != null) {
+            List<String> nodes = new ArrayList<>(cycle.nodes().length);
+            for (int node : cycle.nodes()) nodes.add(index.name(node));
+            out.put("cycle", nodes);
+            out.put("bottleneck", BigDecimal.valueOf(cycle.bottleneck(), index.scale()).stripTrailingZeros().toPlainString());
+            out.put("component_size", index.componentSize(cycle.nodes()[0]));
+        }
+        return out;
+    }
+
+    private record Delta(String base, String written, PaymentRequest payment) {}
+
+    private record Ready(CycleIndex index, String blob) {}
+
+    /** Guarded by its own monitor. */
+    private static final class Entry {
+        CycleIndex index;
+        String blob;
+        boolean building;
+        long failedAt = System.nanoTime() - RETRY_NANOS - 1;
+        final Deque<Delta> log = new ArrayDeque<>();
+
+        void log(Delta d) {
+            if (log.size() == LOG_SIZE) log.removeFirst();
+            log.addLast(d);
+        }
+    }
+}
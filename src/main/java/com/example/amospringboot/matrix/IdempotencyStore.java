@@ -0,0 +1,228 @@
+package com.example.amospringboot.matrix;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Idempotency keys for state-changing submissions (payments, settlements).
+ *
+ * The first execution for a key runs; a duplicate that arrives while it is in flight waits for
+ * that same execution, and one that arrives later gets the stored result. Completed results
+ * are kept for matrix.idempotency.ttl, at most matrix.idempotency.max-entries of them (oldest
+ * dropped first). Failures are not stored, so a failed submission can be retried with the
+ * same key. Each key remembers a fingerprint of its request: reusing a key for a different
+ * request is a {@link KeyReusedException}.
+ *
+ * Keys are kept in this process only. Replicas do not share them and a restart forgets them,
+ * so a retry that reaches another replica runs again: deduplication holds for one replica
+ * (or sticky routing of a user's writes), not across a scaled-out deployment.
+ */
+@Component
+public class IdempotencyStore {
+
+    /** Header JSON clients send; the forms carry the same value as a hidden field. */
+    public static final String HEADER = "Idempotency-Key";
+
+    private static final Pattern VALID_KEY = Pattern.compile("^[A-Za-z0-9_\\-.:]{1,128}$");
+
+    private final long ttlNanos;
+    private final int maxEntries;
+
+    /** Insertion-ordered, guarded by its own monitor. */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+
+    private final Counter executed;
+    private final Counter replayed;
+    private final Counter joined;
+
+    public IdempotencyStore(MeterRegistry registry,
+                            @Value("${matrix.idempotency.ttl:24h}") Duration ttl,
+                            @Value("${matrix.idempotency.max-entries:10000}") int maxEntries) {
+        this.ttlNanos = ttl.toNanos();
+        this.maxEntries = Math.max(1, maxEntries);
+        this.executed = resultCounter(registry, "executed");
+        this.replayed = resultCounter(registry, "replayed");
+        this.joined   = resultCounter(registry, "joined");
+    }
+
+    private static Counter resultCounter(MeterRegistry registry, String result) {
+        return Counter.builder("matrix.idempotency")
+                .description("Idempotent submissions by outcome")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    /** A fresh server-issued key (for forms). */
+    public String issue() {
+        return UUID.randomUUID().toString();
+    }
+
+    public static boolean isValidKey(String key) {
+        return key != null && VALID_KEY.matcher(key).matches();
+    }
+
+    /** Store key for a client key, scoped to the operation and the user so keys never collide across them. */
+    public static String scoped(String operation, String principal, String key) {
+        return operation + '|' + principal + '|' + key;
+    }
+
+    /** Digest of the request fields that must match when a key is reused. */
+    public static String fingerprint(Iterable<?> parts) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            for (Object part : parts) {
+                sha.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+                sha.update((byte) 0);
+            }
+            return HexFormat.of().formatHex(sha.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Run {@code action} once per key (blocking variant, for request threads).
+     *
+     * @throws KeyReusedException if the key was used for a request with another fingerprint
+     */
+    public <T> Outcome<T> execute(String key, String fingerprint, Supplier<T> action) {
+        Claim claim = claim(key, fingerprint);
+        if (!claim.owner) {
+            return new Outcome<>(join(claim.entry), true);
+        }
+        try {
+            T value = action.get();
+            complete(claim.entry, value);
+            return new Outcome<>(value, false);
+        } catch (RuntimeException ex) {
+            fail(key, claim.entry, ex);
+            throw ex;
+        }
+    }
+
+    /** Non-blocking variant of {@link #execute}; the action is subscribed at most once per key. */
+    public <T> Mono<Outcome<T>> executeAsync(String key, String fingerprint, Supplier<Mono<T>> action) {
+        return Mono.defer(() -> {
+            Claim claim = claim(key, fingerprint);
+            if (claim.owner) {
+                Mono<T> source;
+                try {
+                    source = action.get();
+                } catch (RuntimeException ex) {
+                    source = Mono.error(ex);
+                }
+                source.subscribe(
+                        value -> complete(claim.entry, value),
+                        ex -> fail(key, claim.entry, ex),
+                        () -> complete(claim.entry, null));
+            }
+            return Mono.fromFuture(claim.entry.result)
+                    .map(value -> new Outcome<>(cast(value), !claim.owner));
+        });
+    }
+
+    private Claim claim(String key, String fingerprint) {
+        long now = System.nanoTime();
+        synchronized (entries) {
+            expire(now);
+            Entry e = entries.get(key);
+            if (e != null) {
+                if (!Objects.equals(e.fingerprint, fingerprint)) {
+                    throw new KeyReusedException("Idempotency key was already used for a different request");
+                }
+                (e.result.isDone() ? replayed : joined).increment();
+                return new Claim(e, false);
+            }
+            e = new Entry(fingerprint, new CompletableFuture<>());
+            entries.put(key, e);
+            trim();
+            executed.increment();
+            return new Claim(e, true);
+        }
+    }
+
+    private void complete(Entry e, Object value) {
+        e.completedAt = System.nanoTime();
+        e.result.complete(value);
+    }
+
+    private void fail(String key, Entry e, Throwable ex) {
+        synchronized (entries) {
+            entries.remove(key, e);
+        }
+        e.result.completeExceptionally(ex);
+    }
+
+    /** Drop completed entries older than the ttl (insertion order ~ completion order). */
+    private void expire(long now) {
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry e = it.next();
+            if (!e.result.isDone()) continue;
+            if (now - e.completedAt < ttlNanos) break;
+            it.remove();
+        }
+    }
+
+    /** Over capacity: drop the oldest completed entries; in-flight ones are never dropped. */
+    private void trim() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (entries.size() > maxEntries && it.hasNext()) {
+            if (it.next().result.isDone()) it.remove();
+        }
+    }
+
+    private static <T> T join(Entry e) {
+        try {
+            return cast(e.result.join());
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException re) throw re;
+            throw ex;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T cast(Object o) {
+        return (T) o;
+    }
+
+    /** @param replayed true if this is the stored result of an earlier execution */
+    public record Outcome<T>(T value, boolean replayed) {}
+
+    /** The key is known but belongs to another request. */
+    public static class KeyReusedException extends RuntimeException {
+        public KeyReusedException(String message) {
+            super(message);
+        }
+    }
+
+    private static final class Entry {
+        final String fingerprint;
+        final CompletableFuture<Object> result;
+        volatile long completedAt;
+
+        Entry(String fingerprint, CompletableFuture<Object> result) {
+            this.fingerprint = fingerprint;
+            this.result = result;
+        }
+    }
+
+    private record Claim(Entry entry, boolean owner) {}
+}
@@ -0,0 +1,163 @@
+package com.example.amospringboot.matrix;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Shared "latest blob" resolution for all controllers.
+ *
+ * Listing the whole container is the most frequent backend call we make, so the result is:
+ *  - cached per container for a short TTL (matrix.blobs.latest-ttl),
+ *  - single-flight: concurrent callers share one in-flight listing instead of issuing their own,
+ *  - updated in place when a payment/cycle call reports a freshly written blob.
+ *
+ * Selection rule (same as the controllers used before): newest timestamped blob,
+ * else a "*-latest.b64" alias, else the caller's fallback. Failures are never cached.
+ * Names are parsed once into {@link BlobIndex}; repeat listings only touch new names.
+ * With matrix.blobs.listing-mode=stream (default) the listing is tokenised incrementally and
+ * only the newest matrix.blobs.stream-keep versions per base are retained; "full" buffers the
+ * whole JSON list as before.
+ */
+@Component
+public class LatestBlobResolver {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LatestBlobResolver.class);
+
+    private final MatrixApiClient client;
+    private final BlobIndex blobIndex;
+    private final long ttlNanos;
+    private final boolean streamListing;
+    private final int streamKeep;
+
+    private final ConcurrentMap<String, Cached> cache = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+    /** Bumped on every write notification so a listing started earlier cannot overwrite a newer blob. */
+    private final ConcurrentMap<String, Long> generations = new ConcurrentHashMap<>();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter coalesced;
+    private final Counter fallbacks;
+    private final MatrixMetrics metrics;
+
+    public LatestBlobResolver(MatrixApiClient client,
+                              BlobIndex blobIndex,
+                              MeterRegistry registry,
+                              MatrixMetrics metrics,
+                              @Value("${matrix.blobs.latest-ttl:5s}") Duration ttl,
+                              @Value("${matrix.blobs.listing-mode:stream}") String listingMode,
+                              @Value("${matrix.blobs.stream-keep:8}") int streamKeep) {
+        this.client = client;
+        this.blobIndex = blobIndex;
+        this.metrics = metrics;
+        this.ttlNanos = ttl.toNanos();
+        this.streamListing = "stream".equalsIgnoreCase(listingMode);
+        this.streamKeep = streamKeep;
+        this.hits      = resultCounter(registry, "hit");
+        this.misses    = resultCounter(registry, "miss");
+        this.coalesced = resultCounter(registry, "coalesced");
+        this.fallbacks = resultCounter(registry, "fallback");
+    }
+
+    private static Counter resultCounter(MeterRegistry registry, String result) {
+        return Counter.builder("matrix.blobs.latest")
+                .description("Latest-blob resolutions by outcome")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    /**
+     * Newest blob in the container, or {@code fallback} if the listing is empty or fails.
+     * Never throws.
+     */
+    public String latest(String container, String fallback) {
+        Cached c = cache.get(container);
+        if (c != null && System.nanoTime() - c.loadedAt < ttlNanos) {
+            hits.increment();
+            return c.name;
+        }
+
+        CompletableFuture<String> mine = new CompletableFuture<>();
+        CompletableFuture<String> existing = inFlight.putIfAbsent(container, mine);
+        if (existing != null) {
+            coalesced.increment();
+            return join(existing, container, fallback);
+        }
+
+        misses.increment();
+        long generation = generations.getOrDefault(container, 0L);
+        try {
+            refreshIndex(container);
+            String name = select(container);
+            if (name != null && generations.getOrDefault(container, 0L) == generation) {
+                cache.put(container, new Cached(name, System.nanoTime()));
+            }
+            mine.complete(name);
+        } catch (Exception e) {
+            mine.completeExceptionally(e);
+        } finally {
+            inFlight.remove(container, mine);
+        }
+        return join(mine, container, fallback);
+    }
+
+    /**
+     * Record a blob the backend just wrote (payment / settlement "written_blob").
+     * It is by definition the newest version, so it replaces the cached entry directly.
+     */
+    public void onBlobWritten(String container, String writtenBlob) {
+        if (writtenBlob == null || writtenBlob.isBlank()) return;
+        generations.merge(container, 1L, Long::sum);
+        blobIndex.add(container, writtenBlob);
+        cache.put(container, new Cached(writtenBlob, System.nanoTime()));
+        LOG.debug("LATEST_BLOB_UPDATED container={} blob={}", container, writtenBlob);
+    }
+
+    /** Drop the cached entry so the next call lists the container again. */
+    public void invalidate(String container) {
+        generations.merge(container, 1L, Long::sum);
+        cache.remove(container);
+    }
+
+    private String join(CompletableFuture<String> f, String container, String fallback) {
+        try {
+            String name = f.join();
+            if (name != null) return name;
+            LOG.warn("latest(): no timestamped or alias blob in container={}, using FALLBACK={}", container, fallback);
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            LOG.warn("latest(): exception -> {}, using FALLBACK={}", cause.toString(), fallback);
+        }
+        fallbacks.increment();
+        metrics.fallback("fallback_blob");
+        return fallback;
+    }
+
+    private void refreshIndex(String container) {
+        if (streamListing) {
+            BlobListing listing = client.streamBlobs(container, null, streamKeep);
+            blobIndex.replace(container, listing.names());
+            if (listing.alias() != null) blobIndex.add(container, listing.alias());
+        } else {
+            blobIndex.sync(container, client.listBlobs(container));
+        }
+    }
+
+    /** Newest timestamped blob; else "*-latest.b64" alias; else null. */
+    private String select(String container) {
+        String best = blobIndex.latest(container);
+        return best != null ? best : blobIndex.latestAlias(container);
+    }
+
+    private record Cached(String name, long loadedAt) {}
+}
@@ -2,22 +2,35 @@ package com.example.amospringboot.matrix;
 
 import com.example.amospringboot.matrix.dto.CycleFindRequest;
 import com.example.amospringboot.matrix.dto.PaymentRequest;
+import com.example.amospringboot.matrix.engine.MatrixBlob;
+import com.example.amospringboot.matrix.engine.MatrixBlobDecoder;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
+import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
+import java.io.UncheckedIOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 @Component
@@ -37,73 +50,196 @@ public class MatrixApiClient {
     private static final Pattern MULTI_TS_BEFORE_EXT =
             Pattern.compile("(-\\d{8}-\\d{6})+(?=\\.[^.]+$)");
 
-    /**
-     * Captures the last YYYYMMDD-HHMMSS immediately before the extension.
-     * We’ll use the last match when files have multiple stamps.
-     */
-    private static final Pattern LAST_TS_BEFORE_EXT =
-            Pattern.compile("(\\d{8}-\\d{6})(?=\\.[^.]+$)");
+    private static final String ANALYZE_PATH = "/matrix/analyze";
+    private static final String DOWNLOAD_PATH = "/matrix/download";
 
     private final WebClient webClient;
+    private final AnalysisCache analysisCache;
+    private final BlobDiskCache blobCache;
+    private final MatrixCapabilities capabilities;
+    private final MatrixMetrics metrics;
+    private final HttpMethod analyzePreferred;
+    private final int denseMaxNodes;
+    private final String paymentBatchPath;
+    private final String settlementBatchPath;
 
-    public MatrixApiClient(WebClient matrixWebClient) {
+    public MatrixApiClient(WebClient matrixWebClient,
+                           AnalysisCache analysisCache,
+                           BlobDiskCache blobCache,
+                           MatrixCapabilities capabilities,
+                           MatrixMetrics metrics,
+                           @Value("${matrix.api.capabilities.analyze-method:GET}") String analyzePreferred,
+                           @Value("${matrix.blobs.dense-max-nodes:1024}") int denseMaxNodes,
+                           @Value("${matrix.api.payment-batch-path:}") String paymentBatchPath,
+                           @Value("${matrix.api.settlement-batch-path:}") String settlementBatchPath) {
         this.webClient = matrixWebClient;
+        this.analysisCache = analysisCache;
+        this.blobCache = blobCache;
+        this.capabilities = capabilities;
+        this.metrics = metrics;
+        this.analyzePreferred = HttpMethod.valueOf(analyzePreferred.toUpperCase());
+        this.denseMaxNodes = denseMaxNodes;
+        this.paymentBatchPath = paymentBatchPath;
+        this.settlementBatchPath = settlementBatchPath;
     }
 
-    /** GET /matrix/analyze?blob_name=...&container=... */
+    /** GET /matrix/analyze?blob_name=...&container=... (or POST, whichever the backend accepts) */
     public Map<String, Object> analyze(String blobName, String container) {
-        try {
-            MultiValueMap<String, String> params = new LinkedMultiValueMap<>();
-            params.add("blob_name", blobName);
-            if (container != null && !container.isBlank()) params.add("container", container);
+        return await(analyzeAsync(blobName, container));
+    }
 
-            return webClient.get()
-                    .uri(uri -> uri.path("/matrix/analyze").queryParams(params).build())
-                    .accept(MediaType.APPLICATION_JSON)
-                    .retrieve()
-                    .bodyToMono(MAP_TYPE)
-                    .block();
-        } catch (WebClientResponseException ex) {
-            throw new MatrixRemoteException(ex.getStatusCode(), ex.getResponseBodyAsString(), ex);
-        } catch (Exception e) {
-            throw new MatrixRemoteException(HttpStatus.BAD_GATEWAY, "Matrix API unreachable", e);
-        }
+    /**
+     * Non-blocking variant of {@link #analyze(String, String)}; errors surface as MatrixRemoteException.
+     * Served from {@link AnalysisCache} when possible.
+     */
+    public Mono<Map<String, Object>> analyzeAsync(String blobName, String container) {
+        return analysisCache.get(container, blobName, () -> fetchAnalyze(blobName, container));
     }
 
-    /** POST /matrix/cycle/find */
-    public Map<String, Object> findCycle(CycleFindRequest req) {
-        try {
+    /**
+     * One round trip in steady state: the method the backend accepts for /matrix/analyze is
+     * negotiated once by {@link MatrixCapabilities}; a 405 flips it and retries exactly once.
+     */
+    private Mono<Map<String, Object>> fetchAnalyze(String blobName, String container) {
+        return capabilities.method(ANALYZE_PATH, analyzePreferred)
+                .flatMap(method -> callAnalyze(method, blobName, container)
+                        .onErrorResume(WebClientResponseException.MethodNotAllowed.class, ex -> {
+                            HttpMethod other = HttpMethod.GET.equals(method) ? HttpMethod.POST : HttpMethod.GET;
+                            capabilities.learn(ANALYZE_PATH, other, "405 on " + method);
+                            metrics.fallback("analyze_405_retry");
+                            return callAnalyze(other, blobName, container);
+                        }))
+                .onErrorMap(MatrixApiClient::toRemote);
+    }
+
+    /** GET with query params, or POST with the same fields as a JSON body. */
+    private Mono<Map<String, Object>> callAnalyze(HttpMethod method, String blobName, String container) {
+        boolean hasContainer = container != null && !container.isBlank();
+        if (HttpMethod.POST.equals(method)) {
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("blob_name", blobName);
+            if (hasContainer) body.put("container", container);
             return webClient.post()
-                    .uri("/matrix/cycle/find")
+                    .uri(ANALYZE_PATH)
                     .contentType(MediaType.APPLICATION_JSON)
                     .accept(MediaType.APPLICATION_JSON)
-                    .bodyValue(req)
+                    .bodyValue(body)
                     .retrieve()
-                    .bodyToMono(MAP_TYPE)
-                    .block();
-        } catch (WebClientResponseException ex) {
-            throw new MatrixRemoteException(ex.getStatusCode(), ex.getResponseBodyAsString(), ex);
-        } catch (Exception e) {
-            throw new MatrixRemoteException(HttpStatus.BAD_GATEWAY, "Matrix API unreachable", e);
+                    .bodyToMono(MAP_TYPE);
         }
+
+        MultiValueMap<String, String> params = new LinkedMultiValueMap<>();
+        params.add("blob_name", blobName);
+        if (hasContainer) params.add("container", container);
+
+        return webClient.get()
+                .uri(uri -> uri.path(ANALYZE_PATH).queryParams(params).build())
+                .accept(MediaType.APPLICATION_JSON)
+                .retrieve()
+                .bodyToMono(MAP_TYPE);
+    }
+
+    /** POST /matrix/cycle/find */
+    public Map<String, Object> findCycle(CycleFindRequest req) {
+        return await(findCycleAsync(req));
+    }
+
+    /** Non-blocking variant of {@link #findCycle(CycleFindRequest)}. */
+    public Mono<Map<String, Object>> findCycleAsync(CycleFindRequest req) {
+        return webClient.post()
+                .uri("/matrix/cycle/find")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .bodyValue(req)
+                .retrieve()
+                .bodyToMono(MAP_TYPE)
+                .onErrorMap(MatrixApiClient::toRemote);
     }
 
     /** POST /matrix/payment */
     public Map<String, Object> payment(PaymentRequest req) {
-        try {
-            return webClient.post()
-                    .uri("/matrix/payment")
-                    .contentType(MediaType.APPLICATION_JSON)
-                    .accept(MediaType.APPLICATION_JSON)
-                    .bodyValue(req)
-                    .retrieve()
-                    .bodyToMono(MAP_TYPE)
-                    .block();
-        } catch (WebClientResponseException ex) {
-            throw new MatrixRemoteException(ex.getStatusCode(), ex.getResponseBodyAsString(), ex);
-        } catch (Exception e) {
-            throw new MatrixRemoteException(HttpStatus.BAD_GATEWAY, "Matrix API unreachable", e);
-        }
+        return await(paymentAsync(req));
+    }
+
+    /** Non-blocking variant of {@link #payment(PaymentRequest)}. */
+    public Mono<Map<String, Object>> paymentAsync(PaymentRequest req) {
+        return webClient.post()
+                .uri("/matrix/payment")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .bodyValue(req)
+                .retrieve()
+                .bodyToMono(MAP_TYPE)
+                .onErrorMap(MatrixApiClient::toRemote);
+    }
+
+    /**
+     * POST {matrix.api.payment-batch-path}: several payments applied to one base blob in one
+     * call, producing one written_blob. The documented backend has no such endpoint, so it is
+     * off unless the path is configured; a 404/405/501 is also remembered in
+     * {@link MatrixCapabilities} and surfaces as MatrixRemoteException. Check
+     * {@link #supportsPaymentBatch()} before calling.
+     *
+     * @param payments node_a / node_b / amount per payment
+     */
+    public Mono<Map<String, Object>> paymentBatchAsync(String container, String blobName, String outBase,
+                                                        List<Map<String, Object>> payments) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("blob_name", blobName);
+        body.put("out_base", outBase);
+        body.put("container", container);
+        body.put("payments", payments);
+        return webClient.post()
+                .uri(paymentBatchPath)
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .bodyValue(body)
+                .retrieve()
+                .bodyToMono(MAP_TYPE)
+                .doOnError(WebClientResponseException.class, ex -> {
+                    int status = ex.getStatusCode().value();
+                    if (status == 404 || status == 405 || status == 501) {
+                        capabilities.unsupported(paymentBatchPath, "HTTP " + status);
+                        metrics.fallback("payment_batch_unsupported");
+                    }
+                })
+                .onErrorMap(MatrixApiClient::toRemote);
+    }
+
+    /** False when matrix.api.payment-batch-path is not configured, or the backend answered it 404/405/501. */
+    public boolean supportsPaymentBatch() {
+        return !paymentBatchPath.isBlank() && capabilities.supports(paymentBatchPath);
+    }
+
+    /**
+     * POST {matrix.api.settlement-batch-path}: many cell reductions applied to one base blob in
+     * one call, producing one written_blob. The body, {"blob_name", "out_base", "container",
+     * "settlements": [{"node_a", "node_b", "amount"}]} with amount subtracted from the cell
+     * node_a -> node_b, is passed as a stream since it can run to millions of entries. The
+     * documented backend has no such endpoint: it is off unless the path is configured, and like
+     * the payment batch a 404/405/501 is remembered (see {@link #supportsSettlementBatch()}).
+     */
+    public Mono<Map<String, Object>> settlementBatchAsync(Flux<DataBuffer> body) {
+        return webClient.post()
+                .uri(settlementBatchPath)
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .body(BodyInserters.fromDataBuffers(body))
+                .retrieve()
+                .bodyToMono(MAP_TYPE)
+                .doOnError(WebClientResponseException.class, ex -> {
+                    int status = ex.getStatusCode().value();
+                    if (status == 404 || status == 405 || status == 501) {
+                        capabilities.unsupported(settlementBatchPath, "HTTP " + status);
+                        metrics.fallback("settlement_batch_unsupported");
+                    }
+                })
+                .onErrorMap(MatrixApiClient::toRemote);
+    }
+
+    /** False when matrix.api.settlement-batch-path is not configured, or the backend answered it 404/405/501. */
+    public boolean supportsSettlementBatch() {
+        return !settlementBatchPath.isBlank() && capabilities.supports(settlementBatchPath);
     }
 
     /** Alias for convenience/compat: some callers expect applyPayment(...) */
@@ -135,6 +271,118 @@ public class MatrixApiClient {
         }
     }
 
+    /**
+     * Streaming variant of {@link #listBlobs(String)}: the JSON array is tokenised chunk by chunk
+     * as it arrives and only the newest {@code perBase} names of each base are kept, so memory
+     * stays constant however large the container grows (and the 16 MB codec limit never applies).
+     *
+     * @param prefix  only names starting with this prefix are considered (null/blank = all)
+     * @param perBase how many newest versions to keep per base name
+     */
+    public BlobListing streamBlobs(String container, String prefix, int perBase) {
+        try (BlobListingCollector collector = new BlobListingCollector(prefix, perBase)) {
+            return webClient.get()
+                    .uri(uri -> uri.path("/matrix/blobs")
+                                   .queryParam("container", container)
+                                   .build())
+                    .accept(MediaType.APPLICATION_JSON)
+                    .retrieve()
+                    .bodyToFlux(DataBuffer.class)
+                    .doOnNext(buf -> {
+                        try {
+                            collector.feed(buf);
+                        } finally {
+                            DataBufferUtils.release(buf);
+                        }
+                    })
+                    .then(Mono.fromCallable(collector::finish))
+                    .block();
+        } catch (WebClientResponseException ex) {
+            if (ex.getStatusCode() == HttpStatus.NOT_FOUND) {
+                return BlobListing.EMPTY;
+            }
+            throw new MatrixRemoteException(ex.getStatusCode(), ex.getResponseBodyAsString(), ex);
+        } catch (Exception e) {
+            throw new MatrixRemoteException(HttpStatus.BAD_GATEWAY, "Matrix API unreachable", e);
+        }
+    }
+
+    /** GET /matrix/download?blob_name=...&container=... decoded into a {@link MatrixBlob} */
+    public MatrixBlob downloadMatrix(String blobName, String container) {
+        return await(downloadMatrixAsync(blobName, container));
+    }
+
+    /**
+     * Non-blocking variant of {@link #downloadMatrix(String, String)}. Timestamped blobs are
+     * served from {@link BlobDiskCache} (memory-mapped) after the first download. Either way the
+     * body is base64-decoded and parsed chunk by chunk ({@link MatrixBlobDecoder}), so only the
+     * compact matrix is retained and the 16 MB codec limit never applies. A body that is not a
+     * valid matrix fails with 502 like any other bad backend answer.
+     */
+    public Mono<MatrixBlob> downloadMatrixAsync(String blobName, String container) {
+        Mono<MatrixBlob> blob = blobCache.cacheable(blobName)
+                ? fromCache(blobName, container, true)
+                : Mono.defer(() -> decode(downloadBody(blobName, container)));
+        return blob.onErrorMap(e -> e instanceof IllegalArgumentException || e instanceof UncheckedIOException
+                ? new MatrixRemoteException(HttpStatus.BAD_GATEWAY, "Matrix blob could not be decoded: " + e.getMessage(), e)
+                : toRemote(e));
+    }
+
+    /**
+     * Decode the cached file. A file deleted between lookup and read (evicted, or removed by
+     * hand) is a miss: dropped and fetched once more. A file that does not decode is dropped
+     * too, so the next call downloads it again instead of failing on the same bytes.
+     */
+    private Mono<MatrixBlob> fromCache(String blobName, String container, boolean reload) {
+        return blobCache.get(container, blobName, () -> downloadBody(blobName, container))
+                .publishOn(Schedulers.boundedElastic())
+                .map(this::decodeFile)
+                .onErrorResume(e -> {
+                    if (e instanceof UncheckedIOException u && u.getCause() instanceof NoSuchFileException) {
+                        blobCache.evict(container, blobName);
+                        return reload ? fromCache(blobName, container, false) : Mono.error(e);
+                    }
+                    if (e instanceof IllegalArgumentException || e instanceof UncheckedIOException) {
+                        blobCache.evict(container, blobName);
+                    }
+                    return Mono.error(e);
+                });
+    }
+
+    private Flux<DataBuffer> downloadBody(String blobName, String container) {
+        MultiValueMap<String, String> params = new LinkedMultiValueMap<>();
+        params.add("blob_name", blobName);
+        if (container != null && !container.isBlank()) params.add("container", container);
+        return webClient.get()
+                .uri(uri -> uri.path(DOWNLOAD_PATH).queryParams(params).build())
+                .retrieve()
+                .bodyToFlux(DataBuffer.class);
+    }
+
+    private Mono<MatrixBlob> decode(Flux<DataBuffer> body) {
+        MatrixBlobDecoder decoder = new MatrixBlobDecoder(denseMaxNodes);
+        byte[] scratch = new byte[8192];
+        return body
+                .doOnNext(buf -> {
+                    try {
+                        while (buf.readableByteCount() > 0) {
+                            int len = Math.min(scratch.length, buf.readableByteCount());
+                            buf.read(scratch, 0, len);
+                            decoder.feed(scratch, 0, len);
+                        }
+                    } finally {
+                        DataBufferUtils.release(buf);
+                    }
+                })
+                .then(Mono.fromCallable(decoder::finish));
+    }
+
+    private MatrixBlob decodeFile(Path file) {
+        MatrixBlobDecoder decoder = new MatrixBlobDecoder(denseMaxNodes);
+        BlobDiskCache.readMapped(file, decoder::feed);
+        return decoder.finish();
+    }
+
     /**
      * Returns the *.b64 file with the newest timestamp found as the LAST occurrence
      * of pattern YYYYMMDD-HHMMSS right before the extension (e.g., 20251015-082727 in
@@ -142,15 +390,17 @@ public class MatrixApiClient {
      * If no filenames contain a timestamp, pick the lexicographically last *.b64 as a heuristic.
      */
     public String latestBlob(String container, String fallback) {
-        List<String> files = listBlobs(container);
+        return newestOf(listBlobs(container), fallback);
+    }
+
+    /** Selection part of {@link #latestBlob(String, String)}, without the listing call. */
+    static String newestOf(List<String> files, String fallback) {
         if (files == null || files.isEmpty()) return fallback;
 
         String byTimestamp = files.stream()
                 .filter(n -> n != null && n.endsWith(".b64"))
-                .map(n -> new String[]{ n, extractLastTimestampCompact(n) }) // [name, yyyymmddHHmmss or null]
-                .filter(arr -> arr[1] != null)
-                .max(Comparator.comparing((String[] arr) -> arr[1]).thenComparing(arr -> arr[0]))
-                .map(arr -> arr[0])
+                .filter(n -> BlobIndex.timestampOf(n) != 0L)
+                .max(Comparator.comparingLong(BlobIndex::timestampOf).thenComparing(Comparator.naturalOrder()))
                 .orElse(null);
 
         if (byTimestamp != null) return byTimestamp;
@@ -167,6 +417,27 @@ public class MatrixApiClient {
         return latestBlob(container, "initial-matrix.b64");
     }
 
+    /* ===================== ERROR MAPPING ===================== */
+
+    private static Throwable toRemote(Throwable e) {
+        if (e instanceof MatrixRemoteException) return e;
+        if (e instanceof WebClientResponseException ex) {
+            return new MatrixRemoteException(ex.getStatusCode(), ex.getResponseBodyAsString(), ex);
+        }
+        return new MatrixRemoteException(HttpStatus.BAD_GATEWAY, "Matrix API unreachable", e);
+    }
+
+    /** Blocking bridge for the synchronous API; failures are always MatrixRemoteException. */
+    private static <T> T await(Mono<T> mono) {
+        try {
+            return mono.block();
+        } catch (MatrixRemoteException e) {
+            throw e;
+        } catch (Exception e) {
+            throw (MatrixRemoteException) toRemote(e);
+        }
+    }
+
     /* ===================== FILENAME HELPERS (NEW) ===================== */
 
     /**
@@ -201,17 +472,4 @@ public class MatrixApiClient {
 
         return stem + "-" + now.format(TS_FMT) + ext;
     }
-
-    /**
-     * Extract the *last* "YYYYMMDD-HHMMSS" immediately before the extension and return it
-     * compacted as "yyyyMMddHHmmss" for lexicographic comparison. Returns null if absent.
-     */
-    private String extractLastTimestampCompact(String name) {
-        if (name == null) return null;
-        Matcher m = LAST_TS_BEFORE_EXT.matcher(name);
-        String last = null;
-        while (m.find()) last = m.group(1); // take the last timestamp before extension
-        if (last == null) return null;
-        return last.replace("-", ""); // yyyyMMddHHmmss
-    }
 }
@@ -0,0 +1,118 @@
+package com.example.amospringboot.matrix;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Remembers which HTTP method each backend endpoint accepts, per base URL, and which optional
+ * endpoints (e.g. batch payments) the backend does not have at all.
+ *
+ * The first call either probes with OPTIONS (matrix.api.capabilities.probe, reads the Allow
+ * header) or just uses the preferred method; a 405 flips the remembered method via
+ * {@link #learn}. Either way the answer is cached for matrix.api.capabilities.ttl, so steady
+ * state is one round trip per call instead of POST -> 405 -> GET every time.
+ */
+@Component
+public class MatrixCapabilities {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MatrixCapabilities.class);
+
+    private final WebClient webClient;
+    private final MatrixMetrics metrics;
+    private final String baseUrl;
+    private final boolean probe;
+    private final long ttlNanos;
+
+    private final ConcurrentMap<String, Learned> methods = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Mono<HttpMethod>> probes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Long> missing = new ConcurrentHashMap<>();
+
+    public MatrixCapabilities(WebClient matrixWebClient,
+                              MatrixMetrics metrics,
+                              @Value("${matrix.api.base-url}") String baseUrl,
+                              @Value("${matrix.api.capabilities.probe:true}") boolean probe,
+                              @Value("${matrix.api.capabilities.ttl:1h}") Duration ttl) {
+        this.webClient = matrixWebClient;
+        this.metrics = metrics;
+        this.baseUrl = baseUrl;
+        this.probe = probe;
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    /** Method to use for {@code path}; {@code preferred} unless the backend told us otherwise. */
+    public Mono<HttpMethod> method(String path, HttpMethod preferred) {
+        Learned l = methods.get(key(path));
+        if (l != null && System.nanoTime() - l.at < ttlNanos) {
+            return Mono.just(l.method);
+        }
+        if (!probe) {
+            return Mono.just(preferred);
+        }
+        // Concurrent first callers share one probe
+        return probes.computeIfAbsent(key(path), k -> probe(path, preferred)
+                .doFinally(signal -> probes.remove(k))
+                .cache());
+    }
+
+    private Mono<HttpMethod> probe(String path, HttpMethod preferred) {
+        return webClient.options()
+                .uri(path)
+                .retrieve()
+                .toBodilessEntity()
+                .map(resp -> {
+                    Set<HttpMethod> allow = resp.getHeaders().getAllow();
+                    HttpMethod m = allow.isEmpty() || allow.contains(preferred)
+                            ? preferred
+                            : (allow.contains(HttpMethod.GET) ? HttpMethod.GET : preferred);
+                    remember(path, m, "probe allow=" + allow);
+                    return m;
+                })
+                // OPTIONS not supported / unreachable: fall back to learning from a 405
+                .onErrorResume(ex -> {
+                    metrics.fallback("capability_probe_failed");
+                    remember(path, preferred, "probe failed: " + ex.getClass().getSimpleName());
+                    return Mono.just(preferred);
+                });
+    }
+
+    /** Record that {@code method} is what works for {@code path} (e.g. after a 405 on the other one). */
+    public void learn(String path, HttpMethod method, String reason) {
+        remember(path, method, reason);
+    }
+
+    /** False while {@code path} is remembered as missing (404/405/501), for at most the ttl. */
+    public boolean supports(String path) {
+        Long at = missing.get(key(path));
+        return at == null || System.nanoTime() - at >= ttlNanos;
+    }
+
+    /** Record that the backend has no {@code path}; callers use their fallback until the ttl expires. */
+    public void unsupported(String path, String reason) {
+        if (missing.put(key(path), System.nanoTime()) == null) {
+            LOG.info("MATRIX_CAPABILITY base={} path={} unsupported reason={}", baseUrl, path, reason);
+        }
+    }
+
+    private void remember(String path, HttpMethod method, String reason) {
+        Learned previous = methods.put(key(path), new Learned(method, System.nanoTime()));
+        if (previous == null || !previous.method.equals(method)) {
+            LOG.info("MATRIX_CAPABILITY base={} path={} method={} reason={}", baseUrl, path, method, reason);
+        }
+    }
+
+    private String key(String path) {
+        return baseUrl + path;
+    }
+
+    private record Learned(HttpMethod method, long at) {}
+}
@@ -1,20 +1,28 @@
 package com.example.amospringboot.matrix;
 
-import org.springframework.http.ResponseEntity;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.ProblemDetail;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 
-import java.util.Map;
+import java.net.URI;
 
+/**
+ * Maps backend failures to RFC 7807 ProblemDetail, like GlobalErrorHandler does for
+ * everything else. Ordered first so GlobalErrorHandler's catch-all Exception handler
+ * does not shadow it (advice order is otherwise unspecified).
+ */
 @RestControllerAdvice
+@Order(Ordered.HIGHEST_PRECEDENCE)
 public class MatrixExceptionHandler {
     @ExceptionHandler(MatrixRemoteException.class)
-    public ResponseEntity<Map<String,Object>> handleRemote(MatrixRemoteException ex) {
-        return ResponseEntity.status(ex.getStatusCode())
-                .body(Map.of(
-                    "error", "matrix_api_error",
-                    "status", ex.getStatusCode().value(),
-                    "message", ex.getRemoteBody()
-                ));
+    public ProblemDetail handleRemote(MatrixRemoteException ex) {
+        var pd = ProblemDetail.forStatusAndDetail(ex.getStatusCode(),
+                ex.getRemoteBody() != null ? ex.getRemoteBody() : "Matrix API error");
+        pd.setTitle("Matrix API error");
+        pd.setType(URI.create("about:blank#matrix-api-error"));
+        pd.setProperty("error", "matrix_api_error");
+        return pd;
     }
 }
@@ -0,0 +1,90 @@
+package com.example.amospringboot.matrix;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Meters for the matrix backend.
+ *
+ * matrix.backend.requests{operation, outcome, status} times every call made through the
+ * matrix WebClient up to the response status (listBlobs, analyze, download, findCycle,
+ * payment, paymentBatch, capabilities); histogram buckets and SLOs come from management.metrics.distribution.*.
+ * matrix.fallbacks{type} counts degraded paths (FALLBACK_BLOB, 405 retry, failed probe).
+ */
+@Component
+public class MatrixMetrics {
+
+    public static final String REQUESTS = "matrix.backend.requests";
+
+    private final MeterRegistry registry;
+
+    public MatrixMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /** Timer filter for the matrix WebClient. */
+    public ExchangeFilterFunction filter() {
+        return (request, next) -> {
+            String operation = operationOf(request);
+            return Mono.defer(() -> {
+                long start = System.nanoTime();
+                return next.exchange(request)
+                        .doOnSuccess(resp -> record(operation, start,
+                                resp == null ? "UNKNOWN" : outcomeOf(resp.statusCode().value()),
+                                resp == null ? "NONE" : String.valueOf(resp.statusCode().value())))
+                        .doOnError(ex -> record(operation, start, "UNKNOWN",
+                                ex instanceof TimeoutException || ex.getCause() instanceof TimeoutException
+                                        ? "TIMEOUT" : "IO_ERROR"))
+                        .doOnCancel(() -> record(operation, start, "UNKNOWN", "CANCELLED"));
+            });
+        };
+    }
+
+    /** One degraded-path event, e.g. {@code fallback("fallback_blob")}. */
+    public void fallback(String type) {
+        Counter.builder("matrix.fallbacks")
+                .description("Matrix calls served by a fallback path")
+                .tag("type", type)
+                .register(registry)
+                .increment();
+    }
+
+    private void record(String operation, long start, String outcome, String status) {
+        Timer.builder(REQUESTS)
+                .description("Matrix backend calls (until response status)")
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .tag("status", status)
+                .register(registry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    static String operationOf(ClientRequest request) {
+        if (HttpMethod.OPTIONS.equals(request.method())) return "capabilities";
+        String path = request.url().getPath();
+        if (path.endsWith("/matrix/blobs"))      return "listBlobs";
+        if (path.endsWith("/matrix/analyze"))    return "analyze";
+        if (path.endsWith("/matrix/download"))   return "download";
+        if (path.endsWith("/matrix/cycle/find")) return "findCycle";
+        if (path.endsWith("/payment/batch"))     return "paymentBatch";
+        if (path.contains("payment"))            return "payment";
+        return "other";
+    }
+
+    private static String outcomeOf(int status) {
+        if (status < 200) return "INFORMATIONAL";
+        if (status < 300) return "SUCCESS";
+        if (status < 400) return "REDIRECTION";
+        if (status < 500) return "CLIENT_ERROR";
+        return "SERVER_ERROR";
+    }
+}
@@ -0,0 +1,292 @@
+package com.example.amospringboot.matrix;
+
+import com.example.amospringboot.matrix.dto.PaymentRequest;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Single writer per container for payments.
+ *
+ * Without it, two concurrent payments both read the same "latest" blob and both write a new
+ * version from it, so one update is lost. Here callers enqueue and get a future; one drain per
+ * container at a time waits matrix.payments.pipeline.window after the first arrival, takes up
+ * to max-batch queued payments (same out_base) and applies them against the blob the previous
+ * drain wrote: in one backend batch call when the backend has one, else one by one, chained.
+ * FIFO order is kept within a container. Nothing blocks: the drain is a Reactor chain.
+ *
+ * Every applied payment is also handed to {@link CycleIndexes} (off the event loop); while the
+ * container's index is current, the result carries "cycle": whether the payment closed one, and which.
+ *
+ * Other writers that must not interleave with payments (settle-all) join the same lane with
+ * {@link #exclusive}: they run alone, in queue order, on the latest blob.
+ */
+@Component
+public class PaymentPipeline {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PaymentPipeline.class);
+
+    private final MatrixApiClient client;
+    private final LatestBlobResolver latestBlobResolver;
+    private final CycleIndexes cycleIndexes;
+    private final boolean enabled;
+    private final Duration window;
+    private final int maxBatch;
+    private final int maxQueue;
+
+    private final ConcurrentMap<String, Lane> lanes = new ConcurrentHashMap<>();
+
+    private final DistributionSummary batchSizes;
+    private final Counter rejected;
+
+    public PaymentPipeline(MatrixApiClient client,
+                           LatestBlobResolver latestBlobResolver,
+                           CycleIndexes cycleIndexes,
+                           MeterRegistry registry,
+                           @Value("${matrix.payments.pipeline.enabled:true}") boolean enabled,
+                           @Value("${matrix.payments.pipeline.window:5ms}") Duration window,
+                           @Value("${matrix.payments.pipeline.max-batch:256}") int maxBatch,
+                           @Value("${matrix.payments.pipeline.max-queue:10000}") int maxQueue) {
+        this.client = client;
+        this.latestBlobResolver = latestBlobResolver;
+        this.cycleIndexes = cycleIndexes;
+        this.enabled = enabled;
+        this.window = window;
+        this.maxBatch = Math.max(1, maxBatch);
+        this.maxQueue = maxQueue;
+        this.batchSizes = DistributionSummary.builder("matrix.payments.pipeline.batch")
+                .description("Payments applied per pipeline drain")
+                .register(registry);
+        this.rejected = Counter.builder("matrix.payments.pipeline.rejected")
+                .description("Payments refused because the container queue was full")
+                .register(registry);
+    }
+
+    /**
+     * Queue one payment. Its blob_name is only the fallback base: the pipeline applies it to
+     * the container's true latest version. Errors are MatrixRemoteException, as from the client.
+     */
+    public Mono<Map<String, Object>> submit(PaymentRequest req) {
+        if (!enabled) {
+            String base = req.getBlob_name();
+            return client.paymentAsync(req).flatMap(result -> {
+                String w = written(req.getContainer(), result);
+                return cycleIndexes.applied(req.getContainer(), base, w, List.of(req))
+                        .map(cycles -> withCycle(result, cycles, 0))
+                        .defaultIfEmpty(result);
+            });
+        }
+        return Mono.defer(() -> {
+            Lane lane = lanes.computeIfAbsent(req.getContainer(), Lane::new);
+            if (lane.size.incrementAndGet() > maxQueue) {
+                lane.size.decrementAndGet();
+                rejected.increment();
+                return Mono.error(new MatrixRemoteException(HttpStatus.SERVICE_UNAVAILABLE,
+                        "Payment queue full for container " + req.getContainer(), null));
+            }
+            Pending p = new Pending(req, null, new CompletableFuture<>());
+            lane.queue.add(p);
+            schedule(lane);
+            return Mono.fromFuture(p.result);
+        });
+    }
+
+    /**
+     * Run {@code write} alone in the container's lane: after every payment queued before it,
+     * before any queued after it, on the latest blob ({@code fallbackBase} if none is known).
+     * {@code write} gets that blob name and returns the backend result; an ok written_blob
+     * becomes the new latest. With the pipeline disabled it just runs on the latest blob.
+     */
+    public Mono<Map<String, Object>> exclusive(String container, String fallbackBase,
+                                               Function<String, Mono<Map<String, Object>>> write) {
+        if (!enabled) {
+            return Mono.fromCallable(() -> latestBlobResolver.latest(container, fallbackBase))
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .flatMap(write)
+                    .doOnNext(result -> written(container, result));
+        }
+        return Mono.defer(() -> {
+            Lane lane = lanes.computeIfAbsent(container, Lane::new);
+            if (lane.size.incrementAndGet() > maxQueue) {
+                lane.size.decrementAndGet();
+                rejected.increment();
+                return Mono.error(new MatrixRemoteException(HttpStatus.SERVICE_UNAVAILABLE,
+                        "Payment queue full for container " + container, null));
+            }
+            Pending p = new Pending(null, new Exclusive(fallbackBase, write), new CompletableFuture<>());
+            lane.queue.add(p);
+            schedule(lane);
+            return Mono.fromFuture(p.result);
+        });
+    }
+
+    private void schedule(Lane lane) {
+        if (!lane.draining.compareAndSet(false, true)) return;
+        Mono.delay(window)
+                .then(Mono.defer(() -> drain(lane)))
+                .onErrorResume(ex -> {
+                    LOG.error("PAYMENT_PIPELINE_DRAIN_FAILED container={}", lane.container, ex);
+                    return Mono.empty();
+                })
+                .doFinally(signal -> {
+                    lane.draining.set(false);
+                    // a payment enqueued while we were finishing would otherwise wait for the next submit
+                    if (!lane.queue.isEmpty()) schedule(lane);
+                })
+                .subscribe();
+    }
+
+    /** Take one batch and apply it; the lane is not drained again until this completes. */
+    private Mono<Void> drain(Lane lane) {
+        Pending first = lane.queue.peek();
+        if (first != null && first.exclusive != null) {
+            lane.queue.poll();
+            lane.size.decrementAndGet();
+            return runExclusive(lane, first);
+        }
+        List<Pending> batch = new ArrayList<>();
+        while (first != null && batch.size() < maxBatch) {
+            Pending p = lane.queue.peek();
+            if (p == null || p.req == null || !Objects.equals(p.req.getOut_base(), first.req.getOut_base())) break;
+            batch.add(lane.queue.poll());
+            lane.size.decrementAndGet();
+        }
+        if (batch.isEmpty()) return Mono.empty();
+        batchSizes.record(batch.size());
+
+        String fallback = batch.get(batch.size() - 1).req.getBlob_name();
+        // may list the container on a cold cache: keep it off the timer thread
+        return Mono.fromCallable(() -> latestBlobResolver.latest(lane.container, fallback))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(base -> batch.size() > 1 && client.supportsPaymentBatch()
+                        ? applyBatch(lane, base, batch)
+                        : applyOneByOne(lane, base, batch, 0))
+                .doOnError(ex -> batch.forEach(p -> p.result.completeExceptionally(ex)));
+    }
+
+    private Mono<Void> runExclusive(Lane lane, Pending p) {
+        return Mono.fromCallable(() -> latestBlobResolver.latest(lane.container, p.exclusive.fallbackBase()))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(p.exclusive.write())
+                .defaultIfEmpty(Map.of())
+                .doOnNext(result -> {
+                    written(lane.container, result);
+                    p.result.complete(result);
+                })
+                .doOnError(p.result::completeExceptionally)
+                .then();
+    }
+
+    private Mono<Void> applyBatch(Lane lane, String base, List<Pending> batch) {
+        List<Map<String, Object>> payments = new ArrayList<>(batch.size());
+        for (Pending p : batch) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("node_a", p.req.getNode_a());
+            m.put("node_b", p.req.getNode_b());
+            m.put("amount", p.req.getAmount());
+            payments.add(m);
+        }
+        String outBase = batch.get(0).req.getOut_base();
+        return client.paymentBatchAsync(lane.container, base, outBase, payments)
+                .defaultIfEmpty(Map.of())
+                .flatMap(result -> {
+                    String w = written(lane.container, result);
+                    return cycleIndexes.applied(lane.container, base, w, batch.stream().map(Pending::req).toList())
+                            .map(Optional::of)
+                            .defaultIfEmpty(Optional.empty())
+                            .doOnNext(cycles -> {
+                                for (int i = 0; i < batch.size(); i++) {
+                                    Map<String, Object> own = withCycle(result, cycles.orElse(null), i);
+                                    if (own == result) own = new LinkedHashMap<>(result);
+                                    own.put("batched", batch.size());
+                                    batch.get(i).result.complete(own);
+                                }
+                            });
+                })
+                .then()
+                .onErrorResume(ex -> !client.supportsPaymentBatch()
+                        ? applyOneByOne(lane, base, batch, 0)
+                        : Mono.fromRunnable(() -> batch.forEach(p -> p.result.completeExceptionally(ex))));
+    }
+
+    /** Sequential, each payment on the blob the previous one wrote; a failure only fails its own future. */
+    private Mono<Void> applyOneByOne(Lane lane, String base, List<Pending> batch, int i) {
+        if (i >= batch.size()) return Mono.empty();
+        Pending p = batch.get(i);
+        p.req.setBlob_name(base);
+        return client.paymentAsync(p.req)
+                .defaultIfEmpty(Map.of())
+                .flatMap(result -> {
+                    String w = written(lane.container, result);
+                    return cycleIndexes.applied(lane.container, base, w, List.of(p.req))
+                            .map(cycles -> withCycle(result, cycles, 0))
+                            .defaultIfEmpty(result)
+                            .map(out -> {
+                                p.result.complete(out);
+                                return w != null ? w : base;
+                            });
+                })
+                .onErrorResume(ex -> {
+                    p.result.completeExceptionally(ex);
+                    return Mono.just(base);
+                })
+                .flatMap(next -> applyOneByOne(lane, next, batch, i + 1));
+    }
+
+    /** Written blob of an ok result (and tell the resolver), else null. */
+    private String written(String container, Map<String, Object> result) {
+        Object blob = result.get("written_blob");
+        if (!"ok".equalsIgnoreCase(String.valueOf(result.get("status"))) || blob == null) return null;
+        latestBlobResolver.onBlobWritten(container, String.valueOf(blob));
+        return String.valueOf(blob);
+    }
+
+    /** {@code result} plus "cycle" from {@link CycleIndexes#applied} for payment {@code i}, if there is one. */
+    private static Map<String, Object> withCycle(Map<String, Object> result, List<Map<String, Object>> cycles, int i) {
+        if (cycles == null) return result;
+        Map<String, Object> out = new LinkedHashMap<>(result);
+        out.put("cycle", cycles.get(i));
+        return out;
+    }
+
+    private static final class Lane {
+        final String container;
+        final Queue<Pending> queue = new ConcurrentLinkedQueue<>();
+        final AtomicInteger size = new AtomicInteger();
+        final AtomicBoolean draining = new AtomicBoolean();
+
+        Lane(String container) {
+            this.container = container;
+        }
+    }
+
+    /** A queued payment ({@code req}) or exclusive write ({@code exclusive}); exactly one is set. */
+    private record Pending(@Nullable PaymentRequest req, @Nullable Exclusive exclusive,
+                           CompletableFuture<Map<String, Object>> result) {}
+
+    private record Exclusive(String fallbackBase, Function<String, Mono<Map<String, Object>>> write) {}
+}
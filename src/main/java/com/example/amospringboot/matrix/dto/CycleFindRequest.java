@@ -13,6 +13,7 @@ public class CycleFindRequest {
     private String container;
     private Boolean apply_settlement; // optional
     private String out_base;          // optional
+    private String idempotency_key;   // server-issued by the form
 
     public String getBlob_name() { return blob_name; }
     public void setBlob_name(String blob_name) { this.blob_name = blob_name; }
@@ -26,4 +27,6 @@ public class CycleFindRequest {
     public void setApply_settlement(Boolean apply_settlement) { this.apply_settlement = apply_settlement; }
     public String getOut_base() { return out_base; }
     public void setOut_base(String out_base) { this.out_base = out_base; }
+    public String getIdempotency_key() { return idempotency_key; }
+    public void setIdempotency_key(String idempotency_key) { this.idempotency_key = idempotency_key; }
 }
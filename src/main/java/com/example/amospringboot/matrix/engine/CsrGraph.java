@@ -0,0 +1,232 @@
+package com.example.amospringboot.matrix.engine;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable obligation matrix in compressed sparse row form.
+ *
+ * Nodes are dense ints (request node order first, then names that only appear in edges);
+ * row i's outgoing edges are targets[offsets[i] .. offsets[i+1]), sorted by target index.
+ * Amounts are exact: every weight is stored unscaled as a long at one common decimal scale,
+ * so bottlenecks compare and convert back to BigDecimal without rounding.
+ *
+ * Like a matrix cell, one ordered pair has one amount: parallel edges are summed, and
+ * cells that end up &lt;= 0 are not edges.
+ */
+public final class CsrGraph {
+
+    private final String[] names;
+    private final int[] offsets;
+    private final int[] targets;
+    private final long[] amounts;
+    private final int scale;
+
+    CsrGraph(String[] names, int[] offsets, int[] targets, long[] amounts, int scale) {
+        this.names = names;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.amounts = amounts;
+        this.scale = scale;
+    }
+
+    public static Builder builder(List<String> nodes, int expectedEdges) {
+        return new Builder(nodes, expectedEdges);
+    }
+
+    public int nodeCount() { return names.length; }
+
+    public int edgeCount() { return targets.length; }
+
+    public String name(int node) { return names[node]; }
+
+    /** Index of {@code name}, or -1. Linear; only meant for resolving a handful of request nodes. */
+    public int indexOf(String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) return i;
+        }
+        return -1;
+    }
+
+    public int rowStart(int node) { return offsets[node]; }
+
+    public int rowEnd(int node) { return offsets[node + 1]; }
+
+    public int target(int edge) { return targets[edge]; }
+
+    public long amount(int edge) { return amounts[edge]; }
+
+    /** Decimal scale of every amount. */
+    public int scale() { return scale; }
+
+    /** Edge index of {@code from -> to}, or -1 (binary search in the sorted row). */
+    public int edge(int from, int to) {
+        int i = Arrays.binarySearch(targets, offsets[from], offsets[from + 1], to);
+        return i >= 0 ? i : -1;
+    }
+
+    /** Unscaled amount back to its decimal value. */
+    public BigDecimal toDecimal(long unscaled) {
+        return BigDecimal.valueOf(unscaled, scale);
+    }
+
+    /**
+     * Rows sorted by target, parallel edges summed, cells &lt;= 0 dropped. Edge e is
+     * {@code from[e] -> to[e]} of {@code unscaled[e]} at {@code scale}, for e &lt; {@code m};
+     * {@code names} is the whole node dictionary.
+     *
+     * @throws IllegalArgumentException if a summed cell does not fit a long
+     */
+    static CsrGraph fromEdges(String[] names, int[] from, int[] to, long[] unscaled, int m, int scale) {
+        int n = names.length;
+
+        // Two stable counting passes (by target, then by source) give rows sorted by target.
+        int[] byTarget = countingSort(identity(m), to, n);
+        int[] order = countingSort(byTarget, from, n);
+
+        int[] offsets = new int[n + 1];
+        int[] targets = new int[m];
+        long[] amounts = new long[m];
+        int out = 0;
+        int prevFrom = -1;
+        int prevTo = -1;
+        try {
+            for (int k = 0; k < m; k++) {
+                int e = order[k];
+                long v = unscaled[e];
+                if (from[e] == prevFrom && to[e] == prevTo) {
+                    amounts[out - 1] = Math.addExact(amounts[out - 1], v);
+                } else {
+                    offsets[from[e] + 1]++;
+                    targets[out] = to[e];
+                    amounts[out] = v;
+                    out++;
+                    prevFrom = from[e];
+                    prevTo = to[e];
+                }
+            }
+        } catch (ArithmeticException ex) {
+            throw new IllegalArgumentException("Summed edge amounts exceed the exact range at scale " + scale, ex);
+        }
+
+        // Drop cells that are not obligations (<= 0 after summing), then prefix-sum the rows.
+        int kept = 0;
+        int e = 0;
+        for (int row = 0; row < n; row++) {
+            int len = offsets[row + 1];
+            int keptRow = 0;
+            for (int j = 0; j < len; j++, e++) {
+                if (amounts[e] > 0) {
+                    targets[kept] = targets[e];
+                    amounts[kept] = amounts[e];
+                    kept++;
+                    keptRow++;
+                }
+            }
+            offsets[row + 1] = offsets[row] + keptRow;
+        }
+
+        return new CsrGraph(names, offsets,
+                Arrays.copyOf(targets, kept), Arrays.copyOf(amounts, kept), scale);
+    }
+
+    private static int[] identity(int m) {
+        int[] a = new int[m];
+        for (int i = 0; i < m; i++) a[i] = i;
+        return a;
+    }
+
+    private static int[] countingSort(int[] items, int[] key, int buckets) {
+        int[] start = new int[buckets + 1];
+        for (int item : items) start[key[item] + 1]++;
+        for (int b = 0; b < buckets; b++) start[b + 1] += start[b];
+        int[] sorted = new int[items.length];
+        for (int item : items) sorted[start[key[item]]++] = item;
+        return sorted;
+    }
+
+    public static final class Builder {
+
+        /** Largest scale at which every long-sized amount still has headroom for summing. */
+        private static final int MAX_PLAIN_SCALE = 9;
+
+        private final Map<String, Integer> index;
+        private String[] names;
+        private int nodeCount;
+
+        private int[] from;
+        private int[] to;
+        private BigDecimal[] weight;
+        private int edgeCount;
+
+        private Builder(List<String> nodes, int expectedEdges) {
+            this.index = new HashMap<>(Math.max(16, nodes.size() * 2));
+            this.names = new String[Math.max(16, nodes.size())];
+            for (String n : nodes) node(n);
+            int cap = Math.max(16, expectedEdges);
+            this.from = new int[cap];
+            this.to = new int[cap];
+            this.weight = new BigDecimal[cap];
+        }
+
+        private int node(String name) {
+            Integer i = index.get(name);
+            if (i != null) return i;
+            if (nodeCount == names.length) names = Arrays.copyOf(names, nodeCount * 2);
+            names[nodeCount] = name;
+            index.put(name, nodeCount);
+            return nodeCount++;
+        }
+
+        public Builder edge(String source, String target, BigDecimal amount) {
+            if (edgeCount == from.length) {
+                int cap = edgeCount * 2;
+                from = Arrays.copyOf(from, cap);
+                to = Arrays.copyOf(to, cap);
+                weight = Arrays.copyOf(weight, cap);
+            }
+            from[edgeCount] = node(source);
+            to[edgeCount] = node(target);
+            weight[edgeCount] = amount;
+            edgeCount++;
+            return this;
+        }
+
+        /**
+         * @throws IllegalArgumentException if an amount (or a summed cell) does not fit a long
+         *                                  at the common scale
+         */
+        public CsrGraph build() {
+            int n = nodeCount;
+            int m = edgeCount;
+
+            int scale = 0;
+            for (int e = 0; e < m; e++) {
+                scale = Math.max(scale, weight[e].scale());
+            }
+            if (scale > MAX_PLAIN_SCALE) {
+                // e.g. "1.50000000000000000000": only normalise when the plain scale would overflow
+                scale = 0;
+                for (int e = 0; e < m; e++) {
+                    scale = Math.max(scale, weight[e].stripTrailingZeros().scale());
+                }
+            }
+
+            // Convert in insertion order (sequential over the BigDecimals), permute primitives below
+            long[] unscaled = new long[m];
+            try {
+                for (int e = 0; e < m; e++) {
+                    // scaleByPowerOfTen keeps the compact long form (unscaledValue() would build a BigInteger)
+                    unscaled[e] = weight[e].scaleByPowerOfTen(scale).longValueExact();
+                }
+            } catch (ArithmeticException ex) {
+                throw new IllegalArgumentException("Edge amount exceeds the exact range at scale " + scale, ex);
+            }
+
+            return fromEdges(Arrays.copyOf(names, n), from, to, unscaled, m, scale);
+        }
+    }
+}
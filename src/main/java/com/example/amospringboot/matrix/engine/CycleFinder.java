@@ -0,0 +1,124 @@
+package com.example.amospringboot.matrix.engine;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Cycle search over a {@link CsrGraph}. Allocation is a few int arrays of node count; no
+ * boxing, no maps. Results are deterministic: rows are visited in target-index order.
+ */
+public final class CycleFinder {
+
+    private CycleFinder() {}
+
+    /**
+     * A cycle as node indices in order; the closing edge from the last node back to the
+     * first is implied. {@code bottleneck} is the smallest amount on the cycle (unscaled,
+     * see {@link CsrGraph#toDecimal}).
+     */
+    public record Cycle(int[] nodes, long bottleneck) {}
+
+    /**
+     * Shortest cycle that starts with the edge {@code a -> b}: that edge plus a
+     * fewest-hops path back from {@code b} to {@code a} (BFS).
+     */
+    public static Optional<Cycle> through(CsrGraph g, int a, int b) {
+        if (a < 0 || b < 0 || a == b) return Optional.empty();
+        int first = g.edge(a, b);
+        if (first < 0) return Optional.empty();
+
+        int n = g.nodeCount();
+        int[] parentEdge = new int[n];
+        int[] parent = new int[n];
+        Arrays.fill(parent, -1);
+        int[] queue = new int[n];
+        int head = 0;
+        int tail = 0;
+
+        queue[tail++] = b;
+        parent[b] = b;
+        parent[a] = -2;     // reached only as the goal, never expanded
+        while (head < tail) {
+            int u = queue[head++];
+            for (int e = g.rowStart(u), end = g.rowEnd(u); e < end; e++) {
+                int v = g.target(e);
+                if (v == a) {
+                    parentEdge[a] = e;
+                    parent[a] = u;
+                    return Optional.of(walkBack(g, a, b, first, parent, parentEdge));
+                }
+                if (parent[v] == -1) {
+                    parent[v] = u;
+                    parentEdge[v] = e;
+                    queue[tail++] = v;
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static Cycle walkBack(CsrGraph g, int a, int b, int first, int[] parent, int[] parentEdge) {
+        int len = 1;
+        for (int v = a; v != b; v = parent[v]) len++;
+        int[] nodes = new int[len];
+        long bottleneck = g.amount(first);
+        // nodes = a, b, ..., (predecessor of a)
+        nodes[0] = a;
+        int i = len - 1;
+        for (int v = parent[a], e = parentEdge[a]; ; e = parentEdge[v], v = parent[v]) {
+            bottleneck = Math.min(bottleneck, g.amount(e));
+            nodes[i--] = v;
+            if (v == b) break;
+        }
+        return new Cycle(nodes, bottleneck);
+    }
+
+    /**
+     * First cycle found by an iterative DFS that starts at node 0, 1, ... in order,
+     * or empty if the graph is acyclic.
+     */
+    public static Optional<Cycle> any(CsrGraph g) {
+        int n = g.nodeCount();
+        byte[] state = new byte[n];         // 0 = new, 1 = on stack, 2 = done
+        int[] stack = new int[n];
+        int[] cursor = new int[n];          // next edge to try per stacked node
+        int[] viaEdge = new int[n];         // edge used to enter the node
+
+        for (int root = 0; root < n; root++) {
+            if (state[root] != 0) continue;
+            int top = 0;
+            stack[0] = root;
+            cursor[0] = g.rowStart(root);
+            state[root] = 1;
+            while (top >= 0) {
+                int u = stack[top];
+                if (cursor[top] == g.rowEnd(u)) {
+                    state[u] = 2;
+                    top--;
+                    continue;
+                }
+                int e = cursor[top]++;
+                int v = g.target(e);
+                if (state[v] == 1) {
+                    return Optional.of(fromStack(g, stack, viaEdge, top, v, e));
+                }
+                if (state[v] == 0) {
+                    state[v] = 1;
+                    stack[++top] = v;
+                    cursor[top] = g.rowStart(v);
+                    viaEdge[top] = e;
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static Cycle fromStack(CsrGraph g, int[] stack, int[] viaEdge, int top, int start, int closing) {
+        int from = top;
+        while (stack[from] != start) from--;
+        int[] nodes = Arrays.copyOfRange(stack, from, top + 1);
+        long bottleneck = g.amount(closing);
+        for (int i = from + 1; i <= top; i++) bottleneck = Math.min(bottleneck, g.amount(viaEdge[i]));
+        return new Cycle(nodes, bottleneck);
+    }
+}
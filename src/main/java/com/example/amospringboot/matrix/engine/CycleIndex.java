@@ -0,0 +1,429 @@
+package com.example.amospringboot.matrix.engine;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Obligation graph kept current under payments, i.e. under edge insertions and increases,
+ * with its strongly connected components.
+ *
+ * A new edge u -> v closes a cycle exactly when it leaves u and v in one component. Components
+ * are a union-find over nodes, and the condensation (a DAG) carries a topological order
+ * (Pearce-Kelly): if u's component already precedes v's, nothing can have changed and the
+ * insertion is O(1). Otherwise only the components ordered between the two are searched,
+ * forward from v and backward from u; if the searches meet, everything on the paths merges into
+ * one component, and in any case the affected components are renumbered inside the order
+ * slots they already held. Increasing an existing cell, or an edge inside one component, is
+ * O(1). {@link #add} then reports the shortest cycle through the new edge (bidirectional BFS
+ * inside the component).
+ *
+ * Only additions are incremental: a write that lowers cells (a settlement) is followed by a
+ * rebuild from the blob ({@link #of}). Not thread-safe.
+ */
+public final class CycleIndex {
+
+    private final Map<String, Integer> ids;
+    private String[] names;
+    private int n;
+    private int scale;
+
+    // adjacency, append-only: out rows with amounts, in rows for the backward search
+    private int[][] outTo;
+    private long[][] outAmount;
+    private int[] outLength;
+    private int[][] inFrom;
+    private int[] inLength;
+    private final CellTable cells = new CellTable();
+
+    // components: union-find parent, circular member lists, topological order per representative
+    private int[] parent;
+    private int[] nextMember;
+    private int[] ord;
+    private int nextOrd;
+
+    // search scratch: mark[c] == epoch means visited in the current search
+    private int[] forwardMark;
+    private int[] backwardMark;
+    private int epoch;
+    private int[] stack;
+
+    private CycleIndex(int capacity, int scale) {
+        int cap = Math.max(16, capacity);
+        this.ids = new HashMap<>(cap * 2);
+        this.names = new String[cap];
+        this.scale = scale;
+        this.outTo = new int[cap][];
+        this.outAmount = new long[cap][];
+        this.outLength = new int[cap];
+        this.inFrom = new int[cap][];
+        this.inLength = new int[cap];
+        this.parent = new int[cap];
+        this.nextMember = new int[cap];
+        this.ord = new int[cap];
+        this.forwardMark = new int[cap];
+        this.backwardMark = new int[cap];
+        this.stack = new int[cap];
+    }
+
+    /** Index over every edge of {@code g}: components by Tarjan, ordered along the condensation. */
+    public static CycleIndex of(CsrGraph g) {
+        int nodes = g.nodeCount();
+        CycleIndex index = new CycleIndex(nodes, g.scale());
+        for (int i = 0; i < nodes; i++) index.node(g.name(i));
+        for (int u = 0; u < nodes; u++) {
+            for (int e = g.rowStart(u), end = g.rowEnd(u); e < end; e++) index.append(u, g.target(e), g.amount(e));
+        }
+
+        int[] comp = new int[nodes];
+        int count = CycleSettlement.stronglyConnected(g, comp);
+        int[] rep = new int[count];
+        Arrays.fill(rep, -1);
+        for (int v = 0; v < nodes; v++) {
+            int c = comp[v];
+            if (rep[c] < 0) {
+                rep[c] = v;
+            } else {
+                index.parent[v] = rep[c];
+                index.nextMember[v] = index.nextMember[rep[c]];
+                index.nextMember[rep[c]] = v;
+            }
+        }
+        // Tarjan numbers sinks first: reversed, every edge between components goes up in order
+        for (int c = 0; c < count; c++) index.ord[rep[c]] = count - 1 - c;
+        index.nextOrd = count;
+        return index;
+    }
+
+    public int nodeCount() { return n; }
+
+    public String name(int node) { return names[node]; }
+
+    public int scale() { return scale; }
+
+    /** Index of {@code name}, or -1. */
+    public int indexOf(String name) {
+        Integer id = ids.get(name);
+        return id != null ? id : -1;
+    }
+
+    /** True if {@code a} and {@code b} lie on a common cycle (or are the same node). */
+    public boolean sameComponent(int a, int b) {
+        return find(a) == find(b);
+    }
+
+    /** Number of nodes in the component of {@code node}. */
+    public int componentSize(int node) {
+        int size = 1;
+        for (int m = nextMember[node]; m != node; m = nextMember[m]) size++;
+        return size;
+    }
+
+    /**
+     * Adds {@code unscaled} (at {@link #scale()}) to the cell {@code from -> to}, creating nodes
+     * and the edge as needed. Returns the shortest cycle through that edge, or null if it is on
+     * none.
+     *
+     * @throws IllegalArgumentException if {@code unscaled} is not positive or the cell would overflow
+     */
+    public CycleFinder.Cycle add(String from, String to, long unscaled) {
+        if (unscaled <= 0) throw new IllegalArgumentException("Amount must be positive");
+        int u = node(from);
+        int v = node(to);
+        int slot = cells.get(u, v);
+        if (slot >= 0) {
+            try {
+                outAmount[u][slot] = Math.addExact(outAmount[u][slot], unscaled);
+            } catch (ArithmeticException ex) {
+                throw new IllegalArgumentException("Cell " + from + " -> " + to + " exceeds the exact range", ex);
+            }
+        } else {
+            append(u, v, unscaled);
+            insertOrdered(u, v);
+        }
+        return find(u) == find(v) ? cycleThrough(u, v) : null;
+    }
+
+    /** Amount of the cell {@code from -> to} (unscaled), 0 if there is none. */
+    public long amount(int from, int to) {
+        int slot = cells.get(from, to);
+        return slot >= 0 ? outAmount[from][slot] : 0;
+    }
+
+    private int node(String name) {
+        Integer id = ids.get(name);
+        if (id != null) return id;
+        if (n == names.length) grow(n * 2);
+        names[n] = name;
+        ids.put(name, n);
+        parent[n] = n;
+        nextMember[n] = n;
+        ord[n] = nextOrd++;       // a new node has no edges yet: any order is valid, last is cheapest
+        return n++;
+    }
+
+    private void append(int u, int v, long amount) {
+        if (outTo[u] == null || outLength[u] == outTo[u].length) {
+            int cap = outTo[u] == null ? 4 : outTo[u].length * 2;
+            outTo[u] = outTo[u] == null ? new int[cap] : Arrays.copyOf(outTo[u], cap);
+            outAmount[u] = outAmount[u] == null ? new long[cap] : Arrays.copyOf(outAmount[u], cap);
+        }
+        cells.put(u, v, outLength[u]);
+        outTo[u][outLength[u]] = v;
+        outAmount[u][outLength[u]++] = amount;
+        if (inFrom[v] == null || inLength[v] == inFrom[v].length) {
+            inFrom[v] = inFrom[v] == null ? new int[4] : Arrays.copyOf(inFrom[v], inFrom[v].length * 2);
+        }
+        inFrom[v][inLength[v]++] = u;
+    }
+
+    /** Pearce-Kelly step for the new edge u -> v, merging components if it closed a cycle. */
+    private void insertOrdered(int u, int v) {
+        int ru = find(u);
+        int rv = find(v);
+        if (ru == rv || ord[ru] < ord[rv]) return;
+
+        epoch++;
+        int lower = ord[rv];
+        int upper = ord[ru];
+        int[] forward = search(rv, upper, true, forwardMark);
+        int[] backward = search(ru, lower, false, backwardMark);
+        boolean cycle = forwardMark[ru] == epoch;
+
+        // pool: every order slot held by an affected component, reassigned ascending
+        int[] pool = new int[forward.length + backward.length];
+        int k = 0;
+        for (int c : backward) pool[k++] = ord[c];
+        for (int c : forward) if (backwardMark[c] != epoch) pool[k++] = ord[c];
+        pool = Arrays.copyOf(pool, k);
+        Arrays.sort(pool);
+        sortByOrd(forward);
+        sortByOrd(backward);
+
+        int slot = 0;
+        for (int c : backward) {
+            if (!cycle || forwardMark[c] != epoch) ord[c] = pool[slot++];
+        }
+        if (cycle) {
+            // on a path v ~> u: reached both ways. One representative, one slot between the two sides.
+            int merged = -1;
+            for (int c : forward) {
+                if (backwardMark[c] == epoch) merged = merged < 0 ? c : union(merged, c);
+            }
+            ord[merged] = pool[slot++];
+        }
+        slot = pool.length - forwardOnly(forward, cycle);
+        for (int c : forward) {
+            if (!cycle || backwardMark[c] != epoch) ord[c] = pool[slot++];
+        }
+    }
+
+    /**
+     * Components reachable from {@code start} (forward) or reaching it (backward) through
+     * components ordered up to / down to {@code bound}; marks them with the current epoch.
+     */
+    private int[] search(int start, int bound, boolean forward, int[] mark) {
+        int found = 0;
+        int top = 0;
+        int[] result = new int[8];
+        stack[top++] = start;
+        mark[start] = epoch;
+        while (top > 0) {
+            int c = stack[--top];
+            if (found == result.length) result = Arrays.copyOf(result, found * 2);
+            result[found++] = c;
+            int m = c;
+            do {
+                int length = forward ? outLength[m] : inLength[m];
+                int[] row = forward ? outTo[m] : inFrom[m];
+                for (int i = 0; i < length; i++) {
+                    int w = find(row[i]);
+                    if (mark[w] == epoch) continue;
+                    if (forward ? ord[w] > bound : ord[w] < bound) continue;
+                    mark[w] = epoch;
+                    stack[top++] = w;
+                }
+                m = nextMember[m];
+            } while (m != c);
+        }
+        return Arrays.copyOf(result, found);
+    }
+
+    private int forwardOnly(int[] forward, boolean cycle) {
+        if (!cycle) return forward.length;
+        int k = 0;
+        for (int c : forward) if (backwardMark[c] != epoch) k++;
+        return k;
+    }
+
+    /**
+     * Shortest path v ~> u inside their component, closed by the edge u -> v. Bidirectional
+     * BFS (out edges from v, in edges from u, always the smaller frontier), so a giant
+     * component costs about the square root of what a one-sided search would visit.
+     */
+    private CycleFinder.Cycle cycleThrough(int u, int v) {
+        long closing = outAmount[u][cells.get(u, v)];
+        if (u == v) return new CycleFinder.Cycle(new int[] {u}, closing);
+        int rep = find(u);
+        // node -> depth << 32 | neighbour one step closer to v (forward) or to u (backward)
+        Map<Integer, Long> forward = new HashMap<>();
+        Map<Integer, Long> backward = new HashMap<>();
+        forward.put(v, (long) v);
+        backward.put(u, (long) u);
+        int[] forwardLayer = {v};
+        int[] backwardLayer = {u};
+        while (forwardLayer.length > 0 && backwardLayer.length > 0) {
+            boolean fromV = forwardLayer.length <= backwardLayer.length;
+            Map<Integer, Long> near = fromV ? forward : backward;
+            Map<Integer, Long> far = fromV ? backward : forward;
+            int[] layer = fromV ? forwardLayer : backwardLayer;
+            int[] next = new int[Math.max(4, layer.length * 2)];
+            int count = 0;
+            int meet = -1;
+            long best = Long.MAX_VALUE;
+            for (int x : layer) {
+                long depth = (near.get(x) >>> 32) + 1;
+                int length = fromV ? outLength[x] : inLength[x];
+                int[] row = fromV ? outTo[x] : inFrom[x];
+                for (int i = 0; i < length; i++) {
+                    int w = row[i];
+                    if (near.containsKey(w) || find(w) != rep) continue;
+                    near.put(w, depth << 32 | x);
+                    Long other = far.get(w);
+                    if (other != null) {
+                        if (depth + (other >>> 32) < best) {
+                            best = depth + (other >>> 32);
+                            meet = w;
+                        }
+                        continue;
+                    }
+                    if (count == next.length) next = Arrays.copyOf(next, count * 2);
+                    next[count++] = w;
+                }
+            }
+            if (meet >= 0) return path(u, v, meet, forward, backward, closing);
+            if (fromV) forwardLayer = Arrays.copyOf(next, count);
+            else backwardLayer = Arrays.copyOf(next, count);
+        }
+        throw new IllegalStateException("Component of " + names[u] + " has no path back from " + names[v]);
+    }
+
+    /** Cycle u, v, ..., meet, ..., (last before u) from the two BFS trees. */
+    private CycleFinder.Cycle path(int u, int v, int meet, Map<Integer, Long> forward, Map<Integer, Long> backward,
+                                   long bottleneck) {
+        int toMeet = (int) (forward.get(meet) >>> 32);      // hops v ~> meet
+        int fromMeet = (int) (backward.get(meet) >>> 32);   // hops meet ~> u
+        int[] nodes = new int[toMeet + fromMeet + 1];       // u, then v .. meet .. excluding u
+        nodes[0] = u;
+        int x = meet;
+        for (int i = toMeet + 1; i >= 1; i--) {
+            if (i < nodes.length) nodes[i] = x;              // meet may be u itself
+            if (i > 1) {
+                int prev = (int) (long) forward.get(x);
+                bottleneck = Math.min(bottleneck, outAmount[prev][cells.get(prev, x)]);
+                x = prev;
+            }
+        }
+        x = meet;
+        for (int i = toMeet + 2; i <= toMeet + fromMeet + 1; i++) {
+            int succ = (int) (long) backward.get(x);
+            bottleneck = Math.min(bottleneck, outAmount[x][cells.get(x, succ)]);
+            x = succ;
+            if (i < nodes.length) nodes[i] = x;
+        }
+        return new CycleFinder.Cycle(nodes, bottleneck);
+    }
+
+    private int find(int x) {
+        while (parent[x] != x) {
+            parent[x] = parent[parent[x]];
+            x = parent[x];
+        }
+        return x;
+    }
+
+    /** Merge two representatives (member lists spliced); returns the new representative. */
+    private int union(int a, int b) {
+        if (a == b) return a;
+        int an = nextMember[a];
+        nextMember[a] = nextMember[b];
+        nextMember[b] = an;
+        parent[b] = a;
+        return a;
+    }
+
+    private void sortByOrd(int[] comps) {
+        long[] keyed = new long[comps.length];
+        for (int i = 0; i < comps.length; i++) keyed[i] = (long) ord[comps[i]] << 32 | comps[i];
+        Arrays.sort(keyed);
+        for (int i = 0; i < comps.length; i++) comps[i] = (int) keyed[i];
+    }
+
+    private void grow(int cap) {
+        names = Arrays.copyOf(names, cap);
+        outTo = Arrays.copyOf(outTo, cap);
+        outAmount = Arrays.copyOf(outAmount, cap);
+        outLength = Arrays.copyOf(outLength, cap);
+        inFrom = Arrays.copyOf(inFrom, cap);
+        inLength = Arrays.copyOf(inLength, cap);
+        parent = Arrays.copyOf(parent, cap);
+        nextMember = Arrays.copyOf(nextMember, cap);
+        ord = Arrays.copyOf(ord, cap);
+        forwardMark = Arrays.copyOf(forwardMark, cap);
+        backwardMark = Arrays.copyOf(backwardMark, cap);
+        stack = Arrays.copyOf(stack, cap);
+    }
+
+    /** (from, to) -> position in from's out row; open addressing on the packed pair. */
+    private static final class CellTable {
+
+        private long[] keys = new long[64];
+        private int[] values = new int[64];
+        private int size;
+
+        int get(int from, int to) {
+            long key = pack(from, to);
+            int mask = keys.length - 1;
+            for (int s = spread(key) & mask; ; s = (s + 1) & mask) {
+                if (keys[s] == 0) return -1;
+                if (keys[s] == key) return values[s];
+            }
+        }
+
+        void put(int from, int to, int value) {
+            if ((size + 1) * 2 > keys.length) rehash();
+            long key = pack(from, to);
+            int mask = keys.length - 1;
+            int s = spread(key) & mask;
+            while (keys[s] != 0 && keys[s] != key) s = (s + 1) & mask;
+            if (keys[s] == 0) size++;
+            keys[s] = key;
+            values[s] = value;
+        }
+
+        private void rehash() {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new int[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == 0) continue;
+                int s = spread(oldKeys[i]) & mask;
+                while (keys[s] != 0) s = (s + 1) & mask;
+                keys[s] = oldKeys[i];
+                values[s] = oldValues[i];
+            }
+        }
+
+        /** +1 on both halves so no real pair packs to 0 (the empty marker). */
+        private static long pack(int from, int to) {
+            return (long) (from + 1) << 32 | (to + 1);
+        }
+
+        private static int spread(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
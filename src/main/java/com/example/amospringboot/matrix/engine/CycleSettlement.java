@@ -0,0 +1,365 @@
+package com.example.amospringboot.matrix.engine;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Whole-network settlement: cancels obligation cycles until none is left.
+ *
+ * A cycle can only lie inside one strongly connected component, so the graph is split into
+ * SCCs first (iterative Tarjan) and the components are settled independently, in parallel on a
+ * fork-join pool, largest first. Within a component a DFS walks the remaining obligations; when
+ * it closes a cycle, every edge on it is reduced by the cycle's bottleneck (so at least one
+ * edge is cleared) and the walk backs up to the first cleared edge and continues. A node whose
+ * edges all lead to finished nodes is finished for good, since reductions never create paths,
+ * so each component costs O(edges + total cycle length). The result is a maximal
+ * settlement: what remains is acyclic, and every node's net position (owed minus owing) is
+ * unchanged.
+ *
+ * Results are deterministic, independent of parallelism: components share no edges, and each
+ * is walked in node/target order.
+ */
+public final class CycleSettlement {
+
+    /** Below this many edges a component range is settled on the calling worker, not split further. */
+    private static final int SPLIT_EDGES = 8192;
+
+    private final CsrGraph graph;
+    private final long[] residual;
+    private final int components;
+    private final int cyclicComponents;
+    private final int largestComponent;
+    private final long cycles;
+    private final int longestCycle;
+
+    private CycleSettlement(CsrGraph graph, long[] residual, int components, int cyclicComponents,
+                            int largestComponent, long cycles, int longestCycle) {
+        this.graph = graph;
+        this.residual = residual;
+        this.components = components;
+        this.cyclicComponents = cyclicComponents;
+        this.largestComponent = largestComponent;
+        this.cycles = cycles;
+        this.longestCycle = longestCycle;
+    }
+
+    /** Settle every cycle of {@code g}; components run as fork-join tasks on {@code pool}. */
+    public static CycleSettlement settle(CsrGraph g, ForkJoinPool pool) {
+        int n = g.nodeCount();
+        long[] residual = new long[g.edgeCount()];
+        for (int e = 0; e < residual.length; e++) residual[e] = g.amount(e);
+
+        int[] comp = new int[n];
+        int count = stronglyConnected(g, comp);
+
+        // members grouped per component (counting sort), plus intra-component edge counts
+        int[] start = new int[count + 1];
+        for (int v = 0; v < n; v++) start[comp[v] + 1]++;
+        for (int c = 0; c < count; c++) start[c + 1] += start[c];
+        int[] members = new int[n];
+        int[] fill = Arrays.copyOf(start, count);
+        for (int v = 0; v < n; v++) members[fill[comp[v]]++] = v;
+
+        long[] inner = new long[count];
+        boolean[] selfLoop = new boolean[count];
+        for (int u = 0; u < n; u++) {
+            for (int e = g.rowStart(u), end = g.rowEnd(u); e < end; e++) {
+                int v = g.target(e);
+                if (comp[v] == comp[u]) {
+                    inner[comp[u]]++;
+                    if (v == u) selfLoop[comp[u]] = true;
+                }
+            }
+        }
+
+        int cyclic = 0;
+        int largest = 0;
+        for (int c = 0; c < count; c++) {
+            int size = start[c + 1] - start[c];
+            largest = Math.max(largest, size);
+            if (size > 1 || selfLoop[c]) cyclic++;
+        }
+        Integer[] order = new Integer[cyclic];
+        for (int c = 0, k = 0; c < count; c++) {
+            if (start[c + 1] - start[c] > 1 || selfLoop[c]) order[k++] = c;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(inner[b], inner[a]));   // largest first: it bounds the run time
+        int[] work = new int[cyclic];
+        for (int k = 0; k < cyclic; k++) work[k] = order[k];
+
+        long[] found = new long[count];
+        int[] longest = new int[count];
+        int[] local = new int[n];
+        if (cyclic > 0) {
+            pool.invoke(new Settle(g, comp, start, members, inner, local, residual, work, 0, cyclic, found, longest));
+        }
+
+        long cycles = 0;
+        int longestCycle = 0;
+        for (int c = 0; c < count; c++) {
+            cycles += found[c];
+            longestCycle = Math.max(longestCycle, longest[c]);
+        }
+        return new CycleSettlement(g, residual, count, cyclic, largest, cycles, longestCycle);
+    }
+
+    public CsrGraph graph() { return graph; }
+
+    /** Strongly connected components (single nodes included). */
+    public int components() { return components; }
+
+    /** Components that contain a cycle: two or more nodes, or a node owing itself. */
+    public int cyclicComponents() { return cyclicComponents; }
+
+    /** Node count of the largest component. */
+    public int largestComponent() { return largestComponent; }
+
+    /** Cycles cancelled. */
+    public long cycles() { return cycles; }
+
+    /** Node count of the longest cycle cancelled. */
+    public int longestCycle() { return longestCycle; }
+
+    /** Unscaled amount left on {@code edge} after settlement. */
+    public long residual(int edge) { return residual[edge]; }
+
+    /** Unscaled amount {@code edge} was reduced by (0 if it was on no cancelled cycle). */
+    public long reduction(int edge) { return graph.amount(edge) - residual[edge]; }
+
+    /** Edges with a non-zero reduction. */
+    public int edgesReduced() {
+        int k = 0;
+        for (int e = 0; e < residual.length; e++) if (residual[e] != graph.amount(e)) k++;
+        return k;
+    }
+
+    /** Sum of all obligations before settlement. */
+    public BigDecimal totalBefore() {
+        return sum(false, true);
+    }
+
+    /** Sum of all obligations left. */
+    public BigDecimal totalAfter() {
+        return sum(true, false);
+    }
+
+    /** Sum of all reductions (before - after). */
+    public BigDecimal totalSettled() {
+        return sum(true, true);
+    }
+
+    /** What is left, as a graph (cleared edges removed). */
+    public CsrGraph residualGraph() {
+        int n = graph.nodeCount();
+        int[] offsets = new int[n + 1];
+        int kept = 0;
+        for (long r : residual) if (r > 0) kept++;
+        int[] targets = new int[kept];
+        long[] amounts = new long[kept];
+        String[] names = new String[n];
+        int k = 0;
+        for (int u = 0; u < n; u++) {
+            names[u] = graph.name(u);
+            for (int e = graph.rowStart(u), end = graph.rowEnd(u); e < end; e++) {
+                if (residual[e] > 0) {
+                    targets[k] = graph.target(e);
+                    amounts[k++] = residual[e];
+                }
+            }
+            offsets[u + 1] = k;
+        }
+        return new CsrGraph(names, offsets, targets, amounts, graph.scale());
+    }
+
+    /** before: amount; after: residual; both: amount - residual. Exact (amounts are >= 0). */
+    private BigDecimal sum(boolean subtractResidual, boolean addAmount) {
+        BigInteger total = BigInteger.ZERO;
+        long part = 0;
+        for (int e = 0; e < residual.length; e++) {
+            long v = addAmount ? graph.amount(e) - (subtractResidual ? residual[e] : 0) : residual[e];
+            if (part > Long.MAX_VALUE - v) {
+                total = total.add(BigInteger.valueOf(part));
+                part = 0;
+            }
+            part += v;
+        }
+        return new BigDecimal(total.add(BigInteger.valueOf(part)), graph.scale());
+    }
+
+    /**
+     * Iterative Tarjan: {@code comp[v]} = component id, ids in reverse topological order.
+     * Returns the number of components.
+     */
+    static int stronglyConnected(CsrGraph g, int[] comp) {
+        int n = g.nodeCount();
+        int[] index = new int[n];
+        int[] low = new int[n];
+        Arrays.fill(index, -1);
+        int[] callStack = new int[n];
+        int[] cursor = new int[n];
+        int[] sccStack = new int[n];
+        boolean[] onStack = new boolean[n];
+        int next = 0;
+        int sccTop = -1;
+        int count = 0;
+
+        for (int root = 0; root < n; root++) {
+            if (index[root] >= 0) continue;
+            int top = 0;
+            callStack[0] = root;
+            cursor[root] = g.rowStart(root);
+            index[root] = low[root] = next++;
+            sccStack[++sccTop] = root;
+            onStack[root] = true;
+            while (top >= 0) {
+                int u = callStack[top];
+                if (cursor[u] < g.rowEnd(u)) {
+                    int v = g.target(cursor[u]++);
+                    if (index[v] < 0) {
+                        index[v] = low[v] = next++;
+                        sccStack[++sccTop] = v;
+                        onStack[v] = true;
+                        cursor[v] = g.rowStart(v);
+                        callStack[++top] = v;
+                    } else if (onStack[v]) {
+                        low[u] = Math.min(low[u], index[v]);
+                    }
+                    continue;
+                }
+                if (low[u] == index[u]) {
+                    int w;
+                    do {
+                        w = sccStack[sccTop--];
+                        onStack[w] = false;
+                        comp[w] = count;
+                    } while (w != u);
+                    count++;
+                }
+                top--;
+                if (top >= 0) {
+                    int parent = callStack[top];
+                    low[parent] = Math.min(low[parent], low[u]);
+                }
+            }
+        }
+        return count;
+    }
+
+    /** Settles work[lo..hi) (component ids); splits in halves while the range is big enough. */
+    private static final class Settle extends RecursiveAction {
+
+        private final CsrGraph g;
+        private final int[] comp;
+        private final int[] start;
+        private final int[] members;
+        private final long[] inner;
+        private final int[] local;
+        private final long[] residual;
+        private final int[] work;
+        private final int lo;
+        private final int hi;
+        private final long[] found;
+        private final int[] longest;
+
+        Settle(CsrGraph g, int[] comp, int[] start, int[] members, long[] inner, int[] local, long[] residual,
+               int[] work, int lo, int hi, long[] found, int[] longest) {
+            this.g = g;
+            this.comp = comp;
+            this.start = start;
+            this.members = members;
+            this.inner = inner;
+            this.local = local;
+            this.residual = residual;
+            this.work = work;
+            this.lo = lo;
+            this.hi = hi;
+            this.found = found;
+            this.longest = longest;
+        }
+
+        @Override
+        protected void compute() {
+            long edges = 0;
+            for (int k = lo; k < hi; k++) edges += inner[work[k]];
+            if (hi - lo > 1 && edges > SPLIT_EDGES) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new Settle(g, comp, start, members, inner, local, residual, work, lo, mid, found, longest),
+                          new Settle(g, comp, start, members, inner, local, residual, work, mid, hi, found, longest));
+                return;
+            }
+            for (int k = lo; k < hi; k++) settleComponent(work[k]);
+        }
+
+        /**
+         * DFS over the component's remaining edges; arrays are per component (local indices),
+         * residual and local are shared but every component touches only its own entries.
+         */
+        private void settleComponent(int c) {
+            int from = start[c];
+            int size = start[c + 1] - from;
+            for (int i = 0; i < size; i++) local[members[from + i]] = i;
+
+            byte[] state = new byte[size];      // 0 = new, 1 = on stack, 2 = finished
+            int[] cursor = new int[size];       // next edge to look at, per node (survives re-pushes)
+            int[] pos = new int[size];          // stack position while on the stack
+            int[] stack = new int[size];
+            int[] via = new int[size];          // edge stack[i-1] -> stack[i]
+            for (int i = 0; i < size; i++) cursor[i] = g.rowStart(members[from + i]);
+
+            long cycles = 0;
+            int longestCycle = 0;
+            for (int r = 0; r < size; r++) {
+                if (state[r] != 0) continue;
+                int top = 0;
+                stack[0] = members[from + r];
+                state[r] = 1;
+                pos[r] = 0;
+                while (top >= 0) {
+                    int u = stack[top];
+                    int lu = local[u];
+                    int e = cursor[lu];
+                    int end = g.rowEnd(u);
+                    while (e < end && (residual[e] == 0 || comp[g.target(e)] != c || state[local[g.target(e)]] == 2)) e++;
+                    cursor[lu] = e;
+                    if (e == end) {
+                        state[lu] = 2;
+                        top--;
+                        continue;
+                    }
+                    int v = g.target(e);
+                    int lv = local[v];
+                    if (state[lv] == 0) {
+                        state[lv] = 1;
+                        pos[lv] = ++top;
+                        stack[top] = v;
+                        via[top] = e;
+                        continue;
+                    }
+
+                    // stack[p..top] + e is a cycle: cancel its bottleneck
+                    int p = pos[lv];
+                    long bottleneck = residual[e];
+                    for (int i = p + 1; i <= top; i++) bottleneck = Math.min(bottleneck, residual[via[i]]);
+                    residual[e] -= bottleneck;
+                    for (int i = p + 1; i <= top; i++) residual[via[i]] -= bottleneck;
+                    cycles++;
+                    longestCycle = Math.max(longestCycle, top - p + 1);
+
+                    // back up to just before the first cleared edge (if only e was cleared, stay at u)
+                    for (int i = p + 1; i <= top; i++) {
+                        if (residual[via[i]] == 0) {
+                            for (int j = i; j <= top; j++) state[local[stack[j]]] = 0;
+                            top = i - 1;
+                            break;
+                        }
+                    }
+                }
+            }
+            found[c] = cycles;
+            longest[c] = longestCycle;
+        }
+    }
+}
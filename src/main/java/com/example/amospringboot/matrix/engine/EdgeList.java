@@ -0,0 +1,290 @@
+package com.example.amospringboot.matrix.engine;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+/**
+ * Growable edge list in primitive arrays, filled edge by edge while a request body is read.
+ *
+ * Node names are interned into dense ints (an open-addressing table that can look a name up
+ * straight from a parser's char buffer, so a repeated name costs no String); amounts are exact
+ * unscaled longs at one common scale. The scale only grows: an amount with more decimals than
+ * any before rescales the stored ones (trailing zeros don't count, at most {@link #MAX_SCALE}),
+ * so every amount is range-checked when it is added, not at the end. Edges keep their input
+ * order; {@link #toGraph()} sums and sorts them into a {@link CsrGraph}. Not thread-safe.
+ */
+public final class EdgeList {
+
+    /** Same limit as {@link MatrixBlobDecoder}: every long-sized amount keeps headroom for summing. */
+    public static final int MAX_SCALE = 9;
+
+    private static final long[] POW10 = new long[19];
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) POW10[i] = POW10[i - 1] * 10;
+    }
+
+    // node intern table: slots hold node index + 1 (0 = empty), always at most half full
+    private String[] names;
+    private int[] hashes;
+    private int[] slots;
+    private int nodeCount;
+
+    private int[] from;
+    private int[] to;
+    private long[] amounts;
+    private int size;
+    private int scale;
+    private int firstNonPositive = -1;
+
+    public EdgeList(int expectedNodes, int expectedEdges) {
+        int nodes = Math.max(16, expectedNodes);
+        this.names = new String[nodes];
+        this.hashes = new int[nodes];
+        this.slots = new int[Integer.highestOneBit(nodes * 2 - 1) << 1];
+        int cap = Math.max(16, expectedEdges);
+        this.from = new int[cap];
+        this.to = new int[cap];
+        this.amounts = new long[cap];
+    }
+
+    /** Index of {@code name}, added if new. */
+    public int node(String name) {
+        int h = name.hashCode();
+        int mask = slots.length - 1;
+        for (int s = spread(h) & mask; ; s = (s + 1) & mask) {
+            int id = slots[s] - 1;
+            if (id < 0) return insert(name, h, s);
+            if (hashes[id] == h && names[id].equals(name)) return id;
+        }
+    }
+
+    /** Index of the name in {@code chars[offset .. offset+length)}; a String is only created for a new name. */
+    public int node(char[] chars, int offset, int length) {
+        int h = 0;
+        for (int i = offset, end = offset + length; i < end; i++) h = 31 * h + chars[i];   // == String.hashCode
+        int mask = slots.length - 1;
+        for (int s = spread(h) & mask; ; s = (s + 1) & mask) {
+            int id = slots[s] - 1;
+            if (id < 0) return insert(new String(chars, offset, length), h, s);
+            if (hashes[id] == h && sameChars(names[id], chars, offset, length)) return id;
+        }
+    }
+
+    /**
+     * Adds {@code source -> target} of {@code unscaled} * 10^-{@code amountScale}.
+     *
+     * Amounts that are not positive are kept (see {@link #firstNonPositive()}).
+     *
+     * @throws IllegalArgumentException for an unknown node index, more than {@link #MAX_SCALE}
+     *                                  decimals, or an amount outside the exact range at the common scale
+     */
+    public void add(int source, int target, long unscaled, int amountScale) {
+        if (source < 0 || source >= nodeCount || target < 0 || target >= nodeCount) {
+            throw new IllegalArgumentException("Edge references an unknown node index (" + nodeCount + " nodes)");
+        }
+        if (unscaled <= 0 && firstNonPositive < 0) firstNonPositive = size;
+        if (amountScale < 0) throw new IllegalArgumentException("Negative amount scale " + amountScale);
+        while (amountScale > 0 && unscaled % 10 == 0) {
+            unscaled /= 10;
+            amountScale--;
+        }
+        if (amountScale > scale) rescale(amountScale);
+        long v;
+        try {
+            v = amountScale == scale ? unscaled : Math.multiplyExact(unscaled, POW10[scale - amountScale]);
+        } catch (ArithmeticException ex) {
+            throw outOfRange(ex);
+        }
+        if (size == from.length) {
+            int cap = size * 2;
+            from = Arrays.copyOf(from, cap);
+            to = Arrays.copyOf(to, cap);
+            amounts = Arrays.copyOf(amounts, cap);
+        }
+        from[size] = source;
+        to[size] = target;
+        amounts[size] = v;
+        size++;
+    }
+
+    /**
+     * Adds {@code source -> target} with the amount given as JSON number text ("12.50", "-3",
+     * "1.5e2"), parsed without a BigDecimal.
+     *
+     * @throws IllegalArgumentException if the text is not a number, or as {@link #add(int, int, long, int)}
+     */
+    public void add(int source, int target, char[] text, int offset, int length) {
+        int i = offset;
+        int end = offset + length;
+        boolean negative = false;
+        if (i < end && (text[i] == '-' || text[i] == '+')) negative = text[i++] == '-';
+
+        long v = 0;
+        int amountScale = 0;
+        int digits = 0;
+        int zeros = 0;              // fraction zeros not applied yet: trailing ones never are
+        boolean point = false;
+        for (; i < end; i++) {
+            char c = text[i];
+            if (c >= '0' && c <= '9') {
+                digits++;
+                if (point && c == '0') {
+                    zeros++;
+                    continue;
+                }
+                for (; zeros > 0; zeros--, amountScale++) v = appendDigit(v, 0);
+                v = appendDigit(v, c - '0');
+                if (point) amountScale++;
+            } else if (c == '.' && !point) {
+                point = true;
+            } else if ((c == 'e' || c == 'E') && digits > 0) {
+                amountScale -= exponent(text, i + 1, end, offset, length);
+                i = end;
+            } else {
+                throw notANumber(text, offset, length);
+            }
+        }
+        if (digits == 0) throw notANumber(text, offset, length);
+        if (v == 0) {
+            amountScale = 0;
+        } else if (amountScale < 0) {
+            if (-amountScale >= POW10.length) throw outOfRange(null);
+            try {
+                v = Math.multiplyExact(v, POW10[-amountScale]);
+            } catch (ArithmeticException ex) {
+                throw outOfRange(ex);
+            }
+            amountScale = 0;
+        }
+        add(source, target, negative ? -v : v, amountScale);
+    }
+
+    public int nodeCount() { return nodeCount; }
+
+    public String name(int node) { return names[node]; }
+
+    public int size() { return size; }
+
+    public int from(int edge) { return from[edge]; }
+
+    public int to(int edge) { return to[edge]; }
+
+    /** Unscaled amount of {@code edge} at {@link #scale()}. */
+    public long amount(int edge) { return amounts[edge]; }
+
+    public int scale() { return scale; }
+
+    /** Position of the first edge whose amount is zero or negative, or -1. */
+    public int firstNonPositive() { return firstNonPositive; }
+
+    public BigDecimal toDecimal(long unscaled) {
+        return BigDecimal.valueOf(unscaled, scale);
+    }
+
+    /**
+     * Writes the amount of {@code edge} as a plain decimal ("-12.50") into {@code out}, which
+     * needs room for 22 chars; returns the length.
+     */
+    public int formatAmount(int edge, char[] out) {
+        long v = amounts[edge];
+        long q = v < 0 ? v : -v;          // negative, so Long.MIN_VALUE needs no special case
+        int pos = out.length;
+        int d = 0;
+        do {
+            if (d == scale && scale > 0) out[--pos] = '.';
+            out[--pos] = (char) ('0' - q % 10);
+            q /= 10;
+            d++;
+        } while (q != 0 || d <= scale);
+        if (v < 0) out[--pos] = '-';
+        int len = out.length - pos;
+        System.arraycopy(out, pos, out, 0, len);
+        return len;
+    }
+
+    /**
+     * Sums parallel edges and sorts rows, as {@link CsrGraph.Builder#build()} does.
+     *
+     * @throws IllegalArgumentException if a summed cell does not fit a long at the common scale
+     */
+    public CsrGraph toGraph() {
+        return CsrGraph.fromEdges(Arrays.copyOf(names, nodeCount), from, to, amounts, size, scale);
+    }
+
+    private int insert(String name, int h, int slot) {
+        if (nodeCount == names.length) {
+            names = Arrays.copyOf(names, nodeCount * 2);
+            hashes = Arrays.copyOf(hashes, nodeCount * 2);
+        }
+        names[nodeCount] = name;
+        hashes[nodeCount] = h;
+        slots[slot] = nodeCount + 1;
+        int id = nodeCount++;
+        if (nodeCount * 2 > slots.length) rehash();
+        return id;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int id = 0; id < nodeCount; id++) {
+            int s = spread(hashes[id]) & mask;
+            while (slots[s] != 0) s = (s + 1) & mask;
+            slots[s] = id + 1;
+        }
+    }
+
+    private void rescale(int to) {
+        if (to > MAX_SCALE) throw new IllegalArgumentException("Edge amount has more than " + MAX_SCALE + " decimals");
+        long f = POW10[to - scale];
+        try {
+            for (int e = 0; e < size; e++) amounts[e] = Math.multiplyExact(amounts[e], f);
+        } catch (ArithmeticException ex) {
+            throw new IllegalArgumentException("Edge amount exceeds the exact range at scale " + to, ex);
+        }
+        scale = to;
+    }
+
+    private IllegalArgumentException outOfRange(ArithmeticException cause) {
+        return new IllegalArgumentException("Edge amount exceeds the exact range at scale " + scale, cause);
+    }
+
+    private static long appendDigit(long v, int digit) {
+        if (v > (Long.MAX_VALUE - digit) / 10) {
+            throw new IllegalArgumentException("Edge amount exceeds the exact range of a long");
+        }
+        return v * 10 + digit;
+    }
+
+    private static int exponent(char[] text, int i, int end, int offset, int length) {
+        boolean negative = false;
+        if (i < end && (text[i] == '-' || text[i] == '+')) negative = text[i++] == '-';
+        if (i == end) throw notANumber(text, offset, length);
+        int exp = 0;
+        for (; i < end; i++) {
+            char c = text[i];
+            if (c < '0' || c > '9') throw notANumber(text, offset, length);
+            exp = Math.min(10_000, exp * 10 + (c - '0'));
+        }
+        return negative ? -exp : exp;
+    }
+
+    private static IllegalArgumentException notANumber(char[] text, int offset, int length) {
+        return new IllegalArgumentException("Edge amount is not a number: " + new String(text, offset, Math.min(length, 64)));
+    }
+
+    private static boolean sameChars(String name, char[] chars, int offset, int length) {
+        if (name.length() != length) return false;
+        for (int i = 0; i < length; i++) {
+            if (name.charAt(i) != chars[offset + i]) return false;
+        }
+        return true;
+    }
+
+    private static int spread(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
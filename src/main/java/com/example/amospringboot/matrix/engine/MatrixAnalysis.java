@@ -0,0 +1,265 @@
+package com.example.amospringboot.matrix.engine;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * The /matrix/analyze metrics of a decoded matrix, computed in-process: per node the amount
+ * owed by it (row sum), owed to it (column sum) and its net position, in/out degrees (non-zero
+ * cells), total obligations, strongly connected components of the positive cells and whether
+ * (and one example where) there is a cycle.
+ *
+ * Row and column reductions run in one of two kernels with identical results:
+ * <ul>
+ *   <li>{@link Kernel#DENSE}: the row-major n*n array split into row bands on the common
+ *       fork-join pool (parallel stream); each band sums its rows and keeps private column
+ *       partials that are merged at the end. When no sum can overflow (largest |cell| * n
+ *       fits a long) the inner loop is plain adds the JIT can vectorise; otherwise exact
+ *       adds. Needs a dense blob.</li>
+ *   <li>{@link Kernel#SPARSE}: one sequential pass over the non-zero cells (CSR), O(n + nnz);
+ *       the only choice for blobs above matrix.blobs.dense-max-nodes.</li>
+ * </ul>
+ * Cells are taken as stored (diagonal and negative cells included) for the sums and degrees;
+ * components and cycles use the positive cells, as the cycle engine does.
+ */
+public final class MatrixAnalysis {
+
+    public enum Kernel { DENSE, SPARSE }
+
+    private final MatrixBlob blob;
+    private final Kernel kernel;
+    private final long[] owedBy;
+    private final long[] owedTo;
+    private final int[] outDegree;
+    private final int[] inDegree;
+    private final long nonZero;
+    private final int components;
+    private final int cyclicComponents;
+    private final int largestComponent;
+    private final CsrGraph graph;
+    private final CycleFinder.Cycle cycle;
+
+    private MatrixAnalysis(MatrixBlob blob, Kernel kernel, Sums sums, CsrGraph graph, int components,
+                           int cyclicComponents, int largestComponent, CycleFinder.Cycle cycle) {
+        this.blob = blob;
+        this.kernel = kernel;
+        this.owedBy = sums.owedBy;
+        this.owedTo = sums.owedTo;
+        this.outDegree = sums.outDegree;
+        this.inDegree = sums.inDegree;
+        long nz = 0;
+        for (int d : sums.outDegree) nz += d;
+        this.nonZero = nz;
+        this.graph = graph;
+        this.components = components;
+        this.cyclicComponents = cyclicComponents;
+        this.largestComponent = largestComponent;
+        this.cycle = cycle;
+    }
+
+    /** The kernel {@code of(blob, null)} picks: dense for a dense blob, else sparse. */
+    public static Kernel defaultKernel(MatrixBlob blob) {
+        return blob.isDense() ? Kernel.DENSE : Kernel.SPARSE;
+    }
+
+    /**
+     * Analyse {@code blob} with {@code kernel} (null = {@link #defaultKernel}).
+     *
+     * @throws IllegalArgumentException for the dense kernel on a sparse blob, or if a row or
+     *                                  column sum does not fit a long
+     */
+    public static MatrixAnalysis of(MatrixBlob blob, Kernel kernel) {
+        Kernel k = kernel != null ? kernel : defaultKernel(blob);
+        if (k == Kernel.DENSE && !blob.isDense()) {
+            throw new IllegalArgumentException("The dense kernel needs a dense blob; " + blob.nodeCount()
+                    + " nodes are stored sparse (matrix.blobs.dense-max-nodes)");
+        }
+        Sums sums;
+        try {
+            sums = k == Kernel.DENSE ? dense(blob.denseCells(), blob.nodeCount()) : sparse(blob);
+        } catch (ArithmeticException ex) {
+            throw new IllegalArgumentException("Row or column sums exceed the exact range at scale " + blob.scale(), ex);
+        }
+
+        CsrGraph g = blob.toGraph();
+        int n = g.nodeCount();
+        int[] comp = new int[n];
+        int count = CycleSettlement.stronglyConnected(g, comp);
+        int[] size = new int[count];
+        boolean[] selfLoop = new boolean[count];
+        for (int u = 0; u < n; u++) {
+            size[comp[u]]++;
+            if (g.edge(u, u) >= 0) selfLoop[comp[u]] = true;
+        }
+        int cyclic = 0;
+        int largest = 0;
+        for (int c = 0; c < count; c++) {
+            if (size[c] > 1 || selfLoop[c]) cyclic++;
+            largest = Math.max(largest, size[c]);
+        }
+        CycleFinder.Cycle cycle = cyclic > 0 ? CycleFinder.any(g).orElse(null) : null;
+        return new MatrixAnalysis(blob, k, sums, g, count, cyclic, largest, cycle);
+    }
+
+    public MatrixBlob blob() { return blob; }
+
+    public Kernel kernel() { return kernel; }
+
+    public int nodeCount() { return owedBy.length; }
+
+    /** Sum of row {@code node}: what it owes (unscaled). */
+    public long owedBy(int node) { return owedBy[node]; }
+
+    /** Sum of column {@code node}: what it is owed (unscaled). */
+    public long owedTo(int node) { return owedTo[node]; }
+
+    /** Owed to minus owed by; positive = creditor. */
+    public BigDecimal net(int node) {
+        return BigDecimal.valueOf(owedTo[node], blob.scale()).subtract(BigDecimal.valueOf(owedBy[node], blob.scale()));
+    }
+
+    public int outDegree(int node) { return outDegree[node]; }
+
+    public int inDegree(int node) { return inDegree[node]; }
+
+    /** Number of nodes per out-degree: {@code [d]} = how many nodes have d non-zero cells in their row. */
+    public int[] outDegreeHistogram() { return histogram(outDegree); }
+
+    /** Number of nodes per in-degree. */
+    public int[] inDegreeHistogram() { return histogram(inDegree); }
+
+    public long nonZeroCells() { return nonZero; }
+
+    /** Exact sum of all cells. */
+    public BigDecimal totalObligations() {
+        BigInteger sum = BigInteger.ZERO;
+        for (long v : owedBy) sum = sum.add(BigInteger.valueOf(v));
+        return new BigDecimal(sum, blob.scale());
+    }
+
+    public int components() { return components; }
+
+    /** Components with a cycle (more than one node, or a positive diagonal cell). */
+    public int cyclicComponents() { return cyclicComponents; }
+
+    public int largestComponent() { return largestComponent; }
+
+    public boolean hasCycle() { return cyclicComponents > 0; }
+
+    /** One cycle of positive cells (nodes in order, back to the first implied), if any. */
+    public Optional<CycleFinder.Cycle> cycle() { return Optional.ofNullable(cycle); }
+
+    /** The positive cells as a graph (shared with the blob's names). */
+    public CsrGraph graph() { return graph; }
+
+    private static int[] histogram(int[] degrees) {
+        int max = 0;
+        for (int d : degrees) max = Math.max(max, d);
+        int[] h = new int[max + 1];
+        for (int d : degrees) h[d]++;
+        return h;
+    }
+
+    /** Row band reduction on the common pool; bands own their rows, columns are merged. */
+    private static Sums dense(long[] cells, int n) {
+        // plain adds are safe while every |cell| <= Long.MAX_VALUE / n
+        long limit = n > 0 ? Long.MAX_VALUE / n : 0;
+        boolean exact = IntStream.range(0, n).parallel().anyMatch(r -> {
+            for (int i = r * n, end = i + n; i < end; i++) {
+                if (cells[i] > limit || cells[i] < -limit) return true;
+            }
+            return false;
+        });
+
+        long[] owedBy = new long[n];
+        int[] outDegree = new int[n];
+        int bands = Math.max(1, Math.min(n, 4 * ForkJoinPool.getCommonPoolParallelism()));
+        Sums merged = IntStream.range(0, bands).parallel()
+                .mapToObj(b -> {
+                    int r0 = (int) ((long) n * b / bands);
+                    int r1 = (int) ((long) n * (b + 1) / bands);
+                    long[] colSum = new long[n];
+                    int[] colDeg = new int[n];
+                    for (int r = r0; r < r1; r++) {
+                        int base = r * n;
+                        long row = 0;
+                        int deg = 0;
+                        if (exact) {
+                            for (int c = 0; c < n; c++) {
+                                long v = cells[base + c];
+                                row = Math.addExact(row, v);
+                                colSum[c] = Math.addExact(colSum[c], v);
+                                int nz = v != 0 ? 1 : 0;
+                                deg += nz;
+                                colDeg[c] += nz;
+                            }
+                        } else {
+                            for (int c = 0; c < n; c++) {
+                                long v = cells[base + c];
+                                row += v;
+                                colSum[c] += v;
+                                int nz = v != 0 ? 1 : 0;
+                                deg += nz;
+                                colDeg[c] += nz;
+                            }
+                        }
+                        owedBy[r] = row;                // disjoint rows per band
+                        outDegree[r] = deg;
+                    }
+                    return new Sums(null, colSum, null, colDeg);
+                })
+                .reduce(MatrixAnalysis::mergeColumns)
+                .orElseGet(() -> new Sums(null, new long[n], null, new int[n]));
+        return new Sums(owedBy, merged.owedTo, outDegree, merged.inDegree);
+    }
+
+    private static Sums mergeColumns(Sums a, Sums b) {
+        for (int c = 0; c < a.owedTo.length; c++) {
+            a.owedTo[c] = Math.addExact(a.owedTo[c], b.owedTo[c]);
+            a.inDegree[c] += b.inDegree[c];
+        }
+        return a;
+    }
+
+    /** One pass over the non-zero cells, row by row. */
+    private static Sums sparse(MatrixBlob blob) {
+        int n = blob.nodeCount();
+        Sums s = new Sums(n);
+        long[] dense = blob.denseCells();
+        if (dense != null) {
+            for (int r = 0; r < n; r++) {
+                for (int c = 0, base = r * n; c < n; c++) {
+                    long v = dense[base + c];
+                    if (v != 0) s.add(r, c, v);
+                }
+            }
+            return s;
+        }
+        int[] offsets = blob.rowOffsets();
+        int[] columns = blob.columnIndices();
+        long[] values = blob.cellValues();
+        for (int r = 0; r < n; r++) {
+            for (int i = offsets[r], end = offsets[r + 1]; i < end; i++) {
+                if (values[i] != 0) s.add(r, columns[i], values[i]);
+            }
+        }
+        return s;
+    }
+
+    private record Sums(long[] owedBy, long[] owedTo, int[] outDegree, int[] inDegree) {
+
+        Sums(int n) {
+            this(new long[n], new long[n], new int[n], new int[n]);
+        }
+
+        void add(int row, int column, long v) {
+            owedBy[row] = Math.addExact(owedBy[row], v);
+            owedTo[column] = Math.addExact(owedTo[column], v);
+            outDegree[row]++;
+            inDegree[column]++;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.amospringboot.matrix.engine;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+/**
+ * A decoded .b64 matrix: the node-name dictionary plus the cells, held either dense
+ * (row-major long[n*n], up to matrix.blobs.dense-max-nodes nodes, never above
+ * {@link MatrixBlobDecoder#DENSE_LIMIT}) or sparse (CSR of the non-zero cells).
+ * Cells are unscaled longs at {@link #scale()}; {@link #toDecimal} converts back.
+ * Immutable; produced by {@link MatrixBlobDecoder}.
+ */
+public final class MatrixBlob {
+
+    private final String[] names;
+    private final int scale;
+    private final long[] dense;     // null when sparse
+    private final int[] offsets;    // CSR, null when dense
+    private final int[] columns;
+    private final long[] values;
+
+    private MatrixBlob(String[] names, int scale, long[] dense, int[] offsets, int[] columns, long[] values) {
+        this.names = names;
+        this.scale = scale;
+        this.dense = dense;
+        this.offsets = offsets;
+        this.columns = columns;
+        this.values = values;
+    }
+
+    static MatrixBlob dense(String[] names, int scale, long[] cells) {
+        return new MatrixBlob(names, scale, cells, null, null, null);
+    }
+
+    static MatrixBlob sparse(String[] names, int scale, int[] offsets, int[] columns, long[] values) {
+        return new MatrixBlob(names, scale, null, offsets, columns, values);
+    }
+
+    public int nodeCount() { return names.length; }
+
+    public String name(int node) { return names[node]; }
+
+    public int scale() { return scale; }
+
+    public boolean isDense() { return dense != null; }
+
+    /** Number of non-zero cells. */
+    public long nonZeroCount() {
+        if (dense == null) return values.length;
+        long nz = 0;
+        for (long v : dense) if (v != 0) nz++;
+        return nz;
+    }
+
+    /** Unscaled amount owed by {@code row} to {@code column} (0 if none). */
+    public long cell(int row, int column) {
+        if (dense != null) return dense[row * names.length + column];
+        int i = Arrays.binarySearch(columns, offsets[row], offsets[row + 1], column);
+        return i >= 0 ? values[i] : 0L;
+    }
+
+    public BigDecimal toDecimal(long unscaled) {
+        return BigDecimal.valueOf(unscaled, scale);
+    }
+
+    // raw storage for the analysis kernels (MatrixAnalysis); never modified
+    long[] denseCells() { return dense; }
+
+    int[] rowOffsets() { return offsets; }
+
+    int[] columnIndices() { return columns; }
+
+    long[] cellValues() { return values; }
+
+    /** Approximate retained heap, for cache accounting. */
+    public long sizeBytes() {
+        long names = 16L + 8L * this.names.length;
+        for (String n : this.names) names += 40L + n.length();
+        if (dense != null) return names + 16L + 8L * dense.length;
+        return names + 48L + 4L * offsets.length + 12L * values.length;
+    }
+
+    /** Positive cells as a {@link CsrGraph} for the cycle engine (no copy of the names). */
+    public CsrGraph toGraph() {
+        int n = names.length;
+        int[] rowOffsets = new int[n + 1];
+        int[] targets;
+        long[] amounts;
+        if (dense != null) {
+            int nz = 0;
+            for (long v : dense) if (v > 0) nz++;
+            targets = new int[nz];
+            amounts = new long[nz];
+            int k = 0;
+            for (int r = 0; r < n; r++) {
+                for (int c = 0, base = r * n; c < n; c++) {
+                    long v = dense[base + c];
+                    if (v > 0) {
+                        targets[k] = c;
+                        amounts[k++] = v;
+                    }
+                }
+                rowOffsets[r + 1] = k;
+            }
+        } else {
+            int nz = 0;
+            for (long v : values) if (v > 0) nz++;
+            targets = new int[nz];
+            amounts = new long[nz];
+            int k = 0;
+            for (int r = 0; r < n; r++) {
+                for (int i = offsets[r]; i < offsets[r + 1]; i++) {
+                    if (values[i] > 0) {
+                        targets[k] = columns[i];
+                        amounts[k++] = values[i];
+                    }
+                }
+                rowOffsets[r + 1] = k;
+            }
+        }
+        return new CsrGraph(names, rowOffsets, targets, amounts, scale);
+    }
+}
@@ -0,0 +1,354 @@
+package com.example.amospringboot.matrix.engine;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Incremental decoder for a .b64 matrix blob: base64 text in, {@link MatrixBlob} out.
+ *
+ * Text is pushed chunk by chunk; each chunk is base64-decoded into a small scratch buffer and
+ * fed straight into Jackson's non-blocking parser, so neither the base64 text nor the decoded
+ * JSON ({"nodes": [...], "matrix": [[...], ...]}) is ever held whole. The result is dense
+ * (long[n*n]) when n &lt;= denseMaxNodes, else CSR of the non-zero cells. If the node names
+ * arrive first, cells go straight into the dense array; otherwise rows are collected as CSR and
+ * copied into a dense array at the end when n turns out small enough. Amounts are exact
+ * unscaled longs at one common scale (as in {@link CsrGraph}). Not thread-safe: one instance per download.
+ */
+public final class MatrixBlobDecoder {
+
+    /**
+     * Hard cap on denseMaxNodes (larger settings are clamped): a dense matrix of 4096 nodes is
+     * already 128 MB of longs, and most of it zeros at the sizes the backend produces.
+     */
+    public static final int DENSE_LIMIT = 4096;
+
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final int MAX_SCALE = 9;
+    private static final int[] ALPHABET = alphabet();
+
+    private enum Field { NONE, NODES, MATRIX }
+
+    private final int denseMaxNodes;
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+    private final byte[] decoded = new byte[6144];
+
+    // base64 state: up to three pending sextets, and whether '=' padding was seen
+    private int quantum;
+    private int sextets;
+    private boolean padded;
+
+    // JSON state
+    private int depth;
+    private Field field = Field.NONE;
+    private Field inside = Field.NONE;
+
+    private String[] names = new String[64];
+    private int nodeCount;
+    private boolean namesSeen;
+
+    private int scale;
+    private int row = -1;
+    private int column;
+    private int rows;
+    private int maxColumn = -1;
+
+    private long[] dense;           // non-null while writing dense
+    private int[] offsets;          // CSR, row r is columns[offsets[r] .. offsets[r+1])
+    private int[] columns;
+    private long[] values;
+    private int nonZero;
+
+    public MatrixBlobDecoder(int denseMaxNodes) {
+        this.denseMaxNodes = Math.max(0, Math.min(DENSE_LIMIT, denseMaxNodes));
+        try {
+            this.parser = JSON.createNonBlockingByteArrayParser();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+    }
+
+    /**
+     * Consume base64 text; the caller may reuse {@code text} afterwards. Whitespace and line
+     * breaks are ignored, the URL-safe alphabet is accepted.
+     *
+     * @throws UncheckedIOException     on malformed base64 or JSON
+     * @throws IllegalArgumentException if the matrix is inconsistent or an amount is not exact
+     */
+    public void feed(byte[] text, int offset, int length) {
+        int out = 0;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            int c = text[i] & 0xFF;
+            int v = ALPHABET[c];
+            if (v >= 0) {
+                if (padded) throw malformed("data after base64 padding");
+                quantum = (quantum << 6) | v;
+                if (++sextets == 4) {
+                    decoded[out++] = (byte) (quantum >> 16);
+                    decoded[out++] = (byte) (quantum >> 8);
+                    decoded[out++] = (byte) quantum;
+                    quantum = 0;
+                    sextets = 0;
+                    if (out > decoded.length - 3) {
+                        parse(out);
+                        out = 0;
+                    }
+                }
+            } else if (c == '=') {
+                padded = true;
+            } else if (v == -1) {
+                throw malformed("invalid base64 character 0x" + Integer.toHexString(c));
+            }
+        }
+        if (out > 0) parse(out);
+    }
+
+    /** Consume the remaining bytes of {@code text} (e.g. a mapped file window). */
+    public void feed(ByteBuffer text) {
+        byte[] chunk = new byte[8192];
+        while (text.hasRemaining()) {
+            int len = Math.min(chunk.length, text.remaining());
+            text.get(chunk, 0, len);
+            feed(chunk, 0, len);
+        }
+    }
+
+    /** End of input: flush the last partial quantum and build the blob. */
+    public MatrixBlob finish() {
+        int out = 0;
+        if (sextets == 1) throw malformed("truncated base64");
+        if (sextets == 2) {
+            decoded[out++] = (byte) (quantum >> 4);
+        } else if (sextets == 3) {
+            decoded[out++] = (byte) (quantum >> 10);
+            decoded[out++] = (byte) (quantum >> 2);
+        }
+        sextets = 0;
+        if (out > 0) parse(out);
+        feeder.endOfInput();
+        parse(0);
+        if (depth != 0 || row >= 0) throw malformed("truncated matrix");
+        return build();
+    }
+
+    private void parse(int length) {
+        try {
+            if (length > 0) feeder.feedInput(decoded, 0, length);
+            JsonToken t;
+            while ((t = parser.nextToken()) != null && t != JsonToken.NOT_AVAILABLE) {
+                token(t);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Malformed matrix blob", e);
+        }
+    }
+
+    private void token(JsonToken t) throws IOException {
+        switch (t) {
+            case START_OBJECT, START_ARRAY -> {
+                depth++;
+                if (depth == 2 && t == JsonToken.START_ARRAY && field != Field.NONE) {
+                    inside = field;
+                    if (inside == Field.MATRIX) startMatrix();
+                } else if (depth == 3 && inside == Field.MATRIX) {
+                    if (t != JsonToken.START_ARRAY) throw new IllegalArgumentException("Matrix row is not an array");
+                    startRow();
+                } else if (depth > 3 && inside == Field.MATRIX) {
+                    throw new IllegalArgumentException("Matrix cell is not a number");
+                }
+            }
+            case END_OBJECT, END_ARRAY -> {
+                if (depth == 3 && inside == Field.MATRIX) endRow();
+                if (depth == 2) inside = Field.NONE;
+                depth--;
+            }
+            case FIELD_NAME -> {
+                if (depth == 1) field = fieldOf(parser.currentName());
+            }
+            case VALUE_STRING -> {
+                if (depth == 2 && inside == Field.NODES) name(parser.getText());
+                else if (depth == 3 && inside == Field.MATRIX) cell(parseDecimal(parser.getText()));
+            }
+            case VALUE_NUMBER_INT -> {
+                if (depth == 3 && inside == Field.MATRIX) {
+                    if (parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER) {
+                        throw new IllegalArgumentException("Matrix amount exceeds the exact range");
+                    }
+                    cell(parser.getLongValue(), 0);
+                }
+            }
+            case VALUE_NUMBER_FLOAT -> {
+                if (depth == 3 && inside == Field.MATRIX) cell(parser.getDecimalValue());
+            }
+            case VALUE_NULL, VALUE_FALSE -> {
+                if (depth == 3 && inside == Field.MATRIX) column++;
+            }
+            default -> {
+                if (depth == 3 && inside == Field.MATRIX) throw new IllegalArgumentException("Matrix cell is not a number");
+            }
+        }
+    }
+
+    private static Field fieldOf(String name) {
+        return switch (name) {
+            case "nodes", "names", "users" -> Field.NODES;
+            case "matrix" -> Field.MATRIX;
+            default -> Field.NONE;
+        };
+    }
+
+    private void name(String name) {
+        if (nodeCount == names.length) names = Arrays.copyOf(names, nodeCount * 2);
+        names[nodeCount++] = name;
+        namesSeen = true;
+    }
+
+    private void startMatrix() {
+        if (namesSeen && nodeCount <= denseMaxNodes) {
+            dense = new long[nodeCount * nodeCount];
+        } else {
+            int cap = Math.max(16, namesSeen ? nodeCount * 4 : 1024);
+            offsets = new int[Math.max(16, nodeCount + 1)];
+            columns = new int[cap];
+            values = new long[cap];
+        }
+    }
+
+    private void startRow() {
+        row = rows;
+        column = 0;
+        if (dense != null && row >= nodeCount) {
+            throw new IllegalArgumentException("Matrix has more rows than nodes (" + nodeCount + ")");
+        }
+    }
+
+    private void endRow() {
+        if (offsets != null) {
+            if (row + 2 > offsets.length) offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            offsets[row + 1] = nonZero;
+        }
+        rows++;
+        row = -1;
+    }
+
+    private void cell(BigDecimal amount) {
+        int s = amount.scale();
+        if (s > scale) {
+            BigDecimal stripped = amount.stripTrailingZeros();
+            s = Math.max(0, stripped.scale());
+            if (s > scale) rescale(s);
+            amount = stripped;
+        }
+        try {
+            cell(amount.scaleByPowerOfTen(scale).longValueExact(), scale);
+        } catch (ArithmeticException ex) {
+            throw new IllegalArgumentException("Matrix amount exceeds the exact range at scale " + scale, ex);
+        }
+    }
+
+    /** {@code unscaled} is at {@code at} (&lt;= current scale). */
+    private void cell(long unscaled, int at) {
+        int c = column++;
+        if (unscaled == 0) return;
+        long v;
+        try {
+            v = at == scale ? unscaled : Math.multiplyExact(unscaled, pow10(scale - at));
+        } catch (ArithmeticException ex) {
+            throw new IllegalArgumentException("Matrix amount exceeds the exact range at scale " + scale, ex);
+        }
+        if (dense != null) {
+            if (c >= nodeCount) throw new IllegalArgumentException("Matrix row " + row + " is wider than " + nodeCount);
+            dense[row * nodeCount + c] = v;
+            return;
+        }
+        if (nonZero == columns.length) {
+            columns = Arrays.copyOf(columns, nonZero * 2);
+            values = Arrays.copyOf(values, nonZero * 2);
+        }
+        columns[nonZero] = c;
+        values[nonZero++] = v;
+        maxColumn = Math.max(maxColumn, c);
+    }
+
+    private void rescale(int to) {
+        if (to > MAX_SCALE) throw new IllegalArgumentException("Matrix amount has more than " + MAX_SCALE + " decimals");
+        long f = pow10(to - scale);
+        try {
+            if (dense != null) {
+                for (int i = 0; i < dense.length; i++) dense[i] = Math.multiplyExact(dense[i], f);
+            } else if (values != null) {
+                for (int i = 0; i < nonZero; i++) values[i] = Math.multiplyExact(values[i], f);
+            }
+        } catch (ArithmeticException ex) {
+            throw new IllegalArgumentException("Matrix amount exceeds the exact range at scale " + to, ex);
+        }
+        scale = to;
+    }
+
+    private static BigDecimal parseDecimal(String text) {
+        try {
+            return new BigDecimal(text.trim());
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Matrix cell is not a number: " + text, ex);
+        }
+    }
+
+    private static long pow10(int exp) {
+        long f = 1;
+        for (int i = 0; i < exp; i++) f *= 10;
+        return f;
+    }
+
+    private MatrixBlob build() {
+        if (dense == null && columns == null) throw new IllegalArgumentException("Blob has no matrix");
+        int n = namesSeen ? nodeCount : Math.max(rows, maxColumn + 1);
+        if (rows != n) throw new IllegalArgumentException("Matrix has " + rows + " rows for " + n + " nodes");
+        if (maxColumn >= n) throw new IllegalArgumentException("Matrix is wider than " + n + " nodes");
+
+        String[] dict = namesSeen ? Arrays.copyOf(names, n) : indexNames(n);
+        if (dense != null) return MatrixBlob.dense(dict, scale, dense);
+
+        int[] rowOffsets = Arrays.copyOf(offsets, n + 1);
+        if (n <= denseMaxNodes) {
+            // Names arrived after the matrix: small enough to switch to dense now
+            long[] cells = new long[n * n];
+            for (int r = 0; r < n; r++) {
+                for (int i = rowOffsets[r]; i < rowOffsets[r + 1]; i++) cells[r * n + columns[i]] = values[i];
+            }
+            return MatrixBlob.dense(dict, scale, cells);
+        }
+        return MatrixBlob.sparse(dict, scale, rowOffsets,
+                Arrays.copyOf(columns, nonZero), Arrays.copyOf(values, nonZero));
+    }
+
+    private static String[] indexNames(int n) {
+        String[] a = new String[n];
+        for (int i = 0; i < n; i++) a[i] = Integer.toString(i);
+        return a;
+    }
+
+    private static UncheckedIOException malformed(String detail) {
+        return new UncheckedIOException(new IOException("Malformed matrix blob: " + detail));
+    }
+
+    /** Sextet value per byte; -2 = ignorable whitespace, -1 = invalid. */
+    private static int[] alphabet() {
+        int[] a = new int[256];
+        Arrays.fill(a, -1);
+        String chars = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < chars.length(); i++) a[chars.charAt(i)] = i;
+        a['-'] = 62;
+        a['_'] = 63;
+        a[' '] = a['\t'] = a['\r'] = a['\n'] = -2;
+        return a;
+    }
+}
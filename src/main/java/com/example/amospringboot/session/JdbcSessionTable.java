@@ -0,0 +1,148 @@
+package com.example.amospringboot.session;
+
+import org.springframework.boot.jdbc.DatabaseDriver;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.serializer.support.DeserializingConverter;
+import org.springframework.core.serializer.support.SerializingConverter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+import org.springframework.session.MapSession;
+
+import javax.sql.DataSource;
+import java.sql.DatabaseMetaData;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The app_session table: one row per session, all attributes in one serialized column.
+ *
+ * {@code revision} is bumped on every content write; readers compare it to decide whether
+ * their cached copy is still current, and writers use it for optimistic concurrency.
+ * Last-access updates are a separate, batched statement that never touches the revision.
+ */
+final class JdbcSessionTable {
+
+    private static final String COLUMNS =
+            "session_id, creation_time, last_access, max_inactive, revision, attributes";
+
+    /** expiry_time of a session that never expires: after any sweep's "now". */
+    private static final long NEVER = Long.MAX_VALUE;
+
+    private final JdbcTemplate jdbc;
+    private final SerializingConverter serializer = new SerializingConverter();
+    private final DeserializingConverter deserializer = new DeserializingConverter(JdbcSessionTable.class.getClassLoader());
+
+    JdbcSessionTable(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /** Runs db/session/schema-{platform}.sql (idempotent: CREATE ... IF NOT EXISTS). */
+    static void initializeSchema(DataSource dataSource) {
+        String platform;
+        try {
+            String url = JdbcUtils.extractDatabaseMetaData(dataSource, DatabaseMetaData::getURL);
+            platform = DatabaseDriver.fromJdbcUrl(url).getId();
+        } catch (MetaDataAccessException e) {
+            throw new IllegalStateException("Cannot determine the session database platform", e);
+        }
+        ClassPathResource script = new ClassPathResource("db/session/schema-" + platform + ".sql");
+        if (!script.exists()) {
+            throw new IllegalStateException("No session schema for database platform '" + platform
+                    + "': create app_session like db/session/schema-postgresql.sql and set app.session.initialize-schema=false");
+        }
+        DatabasePopulatorUtils.execute(new ResourceDatabasePopulator(script), dataSource);
+    }
+
+    void insert(MapSession s, String principal) {
+        jdbc.update("INSERT INTO app_session (session_id, principal_name, creation_time, last_access, max_inactive, "
+                        + "expiry_time, revision, attributes) VALUES (?, ?, ?, ?, ?, ?, 1, ?)",
+                s.getId(), principal, s.getCreationTime().toEpochMilli(), s.getLastAccessedTime().toEpochMilli(),
+                (int) s.getMaxInactiveInterval().toSeconds(), expiry(s), serialize(s));
+    }
+
+    /** Content write, only if the row is still at {@code expectedRevision}; false = someone else wrote first. */
+    boolean update(MapSession s, String principal, long expectedRevision) {
+        return jdbc.update("UPDATE app_session SET principal_name = ?, last_access = ?, max_inactive = ?, "
+                        + "expiry_time = ?, revision = ?, attributes = ? WHERE session_id = ? AND revision = ?",
+                principal, s.getLastAccessedTime().toEpochMilli(), (int) s.getMaxInactiveInterval().toSeconds(),
+                expiry(s), expectedRevision + 1, serialize(s), s.getId(), expectedRevision) == 1;
+    }
+
+    void rename(String oldId, String newId) {
+        jdbc.update("UPDATE app_session SET session_id = ? WHERE session_id = ?", newId, oldId);
+    }
+
+    void delete(String id) {
+        jdbc.update("DELETE FROM app_session WHERE session_id = ?", id);
+    }
+
+    /** Revision and last access only: what a cache hit needs to be trusted. Null if the row is gone. */
+    Probe probe(String id) {
+        List<Probe> rows = jdbc.query("SELECT revision, last_access FROM app_session WHERE session_id = ?",
+                (rs, i) -> new Probe(rs.getLong(1), Instant.ofEpochMilli(rs.getLong(2))), id);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    Loaded load(String id) {
+        List<Loaded> rows = jdbc.query("SELECT " + COLUMNS + " FROM app_session WHERE session_id = ?",
+                (rs, i) -> {
+                    MapSession s = new MapSession(rs.getString(1));
+                    s.setCreationTime(Instant.ofEpochMilli(rs.getLong(2)));
+                    s.setLastAccessedTime(Instant.ofEpochMilli(rs.getLong(3)));
+                    s.setMaxInactiveInterval(Duration.ofSeconds(rs.getInt(4)));
+                    deserialize(rs.getBytes(6)).forEach(s::setAttribute);
+                    return new Loaded(s, rs.getLong(5));
+                }, id);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    List<String> idsByPrincipal(String principal) {
+        return jdbc.queryForList("SELECT session_id FROM app_session WHERE principal_name = ?", String.class, principal);
+    }
+
+    /** Batched last-access write; an older value never overwrites a newer one from another node. */
+    void touch(List<Map.Entry<String, Instant>> accesses) {
+        jdbc.batchUpdate("UPDATE app_session SET last_access = ?, expiry_time = CASE WHEN max_inactive < 0 THEN ? "
+                        + "ELSE CAST(? AS BIGINT) + CAST(max_inactive AS BIGINT) * 1000 END "
+                        + "WHERE session_id = ? AND last_access < ?",
+                accesses, accesses.size(), (ps, e) -> {
+                    long at = e.getValue().toEpochMilli();
+                    ps.setLong(1, at);
+                    ps.setLong(2, NEVER);
+                    ps.setLong(3, at);
+                    ps.setString(4, e.getKey());
+                    ps.setLong(5, at);
+                });
+    }
+
+    int deleteExpired(Instant now) {
+        return jdbc.update("DELETE FROM app_session WHERE expiry_time < ?", now.toEpochMilli());
+    }
+
+    /** Expiry in epoch millis; {@link #NEVER} for a negative timeout (never expires). */
+    private static long expiry(MapSession s) {
+        if (s.getMaxInactiveInterval().isNegative()) return NEVER;
+        return s.getLastAccessedTime().plus(s.getMaxInactiveInterval()).toEpochMilli();
+    }
+
+    private byte[] serialize(MapSession s) {
+        HashMap<String, Object> attributes = new HashMap<>();
+        for (String name : s.getAttributeNames()) attributes.put(name, s.getAttribute(name));
+        return serializer.convert(attributes);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> deserialize(byte[] bytes) {
+        return bytes == null ? Map.of() : (Map<String, Object>) deserializer.convert(bytes);
+    }
+
+    record Probe(long revision, Instant lastAccess) {}
+
+    record Loaded(MapSession session, long revision) {}
+}
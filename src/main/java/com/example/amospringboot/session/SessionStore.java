@@ -0,0 +1,327 @@
+package com.example.amospringboot.session;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.session.FindByIndexNameSessionRepository;
+import org.springframework.session.MapSession;
+import org.springframework.session.PrincipalNameIndexResolver;
+import org.springframework.session.Session;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * HTTP sessions in the app_session table, shared by every replica, with a local read-through cache.
+ *
+ * Reads: a cached copy younger than app.session.revalidate-after is used as is; an older one
+ * is checked with a one-row (revision, last_access) probe and only reloaded (and deserialized)
+ * when another node changed it. Writes: content changes (attributes, timeout, id) are written
+ * at once, optimistically on the revision; on a conflict this request's delta is replayed on
+ * the newer row. A request that only moved the last-access time writes nothing: access times
+ * are collected and flushed in one batch every app.session.flush-interval.
+ *
+ * The principal name is stored with each row, so the session registry (maximumSessions) sees
+ * the sessions of a user on all nodes, and expiring one is a content write the owning node
+ * picks up on its next probe. Expired rows are deleted by every node once a minute.
+ */
+public class SessionStore implements FindByIndexNameSessionRepository<StoredSession> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SessionStore.class);
+
+    private static final int MAX_WRITE_ATTEMPTS = 5;
+    private static final Duration SWEEP_EVERY = Duration.ofMinutes(1);
+
+    private final JdbcSessionTable table;
+    private final Duration defaultMaxInactive;
+    private final long revalidateNanos;
+    private final int cacheSize;
+    private final Duration flushInterval;
+    private final PrincipalNameIndexResolver<Session> principalNames = new PrincipalNameIndexResolver<>();
+
+    /** Session id -> snapshot, access-ordered, guarded by its own monitor. Snapshots are never mutated. */
+    private final LinkedHashMap<String, Cached> cache = new LinkedHashMap<>(256, 0.75f, true);
+    /** Last-access times not written yet. */
+    private final ConcurrentMap<String, Instant> pendingAccess = new ConcurrentHashMap<>();
+
+    private final Counter cachedHits;
+    private final Counter revalidated;
+    private final Counter loaded;
+    private final Counter conflicts;
+    private final DistributionSummary touchBatch;
+
+    private volatile Disposable flusher;
+    private volatile long lastSweep = System.nanoTime();
+
+    SessionStore(JdbcSessionTable table, MeterRegistry registry, Duration defaultMaxInactive,
+                 Duration revalidateAfter, int cacheSize, Duration flushInterval) {
+        this.table = table;
+        this.defaultMaxInactive = defaultMaxInactive;
+        this.revalidateNanos = revalidateAfter.toNanos();
+        this.cacheSize = cacheSize;
+        this.flushInterval = flushInterval;
+        this.cachedHits  = lookupCounter(registry, "cached");
+        this.revalidated = lookupCounter(registry, "revalidated");
+        this.loaded      = lookupCounter(registry, "loaded");
+        this.conflicts = Counter.builder("app.session.write.conflicts")
+                .description("Session writes replayed on a revision another node wrote first")
+                .register(registry);
+        this.touchBatch = DistributionSummary.builder("app.session.touch.batch")
+                .description("Last-access updates per batched write")
+                .register(registry);
+    }
+
+    /** Store on {@code dataSource}; creates app_session first if {@code initializeSchema}. */
+    public static SessionStore jdbc(DataSource dataSource, MeterRegistry registry, boolean initializeSchema,
+                                    Duration defaultMaxInactive, Duration revalidateAfter,
+                                    int cacheSize, Duration flushInterval) {
+        if (initializeSchema) JdbcSessionTable.initializeSchema(dataSource);
+        return new SessionStore(new JdbcSessionTable(new JdbcTemplate(dataSource)), registry,
+                defaultMaxInactive, revalidateAfter, cacheSize, flushInterval);
+    }
+
+    private static Counter lookupCounter(MeterRegistry registry, String result) {
+        return Counter.builder("app.session.lookups")
+                .description("Session lookups by how they were answered")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    @Override
+    public StoredSession createSession() {
+        MapSession s = new MapSession();
+        s.setMaxInactiveInterval(defaultMaxInactive);
+        return new StoredSession(s, null, 0);
+    }
+
+    @Override
+    public void save(StoredSession session) {
+        String id = session.getId();
+        if (session.isNew()) {
+            table.insert(session.state(), principalNames.resolveIndexValueFor(session));
+            session.saved(1);
+            remember(id, session.state(), 1);
+            return;
+        }
+        if (!session.storedId().equals(id)) {
+            table.rename(session.storedId(), id);
+            forget(session.storedId());
+            Instant pending = pendingAccess.remove(session.storedId());
+            if (pending != null) pendingAccess.merge(id, pending, SessionStore::later);
+            remember(id, session.state(), session.revision());
+            session.renamed();
+        }
+        if (session.contentChanged()) {
+            write(session);
+        } else if (session.getLastAccessedTime().isAfter(session.storedLastAccess())) {
+            pendingAccess.merge(id, session.getLastAccessedTime(), SessionStore::later);
+            session.accessRecorded();
+        }
+    }
+
+    /** Optimistic content write; on a conflict replay this request's delta on the current row. */
+    private void write(StoredSession session) {
+        String id = session.getId();
+        MapSession next = session.state();
+        long expected = session.revision();
+        for (int attempt = 1; ; attempt++) {
+            if (table.update(next, principalNames.resolveIndexValueFor(next), expected)) {
+                session.saved(expected + 1);
+                remember(id, next, expected + 1);
+                return;
+            }
+            conflicts.increment();
+            JdbcSessionTable.Loaded current = table.load(id);
+            if (current == null) {
+                forget(id);          // invalidated elsewhere (logout, expiry): nothing to write to
+                return;
+            }
+            if (attempt >= MAX_WRITE_ATTEMPTS) {
+                throw new IllegalStateException("Session " + id + " kept changing during " + attempt + " write attempts");
+            }
+            MapSession merged = current.session();
+            session.delta().forEach((name, value) -> {
+                if (value == null) merged.removeAttribute(name); else merged.setAttribute(name, value);
+            });
+            merged.setMaxInactiveInterval(session.getMaxInactiveInterval());
+            merged.setLastAccessedTime(later(merged.getLastAccessedTime(), session.getLastAccessedTime()));
+            next = merged;
+            expected = current.revision();
+        }
+    }
+
+    @Override
+    public StoredSession findById(String id) {
+        long now = System.nanoTime();
+        Cached c = cached(id);
+        if (c != null && now - c.validatedAt < revalidateNanos) {
+            cachedHits.increment();
+        } else if (c != null && (c = revalidate(id, c, now)) != null) {
+            revalidated.increment();
+        } else {
+            JdbcSessionTable.Loaded row = table.load(id);
+            if (row == null) {
+                forget(id);
+                return null;
+            }
+            loaded.increment();
+            c = remember(id, row.session(), row.revision());
+        }
+
+        MapSession copy = new MapSession(c.session);
+        Instant pending = pendingAccess.get(id);
+        if (pending != null) copy.setLastAccessedTime(later(copy.getLastAccessedTime(), pending));
+        if (copy.isExpired()) {
+            deleteById(id);
+            return null;
+        }
+        return new StoredSession(copy, id, c.revision);
+    }
+
+    /** Same revision: keep the snapshot (with the newest last access); otherwise null = reload. */
+    private Cached revalidate(String id, Cached c, long now) {
+        JdbcSessionTable.Probe probe = table.probe(id);
+        if (probe == null || probe.revision() != c.revision) return null;
+        MapSession session = c.session;
+        if (probe.lastAccess().isAfter(session.getLastAccessedTime())) {
+            session = new MapSession(session);
+            session.setLastAccessedTime(probe.lastAccess());
+        }
+        Cached fresh = new Cached(session, c.revision, now);
+        synchronized (cache) {
+            cache.put(id, fresh);
+        }
+        return fresh;
+    }
+
+    @Override
+    public void deleteById(String id) {
+        table.delete(id);
+        forget(id);
+        pendingAccess.remove(id);
+    }
+
+    @Override
+    public Map<String, StoredSession> findByIndexNameAndIndexValue(String indexName, String indexValue) {
+        if (!PRINCIPAL_NAME_INDEX_NAME.equals(indexName)) return Map.of();
+        Map<String, StoredSession> sessions = new LinkedHashMap<>();
+        for (String id : table.idsByPrincipal(indexValue)) {
+            StoredSession s = findById(id);
+            if (s != null) sessions.put(id, s);
+        }
+        return sessions;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startFlushing() {
+        flusher = Flux.interval(flushInterval, flushInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> Mono.fromRunnable(this::flush)
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .onErrorResume(ex -> {
+                            LOG.warn("SESSION_FLUSH_FAILED error={}", ex.toString());
+                            return Mono.empty();
+                        }))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        Disposable f = flusher;
+        if (f != null) f.dispose();
+        try {
+            flushAccessTimes();
+        } catch (RuntimeException e) {
+            LOG.warn("SESSION_FLUSH_FAILED on shutdown error={}", e.toString());
+        }
+    }
+
+    void flush() {
+        flushAccessTimes();
+        long now = System.nanoTime();
+        if (now - lastSweep >= SWEEP_EVERY.toNanos()) {
+            lastSweep = now;
+            sweep(Instant.now());
+        }
+    }
+
+    /** Delete rows expired at {@code now} (any node's) and drop expired copies from the cache. */
+    int sweep(Instant now) {
+        int deleted = table.deleteExpired(now);
+        if (deleted > 0) LOG.info("SESSION_SWEEP deleted={}", deleted);
+        sweepCache();
+        return deleted;
+    }
+
+    /** One batched UPDATE for every session whose only change was its last access. */
+    void flushAccessTimes() {
+        if (pendingAccess.isEmpty()) return;
+        List<Map.Entry<String, Instant>> batch = new ArrayList<>(pendingAccess.size());
+        for (Map.Entry<String, Instant> e : pendingAccess.entrySet()) {
+            if (pendingAccess.remove(e.getKey(), e.getValue())) batch.add(Map.entry(e.getKey(), e.getValue()));
+        }
+        if (batch.isEmpty()) return;
+        try {
+            table.touch(batch);
+            touchBatch.record(batch.size());
+        } catch (RuntimeException e) {
+            batch.forEach(a -> pendingAccess.merge(a.getKey(), a.getValue(), SessionStore::later));
+            throw e;
+        }
+    }
+
+    private void sweepCache() {
+        synchronized (cache) {
+            cache.values().removeIf(c -> c.session.isExpired());
+        }
+    }
+
+    private Cached cached(String id) {
+        synchronized (cache) {
+            return cache.get(id);
+        }
+    }
+
+    private Cached remember(String id, MapSession session, long revision) {
+        Cached c = new Cached(new MapSession(session), revision, System.nanoTime());
+        synchronized (cache) {
+            cache.put(id, c);
+            Iterator<Cached> it = cache.values().iterator();
+            while (cache.size() > cacheSize && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+        return c;
+    }
+
+    private void forget(String id) {
+        synchronized (cache) {
+            cache.remove(id);
+        }
+    }
+
+    private static Instant later(Instant a, Instant b) {
+        return a.isAfter(b) ? a : b;
+    }
+
+    private record Cached(MapSession session, long revision, long validatedAt) {}
+}
@@ -0,0 +1,128 @@
+package com.example.amospringboot.session;
+
+import org.springframework.session.MapSession;
+import org.springframework.session.Session;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * One request's view of a session: a private copy of the cached state plus what this request
+ * changed. Attribute writes are kept as a delta (null = removed), so {@link SessionStore#save}
+ * can replay them on top of a newer revision another node wrote instead of overwriting it.
+ * Like Spring Session's JDBC store, only setAttribute/removeAttribute count as changes.
+ */
+public final class StoredSession implements Session {
+
+    private final MapSession state;
+    private final Map<String, Object> delta = new HashMap<>();
+    private String storedId;            // id of the row, null until first saved
+    private long revision;
+    private Instant storedLastAccess;
+    private boolean maxInactiveChanged;
+
+    StoredSession(MapSession state, String storedId, long revision) {
+        this.state = state;
+        this.storedId = storedId;
+        this.revision = revision;
+        this.storedLastAccess = state.getLastAccessedTime();
+    }
+
+    @Override
+    public String getId() {
+        return state.getId();
+    }
+
+    @Override
+    public String changeSessionId() {
+        return state.changeSessionId();
+    }
+
+    @Override
+    public <T> T getAttribute(String name) {
+        return state.getAttribute(name);
+    }
+
+    @Override
+    public Set<String> getAttributeNames() {
+        return state.getAttributeNames();
+    }
+
+    @Override
+    public void setAttribute(String name, Object value) {
+        if (value == null) {
+            removeAttribute(name);
+            return;
+        }
+        state.setAttribute(name, value);
+        delta.put(name, value);
+    }
+
+    @Override
+    public void removeAttribute(String name) {
+        state.removeAttribute(name);
+        delta.put(name, null);
+    }
+
+    @Override
+    public Instant getCreationTime() {
+        return state.getCreationTime();
+    }
+
+    @Override
+    public void setLastAccessedTime(Instant lastAccessedTime) {
+        state.setLastAccessedTime(lastAccessedTime);
+    }
+
+    @Override
+    public Instant getLastAccessedTime() {
+        return state.getLastAccessedTime();
+    }
+
+    @Override
+    public void setMaxInactiveInterval(Duration interval) {
+        if (!interval.equals(state.getMaxInactiveInterval())) maxInactiveChanged = true;
+        state.setMaxInactiveInterval(interval);
+    }
+
+    @Override
+    public Duration getMaxInactiveInterval() {
+        return state.getMaxInactiveInterval();
+    }
+
+    @Override
+    public boolean isExpired() {
+        return state.isExpired();
+    }
+
+    MapSession state() { return state; }
+    Map<String, Object> delta() { return delta; }
+    String storedId() { return storedId; }
+    long revision() { return revision; }
+    Instant storedLastAccess() { return storedLastAccess; }
+    boolean isNew() { return storedId == null; }
+    boolean contentChanged() { return !delta.isEmpty() || maxInactiveChanged; }
+
+    /** After a successful save: this object now mirrors the stored row. */
+    void saved(long newRevision) {
+        storedId = state.getId();
+        revision = newRevision;
+        storedLastAccess = state.getLastAccessedTime();
+        delta.clear();
+        maxInactiveChanged = false;
+    }
+
+    /** The row was renamed to the current id (session fixation protection). */
+    void renamed() {
+        storedId = state.getId();
+    }
+
+    /** Only the last access moved (batched, not written now). */
+    void accessRecorded() {
+        storedId = state.getId();
+        storedLastAccess = state.getLastAccessedTime();
+    }
+}
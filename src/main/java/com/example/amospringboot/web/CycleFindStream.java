@@ -0,0 +1,106 @@
+package com.example.amospringboot.web;
+
+import com.example.amospringboot.matrix.engine.EdgeList;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.lang.Nullable;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A streamed cycle-find request, as read by {@link EdgeStreamReader}: the JSON request's
+ * fields, with the edges held in an {@link EdgeList} instead of a List&lt;Edge&gt;.
+ * {@code nodes} is null when the body declared none (then every name in the edge list counts).
+ */
+public record CycleFindStream(
+        @Nullable String container,
+        @Nullable String blob,
+        @Nullable List<String> nodes,
+        @Nullable Map<String, Object> options,
+        EdgeList edges
+) {
+
+    /** Edges per generated chunk (~64 bytes each). */
+    private static final int CHUNK_EDGES = 2048;
+
+    /**
+     * The backend's JSON request body ({"container", "blob", "nodes", "edges": [{"from", "to",
+     * "weight"}], "options"}) generated chunk by chunk from the primitive arrays, so it is
+     * never held whole. Each subscription starts over.
+     */
+    Flux<DataBuffer> json(ObjectMapper mapper, @Nullable Map<String, Object> backendOptions) {
+        return Flux.generate(() -> new JsonChunks(mapper), (w, sink) -> {
+            try {
+                byte[] chunk = w.next(backendOptions);
+                if (chunk == null) sink.complete();
+                else sink.next(DefaultDataBufferFactory.sharedInstance.wrap(chunk));
+            } catch (IOException e) {
+                sink.error(new UncheckedIOException(e));
+            }
+            return w;
+        });
+    }
+
+    private final class JsonChunks {
+
+        private final ByteArrayBuilder out = new ByteArrayBuilder(CHUNK_EDGES * 64);
+        private final JsonGenerator gen;
+        private final char[] amount = new char[24];
+        private int next = -1;          // -1 = prologue, size = epilogue, above = done
+
+        JsonChunks(ObjectMapper mapper) {
+            try {
+                this.gen = mapper.createGenerator(out);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /** Next chunk of the body, null at the end. */
+        byte[] next(@Nullable Map<String, Object> backendOptions) throws IOException {
+            int size = edges.size();
+            if (next > size) return null;
+            if (next < 0) {
+                gen.writeStartObject();
+                gen.writeStringField("container", container);
+                gen.writeStringField("blob", blob);
+                gen.writeArrayFieldStart("nodes");
+                if (nodes != null) {
+                    for (String n : nodes) gen.writeString(n);
+                } else {
+                    for (int i = 0; i < edges.nodeCount(); i++) gen.writeString(edges.name(i));
+                }
+                gen.writeEndArray();
+                gen.writeArrayFieldStart("edges");
+                next = 0;
+            } else if (next < size) {
+                int end = Math.min(size, next + CHUNK_EDGES);
+                for (int e = next; e < end; e++) {
+                    gen.writeStartObject();
+                    gen.writeStringField("from", edges.name(edges.from(e)));
+                    gen.writeStringField("to", edges.name(edges.to(e)));
+                    gen.writeFieldName("weight");
+                    gen.writeNumber(amount, 0, edges.formatAmount(e, amount));
+                    gen.writeEndObject();
+                }
+                next = end;
+            } else {
+                gen.writeEndArray();
+                gen.writeObjectField("options", backendOptions);
+                gen.writeEndObject();
+                next = size + 1;
+            }
+            gen.flush();
+            byte[] chunk = out.toByteArray();
+            out.reset();
+            return chunk;
+        }
+    }
+}
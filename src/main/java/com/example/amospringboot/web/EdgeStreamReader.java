@@ -0,0 +1,218 @@
+package com.example.amospringboot.web;
+
+import com.example.amospringboot.matrix.engine.EdgeList;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ProblemDetail;
+import org.springframework.lang.Nullable;
+import org.springframework.web.ErrorResponseException;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads a streamed POST /matrix/cycle/find body into a {@link CycleFindStream}, edge by edge,
+ * straight into an {@link EdgeList}: no per-edge record, String or BigDecimal, and a bad edge
+ * is rejected (400, with its position) as soon as it is read. Two content types:
+ *
+ * <pre>
+ * application/x-ndjson
+ *   {"container":"matrices","blob":"x.b64","nodes":["A","B"],"options":{"node_a":"A","node_b":"B"}}
+ *   {"from":"A","to":"B","weight":12.5}
+ *   ["B","A",3]                                  (the same edge as a compact array)
+ *
+ * application/vnd.amo.edges, big-endian
+ *   "AMOE"  u8 version (1)  u8 scale (0..9)
+ *   u32 header length, UTF-8 JSON {"container", "blob", "options"} (0 = none)
+ *   u32 node count, per node: u16 length, UTF-8 name          (these are the request's nodes)
+ *   until end of body, per edge: u32 from, u32 to, i64 amount (unscaled at scale)
+ * </pre>
+ *
+ * The first NDJSON line is always the header ({} if there is nothing to say); without
+ * "nodes" the node list is every name in order of first appearance.
+ */
+final class EdgeStreamReader {
+
+    static final String NDJSON = "application/x-ndjson";
+    static final String BINARY = "application/vnd.amo.edges";
+
+    private static final byte[] MAGIC = {'A', 'M', 'O', 'E'};
+    private static final int VERSION = 1;
+
+    private final ObjectMapper mapper;
+    private final int maxEdges;
+
+    EdgeStreamReader(ObjectMapper mapper, int maxEdges) {
+        this.mapper = mapper;
+        this.maxEdges = maxEdges;
+    }
+
+    /** The part of the body that is not edges. */
+    record Header(
+            @Nullable String container,
+            @Nullable String blob,
+            @Nullable List<String> nodes,
+            @Nullable Map<String, Object> options
+    ) {}
+
+    CycleFindStream ndjson(InputStream body) throws IOException {
+        long edge = 0;
+        try (JsonParser p = mapper.createParser(body)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) throw invalid("The first line must be the header object");
+            Header header = mapper.readValue(p, Header.class);
+            List<String> declared = header.nodes() != null ? header.nodes() : List.of();
+            EdgeList edges = new EdgeList(declared.size(), 1024);
+            for (String n : declared) {
+                if (n == null) throw invalid("nodes must not contain null");
+                edges.node(n);
+            }
+
+            char[] weight = new char[32];
+            JsonToken t;
+            while ((t = p.nextToken()) != null) {
+                edge++;
+                checkLimit(edges);
+                int from = -1;
+                int to = -1;
+                int weightLength = -1;
+                if (t == JsonToken.START_OBJECT) {
+                    while (p.nextToken() == JsonToken.FIELD_NAME) {
+                        String field = p.currentName();
+                        JsonToken v = p.nextToken();
+                        switch (field) {
+                            case "from" -> from = node(p, v, edges, "from");
+                            case "to" -> to = node(p, v, edges, "to");
+                            case "weight" -> {
+                                weight = amount(p, v, weight);
+                                weightLength = p.getTextLength();
+                            }
+                            default -> p.skipChildren();
+                        }
+                    }
+                } else if (t == JsonToken.START_ARRAY) {
+                    from = node(p, p.nextToken(), edges, "from");
+                    to = node(p, p.nextToken(), edges, "to");
+                    weight = amount(p, p.nextToken(), weight);
+                    weightLength = p.getTextLength();
+                    if (p.nextToken() != JsonToken.END_ARRAY) throw new IllegalArgumentException("expected [from, to, weight]");
+                } else {
+                    throw new IllegalArgumentException("expected an edge object or array");
+                }
+                if (from < 0 || to < 0 || weightLength < 0) throw new IllegalArgumentException("from, to and weight are required");
+                edges.add(from, to, weight, 0, weightLength);
+            }
+            return stream(header.container(), header.blob(), header.nodes(), header.options(), edges);
+        } catch (JsonProcessingException ex) {
+            throw invalid("Malformed NDJSON at edge " + edge + ": " + ex.getOriginalMessage());
+        } catch (IllegalArgumentException ex) {
+            throw invalid("Edge " + edge + ": " + ex.getMessage());
+        }
+    }
+
+    CycleFindStream binary(InputStream body) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(body, 64 * 1024));
+        long edge = 0;
+        try {
+            byte[] magic = in.readNBytes(MAGIC.length);
+            if (!Arrays.equals(magic, MAGIC)) throw invalid("Not an edge stream (expected \"AMOE\")");
+            int version = in.readUnsignedByte();
+            if (version != VERSION) throw invalid("Unsupported edge stream version " + version);
+            int scale = in.readUnsignedByte();
+            if (scale > EdgeList.MAX_SCALE) throw invalid("Scale " + scale + " exceeds " + EdgeList.MAX_SCALE);
+
+            int headerLength = in.readInt();
+            Header header = headerLength == 0
+                    ? new Header(null, null, null, null)
+                    : mapper.readValue(readExactly(in, headerLength, "header"), Header.class);
+
+            int nodeCount = in.readInt();
+            if (nodeCount < 0) throw invalid("Negative node count");
+            EdgeList edges = new EdgeList(Math.min(nodeCount, 1 << 16), 1024);
+            List<String> nodes = new ArrayList<>(Math.min(nodeCount, 1 << 16));
+            for (int i = 0; i < nodeCount; i++) {
+                String name = new String(readExactly(in, in.readUnsignedShort(), "node name"), StandardCharsets.UTF_8);
+                if (edges.node(name) != i) throw invalid("Duplicate node name '" + name + "'");
+                nodes.add(name);
+            }
+
+            byte[] record = new byte[16];
+            int n;
+            while ((n = in.readNBytes(record, 0, record.length)) > 0) {
+                edge++;
+                if (n < record.length) throw invalid("Truncated edge " + edge);
+                checkLimit(edges);
+                edges.add(readInt(record, 0), readInt(record, 4), readLong(record, 8), scale);
+            }
+            return stream(header.container(), header.blob(), nodes, header.options(), edges);
+        } catch (EOFException ex) {
+            throw invalid("Truncated edge stream header");
+        } catch (JsonProcessingException ex) {
+            throw invalid("Malformed edge stream header: " + ex.getOriginalMessage());
+        } catch (IllegalArgumentException ex) {
+            throw invalid("Edge " + edge + ": " + ex.getMessage());
+        }
+    }
+
+    private CycleFindStream stream(@Nullable String container, @Nullable String blob, @Nullable List<String> nodes,
+                                   @Nullable Map<String, Object> options, EdgeList edges) {
+        if (container != null && container.isEmpty()) throw invalid("container must not be blank if provided");
+        if (blob != null && blob.isEmpty()) throw invalid("blob must not be blank if provided");
+        if (edges.size() == 0) throw invalid("edges must not be empty");
+        return new CycleFindStream(container, blob, nodes != null && !nodes.isEmpty() ? nodes : null, options, edges);
+    }
+
+    private void checkLimit(EdgeList edges) {
+        if (edges.size() >= maxEdges) {
+            var pd = ProblemDetail.forStatusAndDetail(HttpStatus.PAYLOAD_TOO_LARGE,
+                    "More than " + maxEdges + " edges (matrix.cycle.stream.max-edges)");
+            throw new ErrorResponseException(HttpStatus.PAYLOAD_TOO_LARGE, pd, null);
+        }
+    }
+
+    private static int node(JsonParser p, JsonToken t, EdgeList edges, String field) throws IOException {
+        if (t != JsonToken.VALUE_STRING) throw new IllegalArgumentException(field + " must be a node name");
+        return edges.node(p.getTextCharacters(), p.getTextOffset(), p.getTextLength());
+    }
+
+    /** Copies the number (or numeric string) text into {@code buf}, grown if needed; length is p.getTextLength(). */
+    private static char[] amount(JsonParser p, JsonToken t, char[] buf) throws IOException {
+        if (t != JsonToken.VALUE_NUMBER_INT && t != JsonToken.VALUE_NUMBER_FLOAT && t != JsonToken.VALUE_STRING) {
+            throw new IllegalArgumentException("weight must be a number");
+        }
+        int len = p.getTextLength();
+        if (len > buf.length) buf = new char[Math.max(len, buf.length * 2)];
+        System.arraycopy(p.getTextCharacters(), p.getTextOffset(), buf, 0, len);
+        return buf;
+    }
+
+    private static byte[] readExactly(DataInputStream in, int length, String what) throws IOException {
+        if (length < 0) throw invalid("Negative " + what + " length");
+        byte[] bytes = in.readNBytes(length);
+        if (bytes.length < length) throw invalid("Truncated " + what);
+        return bytes;
+    }
+
+    private static int readInt(byte[] b, int i) {
+        return (b[i] & 0xFF) << 24 | (b[i + 1] & 0xFF) << 16 | (b[i + 2] & 0xFF) << 8 | (b[i + 3] & 0xFF);
+    }
+
+    private static long readLong(byte[] b, int i) {
+        return (long) readInt(b, i) << 32 | (readInt(b, i + 4) & 0xFFFFFFFFL);
+    }
+
+    private static ErrorResponseException invalid(String detail) {
+        var pd = ProblemDetail.forStatusAndDetail(HttpStatus.BAD_REQUEST, detail);
+        return new ErrorResponseException(HttpStatus.BAD_REQUEST, pd, null);
+    }
+}
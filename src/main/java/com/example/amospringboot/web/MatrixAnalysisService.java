@@ -0,0 +1,226 @@
+package com.example.amospringboot.web;
+
+import com.example.amospringboot.matrix.MatrixApiClient;
+import com.example.amospringboot.matrix.engine.CsrGraph;
+import com.example.amospringboot.matrix.engine.CycleFinder;
+import com.example.amospringboot.matrix.engine.MatrixAnalysis;
+import com.example.amospringboot.matrix.engine.MatrixBlob;
+import com.example.amospringboot.matrix.engine.Netting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ProblemDetail;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+import org.springframework.web.ErrorResponseException;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * /matrix/analyze for the page and the JSON endpoint, either in-process ({@link MatrixAnalysis}
+ * over the downloaded blob, which timestamped blobs keep on disk) or by the backend.
+ *
+ * The engine is "local", "remote" or "auto" (local, falling back to the backend when the local
+ * analysis is not applicable); the kernel is "dense", "sparse" or "auto" (dense when the blob
+ * was decoded dense). Defaults come from matrix.analyze.engine (remote, until parity with the
+ * backend is shown on real blobs) / matrix.analyze.kernel, and both can be set per request.
+ *
+ * A local result uses the backend's keys: node_names, totals, insights, cycles, matrix (dense
+ * blobs only) and settlement_suggestions (debtors matched to creditors, largest first, see
+ * {@link Netting#global}), plus degrees, components and has_cycle. What still differs from the
+ * backend is listed under "gaps": cycles has one example, not every cycle, and a sparse blob
+ * has no matrix.
+ */
+@Service
+public class MatrixAnalysisService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MatrixAnalysisService.class);
+
+    private final MatrixApiClient client;
+    private final String defaultEngine;
+    private final String defaultKernel;
+
+    public MatrixAnalysisService(MatrixApiClient client,
+                                 @Value("${matrix.analyze.engine:remote}") String defaultEngine,
+                                 @Value("${matrix.analyze.kernel:auto}") String defaultKernel) {
+        this.client = client;
+        this.defaultEngine = defaultEngine;
+        this.defaultKernel = defaultKernel;
+    }
+
+    /** Analyse {@code blob}; {@code engine}/{@code kernel} null = the configured default. */
+    public Mono<Map<String, Object>> analyze(String container, String blob, @Nullable String engine, @Nullable String kernel) {
+        String e;
+        MatrixAnalysis.Kernel k;
+        try {
+            e = engine(engine);
+            k = kernel(kernel);
+        } catch (ErrorResponseException ex) {
+            return Mono.error(ex);
+        }
+        if ("remote".equals(e)) return client.analyzeAsync(blob, container);
+
+        return client.downloadMatrixAsync(blob, container)
+                .publishOn(Schedulers.boundedElastic())
+                .map(matrix -> report(matrix, k))
+                .onErrorResume(IllegalArgumentException.class, ex -> {
+                    if ("local".equals(e)) {
+                        return Mono.error(new ErrorResponseException(HttpStatus.BAD_REQUEST,
+                                ProblemDetail.forStatusAndDetail(HttpStatus.BAD_REQUEST, ex.getMessage()), ex));
+                    }
+                    LOG.info("ANALYZE_ENGINE local not applicable, using backend: {}", ex.getMessage());
+                    return client.analyzeAsync(blob, container);
+                });
+    }
+
+    /** Local analysis of a decoded blob, in the backend's shape. */
+    static Map<String, Object> report(MatrixBlob matrix, @Nullable MatrixAnalysis.Kernel kernel) {
+        long t0 = System.nanoTime();
+        MatrixAnalysis a = MatrixAnalysis.of(matrix, kernel);
+        int n = a.nodeCount();
+
+        List<String> names = new ArrayList<>(n);
+        Map<String, Object> owedBy = new LinkedHashMap<>();
+        Map<String, Object> owedTo = new LinkedHashMap<>();
+        Map<String, Object> net = new LinkedHashMap<>();
+        int creditor = -1;
+        int debtor = -1;
+        for (int i = 0; i < n; i++) {
+            String name = matrix.name(i);
+            names.add(name);
+            owedBy.put(name, matrix.toDecimal(a.owedBy(i)));
+            owedTo.put(name, matrix.toDecimal(a.owedTo(i)));
+            BigDecimal v = a.net(i);
+            net.put(name, v);
+            if (v.signum() > 0 && (creditor < 0 || v.compareTo(a.net(creditor)) > 0)) creditor = i;
+            if (v.signum() < 0 && (debtor < 0 || v.compareTo(a.net(debtor)) < 0)) debtor = i;
+        }
+
+        Map<String, Object> totals = new LinkedHashMap<>();
+        totals.put("owed_by", owedBy);
+        totals.put("owed_to", owedTo);
+        totals.put("net_balance", net);
+        totals.put("total_obligations", a.totalObligations());
+
+        Map<String, Object> insights = new LinkedHashMap<>();
+        if (creditor >= 0) insights.put("top_creditor", Map.of("person", matrix.name(creditor), "net", a.net(creditor)));
+        if (debtor >= 0) insights.put("top_debtor", Map.of("person", matrix.name(debtor), "net", a.net(debtor)));
+
+        Map<String, Object> degrees = new LinkedHashMap<>();
+        degrees.put("out", distribution(a.outDegreeHistogram(), n));
+        degrees.put("in", distribution(a.inDegreeHistogram(), n));
+
+        Map<String, Object> components = new LinkedHashMap<>();
+        components.put("count", a.components());
+        components.put("cyclic", a.cyclicComponents());
+        components.put("largest", a.largestComponent());
+
+        List<Map<String, Object>> cycles = new ArrayList<>(1);
+        a.cycle().ifPresent(c -> cycles.add(cycle(a, c)));
+
+        List<String> gaps = new ArrayList<>(2);
+        if (a.hasCycle()) gaps.add("cycles: one example, not every cycle");
+        if (!matrix.isDense()) gaps.add("matrix: omitted for a sparse blob (over matrix.blobs.dense-max-nodes)");
+
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("status", "ok");
+        out.put("engine", "local");
+        out.put("kernel", a.kernel().name().toLowerCase(Locale.ROOT));
+        out.put("node_names", names);
+        out.put("validation", Map.of("n", n, "non_zero", a.nonZeroCells()));
+        out.put("totals", totals);
+        out.put("insights", insights);
+        out.put("degrees", degrees);
+        out.put("components", components);
+        out.put("has_cycle", a.hasCycle());
+        out.put("cycles", cycles);
+        out.put("settlement_suggestions", suggestions(Netting.global(a.graph()).netted()));
+        if (matrix.isDense()) out.put("matrix", cells(matrix));
+        out.put("gaps", gaps);
+        out.put("compute_ms", (System.nanoTime() - t0) / 1_000_000);
+        return out;
+    }
+
+    /** The full matrix, row by row, as the backend returns it (only used for dense blobs). */
+    private static List<List<BigDecimal>> cells(MatrixBlob matrix) {
+        int n = matrix.nodeCount();
+        List<List<BigDecimal>> rows = new ArrayList<>(n);
+        for (int r = 0; r < n; r++) {
+            List<BigDecimal> row = new ArrayList<>(n);
+            for (int c = 0; c < n; c++) row.add(matrix.toDecimal(matrix.cell(r, c)));
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    /** One {"from", "to", "amount"} per cell of a global netting: who pays whom to settle every balance. */
+    private static List<Map<String, Object>> suggestions(CsrGraph netted) {
+        List<Map<String, Object>> out = new ArrayList<>(netted.edgeCount());
+        for (int u = 0; u < netted.nodeCount(); u++) {
+            for (int e = netted.rowStart(u), end = netted.rowEnd(u); e < end; e++) {
+                Map<String, Object> s = new LinkedHashMap<>();
+                s.put("from", netted.name(u));
+                s.put("to", netted.name(netted.target(e)));
+                s.put("amount", netted.toDecimal(netted.amount(e)));
+                out.add(s);
+            }
+        }
+        return out;
+    }
+
+    /** {"max", "mean", "histogram": {"degree": nodes}} with only the non-empty degrees. */
+    private static Map<String, Object> distribution(int[] histogram, int nodes) {
+        Map<String, Object> h = new LinkedHashMap<>();
+        long sum = 0;
+        for (int d = 0; d < histogram.length; d++) {
+            if (histogram[d] == 0) continue;
+            h.put(String.valueOf(d), histogram[d]);
+            sum += (long) d * histogram[d];
+        }
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("max", histogram.length - 1);
+        out.put("mean", nodes == 0 ? 0.0 : (double) sum / nodes);
+        out.put("histogram", h);
+        return out;
+    }
+
+    private static Map<String, Object> cycle(MatrixAnalysis a, CycleFinder.Cycle c) {
+        List<String> path = new ArrayList<>(c.nodes().length);
+        for (int node : c.nodes()) path.add(a.graph().name(node));
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("cycle", path);
+        out.put("min_cancelable", a.graph().toDecimal(c.bottleneck()));
+        return out;
+    }
+
+    private String engine(@Nullable String requested) {
+        String engine = (requested != null && !requested.isBlank() ? requested : defaultEngine).toLowerCase(Locale.ROOT);
+        return switch (engine) {
+            case "local", "remote", "auto" -> engine;
+            default -> throw new ErrorResponseException(HttpStatus.BAD_REQUEST,
+                    ProblemDetail.forStatusAndDetail(HttpStatus.BAD_REQUEST,
+                            "Unknown engine '" + engine + "' (expected local, remote or auto)"), null);
+        };
+    }
+
+    /** null = auto (decided per blob). */
+    private MatrixAnalysis.Kernel kernel(@Nullable String requested) {
+        String kernel = (requested != null && !requested.isBlank() ? requested : defaultKernel).toLowerCase(Locale.ROOT);
+        return switch (kernel) {
+            case "dense" -> MatrixAnalysis.Kernel.DENSE;
+            case "sparse" -> MatrixAnalysis.Kernel.SPARSE;
+            case "auto" -> null;
+            default -> throw new ErrorResponseException(HttpStatus.BAD_REQUEST,
+                    ProblemDetail.forStatusAndDetail(HttpStatus.BAD_REQUEST,
+                            "Unknown kernel '" + kernel + "' (expected dense, sparse or auto)"), null);
+        };
+    }
+}
@@ -2,17 +2,22 @@
 package com.example.amospringboot.web;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Size;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.lang.Nullable;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigDecimal;
 import java.util.List;
 import java.util.Map;
@@ -25,25 +30,67 @@ public class MatrixCycleController {
     private static final Logger LOG = LoggerFactory.getLogger(MatrixCycleController.class);
 
     private final MatrixCycleService matrixCycleService;
+    private final EdgeStreamReader edgeStreamReader;
+    private final boolean reactive;
 
-    public MatrixCycleController(MatrixCycleService matrixCycleService) {
+    public MatrixCycleController(MatrixCycleService matrixCycleService,
+                                 ObjectMapper objectMapper,
+                                 @Value("${matrix.cycle.stream.max-edges:10000000}") int streamMaxEdges,
+                                 @Value("${matrix.api.reactive-json:true}") boolean reactive) {
         this.matrixCycleService = matrixCycleService;
+        this.edgeStreamReader = new EdgeStreamReader(objectMapper, streamMaxEdges);
+        this.reactive = reactive;
     }
 
+    /**
+     * Non-blocking: the servlet request is put into async mode and released while the
+     * backend computes; errors arrive as ErrorResponseException -> ProblemDetail.
+     * With matrix.api.reactive-json=false the call blocks the request thread instead
+     * (kept only to benchmark the two paths against each other).
+     */
     @PostMapping("/find")
-    public ResponseEntity<CycleFindResponse> findCycle(@Valid @RequestBody CycleFindRequest req) {
+    public Mono<ResponseEntity<CycleFindResponse>> findCycle(@Valid @RequestBody CycleFindRequest req) {
         LOG.info("POST /matrix/cycle/find container={} blob={} nodes={} edges={}",
                 req.container(), req.blob(),
                 req.nodes() != null ? req.nodes().size() : 0,
                 req.edges() != null ? req.edges().size() : 0);
 
-        CycleFindResponse result = matrixCycleService.findCycle(req);
+        Mono<CycleFindResponse> call = reactive
+                ? matrixCycleService.findCycleAsync(req)
+                : Mono.just(matrixCycleService.findCycle(req));
 
+        return call.map(MatrixCycleController::ok);
+    }
+
+    /**
+     * Streamed request for large edge lists: NDJSON (header line, then one edge per line) or
+     * the binary edge format, see EdgeStreamReader. Edges are parsed into primitive arrays
+     * while the body arrives (on the request's virtual thread) and never exist as objects.
+     */
+    @PostMapping(value = "/find", consumes = EdgeStreamReader.NDJSON)
+    public Mono<ResponseEntity<CycleFindResponse>> findCycleNdjson(InputStream body) throws IOException {
+        return findStreamed(edgeStreamReader.ndjson(body));
+    }
+
+    @PostMapping(value = "/find", consumes = EdgeStreamReader.BINARY)
+    public Mono<ResponseEntity<CycleFindResponse>> findCycleBinary(InputStream body) throws IOException {
+        return findStreamed(edgeStreamReader.binary(body));
+    }
+
+    private Mono<ResponseEntity<CycleFindResponse>> findStreamed(CycleFindStream req) {
+        LOG.info("POST /matrix/cycle/find (streamed) container={} blob={} nodes={} edges={} scale={}",
+                req.container(), req.blob(), req.edges().nodeCount(), req.edges().size(), req.edges().scale());
+
+        Mono<CycleFindResponse> call = matrixCycleService.findCycleAsync(req);
+        if (!reactive) call = Mono.just(call.block());
+        return call.map(MatrixCycleController::ok);
+    }
+
+    private static ResponseEntity<CycleFindResponse> ok(CycleFindResponse result) {
         LOG.info("Cycle find result: found={} cycleLength={} detailsKeys={}",
                 result.found(),
                 result.cycle() != null ? result.cycle().size() : 0,
                 result.details() != null ? result.details().keySet() : "none");
-
         return ResponseEntity.ok(result);
     }
 
@@ -53,7 +100,7 @@ public class MatrixCycleController {
             @Nullable @Size(min = 1, message = "blob must not be blank if provided")
             String blob,
             @NotNull @NotEmpty List<String> nodes,
-            @NotNull @NotEmpty List<Edge> edges,
+            @NotNull @NotEmpty List<@NotNull @Valid Edge> edges,
             @Nullable Map<String, Object> options
     ) {}
 
@@ -1,100 +1,259 @@
 // src/main/java/com/example/amospringboot/web/MatrixCycleService.java
 package com.example.amospringboot.web;
 
+import com.example.amospringboot.matrix.engine.CsrGraph;
+import com.example.amospringboot.matrix.engine.CycleFinder;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ProblemDetail;
+import org.springframework.http.client.reactive.ClientHttpRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.web.ErrorResponseException;
+import org.springframework.web.reactive.function.BodyInserter;
+import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.TimeoutException;
 
 @Service
 public class MatrixCycleService {
 
     private static final Logger LOG = LoggerFactory.getLogger(MatrixCycleService.class);
 
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
     private final WebClient matrixWebClient;
+    private final ObjectMapper objectMapper;
+    private final String defaultEngine;
+    private final int localMaxEdges;
 
-    public MatrixCycleService(WebClient matrixWebClient) {
+    public MatrixCycleService(WebClient matrixWebClient,
+                              ObjectMapper objectMapper,
+                              @Value("${matrix.cycle.engine:remote}") String defaultEngine,
+                              @Value("${matrix.cycle.local-max-edges:50000}") int localMaxEdges) {
         this.matrixWebClient = matrixWebClient;
+        this.objectMapper = objectMapper;
+        this.defaultEngine = defaultEngine;
+        this.localMaxEdges = localMaxEdges;
     }
 
+    /** Blocking variant, kept for callers that already run on a (virtual) request thread. */
     public MatrixCycleController.CycleFindResponse findCycle(MatrixCycleController.CycleFindRequest req) {
+        return findCycleAsync(req).block();
+    }
 
-        Map<String, Object> payload = Map.of(
-                "container", req.container(),
-                "blob", req.blob(),
-                "nodes", req.nodes(),
-                "edges", req.edges(),
-                "options", req.options()
-        );
-
+    /**
+     * Non-blocking cycle search: nothing waits on the backend. Every failure is an
+     * ErrorResponseException carrying a ProblemDetail, rendered by GlobalErrorHandler.
+     */
+    public Mono<MatrixCycleController.CycleFindResponse> findCycleAsync(MatrixCycleController.CycleFindRequest req) {
         try {
-            Map<String, Object> backend =
-                    matrixWebClient.post()
-                            .uri("/matrix/cycle/find")
-                            .bodyValue(payload)
-                            .retrieve()
-                            .onStatus(
-                                    status -> status.is4xxClientError(),
-                                    response -> response.bodyToMono(String.class)
-                                            .defaultIfEmpty("Bad request to backend")
-                                            .flatMap(msg -> {
-                                                LOG.warn("Backend 4xx: {}", msg);
-                                                var pd = ProblemDetail.forStatusAndDetail(
-                                                        HttpStatus.BAD_GATEWAY,
-                                                        "Backend rejected request: " + msg);
-                                                return Mono.error(new ErrorResponseException(
-                                                        HttpStatus.BAD_GATEWAY, pd, null));
-                                            })
-                            )
-                            .onStatus(
-                                    status -> status.is5xxServerError(),
-                                    response -> response.bodyToMono(String.class)
-                                            .defaultIfEmpty("Backend error")
-                                            .flatMap(msg -> {
-                                                LOG.error("Backend 5xx: {}", msg);
-                                                var pd = ProblemDetail.forStatusAndDetail(
-                                                        HttpStatus.BAD_GATEWAY,
-                                                        "Backend failed: " + msg);
-                                                return Mono.error(new ErrorResponseException(
-                                                        HttpStatus.BAD_GATEWAY, pd, null));
-                                            })
-                            )
-                            .bodyToMono(new ParameterizedTypeReference<Map<String, Object>>() {})
-                            .block(Duration.ofSeconds(30));
-
-            if (backend == null) {
-                throw new ErrorResponseException(
-                        HttpStatus.BAD_GATEWAY,
-                        ProblemDetail.forStatusAndDetail(HttpStatus.BAD_GATEWAY, "No response from matrix backend"),
-                        null
-                );
+            validateEdges(req.edges());
+        } catch (IllegalArgumentException ex) {
+            return Mono.error(badRequest(ex));
+        }
+        String engine = engineFor(req.options(), req.edges().size());
+        if (!"remote".equals(engine)) {
+            try {
+                return Mono.just(findLocal(req));
+            } catch (IllegalArgumentException ex) {
+                if ("local".equals(engine)) return Mono.error(badRequest(ex));
+                LOG.info("CYCLE_ENGINE local not applicable, using backend: {}", ex.getMessage());
             }
+        }
+
+        // container/blob/options are optional: Map.of would reject nulls
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("container", req.container());
+        payload.put("blob", req.blob());
+        payload.put("nodes", req.nodes());
+        payload.put("edges", req.edges());
+        payload.put("options", withoutEngine(req.options()));
+        return findRemote(BodyInserters.fromValue(payload));
+    }
+
+    /**
+     * The same search for a streamed request (see EdgeStreamReader). Local: the graph is
+     * built straight from the primitive edge list. Remote: the backend gets the usual JSON
+     * body, generated from the edge list chunk by chunk while it is being sent.
+     */
+    public Mono<MatrixCycleController.CycleFindResponse> findCycleAsync(CycleFindStream req) {
+        String engine = engineFor(req.options(), req.edges().size());
+        if (!"remote".equals(engine)) {
+            try {
+                if (req.edges().firstNonPositive() >= 0) throw notPositive(req.edges().firstNonPositive());
+                return Mono.just(search(req.edges().toGraph(), req.options()));
+            } catch (IllegalArgumentException ex) {
+                if ("local".equals(engine)) return Mono.error(badRequest(ex));
+                LOG.info("CYCLE_ENGINE local not applicable, using backend: {}", ex.getMessage());
+            }
+        }
+        return findRemote(BodyInserters.fromDataBuffers(req.json(objectMapper, withoutEngine(req.options()))));
+    }
+
+    /**
+     * Every edge needs from, to and a weight, whichever engine answers; checked here as well as
+     * by bean validation, since not every caller goes through the controller. The sign of the
+     * weight is the backend's business; only the local engine requires it positive.
+     */
+    private static void validateEdges(List<MatrixCycleController.Edge> edges) {
+        if (edges == null) throw new IllegalArgumentException("edges are required");
+        for (int i = 0; i < edges.size(); i++) {
+            MatrixCycleController.Edge e = edges.get(i);
+            if (e == null || e.from() == null || e.to() == null || e.weight() == null) {
+                throw new IllegalArgumentException("edges[" + i + "]: from, to and weight are required");
+            }
+        }
+    }
 
-            validateSchema(backend);
+    /** The local engine only handles positive amounts (a cycle's bottleneck would be meaningless). */
+    private static IllegalArgumentException notPositive(int edge) {
+        return new IllegalArgumentException("edges[" + edge + "]: weight must be positive for the local engine");
+    }
+
+    /**
+     * options.engine picks the engine per request: "local" (in-process), "remote" (backend),
+     * or "auto" = local while the edge list is at most matrix.cycle.local-max-edges.
+     * The default comes from matrix.cycle.engine.
+     */
+    private String engineFor(Map<String, Object> options, int edgeCount) {
+        Object requested = options != null ? options.get("engine") : null;
+        String engine = (requested != null ? String.valueOf(requested) : defaultEngine).toLowerCase(Locale.ROOT);
+        return switch (engine) {
+            case "local", "remote" -> engine;
+            case "auto" -> edgeCount <= localMaxEdges ? "local" : "remote";
+            default -> throw new ErrorResponseException(HttpStatus.BAD_REQUEST,
+                    ProblemDetail.forStatusAndDetail(HttpStatus.BAD_REQUEST,
+                            "Unknown engine '" + engine + "' (expected local, remote or auto)"), null);
+        };
+    }
 
-            boolean found = getBool(backend.get("found"));
-            List<String> cycle = asStringList(backend.get("cycle"));
-            Map<String, Object> details = asMap(backend.get("details"));
+    /**
+     * In-process search over the request's own nodes/edges. With options.node_a and
+     * options.node_b the cycle must start with the edge node_a -> node_b; otherwise the
+     * first cycle in node order is returned. details.bottleneck is the smallest amount on it.
+     */
+    MatrixCycleController.CycleFindResponse findLocal(MatrixCycleController.CycleFindRequest req) {
+        CsrGraph.Builder b = CsrGraph.builder(req.nodes(), req.edges().size());
+        for (int i = 0; i < req.edges().size(); i++) {
+            MatrixCycleController.Edge e = req.edges().get(i);
+            if (e.weight().signum() <= 0) throw notPositive(i);
+            b.edge(e.from(), e.to(), e.weight());
+        }
+        return search(b.build(), req.options());
+    }
 
-            return new MatrixCycleController.CycleFindResponse(found, cycle, details);
+    private static MatrixCycleController.CycleFindResponse search(CsrGraph g, Map<String, Object> requestOptions) {
+        Map<String, Object> options = requestOptions != null ? requestOptions : Map.of();
+        Object nodeA = options.get("node_a");
+        Object nodeB = options.get("node_b");
 
-        } catch (ErrorResponseException e) {
-            throw e; // handled globally
-        } catch (Exception ex) {
-            LOG.error("Cycle search failed", ex);
-            var pd = ProblemDetail.forStatusAndDetail(HttpStatus.INTERNAL_SERVER_ERROR, "Cycle search failed");
-            throw new ErrorResponseException(HttpStatus.INTERNAL_SERVER_ERROR, pd, ex);
+        Map<String, Object> details = new LinkedHashMap<>();
+        details.put("engine", "local");
+        Optional<CycleFinder.Cycle> cycle;
+        if (nodeA != null && nodeB != null) {
+            details.put("node_a", String.valueOf(nodeA));
+            details.put("node_b", String.valueOf(nodeB));
+            cycle = CycleFinder.through(g, g.indexOf(String.valueOf(nodeA)), g.indexOf(String.valueOf(nodeB)));
+        } else {
+            cycle = CycleFinder.any(g);
         }
+
+        if (cycle.isEmpty()) {
+            return new MatrixCycleController.CycleFindResponse(false, null, details);
+        }
+        int[] nodes = cycle.get().nodes();
+        List<String> names = new ArrayList<>(nodes.length);
+        for (int n : nodes) names.add(g.name(n));
+        details.put("bottleneck", g.toDecimal(cycle.get().bottleneck()));
+        details.put("length", nodes.length);
+        return new MatrixCycleController.CycleFindResponse(true, names, details);
+    }
+
+    private static ErrorResponseException badRequest(IllegalArgumentException ex) {
+        var pd = ProblemDetail.forStatusAndDetail(HttpStatus.BAD_REQUEST, ex.getMessage());
+        return new ErrorResponseException(HttpStatus.BAD_REQUEST, pd, ex);
+    }
+
+    private Mono<MatrixCycleController.CycleFindResponse> findRemote(BodyInserter<?, ? super ClientHttpRequest> body) {
+        return matrixWebClient.post()
+                .uri("/matrix/cycle/find")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body)
+                .retrieve()
+                .onStatus(
+                        status -> status.is4xxClientError(),
+                        response -> response.bodyToMono(String.class)
+                                .defaultIfEmpty("Bad request to backend")
+                                .flatMap(msg -> {
+                                    LOG.warn("Backend 4xx: {}", msg);
+                                    var pd = ProblemDetail.forStatusAndDetail(
+                                            HttpStatus.BAD_GATEWAY,
+                                            "Backend rejected request: " + msg);
+                                    return Mono.error(new ErrorResponseException(
+                                            HttpStatus.BAD_GATEWAY, pd, null));
+                                })
+                )
+                .onStatus(
+                        status -> status.is5xxServerError(),
+                        response -> response.bodyToMono(String.class)
+                                .defaultIfEmpty("Backend error")
+                                .flatMap(msg -> {
+                                    LOG.error("Backend 5xx: {}", msg);
+                                    var pd = ProblemDetail.forStatusAndDetail(
+                                            HttpStatus.BAD_GATEWAY,
+                                            "Backend failed: " + msg);
+                                    return Mono.error(new ErrorResponseException(
+                                            HttpStatus.BAD_GATEWAY, pd, null));
+                                })
+                )
+                .bodyToMono(new ParameterizedTypeReference<Map<String, Object>>() {})
+                .timeout(TIMEOUT)
+                .switchIfEmpty(Mono.error(() -> new ErrorResponseException(
+                        HttpStatus.BAD_GATEWAY,
+                        ProblemDetail.forStatusAndDetail(HttpStatus.BAD_GATEWAY, "No response from matrix backend"),
+                        null)))
+                .map(backend -> {
+                    validateSchema(backend);
+
+                    boolean found = getBool(backend.get("found"));
+                    List<String> cycle = asStringList(backend.get("cycle"));
+                    Map<String, Object> details = asMap(backend.get("details"));
+
+                    return new MatrixCycleController.CycleFindResponse(found, cycle, details);
+                })
+                .onErrorMap(ex -> !(ex instanceof ErrorResponseException), ex -> {
+                    if (ex instanceof TimeoutException) {
+                        LOG.error("Cycle search timed out after {}", TIMEOUT);
+                        var pd = ProblemDetail.forStatusAndDetail(HttpStatus.GATEWAY_TIMEOUT, "Cycle search timed out");
+                        return new ErrorResponseException(HttpStatus.GATEWAY_TIMEOUT, pd, ex);
+                    }
+                    LOG.error("Cycle search failed", ex);
+                    var pd = ProblemDetail.forStatusAndDetail(HttpStatus.INTERNAL_SERVER_ERROR, "Cycle search failed");
+                    return new ErrorResponseException(HttpStatus.INTERNAL_SERVER_ERROR, pd, ex);
+                });
+    }
+
+    /** "engine" is ours; the backend only sees its own options. */
+    private static Map<String, Object> withoutEngine(Map<String, Object> options) {
+        if (options == null || !options.containsKey("engine")) return options;
+        Map<String, Object> copy = new LinkedHashMap<>(options);
+        copy.remove("engine");
+        return copy;
     }
 
     /** --- SCHEMA VALIDATION --- **/
@@ -0,0 +1,244 @@
+// src/main/java/com/example/amospringboot/web/MatrixJsonController.java
+package com.example.amospringboot.web;
+
+import com.example.amospringboot.matrix.IdempotencyStore;
+import com.example.amospringboot.matrix.LatestBlobResolver;
+import com.example.amospringboot.matrix.PaymentPipeline;
+import com.example.amospringboot.matrix.dto.PaymentBatchRequest;
+import com.example.amospringboot.matrix.dto.PaymentRequest;
+import jakarta.validation.Valid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ProblemDetail;
+import org.springframework.http.ResponseEntity;
+import org.springframework.lang.Nullable;
+import org.springframework.web.ErrorResponseException;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * JSON equivalents of the payment and analyze pages, plus batch payments, settle-all and netting.
+ *
+ * Like POST /matrix/cycle/find, both return a Mono so no request thread waits on the
+ * backend; MatrixRemoteException is rendered as ProblemDetail by MatrixExceptionHandler.
+ */
+@RestController
+public class MatrixJsonController {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MatrixJsonController.class);
+
+    private static final String CONTAINER     = "matrices";
+    private static final String FALLBACK_BLOB = "initial-matrix.b64";
+    private static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private final LatestBlobResolver latestBlobResolver;
+    private final PaymentBatchService paymentBatchService;
+    private final PaymentPipeline paymentPipeline;
+    private final SettlementService settlementService;
+    private final NettingService nettingService;
+    private final MatrixAnalysisService analysisService;
+    private final IdempotencyStore idempotency;
+    private final boolean reactive;
+
+    public MatrixJsonController(LatestBlobResolver latestBlobResolver,
+                                PaymentBatchService paymentBatchService,
+                                PaymentPipeline paymentPipeline,
+                                SettlementService settlementService,
+                                NettingService nettingService,
+                                MatrixAnalysisService analysisService,
+                                IdempotencyStore idempotency,
+                                @Value("${matrix.api.reactive-json:true}") boolean reactive) {
+        this.latestBlobResolver = latestBlobResolver;
+        this.paymentBatchService = paymentBatchService;
+        this.paymentPipeline = paymentPipeline;
+        this.settlementService = settlementService;
+        this.nettingService = nettingService;
+        this.analysisService = analysisService;
+        this.idempotency = idempotency;
+        this.reactive = reactive;
+    }
+
+    /**
+     * POST /matrix/payment (JSON) -> PaymentPipeline -> backend /matrix/payment.
+     * With an Idempotency-Key header a retried request is answered from the first execution
+     * (response header Idempotent-Replayed: true) instead of paying twice.
+     */
+    @PostMapping(value = "/matrix/payment",
+                 consumes = MediaType.APPLICATION_JSON_VALUE,
+                 produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<Map<String, Object>>> payment(
+            @Valid @RequestBody PaymentRequest req,
+            @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey,
+            @Nullable Principal principal) {
+        LOG.info("POST /matrix/payment container={} blob={} out={} node_a={} node_b={} amount={}",
+                req.getContainer(), req.getBlob_name(), req.getOut_base(),
+                req.getNode_a(), req.getNode_b(), req.getAmount());
+
+        // blob_name/out_base are not part of the fingerprint: a retry sees the blob the first one wrote
+        List<Object> fingerprint = Arrays.asList(req.getContainer(), req.getNode_a(), req.getNode_b(),
+                req.getAmount().stripTrailingZeros().toPlainString());
+        return once("payment", idempotencyKey, principal, fingerprint, () -> {
+            // Sequenced per container (PaymentPipeline): applied to the true latest blob, never in parallel
+            Mono<Map<String, Object>> call = reactive
+                    ? paymentPipeline.submit(req)
+                    : Mono.just(paymentPipeline.submit(req).block());
+
+            return call.doOnNext(result -> {
+                if ("ok".equalsIgnoreCase(String.valueOf(result.get("status")))) {
+                    latestBlobResolver.onBlobWritten(req.getContainer(), asString(result.get("written_blob")));
+                }
+            });
+        });
+    }
+
+    /**
+     * POST /matrix/payment/batch (JSON): many payments, one result per entry, normally one new
+     * blob version for the whole batch (see PaymentBatchService). Idempotency-Key as above.
+     */
+    @PostMapping(value = "/matrix/payment/batch",
+                 consumes = MediaType.APPLICATION_JSON_VALUE,
+                 produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<Map<String, Object>>> paymentBatch(
+            @Valid @RequestBody PaymentBatchRequest req,
+            @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey,
+            @Nullable Principal principal) {
+        LOG.info("POST /matrix/payment/batch container={} blob={} out={} payments={}",
+                req.getContainer(), req.getBlob_name(), req.getOut_base(), req.getPayments().size());
+
+        List<Object> fingerprint = new ArrayList<>(3 + 3 * req.getPayments().size());
+        fingerprint.add(req.getContainer());
+        fingerprint.add(req.getBlob_name());
+        fingerprint.add(req.getOut_base());
+        for (PaymentBatchRequest.Item item : req.getPayments()) {
+            fingerprint.add(item == null ? null : item.getNode_a());
+            fingerprint.add(item == null ? null : item.getNode_b());
+            fingerprint.add(item == null || item.getAmount() == null ? null : item.getAmount().stripTrailingZeros().toPlainString());
+        }
+        return once("payment-batch", idempotencyKey, principal, fingerprint, () -> paymentBatchService.apply(req));
+    }
+
+    /**
+     * POST /matrix/settlement/all (JSON): cancel every cycle of the matrix and write one new
+     * blob version (see SettlementService); "dry_run": true only reports, and is all there is
+     * without matrix.api.settlement-batch-path (501). Idempotency-Key as above.
+     */
+    @PostMapping(value = "/matrix/settlement/all",
+                 consumes = MediaType.APPLICATION_JSON_VALUE,
+                 produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<Map<String, Object>>> settleAll(
+            @RequestBody SettleAllRequest req,
+            @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey,
+            @Nullable Principal principal) {
+        boolean dryRun = Boolean.TRUE.equals(req.dry_run());
+        LOG.info("POST /matrix/settlement/all container={} blob={} out={} dry_run={}",
+                req.container(), req.blob_name(), req.out_base(), dryRun);
+
+        List<Object> fingerprint = Arrays.asList(req.container(), req.blob_name(), req.out_base(), dryRun);
+        return once("settlement-all", idempotencyKey, principal, fingerprint,
+                () -> settlementService.settleAll(req.container(), req.blob_name(), req.out_base(), dryRun));
+    }
+
+    /**
+     * POST /matrix/netting/preview (JSON): the minimum-total netting of the matrix, "mode"
+     * conservative (existing cells only, the default) or global (see NettingService). Writes nothing.
+     */
+    @PostMapping(value = "/matrix/netting/preview",
+                 consumes = MediaType.APPLICATION_JSON_VALUE,
+                 produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<Map<String, Object>> nettingPreview(@RequestBody NettingRequest req) {
+        LOG.info("POST /matrix/netting/preview container={} blob={} mode={}", req.container(), req.blob_name(), req.mode());
+        return nettingService.preview(req.container(), req.blob_name(), req.mode());
+    }
+
+    /**
+     * POST /matrix/netting/apply (JSON): write the conservative netting as one new blob version.
+     * Needs matrix.api.settlement-batch-path (501 without it). Idempotency-Key as above.
+     */
+    @PostMapping(value = "/matrix/netting/apply",
+                 consumes = MediaType.APPLICATION_JSON_VALUE,
+                 produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<Map<String, Object>>> nettingApply(
+            @RequestBody NettingRequest req,
+            @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey,
+            @Nullable Principal principal) {
+        LOG.info("POST /matrix/netting/apply container={} blob={} out={} mode={}",
+                req.container(), req.blob_name(), req.out_base(), req.mode());
+
+        List<Object> fingerprint = Arrays.asList(req.container(), req.blob_name(), req.out_base(), req.mode());
+        return once("netting-apply", idempotencyKey, principal, fingerprint,
+                () -> nettingService.apply(req.container(), req.blob_name(), req.out_base(), req.mode()));
+    }
+
+    /**
+     * POST /matrix/analyze (JSON): local analysis or backend /matrix/analyze (see
+     * MatrixAnalysisService; "engine" and "kernel" per request); blob defaults to the latest version.
+     */
+    @PostMapping(value = "/matrix/analyze",
+                 consumes = MediaType.APPLICATION_JSON_VALUE,
+                 produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<Map<String, Object>> analyze(@RequestBody AnalyzeRequest req) {
+        String container = (req.container() != null && !req.container().isBlank()) ? req.container() : CONTAINER;
+
+        // Latest-blob resolution may list the container; keep it off the request thread too.
+        Mono<String> blob = (req.blob_name() != null && !req.blob_name().isBlank())
+                ? Mono.just(req.blob_name())
+                : Mono.fromCallable(() -> latestBlobResolver.latest(container, FALLBACK_BLOB))
+                      .subscribeOn(Schedulers.boundedElastic());
+
+        return blob.flatMap(name -> {
+            LOG.info("POST /matrix/analyze container={} blob={} engine={} kernel={}", container, name, req.engine(), req.kernel());
+            Mono<Map<String, Object>> call = analysisService.analyze(container, name, req.engine(), req.kernel());
+            return reactive ? call : Mono.just(call.block());
+        });
+    }
+
+    /** Run {@code action} once per (operation, user, Idempotency-Key); without a key it just runs. */
+    private Mono<ResponseEntity<Map<String, Object>>> once(String operation, @Nullable String key,
+                                                           @Nullable Principal principal, List<Object> fingerprint,
+                                                           Supplier<Mono<Map<String, Object>>> action) {
+        if (key == null) {
+            return action.get().map(ResponseEntity::ok);
+        }
+        if (!IdempotencyStore.isValidKey(key)) {
+            var pd = ProblemDetail.forStatusAndDetail(HttpStatus.BAD_REQUEST,
+                    IdempotencyStore.HEADER + " must be 1-128 chars of letters, digits, '_', '-', '.', ':'");
+            return Mono.error(new ErrorResponseException(HttpStatus.BAD_REQUEST, pd, null));
+        }
+        String user = principal != null ? principal.getName() : "anonymous";
+        return idempotency.executeAsync(IdempotencyStore.scoped(operation, user, key),
+                        IdempotencyStore.fingerprint(fingerprint), action)
+                .map(outcome -> outcome.replayed()
+                        ? ResponseEntity.ok().header(REPLAYED_HEADER, "true").body(outcome.value())
+                        : ResponseEntity.ok(outcome.value()))
+                .onErrorMap(IdempotencyStore.KeyReusedException.class, ex -> new ErrorResponseException(
+                        HttpStatus.UNPROCESSABLE_ENTITY,
+                        ProblemDetail.forStatusAndDetail(HttpStatus.UNPROCESSABLE_ENTITY, ex.getMessage()), ex));
+    }
+
+    private static String asString(Object o) {
+        return (o == null) ? null : String.valueOf(o);
+    }
+
+    public record AnalyzeRequest(@Nullable String container, @Nullable String blob_name,
+                                 @Nullable String engine, @Nullable String kernel) {}
+
+    public record SettleAllRequest(@Nullable String container, @Nullable String blob_name,
+                                   @Nullable String out_base, @Nullable Boolean dry_run) {}
+
+    public record NettingRequest(@Nullable String container, @Nullable String blob_name,
+                                 @Nullable String out_base, @Nullable String mode) {}
+}
@@ -1,10 +1,17 @@
 // src/main/java/com/example/amospringboot/web/MatrixUiController.java
 package com.example.amospringboot.web;
 
+import com.example.amospringboot.audit.AuditChannel;
+import com.example.amospringboot.audit.AuditEvent;
+import com.example.amospringboot.audit.AuditLog;
+import com.example.amospringboot.matrix.IdempotencyStore;
+import com.example.amospringboot.matrix.LatestBlobResolver;
+import com.example.amospringboot.matrix.PaymentPipeline;
 import com.example.amospringboot.matrix.dto.CycleFindRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.http.MediaType;
@@ -19,7 +26,9 @@ import org.springframework.web.bind.WebDataBinder;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
@@ -28,9 +37,7 @@ import java.util.regex.Pattern;
 @RequestMapping("/matrix/cycle")
 public class MatrixUiController {
 
-    private static final Logger LOG   = LoggerFactory.getLogger(MatrixUiController.class);
-    /** Audit channel analogous to PaymentUiController's AUDIT logger */
-    private static final Logger AUDIT = LoggerFactory.getLogger("cycle.audit");
+    private static final Logger LOG = LoggerFactory.getLogger(MatrixUiController.class);
 
     private static final String VIEW          = "matrix/cycle-find";
     private static final String CONTAINER     = "matrices";
@@ -38,9 +45,21 @@ public class MatrixUiController {
     private static final Pattern TS_TAIL      = Pattern.compile("(-\\d{8}-\\d{6})$");
 
     private final WebClient matrixWebClient;
-
-    public MatrixUiController(WebClient matrixWebClient) {
+    private final LatestBlobResolver latestBlobResolver;
+    private final AuditLog audit;
+    private final IdempotencyStore idempotency;
+    private final PaymentPipeline pipeline;
+    private final Duration writeTimeout;
+
+    public MatrixUiController(WebClient matrixWebClient, LatestBlobResolver latestBlobResolver, AuditLog audit,
+                              IdempotencyStore idempotency, PaymentPipeline pipeline,
+                              @Value("${matrix.ui.write-timeout:65s}") Duration writeTimeout) {
         this.matrixWebClient = matrixWebClient;
+        this.latestBlobResolver = latestBlobResolver;
+        this.audit = audit;
+        this.idempotency = idempotency;
+        this.pipeline = pipeline;
+        this.writeTimeout = writeTimeout;
     }
 
     @InitBinder("cycleForm")
@@ -73,6 +92,7 @@ public class MatrixUiController {
             form.setOut_base(normalizeOutBase(chosenBlob));
             form.setContainer(CONTAINER);
             form.setNode_a(localPart(resolveUpn(oidc, oauth2)));
+            form.setIdempotency_key(idempotency.issue());
 
             model.addAttribute("cycleForm", form);
         }
@@ -113,14 +133,7 @@ public class MatrixUiController {
 
         Boolean applySettlementRequested = form.getApply_settlement();
 
-        LOG.info("CYCLE_ATTEMPT traceId={} container={} blob={} out={} node_a={} node_b={} apply_settlement={}",
-                traceId, form.getContainer(), form.getBlob_name(), form.getOut_base(),
-                safe(form.getNode_a()), safe(form.getNode_b()),
-                String.valueOf(applySettlementRequested));
-        AUDIT.info("CYCLE_ATTEMPT traceId={} container={} blob={} out={} node_a={} node_b={} apply_settlement={}",
-                traceId, form.getContainer(), form.getBlob_name(), form.getOut_base(),
-                safe(form.getNode_a()), safe(form.getNode_b()),
-                String.valueOf(applySettlementRequested));
+        audit.publish(cycleEvent("CYCLE_ATTEMPT", traceId, form));
 
         try {
             Map<String, Object> payload = new LinkedHashMap<>();
@@ -134,15 +147,8 @@ public class MatrixUiController {
             payload.put("out_base", form.getOut_base());
 
             long t0 = System.nanoTime();
-            Map<String, Object> result = matrixWebClient.post()
-                    .uri("/matrix/cycle/find")
-                    .contentType(MediaType.APPLICATION_JSON)
-                    .accept(MediaType.APPLICATION_JSON)
-                    .bodyValue(payload)
-                    .retrieve()
-                    .onStatus(HttpStatusCode::isError, resp -> resp.createException())
-                    .bodyToMono(new ParameterizedTypeReference<Map<String, Object>>() {})
-                    .block();
+            IdempotencyStore.Outcome<Map<String, Object>> outcome = findOnce(form, payload);
+            Map<String, Object> result = outcome.value();
             durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0);
 
             // Extract common fields
@@ -159,19 +165,16 @@ public class MatrixUiController {
 
             boolean ok = "ok".equalsIgnoreCase(status)
                       || (writtenBlob != null && !writtenBlob.isBlank());
+            if (!outcome.replayed()) latestBlobResolver.onBlobWritten(form.getContainer(), writtenBlob);
+            if (ok && Boolean.TRUE.equals(applySettlementRequested)) {
+                form.setIdempotency_key(idempotency.issue()); // the next settlement from this page is a new one
+            }
 
-            LOG.info("CYCLE_SUCCESS traceId={} durationMs={} container={} blob={} out={} node_a={} node_b={} apply_settlement={} settlement_applied={} status={} written_blob={}",
-                    traceId, durationMs,
-                    form.getContainer(), form.getBlob_name(), form.getOut_base(),
-                    safe(form.getNode_a()), safe(form.getNode_b()),
-                    String.valueOf(applySettlementRequested), String.valueOf(settlementApplied),
-                    safe(status), safe(writtenBlob));
-            AUDIT.info("CYCLE_SUCCESS traceId={} container={} blob={} out={} node_a={} node_b={} apply_settlement={} settlement_applied={} status={} written_blob={}",
-                    traceId,
-                    form.getContainer(), form.getBlob_name(), form.getOut_base(),
-                    safe(form.getNode_a()), safe(form.getNode_b()),
-                    String.valueOf(applySettlementRequested), String.valueOf(settlementApplied),
-                    safe(status), safe(writtenBlob));
+            audit.publish(cycleEvent(outcome.replayed() ? "CYCLE_REPLAYED" : "CYCLE_SUCCESS", traceId, form)
+                    .with("durationMs", durationMs)
+                    .with("settlement_applied", settlementApplied)
+                    .with("status", safe(status))
+                    .with("written_blob", safe(writtenBlob)));
 
             model.addAttribute("result", result);
             model.addAttribute("error", ok ? null : ("Search failed: status=" + safe(status)));
@@ -181,16 +184,11 @@ public class MatrixUiController {
             String body = wcre.getResponseBodyAsString();
             String msg = (body != null && !body.isBlank()) ? truncate(body, 800) : ("HTTP " + code);
 
-            LOG.warn("CYCLE_FAILURE traceId={} durationMs={} container={} blob={} out={} node_a={} node_b={} apply_settlement={} http_status={} errorBody={}",
-                    traceId, durationMs,
-                    form.getContainer(), form.getBlob_name(), form.getOut_base(),
-                    safe(form.getNode_a()), safe(form.getNode_b()),
-                    String.valueOf(applySettlementRequested), code, msg, wcre);
-            AUDIT.info("CYCLE_FAILURE traceId={} container={} blob={} out={} node_a={} node_b={} apply_settlement={} http_status={} error={}",
-                    traceId,
-                    form.getContainer(), form.getBlob_name(), form.getOut_base(),
-                    safe(form.getNode_a()), safe(form.getNode_b()),
-                    String.valueOf(applySettlementRequested), code, truncate(msg, 400));
+            audit.publish(cycleEvent("CYCLE_FAILURE", traceId, form)
+                    .with("durationMs", durationMs)
+                    .with("http_status", code)
+                    .with("error", truncate(msg, 400)));
+            LOG.warn("CYCLE_FAILURE traceId={} http_status={}", traceId, code, wcre);
 
             model.addAttribute("error", "Search failed: HTTP " + code);
             model.addAttribute("result", null);
@@ -198,17 +196,11 @@ public class MatrixUiController {
         } catch (Exception ex) {
             String msg = (ex.getMessage() != null ? ex.getMessage() : ex.getClass().getSimpleName());
 
-            LOG.warn("CYCLE_FAILURE traceId={} durationMs={} container={} blob={} out={} node_a={} node_b={} apply_settlement={} errorClass={} error={}",
-                    traceId, durationMs,
-                    form.getContainer(), form.getBlob_name(), form.getOut_base(),
-                    safe(form.getNode_a()), safe(form.getNode_b()),
-                    String.valueOf(applySettlementRequested),
-                    ex.getClass().getName(), truncate(msg, 800), ex);
-            AUDIT.info("CYCLE_FAILURE traceId={} container={} blob={} out={} node_a={} node_b={} apply_settlement={} error={}",
-                    traceId,
-                    form.getContainer(), form.getBlob_name(), form.getOut_base(),
-                    safe(form.getNode_a()), safe(form.getNode_b()),
-                    String.valueOf(applySettlementRequested), truncate(msg, 400));
+            audit.publish(cycleEvent("CYCLE_FAILURE", traceId, form)
+                    .with("durationMs", durationMs)
+                    .with("errorClass", ex.getClass().getName())
+                    .with("error", truncate(msg, 400)));
+            LOG.warn("CYCLE_FAILURE traceId={} errorClass={}", traceId, ex.getClass().getName(), ex);
 
             model.addAttribute("error", "Search failed: " + msg);
             model.addAttribute("result", null);
@@ -222,85 +214,70 @@ public class MatrixUiController {
 
     // ===== helpers =====
 
-    /** Pick newest timestamped blob; else "*-latest.b64"; else FALLBACK. */
-    private String safeLatestBlob() {
-        try {
-            List<String> names = matrixWebClient.get()
-                    .uri(uriBuilder -> uriBuilder
-                            .path("/matrix/blobs")
-                            .queryParam("container", CONTAINER)
-                            .build())
-                    .accept(MediaType.APPLICATION_JSON)
-                    .retrieve()
-                    .onStatus(HttpStatusCode::isError, resp -> resp.createException())
-                    .bodyToMono(new ParameterizedTypeReference<List<String>>() {})
-                    .block();
-
-            if (names == null || names.isEmpty()) {
-                LOG.warn("safeLatestBlob(): empty/null list, using FALLBACK={}", FALLBACK_BLOB);
-                return FALLBACK_BLOB;
-            }
-
-            String latestAlias = null;
-            List<String> ts = new ArrayList<>();
-
-            for (String n : names) {
-                if (n == null || n.isBlank()) continue;
-                if (n.endsWith("-latest.b64")) {
-                    latestAlias = n;
-                } else if (extractSortableTs(n) > 0L) {
-                    ts.add(n);
-                }
-            }
-
-            if (!ts.isEmpty()) {
-                ts.sort((a, b) -> Long.compare(extractSortableTs(b), extractSortableTs(a)));
-                String best = ts.get(0);
-                LOG.info("safeLatestBlob(): selected timestamped {}", best);
-                return best;
-            }
-
-            if (latestAlias != null) {
-                LOG.info("safeLatestBlob(): no timestamped entries; using alias {}", latestAlias);
-                return latestAlias;
-            }
-
-            LOG.warn("safeLatestBlob(): neither timestamped nor alias found; using FALLBACK={}", FALLBACK_BLOB);
-            return FALLBACK_BLOB;
-
-        } catch (Exception e) {
-            LOG.warn("safeLatestBlob(): exception -> {}, using FALLBACK={}", e.toString(), FALLBACK_BLOB);
-            return FALLBACK_BLOB;
+    /**
+     * Backend call; with apply_settlement=true it writes a blob, so a resubmit with the same
+     * form key is answered from the first execution (read-only searches always run).
+     */
+    private IdempotencyStore.Outcome<Map<String, Object>> findOnce(CycleFindRequest form, Map<String, Object> payload) {
+        if (!Boolean.TRUE.equals(form.getApply_settlement())) {
+            return new IdempotencyStore.Outcome<>(required(callFind(payload)).block(writeTimeout), false);
+        }
+        if (!IdempotencyStore.isValidKey(form.getIdempotency_key())) {
+            return new IdempotencyStore.Outcome<>(required(settle(form, payload)).block(writeTimeout), false);
         }
+        // after a timeout the settlement stays claimed: a resubmit joins it instead of settling twice
+        String fingerprint = IdempotencyStore.fingerprint(List.of(form.getContainer(), form.getNode_a(), form.getNode_b()));
+        return idempotency.executeAsync(IdempotencyStore.scoped("settlement", form.getNode_a(), form.getIdempotency_key()),
+                        fingerprint, () -> required(settle(form, payload)))
+                .block(writeTimeout);
     }
 
-    /** Parse YYYYMMDD-HHMMSS right before .b64; returns 0 if absent/bad. */
-    private static long extractSortableTs(String name) {
-        if (name == null) return 0L;
-        int dot = name.lastIndexOf('.');
-        String stem = (dot > 0 ? name.substring(0, dot) : name);
-
-        int lastDash = stem.lastIndexOf('-');
-        if (lastDash < 0) return 0L;
+    /** Completing without a result is an error, not a null to render (or to store under the key). */
+    private static Mono<Map<String, Object>> required(Mono<Map<String, Object>> call) {
+        return call.switchIfEmpty(Mono.error(() -> new IllegalStateException("No result from the matrix backend")));
+    }
 
-        String hhmmss = stem.substring(lastDash + 1);
-        if (!hhmmss.matches("\\d{6}")) return 0L;
+    /**
+     * A settlement writes a new version, so it joins the container's payment lane like any
+     * other write: it runs alone, on the latest blob (the form's blob is only the fallback).
+     */
+    private Mono<Map<String, Object>> settle(CycleFindRequest form, Map<String, Object> payload) {
+        return pipeline.exclusive(form.getContainer(), form.getBlob_name(), base -> {
+            Map<String, Object> body = new LinkedHashMap<>(payload);
+            body.put("blob_name", base);
+            body.put("out_base", normalizeOutBase(base));
+            return callFind(body);
+        });
+    }
 
-        int prevDash = stem.lastIndexOf('-', lastDash - 1);
-        if (prevDash < 0) return 0L;
+    private Mono<Map<String, Object>> callFind(Map<String, Object> payload) {
+        return matrixWebClient.post()
+                .uri("/matrix/cycle/find")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .bodyValue(payload)
+                .retrieve()
+                .onStatus(HttpStatusCode::isError, resp -> resp.createException())
+                .bodyToMono(new ParameterizedTypeReference<Map<String, Object>>() {});
+    }
 
-        String yyyymmdd = stem.substring(prevDash + 1, lastDash);
-        if (!yyyymmdd.matches("\\d{8}")) return 0L;
+    private static AuditEvent cycleEvent(String type, String traceId, CycleFindRequest form) {
+        return AuditEvent.of(AuditChannel.CYCLE, type, traceId)
+                .with("container", form.getContainer())
+                .with("blob", form.getBlob_name())
+                .with("out", form.getOut_base())
+                .with("node_a", safe(form.getNode_a()))
+                .with("node_b", safe(form.getNode_b()))
+                .with("apply_settlement", form.getApply_settlement());
+    }
 
-        try {
-            return Long.parseLong(yyyymmdd + hhmmss);
-        } catch (NumberFormatException ignore) {
-            return 0L;
-        }
+    /** Pick newest timestamped blob; else "*-latest.b64"; else FALLBACK (shared, cached resolver). */
+    private String safeLatestBlob() {
+        return latestBlobResolver.latest(CONTAINER, FALLBACK_BLOB);
     }
 
     /** Strip timestamp & .b64 → base name (e.g., "initial-matrix"). */
-    private static String normalizeOutBase(String blobName) {
+    static String normalizeOutBase(String blobName) {
         if (blobName == null || blobName.isBlank()) return "initial-matrix";
         String base = blobName.endsWith(".b64") ? blobName.substring(0, blobName.length() - 4) : blobName;
         base = TS_TAIL.matcher(base).replaceAll("");
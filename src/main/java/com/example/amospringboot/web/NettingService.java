@@ -0,0 +1,231 @@
+package com.example.amospringboot.web;
+
+import com.example.amospringboot.audit.AuditChannel;
+import com.example.amospringboot.audit.AuditEvent;
+import com.example.amospringboot.audit.AuditLog;
+import com.example.amospringboot.matrix.LatestBlobResolver;
+import com.example.amospringboot.matrix.MatrixApiClient;
+import com.example.amospringboot.matrix.PaymentPipeline;
+import com.example.amospringboot.matrix.engine.CsrGraph;
+import com.example.amospringboot.matrix.engine.Netting;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ProblemDetail;
+import org.springframework.stereotype.Service;
+import org.springframework.web.ErrorResponseException;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Multilateral netting of a container's matrix: the smallest total of obligations that leaves
+ * every node's net position unchanged (see {@link Netting}).
+ *
+ * A preview computes either mode on a downloaded blob and returns the netted cells. Apply is
+ * conservative only: that result lowers existing cells and never adds one, so it goes to the
+ * backend settlement batch endpoint like settle-all, as one exclusive step of the container's
+ * {@link PaymentPipeline} lane, i.e. one new blob version on the true latest blob. A global
+ * netting would create obligations between parties who had none and is preview only.
+ *
+ * The settlement batch endpoint is opt-in (matrix.api.settlement-batch-path): the documented
+ * backend has none, so by default netting is preview only and apply answers 501.
+ */
+@Service
+public class NettingService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NettingService.class);
+
+    private static final String CONTAINER     = "matrices";
+    private static final String FALLBACK_BLOB = "initial-matrix.b64";
+
+    private final MatrixApiClient client;
+    private final LatestBlobResolver latestBlobResolver;
+    private final PaymentPipeline pipeline;
+    private final ObjectMapper mapper;
+    private final AuditLog audit;
+    private final long maxEdges;
+    private final int previewMaxCells;
+
+    public NettingService(MatrixApiClient client,
+                          LatestBlobResolver latestBlobResolver,
+                          PaymentPipeline pipeline,
+                          ObjectMapper mapper,
+                          AuditLog audit,
+                          @Value("${matrix.netting.max-edges:2000000}") long maxEdges,
+                          @Value("${matrix.netting.preview-max-cells:1000}") int previewMaxCells) {
+        this.client = client;
+        this.latestBlobResolver = latestBlobResolver;
+        this.pipeline = pipeline;
+        this.mapper = mapper;
+        this.audit = audit;
+        this.maxEdges = maxEdges;
+        this.previewMaxCells = previewMaxCells;
+    }
+
+    /** Net {@code blobName} (blank = latest) in {@code mode} ("conservative" by default, or "global") without writing. */
+    public Mono<Map<String, Object>> preview(String container, String blobName, String mode) {
+        String c = isBlank(container) ? CONTAINER : container;
+        Netting.Mode m;
+        try {
+            m = mode(mode);
+        } catch (ErrorResponseException ex) {
+            return Mono.error(ex);
+        }
+        Mono<String> base = !isBlank(blobName)
+                ? Mono.just(blobName)
+                : Mono.fromCallable(() -> latestBlobResolver.latest(c, FALLBACK_BLOB))
+                      .subscribeOn(Schedulers.boundedElastic());
+        return base.flatMap(blob -> compute(c, blob, m))
+                .map(run -> {
+                    Map<String, Object> out = report(run, "preview", null);
+                    out.put("cells", cells(run.netting.netted()));
+                    return out;
+                });
+    }
+
+    /**
+     * Write the conservative netting of the latest blob ({@code blobName} is the fallback) as
+     * one new version named after {@code outBase} (blank = the base name of the blob).
+     */
+    public Mono<Map<String, Object>> apply(String container, String blobName, String outBase, String mode) {
+        String c = isBlank(container) ? CONTAINER : container;
+        try {
+            if (mode(mode) != Netting.Mode.CONSERVATIVE) {
+                throw problem(HttpStatus.UNPROCESSABLE_ENTITY,
+                        "Only conservative netting can be applied: global netting creates new obligations (preview only)");
+            }
+        } catch (ErrorResponseException ex) {
+            return Mono.error(ex);
+        }
+        if (!client.supportsSettlementBatch()) {
+            return Mono.error(problem(HttpStatus.NOT_IMPLEMENTED,
+                    "No matrix backend settlement batch endpoint is configured (matrix.api.settlement-batch-path); only preview is available"));
+        }
+
+        String traceId = UUID.randomUUID().toString();
+        String fallback = isBlank(blobName) ? FALLBACK_BLOB : blobName;
+        return pipeline.exclusive(c, fallback, blob -> {
+            String out = isBlank(outBase) ? PaymentUiController.normalizeOutBase(blob) : outBase;
+            audit.publish(AuditEvent.of(AuditChannel.CYCLE, "NETTING_ATTEMPT", traceId)
+                    .with("container", c)
+                    .with("blob", blob)
+                    .with("out", out));
+            return compute(c, blob, Netting.Mode.CONSERVATIVE).flatMap(run -> write(run, out, traceId));
+        });
+    }
+
+    /** Download + decode, then net off the request and event-loop threads. */
+    private Mono<Run> compute(String container, String blob, Netting.Mode mode) {
+        return client.downloadMatrixAsync(blob, container)
+                .publishOn(Schedulers.boundedElastic())
+                .map(matrix -> {
+                    CsrGraph g = matrix.toGraph();
+                    if (g.edgeCount() > maxEdges) {
+                        throw problem(HttpStatus.UNPROCESSABLE_ENTITY,
+                                "Matrix has " + g.edgeCount() + " cells; netting is limited to " + maxEdges + " (matrix.netting.max-edges)");
+                    }
+                    long t0 = System.nanoTime();
+                    Netting netting = Netting.of(g, mode);
+                    return new Run(container, blob, netting, (System.nanoTime() - t0) / 1_000_000);
+                });
+    }
+
+    private Mono<Map<String, Object>> write(Run run, String outBase, String traceId) {
+        Netting n = run.netting;
+        CsrGraph g = n.original();
+        if (n.totalAfter().compareTo(n.totalBefore()) == 0) {
+            return Mono.just(report(run, "already_minimal", null));
+        }
+        return client.settlementBatchAsync(SettlementBody.of(mapper, run.container, run.blob, outBase, g, n::reduction))
+                .map(result -> {
+                    String status = String.valueOf(result.getOrDefault("status", "unknown"));
+                    Object written = result.get("written_blob");
+                    if (!"ok".equalsIgnoreCase(status) || written == null) {
+                        LOG.warn("NETTING_FAILURE container={} blob={} status={}", run.container, run.blob, status);
+                        audit.publish(AuditEvent.of(AuditChannel.CYCLE, "NETTING_FAILED", traceId)
+                                .with("container", run.container)
+                                .with("blob", run.blob)
+                                .with("status", status));
+                        return report(run, "failed", null);
+                    }
+                    Map<String, Object> out = report(run, "ok", String.valueOf(written));
+                    audit.publish(AuditEvent.of(AuditChannel.CYCLE, "NETTING_OK", traceId)
+                            .with("container", run.container)
+                            .with("blob", run.blob)
+                            .with("written_blob", written)
+                            .with("edges_after", out.get("edges_after"))
+                            .with("reduced", out.get("reduced")));
+                    return out;
+                });
+    }
+
+    private static Map<String, Object> report(Run run, String status, String writtenBlob) {
+        Netting n = run.netting;
+        CsrGraph before = n.original();
+        int debtors = 0;
+        int creditors = 0;
+        for (int v = 0; v < before.nodeCount(); v++) {
+            if (n.net(v) < 0) debtors++;
+            else if (n.net(v) > 0) creditors++;
+        }
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("status", status);
+        out.put("mode", n.mode().name().toLowerCase(Locale.ROOT));
+        out.put("container", run.container);
+        out.put("base_blob", run.blob);
+        out.put("written_blob", writtenBlob);
+        out.put("nodes", before.nodeCount());
+        out.put("debtors", debtors);
+        out.put("creditors", creditors);
+        out.put("edges_before", before.edgeCount());
+        out.put("edges_after", n.netted().edgeCount());
+        out.put("obligations_before", n.totalBefore().toPlainString());
+        out.put("obligations_after", n.totalAfter().toPlainString());
+        out.put("reduced", n.totalBefore().subtract(n.totalAfter()).toPlainString());
+        out.put("lower_bound", n.lowerBound().toPlainString());
+        out.put("phases", n.phases());
+        out.put("compute_ms", run.computeMillis);
+        return out;
+    }
+
+    /** The netted cells, row by row, at most matrix.netting.preview-max-cells of them. */
+    private List<Map<String, Object>> cells(CsrGraph g) {
+        List<Map<String, Object>> cells = new ArrayList<>(Math.min(g.edgeCount(), previewMaxCells));
+        for (int u = 0; u < g.nodeCount() && cells.size() < previewMaxCells; u++) {
+            for (int e = g.rowStart(u), end = g.rowEnd(u); e < end && cells.size() < previewMaxCells; e++) {
+                Map<String, Object> cell = new LinkedHashMap<>();
+                cell.put("node_a", g.name(u));
+                cell.put("node_b", g.name(g.target(e)));
+                cell.put("amount", g.toDecimal(g.amount(e)).toPlainString());
+                cells.add(cell);
+            }
+        }
+        return cells;
+    }
+
+    private static Netting.Mode mode(String mode) {
+        if (isBlank(mode) || "conservative".equalsIgnoreCase(mode)) return Netting.Mode.CONSERVATIVE;
+        if ("global".equalsIgnoreCase(mode)) return Netting.Mode.GLOBAL;
+        throw problem(HttpStatus.BAD_REQUEST, "mode must be \"conservative\" or \"global\"");
+    }
+
+    private static ErrorResponseException problem(HttpStatus status, String detail) {
+        return new ErrorResponseException(status, ProblemDetail.forStatusAndDetail(status, detail), null);
+    }
+
+    private static boolean isBlank(String s) {
+        return s == null || s.isBlank();
+    }
+
+    /** One netting computation on one base blob. */
+    private record Run(String container, String blob, Netting netting, long computeMillis) {}
+}
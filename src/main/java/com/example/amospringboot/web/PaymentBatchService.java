@@ -0,0 +1,312 @@
+package com.example.amospringboot.web;
+
+import com.example.amospringboot.audit.AuditChannel;
+import com.example.amospringboot.audit.AuditEvent;
+import com.example.amospringboot.audit.AuditLog;
+import com.example.amospringboot.matrix.LatestBlobResolver;
+import com.example.amospringboot.matrix.MatrixApiClient;
+import com.example.amospringboot.matrix.MatrixRemoteException;
+import com.example.amospringboot.matrix.PaymentPipeline;
+import com.example.amospringboot.matrix.dto.PaymentBatchRequest;
+import com.example.amospringboot.matrix.dto.PaymentRequest;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ProblemDetail;
+import org.springframework.stereotype.Service;
+import org.springframework.web.ErrorResponseException;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Applies a batch of payments with as few blob versions as possible.
+ *
+ * Valid entries are merged per (node_a, node_b) first: a payment is additive, so k payments
+ * A -> B of x1..xk are one payment of their sum. The merged list is sent in chunks of
+ * matrix.payments.batch.chunk-size to the backend batch endpoint, each chunk on top of the
+ * blob the previous one wrote, so a batch normally yields one new version. If the backend has
+ * no batch endpoint, merged payments go one by one (still chained), i.e. one version per
+ * distinct pair. A failed call stops the chain; later entries are reported as not applied.
+ *
+ * The whole batch is one exclusive step in the container's {@link PaymentPipeline} lane, so it
+ * starts from the true latest blob (blob_name is only the fallback) and no queued single
+ * payment writes in between its chunks.
+ */
+@Service
+public class PaymentBatchService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PaymentBatchService.class);
+
+    private static final String CONTAINER     = "matrices";
+    private static final String FALLBACK_BLOB = "initial-matrix.b64";
+    private static final BigDecimal MAX_AMOUNT = new BigDecimal("999999999999"); // @Digits(integer = 12)
+
+    private final MatrixApiClient client;
+    private final LatestBlobResolver latestBlobResolver;
+    private final PaymentPipeline pipeline;
+    private final Validator validator;
+    private final AuditLog audit;
+    private final int chunkSize;
+    private final int maxItems;
+
+    public PaymentBatchService(MatrixApiClient client,
+                               LatestBlobResolver latestBlobResolver,
+                               PaymentPipeline pipeline,
+                               Validator validator,
+                               AuditLog audit,
+                               @Value("${matrix.payments.batch.chunk-size:500}") int chunkSize,
+                               @Value("${matrix.payments.batch.max-items:10000}") int maxItems) {
+        this.client = client;
+        this.latestBlobResolver = latestBlobResolver;
+        this.pipeline = pipeline;
+        this.validator = validator;
+        this.audit = audit;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.maxItems = maxItems;
+    }
+
+    public Mono<Map<String, Object>> apply(PaymentBatchRequest req) {
+        List<PaymentBatchRequest.Item> items = req.getPayments();
+        if (items.size() > maxItems) {
+            var pd = ProblemDetail.forStatusAndDetail(HttpStatus.PAYLOAD_TOO_LARGE,
+                    "At most " + maxItems + " payments per batch (got " + items.size() + ")");
+            return Mono.error(new ErrorResponseException(HttpStatus.PAYLOAD_TOO_LARGE, pd, null));
+        }
+        String container = isBlank(req.getContainer()) ? CONTAINER : req.getContainer();
+        String traceId = UUID.randomUUID().toString();
+
+        List<Map<String, Object>> results = new ArrayList<>(items.size());
+        List<Merged> merged = validateAndMerge(items, results);
+
+        // Like a single payment, the batch applies to the latest version; blob_name is the fallback
+        String fallback = isBlank(req.getBlob_name()) ? FALLBACK_BLOB : req.getBlob_name();
+        return pipeline.exclusive(container, fallback, blob -> {
+            String outBase = isBlank(req.getOut_base()) ? PaymentUiController.normalizeOutBase(blob) : req.getOut_base();
+            Run run = new Run(container, outBase, merged, results, blob);
+            audit.publish(AuditEvent.of(AuditChannel.PAYMENT, "PAYMENT_BATCH_ATTEMPT", traceId)
+                    .with("container", container)
+                    .with("blob", blob)
+                    .with("out", outBase)
+                    .with("items", items.size())
+                    .with("merged", merged.size()));
+            return applyFrom(run, 0).then(Mono.fromSupplier(() -> summary(run, traceId)));
+        });
+    }
+
+    /** Per-item validation (PaymentRequest rules); valid entries merged per ordered pair. */
+    private List<Merged> validateAndMerge(List<PaymentBatchRequest.Item> items, List<Map<String, Object>> results) {
+        Map<String, Merged> open = new LinkedHashMap<>();
+        List<Merged> merged = new ArrayList<>();
+        for (int i = 0; i < items.size(); i++) {
+            PaymentBatchRequest.Item item = items.get(i);
+            Map<String, Object> r = new LinkedHashMap<>();
+            r.put("index", i);
+            results.add(r);
+            if (item == null) {
+                r.put("status", "invalid");
+                r.put("errors", List.of("Payment is required"));
+                continue;
+            }
+            r.put("node_a", item.getNode_a());
+            r.put("node_b", item.getNode_b());
+            r.put("amount", item.getAmount());
+
+            List<String> errors = new ArrayList<>();
+            for (ConstraintViolation<PaymentBatchRequest.Item> v : validator.validate(item)) {
+                errors.add(v.getPropertyPath() + ": " + v.getMessage());
+            }
+            if (errors.isEmpty() && item.getAmount().stripTrailingZeros().scale() > 0) {
+                errors.add("amount: Amount must be an integer (no decimals)");
+            }
+            if (!errors.isEmpty()) {
+                r.put("status", "invalid");
+                r.put("errors", errors);
+                continue;
+            }
+
+            String pair = item.getNode_a() + '\u0000' + item.getNode_b();
+            Merged m = open.get(pair);
+            if (m == null || m.amount.add(item.getAmount()).compareTo(MAX_AMOUNT) > 0) {
+                m = new Merged(item.getNode_a(), item.getNode_b());
+                open.put(pair, m);
+                merged.add(m);
+            }
+            m.amount = m.amount.add(item.getAmount());
+            m.items.add(r);
+        }
+        return merged;
+    }
+
+    /** Apply merged[from..] in chunks, each on top of the blob the previous chunk wrote. */
+    private Mono<Void> applyFrom(Run run, int from) {
+        if (from >= run.merged.size()) return Mono.empty();
+        List<Merged> chunk = run.merged.subList(from, Math.min(run.merged.size(), from + chunkSize));
+
+        Mono<Void> step = client.supportsPaymentBatch()
+                ? applyBatch(run, chunk).onErrorResume(ex -> {
+                    if (ex instanceof MatrixRemoteException && !client.supportsPaymentBatch()) {
+                        return applyOneByOne(run, chunk, 0);
+                    }
+                    fail(run, chunk, ex);
+                    return Mono.empty();
+                })
+                : applyOneByOne(run, chunk, 0);
+        return step.then(Mono.defer(() -> run.failed ? skipFrom(run, from + chunk.size()) : applyFrom(run, from + chunk.size())));
+    }
+
+    private Mono<Void> applyBatch(Run run, List<Merged> chunk) {
+        List<Map<String, Object>> payments = new ArrayList<>(chunk.size());
+        for (Merged m : chunk) {
+            Map<String, Object> p = new LinkedHashMap<>();
+            p.put("node_a", m.nodeA);
+            p.put("node_b", m.nodeB);
+            p.put("amount", m.amount);
+            payments.add(p);
+        }
+        return client.paymentBatchAsync(run.container, run.blob, run.outBase, payments)
+                .doOnNext(result -> written(run, chunk, result))
+                .then();
+    }
+
+    private Mono<Void> applyOneByOne(Run run, List<Merged> chunk, int i) {
+        if (i >= chunk.size() || run.failed) {
+            return run.failed ? skipFrom(run, chunk, i) : Mono.empty();
+        }
+        Merged m = chunk.get(i);
+        PaymentRequest req = new PaymentRequest();
+        req.setContainer(run.container);
+        req.setBlob_name(run.blob);
+        req.setOut_base(run.outBase);
+        req.setNode_a(m.nodeA);
+        req.setNode_b(m.nodeB);
+        req.setAmount(m.amount);
+        return client.paymentAsync(req)
+                .doOnNext(result -> written(run, List.of(m), result))
+                .onErrorResume(ex -> {
+                    fail(run, List.of(m), ex);
+                    return Mono.empty();
+                })
+                .then(Mono.defer(() -> applyOneByOne(run, chunk, i + 1)));
+    }
+
+    private void written(Run run, List<Merged> applied, Map<String, Object> result) {
+        String status = String.valueOf(result.getOrDefault("status", "unknown"));
+        Object blob = result.get("written_blob");
+        if (!"ok".equalsIgnoreCase(status) || blob == null) {
+            fail(run, applied, new IllegalStateException("Backend status: " + status));
+            return;
+        }
+        run.blob = String.valueOf(blob);
+        run.versions++;
+        latestBlobResolver.onBlobWritten(run.container, run.blob);
+        for (Merged m : applied) {
+            for (Map<String, Object> r : m.items) {
+                r.put("status", "ok");
+                r.put("written_blob", run.blob);
+            }
+        }
+    }
+
+    private static void fail(Run run, List<Merged> applied, Throwable ex) {
+        run.failed = true;
+        String msg = ex.getMessage() != null ? ex.getMessage() : ex.getClass().getSimpleName();
+        LOG.warn("PAYMENT_BATCH_FAILURE container={} blob={} error={}", run.container, run.blob, msg);
+        for (Merged m : applied) {
+            for (Map<String, Object> r : m.items) {
+                r.put("status", "failed");
+                r.put("error", msg);
+            }
+        }
+    }
+
+    private static Mono<Void> skipFrom(Run run, int from) {
+        return skipFrom(run, run.merged, from);
+    }
+
+    private static Mono<Void> skipFrom(Run run, List<Merged> merged, int from) {
+        for (int i = from; i < merged.size(); i++) {
+            for (Map<String, Object> r : merged.get(i).items) {
+                if (!r.containsKey("status")) r.put("status", "not_applied");
+            }
+        }
+        return Mono.empty();
+    }
+
+    private Map<String, Object> summary(Run run, String traceId) {
+        int ok = 0;
+        int invalid = 0;
+        int failed = 0;
+        for (Map<String, Object> r : run.results) {
+            switch (String.valueOf(r.get("status"))) {
+                case "ok" -> ok++;
+                case "invalid" -> invalid++;
+                default -> failed++;
+            }
+        }
+        String status = failed == 0 && invalid == 0 ? "ok" : (ok > 0 ? "partial" : "failed");
+
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("status", status);
+        out.put("container", run.container);
+        out.put("written_blob", run.versions > 0 ? run.blob : null);
+        out.put("blob_versions", run.versions);
+        out.put("applied", ok);
+        out.put("invalid", invalid);
+        out.put("failed", failed);
+        out.put("results", run.results);
+
+        audit.publish(AuditEvent.of(AuditChannel.PAYMENT, "PAYMENT_BATCH_" + status.toUpperCase(), traceId)
+                .with("container", run.container)
+                .with("written_blob", run.blob)
+                .with("blob_versions", run.versions)
+                .with("applied", ok)
+                .with("invalid", invalid)
+                .with("failed", failed));
+        return out;
+    }
+
+    private static boolean isBlank(String s) {
+        return s == null || s.isBlank();
+    }
+
+    /** One backend payment standing for one or more batch entries with the same pair. */
+    private static final class Merged {
+        final String nodeA;
+        final String nodeB;
+        BigDecimal amount = BigDecimal.ZERO;
+        final List<Map<String, Object>> items = new ArrayList<>(1);
+
+        Merged(String nodeA, String nodeB) {
+            this.nodeA = nodeA;
+            this.nodeB = nodeB;
+        }
+    }
+
+    /** Mutable state of one batch; touched by one step at a time (the chain is sequential). */
+    private static final class Run {
+        final String container;
+        final String outBase;
+        final List<Merged> merged;
+        final List<Map<String, Object>> results;
+        String blob;
+        int versions;
+        boolean failed;
+
+        Run(String container, String outBase, List<Merged> merged, List<Map<String, Object>> results, String blob) {
+            this.container = container;
+            this.outBase = outBase;
+            this.merged = merged;
+            this.results = results;
+            this.blob = blob;
+        }
+    }
+}
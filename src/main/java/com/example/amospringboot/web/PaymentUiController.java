@@ -1,6 +1,11 @@
 package com.example.amospringboot.web;
 
-import com.example.amospringboot.matrix.MatrixApiClient;
+import com.example.amospringboot.audit.AuditChannel;
+import com.example.amospringboot.audit.AuditEvent;
+import com.example.amospringboot.audit.AuditLog;
+import com.example.amospringboot.matrix.IdempotencyStore;
+import com.example.amospringboot.matrix.LatestBlobResolver;
+import com.example.amospringboot.matrix.PaymentPipeline;
 import com.example.amospringboot.matrix.dto.PaymentRequest;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -13,6 +18,7 @@ import jakarta.validation.constraints.Positive;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -23,8 +29,12 @@ import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.WebDataBinder;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
 
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
@@ -33,8 +43,7 @@ import java.util.concurrent.TimeUnit;
 @RequestMapping("/payment")
 public class PaymentUiController {
 
-    private static final Logger LOG   = LoggerFactory.getLogger(PaymentUiController.class);
-    private static final Logger AUDIT = LoggerFactory.getLogger("payment.audit");
+    private static final Logger LOG = LoggerFactory.getLogger(PaymentUiController.class);
 
     private static final String CONTAINER = "matrices";
     private static final String FALLBACK  = "initial-matrix.b64";
@@ -44,12 +53,25 @@ public class PaymentUiController {
     private static final java.util.regex.Pattern TS_TAIL =
             java.util.regex.Pattern.compile("(-\\d{8}-\\d{6})+$");
 
-    private final MatrixApiClient client;
+    private final PaymentPipeline paymentPipeline;
+    private final LatestBlobResolver latestBlobResolver;
     private final ObjectMapper objectMapper;
-
-    public PaymentUiController(MatrixApiClient client, ObjectMapper objectMapper) {
-        this.client = client;
+    private final AuditLog audit;
+    private final IdempotencyStore idempotency;
+    private final Duration writeTimeout;
+
+    public PaymentUiController(PaymentPipeline paymentPipeline,
+                               LatestBlobResolver latestBlobResolver,
+                               ObjectMapper objectMapper,
+                               AuditLog audit,
+                               IdempotencyStore idempotency,
+                               @Value("${matrix.ui.write-timeout:65s}") Duration writeTimeout) {
+        this.paymentPipeline = paymentPipeline;
+        this.latestBlobResolver = latestBlobResolver;
         this.objectMapper = objectMapper;
+        this.audit = audit;
+        this.idempotency = idempotency;
+        this.writeTimeout = writeTimeout;
     }
 
     @InitBinder("form")
@@ -70,6 +92,7 @@ public class PaymentUiController {
             form.setOut_base(normalizeOutBase(latest));
             form.setContainer(CONTAINER);
             form.setNode_a(localPart(resolveUpn(oidcUser, oauth2User)));
+            form.setIdempotency_key(idempotency.issue());
             model.addAttribute("form", form);
         }
         // placeholders for messages
@@ -101,12 +124,9 @@ public class PaymentUiController {
             model.addAttribute("paymentOk", false);
             model.addAttribute("paymentMessage", "❌ Please fix the highlighted errors and try again.");
             model.addAttribute("paymentBlob", null);
-            LOG.info("PAYMENT_FAILURE traceId={} reason=validation container={} blob={} out={} node_a={} node_b={} amount={} errors={}",
-                    traceId, form.getContainer(), form.getBlob_name(), form.getOut_base(),
-                    safe(form.getNode_a()), safe(form.getNode_b()), form.getAmount(), br.getErrorCount());
-            AUDIT.info("PAYMENT_FAILURE traceId={} reason=validation container={} blob={} out={} node_a={} node_b={} amount={}",
-                    traceId, form.getContainer(), form.getBlob_name(), form.getOut_base(),
-                    safe(form.getNode_a()), safe(form.getNode_b()), form.getAmount());
+            audit.publish(paymentEvent("PAYMENT_FAILURE", traceId, form)
+                    .with("reason", "validation")
+                    .with("errors", br.getErrorCount()));
             MDC.clear();
             return VIEW;
         }
@@ -115,12 +135,8 @@ public class PaymentUiController {
             model.addAttribute("paymentOk", false);
             model.addAttribute("paymentMessage", "❌ Amount must be a positive integer (no decimals).");
             model.addAttribute("paymentBlob", null);
-            LOG.info("PAYMENT_FAILURE traceId={} reason=nonIntegerAmount container={} blob={} out={} node_a={} node_b={} amount={}",
-                    traceId, form.getContainer(), form.getBlob_name(), form.getOut_base(),
-                    safe(form.getNode_a()), safe(form.getNode_b()), form.getAmount());
-            AUDIT.info("PAYMENT_FAILURE traceId={} reason=nonIntegerAmount container={} blob={} out={} node_a={} node_b={} amount={}",
-                    traceId, form.getContainer(), form.getBlob_name(), form.getOut_base(),
-                    safe(form.getNode_a()), safe(form.getNode_b()), form.getAmount());
+            audit.publish(paymentEvent("PAYMENT_FAILURE", traceId, form)
+                    .with("reason", "nonIntegerAmount"));
             MDC.clear();
             return VIEW;
         }
@@ -135,15 +151,13 @@ public class PaymentUiController {
             req.setNode_b(form.getNode_b());
             req.setAmount(form.getAmount());
 
-            LOG.info("PAYMENT_ATTEMPT traceId={} container={} blob={} out={} node_a={} node_b={} amount={}",
-                    traceId, req.getContainer(), req.getBlob_name(), req.getOut_base(),
-                    safe(req.getNode_a()), safe(req.getNode_b()), req.getAmount());
-            AUDIT.info("PAYMENT_ATTEMPT traceId={} container={} blob={} out={} node_a={} node_b={} amount={}",
-                    traceId, req.getContainer(), req.getBlob_name(), req.getOut_base(),
-                    safe(req.getNode_a()), safe(req.getNode_b()), req.getAmount());
+            audit.publish(paymentEvent("PAYMENT_ATTEMPT", traceId, form));
 
             long t0 = System.nanoTime();
-            Map<String, Object> result = client.applyPayment(req);
+            // Sequenced per container: applied to the true latest blob even if another payment just wrote one.
+            // A resubmitted form (same server-issued key) gets the first submission's result instead.
+            IdempotencyStore.Outcome<Map<String, Object>> outcome = submitOnce(req, form.getIdempotency_key());
+            Map<String, Object> result = outcome.value();
             durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0);
 
             String resultJson = toJson(result);
@@ -151,20 +165,20 @@ public class PaymentUiController {
             String writtenBlob = String.valueOf(result.getOrDefault("written_blob", ""));
 
             boolean ok = "ok".equalsIgnoreCase(status);
+            if (ok && !outcome.replayed()) latestBlobResolver.onBlobWritten(req.getContainer(), writtenBlob);
+            if (ok) form.setIdempotency_key(idempotency.issue()); // the next payment from this page is a new one
             String uiMsg = ok
                     ? ("✅ Payment successful from " + req.getNode_a() + " → " + req.getNode_b()
-                        + ". Update written to blob “" + writtenBlob + "”.")
+                        + ". Update written to blob “" + writtenBlob + "”." + cycleMessage(result))
                     : ("❌ Payment failed. Status: " + status);
 
-            LOG.info("PAYMENT_SUCCESS traceId={} durationMs={} container={} blob={} out={} node_a={} node_b={} amount={} status={} written_blob={} result={}",
-                    traceId, durationMs,
-                    req.getContainer(), req.getBlob_name(), req.getOut_base(),
-                    safe(req.getNode_a()), safe(req.getNode_b()), req.getAmount(),
-                    status, writtenBlob, truncate(resultJson, 4000));
-            AUDIT.info("PAYMENT_SUCCESS traceId={} container={} blob={} out={} node_a={} node_b={} amount={} status={} written_blob={}",
-                    traceId, req.getContainer(), req.getBlob_name(), req.getOut_base(),
-                    safe(req.getNode_a()), safe(req.getNode_b()), req.getAmount(),
-                    status, writtenBlob);
+            // result is rendered (and cut at audit.field-max-chars) on the audit writer thread, later:
+            // hand it a snapshot, the live map is shared with the model and the idempotency store
+            audit.publish(paymentEvent(outcome.replayed() ? "PAYMENT_REPLAYED" : "PAYMENT_SUCCESS", traceId, form)
+                    .with("durationMs", durationMs)
+                    .with("status", status)
+                    .with("written_blob", writtenBlob)
+                    .with("result", new LinkedHashMap<>(result)));
 
             model.addAttribute("paymentOk", ok);
             model.addAttribute("paymentMessage", uiMsg);
@@ -174,15 +188,12 @@ public class PaymentUiController {
 
         } catch (Exception e) {
             String msg = (e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
-            LOG.warn("PAYMENT_FAILURE traceId={} durationMs={} container={} blob={} out={} node_a={} node_b={} amount={} error={} class={}",
-                    traceId, durationMs,
-                    form.getContainer(), form.getBlob_name(), form.getOut_base(),
-                    safe(form.getNode_a()), safe(form.getNode_b()), form.getAmount(),
-                    truncate(msg, 2000), e.getClass().getName(), e);
-            AUDIT.info("PAYMENT_FAILURE traceId={} container={} blob={} out={} node_a={} node_b={} amount={} error={}",
-                    traceId, form.getContainer(), form.getBlob_name(), form.getOut_base(),
-                    safe(form.getNode_a()), safe(form.getNode_b()), form.getAmount(),
-                    truncate(msg, 1000));
+            audit.publish(paymentEvent("PAYMENT_FAILURE", traceId, form)
+                    .with("durationMs", durationMs)
+                    .with("error", truncate(msg, 1000))
+                    .with("class", e.getClass().getName()));
+            // stack trace stays in the application log; the audit line carries the fields
+            LOG.warn("PAYMENT_FAILURE traceId={} class={}", traceId, e.getClass().getName(), e);
 
             model.addAttribute("paymentOk", false);
             model.addAttribute("paymentMessage", "❌ Payment failed: " + msg);
@@ -197,15 +208,53 @@ public class PaymentUiController {
 
     // ===== helpers =====
 
-    private String safeLatest() {
-        try {
-            return client.latestBlob(CONTAINER, FALLBACK);
-        } catch (Exception e) {
-            return FALLBACK;
+    /**
+     * Waits at most matrix.ui.write-timeout. With a key, the payment keeps running after a
+     * timeout and stays claimed: a resubmit joins it (or gets its result) instead of paying twice.
+     */
+    private IdempotencyStore.Outcome<Map<String, Object>> submitOnce(PaymentRequest req, String key) {
+        if (!IdempotencyStore.isValidKey(key)) {
+            return new IdempotencyStore.Outcome<>(submit(req).block(writeTimeout), false);
         }
+        // blob_name/out_base are not part of it: a resubmit sees the blob the first one wrote
+        String fingerprint = IdempotencyStore.fingerprint(List.of(
+                req.getContainer(), req.getNode_a(), req.getNode_b(), req.getAmount().stripTrailingZeros().toPlainString()));
+        return idempotency.executeAsync(IdempotencyStore.scoped("payment", req.getNode_a(), key), fingerprint,
+                        () -> submit(req))
+                .block(writeTimeout);
+    }
+
+    /** The payment; completing without a result is an error, not a null to render (or to store under the key). */
+    private Mono<Map<String, Object>> submit(PaymentRequest req) {
+        return paymentPipeline.submit(req)
+                .switchIfEmpty(Mono.error(() -> new IllegalStateException("No result from the payment backend")));
+    }
+
+    /** " A settlement cycle now exists: A → B → C → A (up to 5)." when the payment closed one (CycleIndexes). */
+    private static String cycleMessage(Map<String, Object> result) {
+        if (!(result.get("cycle") instanceof Map<?, ?> cycle) || !Boolean.TRUE.equals(cycle.get("closes_cycle"))) return "";
+        if (!(cycle.get("cycle") instanceof List<?> nodes) || nodes.isEmpty()) return "";
+        StringBuilder path = new StringBuilder();
+        for (Object node : nodes) path.append(node).append(" → ");
+        path.append(nodes.get(0));
+        return " A settlement cycle now exists: " + path + " (up to " + cycle.get("bottleneck") + ").";
+    }
+
+    private static AuditEvent paymentEvent(String type, String traceId, PaymentForm form) {
+        return AuditEvent.of(AuditChannel.PAYMENT, type, traceId)
+                .with("container", form.getContainer())
+                .with("blob", form.getBlob_name())
+                .with("out", form.getOut_base())
+                .with("node_a", safe(form.getNode_a()))
+                .with("node_b", safe(form.getNode_b()))
+                .with("amount", form.getAmount());
+    }
+
+    private String safeLatest() {
+        return latestBlobResolver.latest(CONTAINER, FALLBACK);
     }
 
-    private static String normalizeOutBase(String blobName) {
+    static String normalizeOutBase(String blobName) {
         if (blobName == null || blobName.isBlank()) return "payment-update";
         String base = blobName.endsWith(".b64") ? blobName.substring(0, blobName.length() - 4) : blobName;
         base = TS_TAIL.matcher(base).replaceAll("");
@@ -274,6 +323,7 @@ public class PaymentUiController {
         private String node_a;
         private String container;
         private String out_base;
+        private String idempotency_key;
 
         @NotBlank(message = "Node B is required")
         @Pattern(regexp = "^[A-Za-z0-9_\\-]{1,64}$",
@@ -293,6 +343,8 @@ public class PaymentUiController {
         public void setContainer(String container) { this.container = container; }
         public String getOut_base() { return out_base; }
         public void setOut_base(String out_base) { this.out_base = out_base; }
+        public String getIdempotency_key() { return idempotency_key; }
+        public void setIdempotency_key(String idempotency_key) { this.idempotency_key = idempotency_key; }
         public String getNode_b() { return node_b; }
         public void setNode_b(String node_b) { this.node_b = node_b; }
         public BigDecimal getAmount() { return amount; }
@@ -0,0 +1,102 @@
+package com.example.amospringboot.web;
+
+import com.example.amospringboot.matrix.engine.CsrGraph;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.IntToLongFunction;
+
+/**
+ * The settlement batch body ({"blob_name", "out_base", "container", "settlements": [{"node_a",
+ * "node_b", "amount"}]}), one entry per cell of {@code graph} whose reduction is not zero,
+ * generated chunk by chunk straight from the graph's arrays. Each subscription starts over.
+ * Shared by settle-all and netting, which both only ever lower existing cells.
+ */
+final class SettlementBody {
+
+    /** Settlement entries per generated body chunk (~60 bytes each). */
+    private static final int CHUNK_ENTRIES = 2048;
+
+    private SettlementBody() {}
+
+    static Flux<DataBuffer> of(ObjectMapper mapper, String container, String blob, String outBase,
+                               CsrGraph graph, IntToLongFunction reduction) {
+        return Flux.generate(() -> new Chunks(mapper, container, blob, outBase, graph, reduction), (w, sink) -> {
+            try {
+                byte[] chunk = w.next();
+                if (chunk == null) sink.complete();
+                else sink.next(DefaultDataBufferFactory.sharedInstance.wrap(chunk));
+            } catch (IOException e) {
+                sink.error(new UncheckedIOException(e));
+            }
+            return w;
+        });
+    }
+
+    private static final class Chunks {
+
+        private final ByteArrayBuilder out = new ByteArrayBuilder(CHUNK_ENTRIES * 64);
+        private final JsonGenerator gen;
+        private final String container;
+        private final String blob;
+        private final String outBase;
+        private final CsrGraph g;
+        private final IntToLongFunction reduction;
+        private int node = -1;              // next row; -1 = prologue, nodeCount = epilogue, above = done
+
+        Chunks(ObjectMapper mapper, String container, String blob, String outBase, CsrGraph g, IntToLongFunction reduction) {
+            this.container = container;
+            this.blob = blob;
+            this.outBase = outBase;
+            this.g = g;
+            this.reduction = reduction;
+            try {
+                this.gen = mapper.createGenerator(out);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /** Next chunk of the body (whole rows, at least CHUNK_ENTRIES edges looked at), null at the end. */
+        byte[] next() throws IOException {
+            int n = g.nodeCount();
+            if (node > n) return null;
+            if (node < 0) {
+                gen.writeStartObject();
+                gen.writeStringField("blob_name", blob);
+                gen.writeStringField("out_base", outBase);
+                gen.writeStringField("container", container);
+                gen.writeArrayFieldStart("settlements");
+                node = 0;
+            } else if (node < n) {
+                int seen = 0;
+                for (; node < n && seen < CHUNK_ENTRIES; node++) {
+                    for (int e = g.rowStart(node), end = g.rowEnd(node); e < end; e++, seen++) {
+                        long r = reduction.applyAsLong(e);
+                        if (r == 0) continue;
+                        gen.writeStartObject();
+                        gen.writeStringField("node_a", g.name(node));
+                        gen.writeStringField("node_b", g.name(g.target(e)));
+                        gen.writeFieldName("amount");
+                        gen.writeNumber(g.toDecimal(r).toPlainString());
+                        gen.writeEndObject();
+                    }
+                }
+            } else {
+                gen.writeEndArray();
+                gen.writeEndObject();
+                node = n + 1;
+            }
+            gen.flush();
+            byte[] chunk = out.toByteArray();
+            out.reset();
+            return chunk;
+        }
+    }
+}
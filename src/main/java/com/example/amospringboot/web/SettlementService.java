@@ -0,0 +1,185 @@
+package com.example.amospringboot.web;
+
+import com.example.amospringboot.audit.AuditChannel;
+import com.example.amospringboot.audit.AuditEvent;
+import com.example.amospringboot.audit.AuditLog;
+import com.example.amospringboot.matrix.LatestBlobResolver;
+import com.example.amospringboot.matrix.MatrixApiClient;
+import com.example.amospringboot.matrix.PaymentPipeline;
+import com.example.amospringboot.matrix.engine.CsrGraph;
+import com.example.amospringboot.matrix.engine.CycleSettlement;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ProblemDetail;
+import org.springframework.stereotype.Service;
+import org.springframework.web.ErrorResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Settle all: cancels every obligation cycle of a container's matrix in one pass and writes
+ * the result as one new blob version.
+ *
+ * The base blob is downloaded and decoded locally, {@link CycleSettlement} runs on a dedicated
+ * fork-join pool (matrix.settlement.parallelism), and the reduced cells go to the backend
+ * settlement batch endpoint in one streamed call. That endpoint is opt-in
+ * (matrix.api.settlement-batch-path); without it only a dry run is possible, refused (501)
+ * before anything is downloaded. The write joins the container's
+ * {@link PaymentPipeline} lane as an exclusive step, so it runs on the true latest blob and no
+ * payment is applied to the version it replaces. A dry run (or a matrix without cycles)
+ * writes nothing and only reports.
+ */
+@Service
+public class SettlementService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SettlementService.class);
+
+    private static final String CONTAINER     = "matrices";
+    private static final String FALLBACK_BLOB = "initial-matrix.b64";
+
+    private final MatrixApiClient client;
+    private final LatestBlobResolver latestBlobResolver;
+    private final PaymentPipeline pipeline;
+    private final ObjectMapper mapper;
+    private final AuditLog audit;
+    private final ForkJoinPool pool;
+
+    public SettlementService(MatrixApiClient client,
+                             LatestBlobResolver latestBlobResolver,
+                             PaymentPipeline pipeline,
+                             ObjectMapper mapper,
+                             AuditLog audit,
+                             @Value("${matrix.settlement.parallelism:0}") int parallelism) {
+        this.client = client;
+        this.latestBlobResolver = latestBlobResolver;
+        this.pipeline = pipeline;
+        this.mapper = mapper;
+        this.audit = audit;
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    @PreDestroy
+    void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Settle every cycle of {@code blobName} (blank = latest) in {@code container}; the new
+     * version is named after {@code outBase} (blank = the base name of the blob).
+     */
+    public Mono<Map<String, Object>> settleAll(String container, String blobName, String outBase, boolean dryRun) {
+        String c = isBlank(container) ? CONTAINER : container;
+        String traceId = UUID.randomUUID().toString();
+
+        if (dryRun) {
+            Mono<String> base = !isBlank(blobName)
+                    ? Mono.just(blobName)
+                    : Mono.fromCallable(() -> latestBlobResolver.latest(c, FALLBACK_BLOB))
+                          .subscribeOn(Schedulers.boundedElastic());
+            return base.flatMap(blob -> compute(c, blob))
+                    .map(run -> report(run, "dry_run", null));
+        }
+        if (!client.supportsSettlementBatch()) {
+            var pd = ProblemDetail.forStatusAndDetail(HttpStatus.NOT_IMPLEMENTED,
+                    "No matrix backend settlement batch endpoint is configured (matrix.api.settlement-batch-path); only dry_run is available");
+            return Mono.error(new ErrorResponseException(HttpStatus.NOT_IMPLEMENTED, pd, null));
+        }
+
+        // blob_name is only the fallback: like a payment, the write applies to the latest version
+        String fallback = isBlank(blobName) ? FALLBACK_BLOB : blobName;
+        return pipeline.exclusive(c, fallback, blob -> {
+            String out = isBlank(outBase) ? PaymentUiController.normalizeOutBase(blob) : outBase;
+            audit.publish(AuditEvent.of(AuditChannel.CYCLE, "SETTLE_ALL_ATTEMPT", traceId)
+                    .with("container", c)
+                    .with("blob", blob)
+                    .with("out", out));
+            return compute(c, blob).flatMap(run -> write(run, out, traceId));
+        });
+    }
+
+    /** Download + decode, then settle on the pool (never on a request or event-loop thread). */
+    private Mono<Run> compute(String container, String blob) {
+        return client.downloadMatrixAsync(blob, container)
+                .publishOn(Schedulers.boundedElastic())
+                .map(matrix -> {
+                    long t0 = System.nanoTime();
+                    CycleSettlement settlement = CycleSettlement.settle(matrix.toGraph(), pool);
+                    return new Run(container, blob, settlement, (System.nanoTime() - t0) / 1_000_000);
+                });
+    }
+
+    private Mono<Map<String, Object>> write(Run run, String outBase, String traceId) {
+        if (run.settlement.cycles() == 0) {
+            return Mono.just(report(run, "no_cycles", null));
+        }
+        return client.settlementBatchAsync(body(run, outBase))
+                .map(result -> {
+                    String status = String.valueOf(result.getOrDefault("status", "unknown"));
+                    Object written = result.get("written_blob");
+                    if (!"ok".equalsIgnoreCase(status) || written == null) {
+                        LOG.warn("SETTLE_ALL_FAILURE container={} blob={} status={}", run.container, run.blob, status);
+                        audit.publish(AuditEvent.of(AuditChannel.CYCLE, "SETTLE_ALL_FAILED", traceId)
+                                .with("container", run.container)
+                                .with("blob", run.blob)
+                                .with("status", status));
+                        return report(run, "failed", null);
+                    }
+                    Map<String, Object> out = report(run, "ok", String.valueOf(written));
+                    audit.publish(AuditEvent.of(AuditChannel.CYCLE, "SETTLE_ALL_OK", traceId)
+                            .with("container", run.container)
+                            .with("blob", run.blob)
+                            .with("written_blob", written)
+                            .with("cycles", run.settlement.cycles())
+                            .with("edges_reduced", out.get("edges_reduced"))
+                            .with("settled", out.get("settled")));
+                    return out;
+                });
+    }
+
+    private static Map<String, Object> report(Run run, String status, String writtenBlob) {
+        CycleSettlement s = run.settlement;
+        CsrGraph g = s.graph();
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("status", status);
+        out.put("container", run.container);
+        out.put("base_blob", run.blob);
+        out.put("written_blob", writtenBlob);
+        out.put("nodes", g.nodeCount());
+        out.put("edges", g.edgeCount());
+        out.put("components", s.components());
+        out.put("cyclic_components", s.cyclicComponents());
+        out.put("largest_component", s.largestComponent());
+        out.put("cycles", s.cycles());
+        out.put("longest_cycle", s.longestCycle());
+        out.put("edges_reduced", s.edgesReduced());
+        out.put("settled", s.totalSettled().toPlainString());
+        out.put("obligations_before", s.totalBefore().toPlainString());
+        out.put("obligations_after", s.totalAfter().toPlainString());
+        out.put("compute_ms", run.computeMillis);
+        return out;
+    }
+
+    /** The settlement batch body: one entry per reduced cell (see SettlementBody). */
+    private Flux<DataBuffer> body(Run run, String outBase) {
+        CycleSettlement s = run.settlement;
+        return SettlementBody.of(mapper, run.container, run.blob, outBase, s.graph(), s::reduction);
+    }
+
+    private static boolean isBlank(String s) {
+        return s == null || s.isBlank();
+    }
+
+    /** One settle-all computation on one base blob. */
+    private record Run(String container, String blob, CycleSettlement settlement, long computeMillis) {}
+}
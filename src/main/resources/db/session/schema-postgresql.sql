@@ -0,0 +1,12 @@
+CREATE TABLE IF NOT EXISTS app_session (
+    session_id      VARCHAR(64)  NOT NULL PRIMARY KEY,
+    principal_name  VARCHAR(256),
+    creation_time   BIGINT       NOT NULL,
+    last_access     BIGINT       NOT NULL,
+    max_inactive    INT          NOT NULL,
+    expiry_time     BIGINT       NOT NULL,
+    revision        BIGINT       NOT NULL,
+    attributes      BYTEA
+);
+CREATE INDEX IF NOT EXISTS app_session_principal ON app_session (principal_name);
+CREATE INDEX IF NOT EXISTS app_session_expiry ON app_session (expiry_time);
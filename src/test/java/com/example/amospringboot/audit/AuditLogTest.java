@@ -0,0 +1,44 @@
+package com.example.amospringboot.audit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** The writer thread: an event that cannot be rendered is counted as failed and the writer keeps going. */
+class AuditLogTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void unrenderableEventDoesNotStopTheWriter() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        AuditLog log = new AuditLog(new AuditProperties(dir.toString(), 64, 16, Duration.ofMillis(1),
+                AuditProperties.Overflow.DROP, false, 4000, 30, false), registry);
+        Object broken = new Object() {
+            @Override
+            public String toString() {
+                throw new IllegalStateException("cannot render");
+            }
+        };
+
+        log.start();
+        log.publish(AuditEvent.of(AuditChannel.PAYMENT, "PAYMENT_OK", "t1").with("result", broken));
+        log.publish(AuditEvent.of(AuditChannel.PAYMENT, "PAYMENT_OK", "t2").with("amount", "5"));
+        log.stop();
+
+        assertEquals(1, registry.get("audit.events").tag("result", "failed").counter().count());
+        assertEquals(1, registry.get("audit.events").tag("result", "written").counter().count());
+        List<String> lines = Files.readAllLines(dir.resolve("payment-audit.log"));
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).contains("t2"), lines.get(0));
+    }
+}
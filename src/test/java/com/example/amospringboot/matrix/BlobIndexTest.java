@@ -0,0 +1,38 @@
+package com.example.amospringboot.matrix;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/** Listing sync: the index never serves a blob the latest listing no longer has. */
+class BlobIndexTest {
+
+    private static final String OLD = "payment-User-20251015-082727.b64";
+    private static final String NEW = "payment-User-20251016-090000.b64";
+    private static final String OTHER = "initial-matrix-20251014-100000.b64";
+
+    @Test
+    void newerListingsAreAppended() {
+        BlobIndex index = new BlobIndex();
+        index.sync("c", List.of(OLD));
+        index.sync("c", List.of(OLD, NEW));
+
+        assertEquals(NEW, index.latest("c"));
+        assertEquals(OLD, index.previous("c", NEW));
+    }
+
+    @Test
+    void deletedBlobIsDroppedEvenWhenAnotherWasAdded() {
+        BlobIndex index = new BlobIndex();
+        index.sync("c", List.of(OLD, NEW));
+        index.sync("c", List.of(OLD, OTHER));          // NEW deleted, OTHER added: same size
+
+        assertEquals(OLD, index.latest("c"));
+        assertEquals(OLD, index.latest("c", "payment-User"));
+        assertNull(index.previous("c", OLD));
+        assertEquals(OTHER, index.latest("c", "initial-matrix"));
+    }
+}
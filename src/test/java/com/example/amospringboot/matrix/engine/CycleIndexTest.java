@@ -0,0 +1,111 @@
+package com.example.amospringboot.matrix.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The incremental cycle index against recomputation from scratch, on seeded random matrices
+ * with random payments (including new nodes): after every payment, component membership must
+ * match Tarjan on the rebuilt graph, and a reported cycle must start with the payment's edge,
+ * consist of real cells, carry their smallest amount and be as short as {@link CycleFinder#through}.
+ */
+class CycleIndexTest {
+
+    @Test
+    void paymentClosingACycleReportsIt() {
+        CsrGraph.Builder b = CsrGraph.builder(List.of("a", "b", "c"), 2);
+        b.edge("a", "b", BigDecimal.valueOf(5));
+        b.edge("b", "c", BigDecimal.valueOf(3));
+        CycleIndex index = CycleIndex.of(b.build());
+
+        assertNull(index.add("a", "d", 1));
+        CycleFinder.Cycle cycle = index.add("c", "a", 2);
+
+        assertNotNull(cycle);
+        int a = index.indexOf("a"), bb = index.indexOf("b"), c = index.indexOf("c");
+        assertArrayEquals(new int[] {c, a, bb}, cycle.nodes());
+        assertEquals(2, cycle.bottleneck());
+        assertTrue(index.sameComponent(a, c));
+    }
+
+    @Test
+    void matchesRecomputationAfterEveryPayment() {
+        Random rnd = new Random(3);
+        for (int round = 0; round < 100; round++) {
+            int n = 2 + rnd.nextInt(60);
+            List<String> names = new ArrayList<>();
+            for (int i = 0; i < n; i++) names.add("n" + i);
+            CsrGraph.Builder b = CsrGraph.builder(names, 2 * n);
+            for (int i = rnd.nextInt(2 * n); i > 0; i--) {
+                b.edge(names.get(rnd.nextInt(n)), names.get(rnd.nextInt(n)), BigDecimal.valueOf(1 + rnd.nextInt(9)));
+            }
+            CsrGraph initial = b.build();
+            CycleIndex index = CycleIndex.of(initial);
+            Map<Long, Long> cells = new HashMap<>();
+            for (int u = 0; u < initial.nodeCount(); u++) {
+                for (int e = initial.rowStart(u), end = initial.rowEnd(u); e < end; e++) {
+                    cells.put((long) u << 32 | initial.target(e), initial.amount(e));
+                }
+            }
+
+            for (int step = 0; step < 100; step++) {
+                String from = "n" + rnd.nextInt(n + 5);
+                String to = "n" + rnd.nextInt(n + 5);
+                long amount = 1 + rnd.nextInt(9);
+                CycleFinder.Cycle cycle = index.add(from, to, amount);
+                int u = index.indexOf(from);
+                int v = index.indexOf(to);
+                cells.merge((long) u << 32 | v, amount, Long::sum);
+
+                CsrGraph g = rebuild(index, cells);
+                int[] comp = new int[g.nodeCount()];
+                CycleSettlement.stronglyConnected(g, comp);
+                String at = "round " + round + " payment " + step + " " + from + " -> " + to;
+                assertEquals(comp[u] == comp[v], cycle != null, at + ": cycle reported iff one exists");
+                for (int x = 0; x < g.nodeCount(); x++) {
+                    for (int y = x; y < g.nodeCount(); y++) {
+                        assertEquals(comp[x] == comp[y], index.sameComponent(x, y), at + ": components of " + x + ", " + y);
+                    }
+                }
+                if (cycle == null) continue;
+                int[] nodes = cycle.nodes();
+                assertTrue(nodes[0] == u && (nodes.length == 1 || nodes[1] == v), at + ": cycle starts with the payment");
+                long bottleneck = Long.MAX_VALUE;
+                for (int i = 0; i < nodes.length; i++) {
+                    long cell = index.amount(nodes[i], nodes[(i + 1) % nodes.length]);
+                    assertTrue(cell > 0, at + ": cycle edge " + i + " exists");
+                    bottleneck = Math.min(bottleneck, cell);
+                }
+                assertEquals(bottleneck, cycle.bottleneck(), at + ": bottleneck");
+                if (nodes.length > 1) {
+                    Optional<CycleFinder.Cycle> shortest = CycleFinder.through(g, u, v);
+                    assertTrue(shortest.isPresent(), at + ": shortest exists");
+                    assertEquals(shortest.get().nodes().length, nodes.length, at + ": shortest");
+                }
+            }
+        }
+    }
+
+    private static CsrGraph rebuild(CycleIndex index, Map<Long, Long> cells) {
+        List<String> names = new ArrayList<>(index.nodeCount());
+        for (int i = 0; i < index.nodeCount(); i++) names.add(index.name(i));
+        CsrGraph.Builder b = CsrGraph.builder(names, cells.size());
+        for (Map.Entry<Long, Long> cell : cells.entrySet()) {
+            b.edge(names.get((int) (cell.getKey() >>> 32)), names.get((int) (long) cell.getKey()), BigDecimal.valueOf(cell.getValue()));
+        }
+        return b.build();
+    }
+}
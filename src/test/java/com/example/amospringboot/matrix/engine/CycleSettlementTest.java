@@ -0,0 +1,65 @@
+package com.example.amospringboot.matrix.engine;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Invariants of settle-all on seeded random matrices (10 .. 1k nodes, dense to sparse, random
+ * and clustered): what is left has no cycle, every node's net position is unchanged, no cell is
+ * reduced below zero or increased, and the result does not depend on the parallelism.
+ */
+class CycleSettlementTest {
+
+    private static ForkJoinPool single;
+    private static ForkJoinPool all;
+
+    @BeforeAll
+    static void pools() {
+        single = new ForkJoinPool(1);
+        all = new ForkJoinPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+    }
+
+    @AfterAll
+    static void shutdown() {
+        single.shutdownNow();
+        all.shutdownNow();
+    }
+
+    @ParameterizedTest(name = "{0} nodes x {1}, clustered={2}")
+    @CsvSource({
+            "10, 3, false", "10, 3, true",
+            "100, 2, false", "100, 2, true",
+            "100, 20, false", "100, 20, true",
+            "1000, 4, false", "1000, 4, true",
+            "1000, 50, false", "1000, 50, true",
+    })
+    void settles(int nodes, int degree, boolean clustered) {
+        CsrGraph g = TestGraphs.random(nodes, degree, clustered, nodes * 31L + degree);
+        CycleSettlement s = CycleSettlement.settle(g, all);
+
+        assertTrue(CycleFinder.any(s.residualGraph()).isEmpty(), "residual has a cycle");
+        long[] net = new long[g.nodeCount()];
+        for (int u = 0; u < g.nodeCount(); u++) {
+            for (int e = g.rowStart(u), end = g.rowEnd(u); e < end; e++) {
+                assertTrue(s.reduction(e) >= 0 && s.residual(e) >= 0, "edge " + e + " out of range");
+                net[u] -= s.reduction(e);
+                net[g.target(e)] += s.reduction(e);
+            }
+        }
+        for (int u = 0; u < net.length; u++) assertEquals(0, net[u], "net position of n" + u);
+        assertEquals(0, s.totalBefore().subtract(s.totalSettled()).compareTo(s.totalAfter()), "totals");
+
+        CycleSettlement sequential = CycleSettlement.settle(g, single);
+        assertEquals(s.cycles(), sequential.cycles());
+        for (int e = 0; e < g.edgeCount(); e++) {
+            assertEquals(s.residual(e), sequential.residual(e), "residual of edge " + e);
+        }
+    }
+}
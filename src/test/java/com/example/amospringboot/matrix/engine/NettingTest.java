@@ -0,0 +1,174 @@
+package com.example.amospringboot.matrix.engine;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeout;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Multilateral netting on seeded random matrices, and the conservative mode's min-cost flow
+ * on its own: both modes keep every node's net position; global reaches the lower bound with
+ * at most debtors + creditors - 1 cells; conservative only lowers existing cells, never totals
+ * more than settle-all leaves, and its residual network has no negative cycle, i.e. the flow
+ * is optimal.
+ */
+class NettingTest {
+
+    private static ForkJoinPool pool;
+
+    @BeforeAll
+    static void pool() {
+        pool = new ForkJoinPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+    }
+
+    @AfterAll
+    static void shutdown() {
+        pool.shutdownNow();
+    }
+
+    @ParameterizedTest(name = "{0} nodes x {1}, clustered={2}")
+    @CsvSource({
+            "10, 3, false", "10, 3, true",
+            "100, 2, false", "100, 2, true",
+            "100, 20, false", "100, 20, true",
+            "1000, 4, false", "1000, 4, true",
+    })
+    void nets(int nodes, int degree, boolean clustered) {
+        CsrGraph g = TestGraphs.random(nodes, degree, clustered, nodes * 17L + degree);
+        Netting c = Netting.conservative(g);
+        Netting gl = Netting.global(g);
+
+        assertArrayEquals(Netting.netPositions(g), Netting.netPositions(c.netted()), "conservative net positions");
+        assertArrayEquals(Netting.netPositions(g), Netting.netPositions(gl.netted()), "global net positions");
+        assertOnlyLowers(g, c);
+        assertEquals(0, gl.totalAfter().compareTo(gl.lowerBound()), "global reaches the lower bound");
+        assertTrue(gl.netted().edgeCount() <= Math.max(0, terminals(g) - 1), "global cell count");
+        assertTrue(c.totalAfter().compareTo(c.lowerBound()) >= 0, "conservative below the lower bound");
+        assertTrue(c.totalAfter().compareTo(CycleSettlement.settle(g, pool).totalAfter()) <= 0,
+                "conservative leaves more than settle-all");
+        assertTrue(noNegativeCycle(g, c), "conservative flow not optimal");
+    }
+
+    /** Epsilon starts at n + 1 and is divided by 16 per phase until it is 1. */
+    @Test
+    void costScalingPhases() {
+        assertEquals(1, Netting.conservative(TestGraphs.random(10, 3, false, 1)).phases());
+        assertEquals(2, Netting.conservative(TestGraphs.random(100, 4, false, 2)).phases());
+        assertEquals(3, Netting.conservative(TestGraphs.random(1000, 4, false, 3)).phases());
+        assertEquals(4, Netting.conservative(TestGraphs.random(100_000, 1, false, 4)).phases());
+    }
+
+    /**
+     * A 20k-node chain: the only way from the debtor to the creditor crosses every node. Price
+     * updates give each node its distance at once; relabels alone would need O(n^2) of them.
+     */
+    @Test
+    void priceUpdatesCarryFlowDownALongChain() {
+        int n = 20_000;
+        List<String> names = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) names.add("n" + i);
+        CsrGraph.Builder b = CsrGraph.builder(names, n - 1);
+        for (int i = 0; i + 1 < n; i++) b.edge(names.get(i), names.get(i + 1), BigDecimal.ONE);
+        CsrGraph g = b.build();
+
+        Netting c = assertTimeout(Duration.ofSeconds(10), () -> Netting.conservative(g));
+
+        for (int e = 0; e < g.edgeCount(); e++) assertEquals(0, c.reduction(e), "edge " + e);
+    }
+
+    @Test
+    void priceUpdatesKeepClusteredMatricesOptimal() {
+        CsrGraph g = TestGraphs.random(2000, 4, true, 5);
+        Netting c = assertTimeout(Duration.ofSeconds(10), () -> Netting.conservative(g));
+        assertTrue(noNegativeCycle(g, c));
+    }
+
+    /** Supply that cannot reach any demand: the relabel finds no residual arc and gives up. */
+    @Test
+    void infeasibleFlowFailsInRelabel() {
+        CsrGraph.Builder b = CsrGraph.builder(List.of("a", "b"), 1);
+        b.edge("a", "b", BigDecimal.valueOf(5));
+        CsrGraph g = b.build();
+        long[] swapped = {5, -5};                 // b must send 5 to a, but only a -> b exists
+
+        IllegalStateException ex = assertThrows(IllegalStateException.class,
+                () -> new Netting.FlowNetwork(g, swapped).solve());
+        assertTrue(ex.getMessage().startsWith("Netting flow infeasible"), ex.getMessage());
+    }
+
+    @Test
+    void feasibleFlowOnTheSameCell() {
+        CsrGraph.Builder b = CsrGraph.builder(List.of("a", "b"), 1);
+        b.edge("a", "b", BigDecimal.valueOf(5));
+        CsrGraph g = b.build();
+        Netting.FlowNetwork f = new Netting.FlowNetwork(g, Netting.netPositions(g));
+
+        f.solve();
+
+        assertEquals(5, f.flow(0));
+    }
+
+    private static void assertOnlyLowers(CsrGraph g, Netting n) {
+        CsrGraph after = n.netted();
+        for (int u = 0; u < g.nodeCount(); u++) {
+            for (int e = g.rowStart(u), end = g.rowEnd(u); e < end; e++) {
+                long r = n.reduction(e);
+                assertTrue(r >= 0 && r <= g.amount(e), "reduction of edge " + e);
+                int k = after.edge(u, g.target(e));
+                assertEquals(g.amount(e) - r, k < 0 ? 0 : after.amount(k), "amount left on edge " + e);
+            }
+        }
+        for (int u = 0; u < after.nodeCount(); u++) {
+            for (int e = after.rowStart(u), end = after.rowEnd(u); e < end; e++) {
+                assertTrue(g.edge(u, after.target(e)) >= 0, "new cell " + u + " -> " + after.target(e));
+            }
+        }
+    }
+
+    private static int terminals(CsrGraph g) {
+        int k = 0;
+        for (long v : Netting.netPositions(g)) if (v != 0) k++;
+        return k;
+    }
+
+    /**
+     * Bellman-Ford on the residual cells: a cell with flow left can be lowered (cost -1), a cell
+     * below its amount can be raised (cost +1). A negative cycle would be a cheaper netting.
+     */
+    private static boolean noNegativeCycle(CsrGraph g, Netting n) {
+        int nodes = g.nodeCount();
+        long[] dist = new long[nodes];
+        for (int round = 0; round <= nodes; round++) {
+            boolean changed = false;
+            for (int u = 0; u < nodes; u++) {
+                for (int e = g.rowStart(u), end = g.rowEnd(u); e < end; e++) {
+                    int v = g.target(e);
+                    long flow = g.amount(e) - n.reduction(e);
+                    if (flow < g.amount(e) && dist[u] + 1 < dist[v]) {
+                        dist[v] = dist[u] + 1;
+                        changed = true;
+                    }
+                    if (flow > 0 && dist[v] - 1 < dist[u]) {
+                        dist[u] = dist[v] - 1;
+                        changed = true;
+                    }
+                }
+            }
+            if (!changed) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.amospringboot.matrix.engine;
+
+import java.util.Random;
+
+/** Seeded random matrices for the engine tests. */
+final class TestGraphs {
+
+    private TestGraphs() {}
+
+    /**
+     * {@code nodes} x {@code degree} edges with amounts 0.01 .. 100.00. Clustered: sqrt(nodes)
+     * communities whose cross edges only point forward, so every cycle stays inside one.
+     */
+    static CsrGraph random(int nodes, int degree, boolean clustered, long seed) {
+        Random rnd = new Random(seed);
+        int community = Math.max(2, (int) Math.sqrt(nodes));
+        EdgeList edges = new EdgeList(nodes, nodes * degree);
+        for (int i = 0; i < nodes; i++) edges.node("n" + i);
+        for (int u = 0; u < nodes; u++) {
+            for (int k = 0; k < degree; k++) {
+                int v = rnd.nextInt(nodes);
+                if (clustered && v / community < u / community) v = u / community * community + rnd.nextInt(community);
+                edges.add(u, Math.min(v, nodes - 1), 1 + rnd.nextInt(10_000), 2);
+            }
+        }
+        return edges.toGraph();
+    }
+}
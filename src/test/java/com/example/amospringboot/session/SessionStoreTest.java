@@ -0,0 +1,199 @@
+package com.example.amospringboot.session;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.session.FindByIndexNameSessionRepository;
+import org.springframework.session.security.SpringSessionBackedSessionRegistry;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Two {@link SessionStore}s ("replicas") on one embedded H2 database: what a multi-node
+ * deployment relies on, without a second JVM. Both always revalidate (revalidate-after 0),
+ * so every read sees what the other node wrote.
+ */
+class SessionStoreTest {
+
+    private EmbeddedDatabase db;
+    private JdbcTemplate jdbc;
+    private SimpleMeterRegistry registryA;
+    private SimpleMeterRegistry registryB;
+    private SessionStore a;
+    private SessionStore b;
+
+    @BeforeEach
+    void setUp() {
+        db = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .build();
+        jdbc = new JdbcTemplate(db);
+        registryA = new SimpleMeterRegistry();
+        registryB = new SimpleMeterRegistry();
+        a = SessionStore.jdbc(db, registryA, true, Duration.ofMinutes(30), Duration.ZERO, 1000, Duration.ofSeconds(10));
+        b = SessionStore.jdbc(db, registryB, false, Duration.ofMinutes(30), Duration.ZERO, 1000, Duration.ofSeconds(10));
+    }
+
+    @AfterEach
+    void tearDown() {
+        db.shutdown();
+    }
+
+    @Test
+    void writtenOnOneNodeIsReadOnTheOther() {
+        String id = saved(a, "alice");
+
+        StoredSession onB = b.findById(id);
+        assertNotNull(onB);
+        assertEquals("3 items", onB.getAttribute("cart"));
+    }
+
+    @Test
+    void concurrentWritesReplayTheDeltaOnTheNewerRevision() {
+        String id = saved(a, "alice");
+        StoredSession onA = a.findById(id);
+        StoredSession onB = b.findById(id);
+
+        onA.setAttribute("x", 1);
+        onB.removeAttribute("cart");
+        onB.setAttribute("y", 2);
+        a.save(onA);
+        b.save(onB);          // revision 1 is gone: conflict, B's delta is replayed on A's revision 2
+
+        assertEquals(0, registryA.get("app.session.write.conflicts").counter().count());
+        assertEquals(1, registryB.get("app.session.write.conflicts").counter().count());
+        assertEquals(3, revision(id));
+        StoredSession merged = a.findById(id);
+        assertEquals(Integer.valueOf(1), merged.getAttribute("x"));
+        assertEquals(Integer.valueOf(2), merged.getAttribute("y"));
+        assertNull(merged.getAttribute("cart"));
+    }
+
+    @Test
+    void writeToASessionDeletedElsewhereIsDropped() {
+        String id = saved(a, "alice");
+        StoredSession onB = b.findById(id);
+        a.deleteById(id);
+
+        onB.setAttribute("x", 1);
+        b.save(onB);
+
+        assertNull(b.findById(id));
+        assertNull(a.findById(id));
+    }
+
+    @Test
+    void accessOnlySaveWaitsForTheBatchFlush() {
+        String id = saved(a, "alice");
+        StoredSession onB = b.findById(id);
+        Instant accessed = Instant.now().plusSeconds(5).truncatedTo(ChronoUnit.MILLIS);
+
+        onB.setLastAccessedTime(accessed);
+        b.save(onB);
+
+        assertTrue(lastAccess(id) < accessed.toEpochMilli(), "written per request");
+        assertEquals(1, revision(id));
+        assertEquals(accessed, b.findById(id).getLastAccessedTime(), "pending access not seen locally");
+
+        b.flushAccessTimes();
+
+        assertEquals(accessed.toEpochMilli(), lastAccess(id));
+        assertEquals(1, revision(id));
+        assertEquals(accessed, a.findById(id).getLastAccessedTime());
+    }
+
+    @Test
+    void sweepDeletesExpiredRowsOfEveryNode() {
+        StoredSession stale = b.createSession();
+        stale.setMaxInactiveInterval(Duration.ofSeconds(1));
+        stale.setLastAccessedTime(Instant.now().minus(1, ChronoUnit.HOURS));
+        stale.setAttribute("cart", "old");
+        b.save(stale);
+        String live = saved(b, "bob");
+
+        assertEquals(1, a.sweep(Instant.now()));
+
+        assertTrue(jdbc.queryForList("SELECT session_id FROM app_session WHERE session_id = ?",
+                String.class, stale.getId()).isEmpty());
+        assertNull(b.findById(stale.getId()));
+        assertNotNull(b.findById(live));
+    }
+
+    @Test
+    void sweepKeepsSessionsWithoutOrWithLongTimeouts() {
+        StoredSession forever = a.createSession();
+        forever.setMaxInactiveInterval(Duration.ofSeconds(-1));
+        forever.setAttribute("cart", "kept");
+        a.save(forever);
+        StoredSession twoMonths = a.createSession();
+        twoMonths.setMaxInactiveInterval(Duration.ofDays(60));          // > 2^31 ms
+        twoMonths.setAttribute("cart", "kept");
+        a.save(twoMonths);
+        Instant accessed = Instant.now().plusSeconds(5).truncatedTo(ChronoUnit.MILLIS);
+        for (String id : new String[] {forever.getId(), twoMonths.getId()}) {
+            StoredSession s = b.findById(id);
+            s.setLastAccessedTime(accessed);
+            b.save(s);
+        }
+
+        b.flushAccessTimes();
+
+        assertEquals(accessed.toEpochMilli(), lastAccess(twoMonths.getId()));
+        assertEquals(0, a.sweep(Instant.now().plus(Duration.ofDays(59))));
+        assertNotNull(b.findById(forever.getId()));
+        assertNotNull(b.findById(twoMonths.getId()));
+    }
+
+    @Test
+    void sessionRegistrySpansNodes() {
+        String id = saved(a, "alice");
+        saved(b, "alice");
+        SpringSessionBackedSessionRegistry<StoredSession> onA = new SpringSessionBackedSessionRegistry<>(a);
+        SpringSessionBackedSessionRegistry<StoredSession> onB = new SpringSessionBackedSessionRegistry<>(b);
+
+        assertEquals(2, onA.getAllSessions("alice", false).size());
+        onB.getSessionInformation(id).expireNow();
+        assertTrue(onA.getSessionInformation(id).isExpired());
+    }
+
+    @Test
+    void renamedSessionIsReadableEverywhere() {
+        StoredSession s = a.findById(saved(a, "alice"));
+        String oldId = s.getId();
+
+        s.changeSessionId();
+        a.save(s);
+
+        assertNotNull(b.findById(s.getId()));
+        assertNull(b.findById(oldId));
+    }
+
+    private static String saved(SessionStore store, String principal) {
+        StoredSession s = store.createSession();
+        s.setAttribute(FindByIndexNameSessionRepository.PRINCIPAL_NAME_INDEX_NAME, principal);
+        s.setAttribute("cart", "3 items");
+        store.save(s);
+        return s.getId();
+    }
+
+    private long lastAccess(String id) {
+        return jdbc.queryForObject("SELECT last_access FROM app_session WHERE session_id = ?", Long.class, id);
+    }
+
+    private long revision(String id) {
+        return jdbc.queryForObject("SELECT revision FROM app_session WHERE session_id = ?", Long.class, id);
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.amospringboot.web;
+
+import com.example.amospringboot.matrix.engine.MatrixAnalysis;
+import com.example.amospringboot.matrix.engine.MatrixBlob;
+import com.example.amospringboot.matrix.engine.MatrixBlobDecoder;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The local /matrix/analyze report: seeded matrices (negative, zero and diagonal cells
+ * included) give the same report from the dense and the sparse kernel, and from a blob decoded
+ * sparse (CSR) apart from the dense-only "matrix" field. Agreement with the backend is
+ * AnalyzeParityCheck's job (benchmarks/), it needs a live API.
+ */
+class MatrixAnalysisServiceTest {
+
+    @Test
+    void kernelsAndBlobLayoutsAgree() {
+        Random rnd = new Random(11L);
+        for (int c = 0; c < 60; c++) {
+            int n = 1 + rnd.nextInt(c % 10 == 0 ? 1500 : 120);
+            byte[] text = matrix(rnd, n);
+            Map<String, Object> dense = withoutTiming(MatrixAnalysisService.report(decode(text, MatrixBlobDecoder.DENSE_LIMIT),
+                    MatrixAnalysis.Kernel.DENSE));
+            Map<String, Object> sparse = withoutTiming(MatrixAnalysisService.report(decode(text, MatrixBlobDecoder.DENSE_LIMIT),
+                    MatrixAnalysis.Kernel.SPARSE));
+            Map<String, Object> csr = withoutTiming(MatrixAnalysisService.report(decode(text, 0), null));
+
+            assertEquals(dense, sparse, "case " + c + " (" + n + " nodes): dense vs. sparse kernel");
+            sparse.remove("matrix");
+            sparse.remove("gaps");
+            csr.remove("gaps");
+            assertEquals(sparse, csr, "case " + c + " (" + n + " nodes): dense vs. CSR blob");
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void reportsTotalsAndTheCycle() {
+        String json = "{\"nodes\":[\"a\",\"b\",\"c\"],\"matrix\":[[0,10,0],[0,0,4.50],[2,0,0]]}";
+        Map<String, Object> report = MatrixAnalysisService.report(
+                decode(Base64.getMimeEncoder().encode(json.getBytes(StandardCharsets.UTF_8)), MatrixBlobDecoder.DENSE_LIMIT), null);
+
+        assertEquals("ok", report.get("status"));
+        assertEquals(List.of("a", "b", "c"), report.get("node_names"));
+        Map<String, Object> net = (Map<String, Object>) ((Map<String, Object>) report.get("totals")).get("net_balance");
+        assertEquals(0, new BigDecimal("-8").compareTo((BigDecimal) net.get("a")));
+        assertEquals(0, new BigDecimal("5.5").compareTo((BigDecimal) net.get("b")));
+        assertEquals(0, new BigDecimal("2.5").compareTo((BigDecimal) net.get("c")));
+        assertEquals(true, report.get("has_cycle"));
+        assertFalse(((List<?>) report.get("cycles")).isEmpty());
+        assertTrue(((List<?>) report.get("gaps")).contains("cycles: one example, not every cycle"));
+    }
+
+    private static Map<String, Object> withoutTiming(Map<String, Object> report) {
+        report.remove("compute_ms");
+        report.remove("kernel");
+        return report;
+    }
+
+    private static MatrixBlob decode(byte[] text, int denseMaxNodes) {
+        MatrixBlobDecoder decoder = new MatrixBlobDecoder(denseMaxNodes);
+        decoder.feed(text, 0, text.length);
+        return decoder.finish();
+    }
+
+    /** A seeded .b64 matrix with ~4 cells per row, some negative, some on the diagonal. */
+    private static byte[] matrix(Random rnd, int n) {
+        StringBuilder sb = new StringBuilder(n * n * 2 + 64);
+        sb.append("{\"nodes\":[");
+        for (int i = 0; i < n; i++) {
+            if (i > 0) sb.append(',');
+            sb.append("\"n").append(i).append('"');
+        }
+        sb.append("],\"matrix\":[");
+        for (int r = 0; r < n; r++) {
+            sb.append(r > 0 ? ",[" : "[");
+            for (int c = 0; c < n; c++) {
+                if (c > 0) sb.append(',');
+                if (rnd.nextInt(n) >= 4) {
+                    sb.append('0');
+                } else {
+                    if (rnd.nextInt(20) == 0) sb.append('-');
+                    sb.append(1 + rnd.nextInt(1_000_000)).append('.').append(rnd.nextInt(100));
+                }
+            }
+            sb.append(']');
+        }
+        sb.append("]}");
+        return Base64.getMimeEncoder().encode(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.amospringboot.web;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.ErrorResponseException;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The local cycle engine: JSON and streamed (NDJSON) requests agree, a planted cycle is found
+ * starting with node_a -> node_b, and bad edges are a 400 (a weight that is not positive only
+ * for this engine; the backend gets it unchanged). Agreement
+ * with the backend is CycleParityCheck's job (benchmarks/), it needs a live API.
+ */
+class MatrixCycleServiceTest {
+
+    private static final ObjectMapper MAPPER = JsonMapper.builder().findAndAddModules().build();
+
+    private final MatrixCycleService local = new MatrixCycleService(null, MAPPER, "local", Integer.MAX_VALUE);
+    private final EdgeStreamReader reader = new EdgeStreamReader(MAPPER, Integer.MAX_VALUE);
+
+    @Test
+    void streamedRequestsAnswerLikeJson() throws Exception {
+        Random rnd = new Random(7L);
+        int[] sizes = {10, 100, 1_000};
+        for (int c = 0; c < 30; c++) {
+            MatrixCycleController.CycleFindRequest req = randomRequest(rnd, sizes[c % sizes.length], c % 2 == 0);
+            MatrixCycleController.CycleFindResponse json = local.findLocal(req);
+            MatrixCycleController.CycleFindResponse streamed =
+                    local.findCycleAsync(reader.ndjson(new ByteArrayInputStream(ndjson(req)))).block();
+            assertEquals(json.found(), streamed.found(), "case " + c + ": found");
+            assertEquals(json.cycle(), streamed.cycle(), "case " + c + ": cycle");
+            if (json.found()) {
+                assertEquals(0, ((BigDecimal) json.details().get("bottleneck"))
+                        .compareTo((BigDecimal) streamed.details().get("bottleneck")), "case " + c + ": bottleneck");
+            }
+        }
+    }
+
+    @Test
+    void plantedCycleStartsWithThePaymentEdge() {
+        List<String> nodes = List.of("a", "b", "c", "d");
+        List<MatrixCycleController.Edge> edges = List.of(
+                edge("a", "b", "5"), edge("b", "c", "2.50"), edge("c", "a", "7"), edge("c", "d", "1"));
+        MatrixCycleController.CycleFindResponse res = local.findLocal(
+                new MatrixCycleController.CycleFindRequest(null, null, nodes, edges, Map.of("node_a", "a", "node_b", "b")));
+
+        assertTrue(res.found());
+        assertEquals(List.of("a", "b", "c"), res.cycle());
+        assertEquals(0, new BigDecimal("2.5").compareTo((BigDecimal) res.details().get("bottleneck")));
+        assertEquals(3, res.details().get("length"));
+    }
+
+    @Test
+    void acyclicMatrixHasNoCycle() {
+        MatrixCycleController.CycleFindResponse res = local.findLocal(new MatrixCycleController.CycleFindRequest(
+                null, null, List.of("a", "b", "c"), List.of(edge("a", "b", "1"), edge("b", "c", "1")), null));
+        assertFalse(res.found());
+    }
+
+    @Test
+    void nonPositiveOrMissingWeightIsBadRequest() throws Exception {
+        for (String weight : new String[] {"0", "-3", null}) {
+            List<MatrixCycleController.Edge> edges = new ArrayList<>();
+            edges.add(edge("a", "b", "1"));
+            edges.add(new MatrixCycleController.Edge("b", "a", weight == null ? null : new BigDecimal(weight)));
+            var req = new MatrixCycleController.CycleFindRequest(null, null, List.of("a", "b"), edges, null);
+
+            ErrorResponseException ex = assertThrows(ErrorResponseException.class, () -> local.findCycleAsync(req).block());
+            assertEquals(400, ex.getStatusCode().value(), "weight " + weight);
+            if (weight == null) continue;
+            var streamed = reader.ndjson(new ByteArrayInputStream(ndjson(req)));
+            ex = assertThrows(ErrorResponseException.class, () -> local.findCycleAsync(streamed).block());
+            assertEquals(400, ex.getStatusCode().value(), "streamed weight " + weight);
+        }
+    }
+
+    @Test
+    void missingEndpointIsBadRequest() {
+        List<MatrixCycleController.Edge> edges = new ArrayList<>();
+        edges.add(new MatrixCycleController.Edge("a", null, BigDecimal.ONE));
+        edges.add(null);
+        var req = new MatrixCycleController.CycleFindRequest(null, null, List.of("a", "b"), edges, null);
+
+        ErrorResponseException ex = assertThrows(ErrorResponseException.class, () -> local.findCycleAsync(req).block());
+        assertEquals(400, ex.getStatusCode().value());
+    }
+
+    @Test
+    void unknownEngineIsBadRequest() {
+        var req = new MatrixCycleController.CycleFindRequest(null, null, List.of("a", "b"),
+                List.of(edge("a", "b", "1")), Map.of("engine", "gpu"));
+
+        ErrorResponseException ex = assertThrows(ErrorResponseException.class, () -> local.findCycleAsync(req).block());
+        assertEquals(400, ex.getStatusCode().value());
+    }
+
+    private static MatrixCycleController.Edge edge(String from, String to, String weight) {
+        return new MatrixCycleController.Edge(from, to, new BigDecimal(weight));
+    }
+
+    /** Sparse random matrix; with {@code planted} an n0 -> n1 edge, so some cases have a cycle through it. */
+    private static MatrixCycleController.CycleFindRequest randomRequest(Random rnd, int n, boolean planted) {
+        List<String> nodes = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) nodes.add("n" + i);
+        List<MatrixCycleController.Edge> edges = new ArrayList<>();
+        int degree = 1 + rnd.nextInt(3);
+        for (int i = 0; i < n * degree; i++) {
+            edges.add(new MatrixCycleController.Edge(nodes.get(rnd.nextInt(n)), nodes.get(rnd.nextInt(n)),
+                    BigDecimal.valueOf(1 + rnd.nextInt(10_000), 2)));
+        }
+        if (planted) edges.add(new MatrixCycleController.Edge("n0", "n1", BigDecimal.valueOf(1 + rnd.nextInt(10_000))));
+        return new MatrixCycleController.CycleFindRequest("matrices", null, nodes, edges, Map.of("node_a", "n0", "node_b", "n1"));
+    }
+
+    /** The request as application/x-ndjson: header line, then one [from, to, weight] line per edge. */
+    private static byte[] ndjson(MatrixCycleController.CycleFindRequest req) throws Exception {
+        Map<String, Object> header = new LinkedHashMap<>();
+        header.put("container", req.container());
+        header.put("nodes", req.nodes());
+        header.put("options", req.options());
+        StringBuilder sb = new StringBuilder(MAPPER.writeValueAsString(header)).append('\n');
+        for (MatrixCycleController.Edge e : req.edges()) {
+            sb.append(MAPPER.writeValueAsString(List.of(e.from(), e.to(), e.weight()))).append('\n');
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}